@@ -0,0 +1,292 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+
+/**
+ * Adaptive concurrency limit with a bounded queue, placed in front of event
+ * bus consumers backed by a fixed amount of capacity.  The limit follows a
+ * gradient algorithm: while latency stays close to its long term average the
+ * limit grows by roughly its square root per sample, and when latency rises
+ * because requests are queueing for workers the limit shrinks in proportion.
+ * Requests over the limit wait in a bounded queue; requests that do not fit
+ * are rejected immediately so that the caller can shed them rather than
+ * having them time out on the event bus after the client has gone.
+ */
+public class AdmissionController {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(AdmissionController.class);
+
+    private static final Gauge LIMIT = Gauge.build()
+            .name("omero_ms_admission_limit")
+            .help("Current adaptive concurrency limit")
+            .labelNames("controller")
+            .register();
+
+    private static final Gauge IN_FLIGHT = Gauge.build()
+            .name("omero_ms_admission_in_flight")
+            .help("Requests currently admitted")
+            .labelNames("controller")
+            .register();
+
+    private static final Gauge QUEUE_DEPTH = Gauge.build()
+            .name("omero_ms_admission_queue_depth")
+            .help("Requests waiting to be admitted")
+            .labelNames("controller")
+            .register();
+
+    private static final Counter REJECTED = Counter.build()
+            .name("omero_ms_admission_rejected_total")
+            .help("Requests rejected because the queue was full")
+            .labelNames("controller")
+            .register();
+
+    /** Ratio of the current to long term latency tolerated before backing off */
+    private static final double TOLERANCE = 1.5;
+
+    /** Weight of each new limit estimate */
+    private static final double SMOOTHING = 0.2;
+
+    /** Number of samples the long term latency is averaged over */
+    private static final double LONG_WINDOW = 600;
+
+    /**
+     * An admitted request.  Exactly one of {@link #release()} or
+     * {@link #cancel()} must be called once the request is complete.
+     */
+    public interface Permit {
+
+        /**
+         * Releases the permit, recording the latency of the request.
+         */
+        void release();
+
+        /**
+         * Releases the permit without recording the latency of the request,
+         * for example because it was abandoned before being dispatched.
+         */
+        void cancel();
+    }
+
+    /** Name used to label exported metrics */
+    private final String name;
+
+    /** Lower bound of the limit */
+    private final int minLimit;
+
+    /** Upper bound of the limit */
+    private final int maxLimit;
+
+    /** Maximum number of requests waiting to be admitted */
+    private final int maxQueueSize;
+
+    /** Requests waiting to be admitted */
+    private final Deque<Consumer<Permit>> queue =
+            new ArrayDeque<Consumer<Permit>>();
+
+    /** Current limit estimate */
+    private double estimatedLimit;
+
+    /** Long term exponentially weighted average latency in nanoseconds */
+    private double longRtt;
+
+    /** Number of requests currently admitted */
+    private int inFlight;
+
+    /**
+     * Default constructor.
+     * @param name name used to label exported metrics
+     * @param initialLimit starting concurrency limit
+     * @param minLimit lower bound of the limit
+     * @param maxLimit upper bound of the limit
+     * @param maxQueueSize maximum number of requests waiting to be admitted
+     */
+    public AdmissionController(String name, int initialLimit, int minLimit,
+            int maxLimit, int maxQueueSize) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid admission limits min:%d max:%d",
+                    minLimit, maxLimit));
+        }
+        log.info("Admission controller {} initial limit:{} min limit:{} " +
+                "max limit:{} max queue size:{}", name, initialLimit,
+                minLimit, maxLimit, maxQueueSize);
+        this.name = name;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueueSize = maxQueueSize;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        updateMetrics();
+    }
+
+    /**
+     * Submits a request for admission.  If under the limit the task is run
+     * immediately on the calling thread, otherwise it is queued and run on
+     * the thread releasing the permit that makes room for it.
+     * @param task request to run once admitted
+     * @return <code>true</code> if the request was admitted or queued and
+     * <code>false</code> if it was rejected.
+     */
+    public boolean submit(Consumer<Permit> task) {
+        Permit permit;
+        synchronized (this) {
+            if (inFlight < getLimit()) {
+                permit = acquire();
+            } else if (queue.size() < maxQueueSize) {
+                queue.add(task);
+                updateMetrics();
+                return true;
+            } else {
+                REJECTED.labels(name).inc();
+                return false;
+            }
+        }
+        task.accept(permit);
+        return true;
+    }
+
+    /**
+     * Admits a low priority request, such as a speculative render, only if
+     * the controller is idle: nothing is waiting to be admitted and less
+     * than half the limit is in use.  Low priority requests are never
+     * queued.
+     * @return A permit or <code>null</code> if the request should be
+     * skipped.
+     */
+    public Permit tryAcquireIdle() {
+        synchronized (this) {
+            if (!queue.isEmpty() || inFlight >= getLimit() / 2) {
+                return null;
+            }
+            return acquire();
+        }
+    }
+
+    /**
+     * Current concurrency limit.
+     * @return See above.
+     */
+    public synchronized int getLimit() {
+        return (int) estimatedLimit;
+    }
+
+    /**
+     * Number of requests currently admitted.
+     * @return See above.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Number of requests waiting to be admitted.
+     * @return See above.
+     */
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Updates the limit estimate with a latency sample.
+     * @param rtt latency of a request in nanoseconds
+     * @param inFlight number of requests admitted when the request completed,
+     * including itself
+     */
+    synchronized void update(long rtt, int inFlight) {
+        if (longRtt == 0) {
+            longRtt = rtt;
+        } else {
+            longRtt += (rtt - longRtt) / LONG_WINDOW;
+        }
+        // Recover quickly once a period of high latency is over
+        if (longRtt / rtt > 2) {
+            longRtt *= 0.95;
+        }
+        // Latency says nothing about the limit if it is not being used
+        if (inFlight < estimatedLimit / 2) {
+            return;
+        }
+        double gradient =
+                Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / rtt));
+        double newLimit =
+                estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        updateMetrics();
+    }
+
+    private Permit acquire() {
+        inFlight++;
+        updateMetrics();
+        long start = System.nanoTime();
+        AtomicBoolean released = new AtomicBoolean();
+        return new Permit() {
+            @Override
+            public void release() {
+                if (released.compareAndSet(false, true)) {
+                    done(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public void cancel() {
+                if (released.compareAndSet(false, true)) {
+                    done(-1);
+                }
+            }
+        };
+    }
+
+    private void done(long rtt) {
+        List<Consumer<Permit>> tasks = new ArrayList<Consumer<Permit>>();
+        List<Permit> permits = new ArrayList<Permit>();
+        synchronized (this) {
+            if (rtt > 0) {
+                update(rtt, inFlight);
+            }
+            inFlight--;
+            while (!queue.isEmpty() && inFlight < getLimit()) {
+                tasks.add(queue.poll());
+                permits.add(acquire());
+            }
+            updateMetrics();
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).accept(permits.get(i));
+        }
+    }
+
+    private void updateMetrics() {
+        LIMIT.labels(name).set(getLimit());
+        IN_FLIGHT.labels(name).set(inFlight);
+        QUEUE_DEPTH.labels(name).set(queue.size());
+    }
+}
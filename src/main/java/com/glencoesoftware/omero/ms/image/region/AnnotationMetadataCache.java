@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+import org.apache.tika.Tika;
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * In memory cache of the {@link ome.model.core.OriginalFile} metadata
+ * required to serve file annotation downloads, keyed by annotation
+ * identifier, along with a record of which OMERO sessions have recently
+ * been permitted to read each annotation.  Once both are cached a download,
+ * or any of the many range requests media players issue, can be served
+ * without a round trip to the OMERO server or the content type detector.
+ */
+public class AnnotationMetadataCache {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(AnnotationMetadataCache.class);
+
+    /** Content type detector; safe for concurrent use */
+    private static final Tika TIKA = new Tika();
+
+    /** Content type used when detection fails */
+    public static final String DEFAULT_CONTENT_TYPE =
+            "application/octet-stream";
+
+    /** RFC 7231 preferred HTTP-date format (IMF-fixdate) */
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern(
+                    "EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+            .withZone(ZoneOffset.UTC);
+
+    /**
+     * Metadata of the file backing a file annotation.
+     */
+    public static class FileMetadata {
+
+        /** Original file identifier */
+        public final long originalFileId;
+
+        /** Original file name */
+        public final String name;
+
+        /** Path to the file in the OMERO binary repository */
+        public final String path;
+
+        /** Size of the file in bytes */
+        public final long size;
+
+        /** Last modification time of the file in milliseconds */
+        public final long lastModified;
+
+        /** Detected content type of the file */
+        public final String contentType;
+
+        /**
+         * Default constructor.
+         * @param originalFileId original file identifier
+         * @param name original file name
+         * @param path path to the file in the OMERO binary repository
+         * @param size size of the file in bytes
+         * @param lastModified last modification time of the file in
+         * milliseconds
+         * @param contentType detected content type of the file
+         */
+        public FileMetadata(long originalFileId, String name, String path,
+                long size, long lastModified, String contentType) {
+            this.originalFileId = originalFileId;
+            this.name = name;
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+        }
+
+        /**
+         * Strong entity tag of the file, derived from its size and last
+         * modification time.
+         * @return See above.
+         */
+        public String etag() {
+            return String.format("\"%x-%x\"", size, lastModified);
+        }
+
+        /**
+         * Last modification time of the file as an RFC 7231 HTTP-date
+         * (IMF-fixdate).
+         * @return See above.
+         */
+        public String lastModifiedHttpDate() {
+            return HTTP_DATE.format(Instant.ofEpochMilli(lastModified));
+        }
+
+        /**
+         * Evaluates the <code>If-None-Match</code> and, in its absence,
+         * <code>If-Modified-Since</code> preconditions of a GET or HEAD
+         * request as per RFC 7232 section 6.
+         * @param ifNoneMatch value of the <code>If-None-Match</code> header
+         * or <code>null</code>
+         * @param ifModifiedSince value of the <code>If-Modified-Since</code>
+         * header or <code>null</code>
+         * @return Whether or not a <code>304 Not Modified</code> response
+         * should be sent.
+         */
+        public boolean notModified(
+                String ifNoneMatch, String ifModifiedSince) {
+            if (ifNoneMatch != null) {
+                String etag = etag();
+                for (String candidate : ifNoneMatch.split(",")) {
+                    candidate = candidate.trim();
+                    // Weak comparison
+                    if (candidate.startsWith("W/")) {
+                        candidate = candidate.substring(2);
+                    }
+                    if (candidate.equals("*") || candidate.equals(etag)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if (ifModifiedSince != null) {
+                try {
+                    long since = ZonedDateTime.parse(ifModifiedSince,
+                            DateTimeFormatter.RFC_1123_DATE_TIME)
+                            .toInstant().getEpochSecond();
+                    return lastModified / 1000 <= since;
+                } catch (DateTimeParseException e) {
+                    // Invalid dates are ignored
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Evaluates the <code>If-Range</code> precondition of a range
+         * request as per RFC 7233 section 3.2.
+         * @param ifRange value of the <code>If-Range</code> header or
+         * <code>null</code>
+         * @return Whether or not the <code>Range</code> header should be
+         * honoured.
+         */
+        public boolean ifRange(String ifRange) {
+            if (ifRange == null) {
+                return true;
+            }
+            ifRange = ifRange.trim();
+            if (ifRange.startsWith("\"")) {
+                // Strong comparison
+                return ifRange.equals(etag());
+            }
+            if (ifRange.startsWith("W/")) {
+                return false;
+            }
+            return ifRange.equals(lastModifiedHttpDate());
+        }
+
+        /**
+         * Stats and detects the content type of a file annotation's file.
+         * @param fileInfo file annotation metadata as returned by the
+         * {@link ImageRegionVerticle#GET_FILE_ANNOTATION_METADATA_EVENT}
+         * event
+         * @return See above.
+         */
+        public static FileMetadata of(JsonObject fileInfo) {
+            String name = fileInfo.getString("originalFileName");
+            String path = fileInfo.getString("originalFilePath");
+            File file = new File(path);
+            String contentType = DEFAULT_CONTENT_TYPE;
+            if (file.isFile()) {
+                try {
+                    contentType = TIKA.detect(file);
+                } catch (IOException e) {
+                    log.warn("Failed to detect content type of file {}",
+                            name);
+                }
+            }
+            return new FileMetadata(
+                    fileInfo.getLong("originalFileId"), name, path,
+                    file.length(), file.lastModified(), contentType);
+        }
+    }
+
+    /** File metadata keyed by annotation identifier */
+    private final Cache<Long, FileMetadata> metadata;
+
+    /** Readable annotations keyed by OMERO session key and identifier */
+    private final Cache<String, Boolean> readable;
+
+    /**
+     * Default constructor.
+     * @param maximumSize maximum number of annotations to retain metadata
+     * and readability for
+     * @param timeToLive time in seconds after which file metadata is
+     * reloaded; <code>0</code> disables the cache
+     * @param permissionTimeToLive time in seconds after which readability
+     * of an annotation is checked against the server again for a session
+     */
+    public AnnotationMetadataCache(
+            long maximumSize, long timeToLive, long permissionTimeToLive) {
+        log.info("Annotation metadata cache size:{} time to live:{}s " +
+                "permission time to live:{}s",
+                maximumSize, timeToLive, permissionTimeToLive);
+        long size = timeToLive > 0 ? maximumSize : 0;
+        metadata = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(Duration.ofSeconds(timeToLive))
+                .build();
+        readable = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(Duration.ofSeconds(permissionTimeToLive))
+                .build();
+    }
+
+    /**
+     * Retrieves cached file metadata if the session has recently been
+     * permitted to read the annotation.
+     * @param omeroSessionKey OMERO session key
+     * @param annotationId annotation identifier
+     * @return See above or <code>null</code> if either the metadata or the
+     * readability is not cached.
+     */
+    public FileMetadata get(String omeroSessionKey, long annotationId) {
+        if (readable.getIfPresent(
+                readableKey(omeroSessionKey, annotationId)) == null) {
+            return null;
+        }
+        return metadata.getIfPresent(annotationId);
+    }
+
+    /**
+     * Caches file metadata and records that the session is permitted to
+     * read the annotation.
+     * @param omeroSessionKey OMERO session key
+     * @param annotationId annotation identifier
+     * @param fileMetadata file metadata
+     */
+    public void put(String omeroSessionKey, long annotationId,
+            FileMetadata fileMetadata) {
+        metadata.put(annotationId, fileMetadata);
+        readable.put(readableKey(omeroSessionKey, annotationId), true);
+    }
+
+    /**
+     * Retrieves cached file metadata regardless of readability, to avoid
+     * restatting and detecting the content type of a file once readability
+     * has been confirmed.
+     * @param annotationId annotation identifier
+     * @return See above or <code>null</code> if not cached.
+     */
+    public FileMetadata getIfPresent(long annotationId) {
+        return metadata.getIfPresent(annotationId);
+    }
+
+    /**
+     * Discards cached file metadata, for example if the file has gone.
+     * @param annotationId annotation identifier
+     */
+    public void invalidate(long annotationId) {
+        metadata.invalidate(annotationId);
+    }
+
+    private String readableKey(String omeroSessionKey, long annotationId) {
+        return omeroSessionKey + ":" + annotationId;
+    }
+}
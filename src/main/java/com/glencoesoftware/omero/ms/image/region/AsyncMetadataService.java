@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracer.SpanInScope;
+import brave.Tracing;
+import brave.propagation.TraceContext;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import ome.logic.PixelsImpl;
+import omero.RType;
+import omero.ServerError;
+import omero.api.IAdminPrx;
+import omero.api.IPixelsPrx;
+import omero.api.IQueryPrx;
+import omero.api.ServiceFactoryPrx;
+import omero.model.IObject;
+import omero.sys.EventContext;
+import omero.sys.Parameters;
+import omero.sys.ParametersI;
+
+import static omero.rtypes.rlong;
+
+/**
+ * Asynchronous (Ice AMI) variants of the OMERO metadata calls made by the
+ * request handlers.  Each call is issued with its <code>begin_</code>
+ * method and completes a Vert.x {@link Future} from the Ice client thread
+ * pool, so independent round trips can be in flight at the same time and
+ * composed rather than made one after the other by a worker thread.
+ * Each call is traced as a child of the span current when it was issued.
+ */
+public final class AsyncMetadataService {
+
+    private AsyncMetadataService() {
+    }
+
+    /**
+     * Asynchronous {@link ServiceFactoryPrx#getAdminService()}.
+     * @param sf session to retrieve the service from
+     * @return See above.
+     */
+    public static Future<IAdminPrx> getAdminService(ServiceFactoryPrx sf) {
+        Span span = startSpan("get_admin_service");
+        Promise<IAdminPrx> promise = Promise.promise();
+        try (SpanInScope scope = withSpanInScope(span)) {
+            sf.begin_getAdminService(
+                    promise::complete, promise::fail, promise::fail);
+        } catch (RuntimeException e) {
+            promise.tryFail(e);
+        }
+        return finish(promise.future(), span);
+    }
+
+    /**
+     * Asynchronous {@link ServiceFactoryPrx#getPixelsService()}.
+     * @param sf session to retrieve the service from
+     * @return See above.
+     */
+    public static Future<IPixelsPrx> getPixelsService(ServiceFactoryPrx sf) {
+        Span span = startSpan("get_pixels_service");
+        Promise<IPixelsPrx> promise = Promise.promise();
+        try (SpanInScope scope = withSpanInScope(span)) {
+            sf.begin_getPixelsService(
+                    promise::complete, promise::fail, promise::fail);
+        } catch (RuntimeException e) {
+            promise.tryFail(e);
+        }
+        return finish(promise.future(), span);
+    }
+
+    /**
+     * Asynchronous {@link IAdminPrx#getEventContext()}, including the
+     * retrieval of the admin service itself.
+     * @param sf session to retrieve the event context of
+     * @return See above.
+     */
+    public static Future<EventContext> getEventContext(ServiceFactoryPrx sf) {
+        TraceContext parent = currentTraceContext();
+        return getAdminService(sf).compose(iAdmin -> {
+            Span span = startSpan("get_event_context", parent);
+            Promise<EventContext> promise = Promise.promise();
+            try (SpanInScope scope = withSpanInScope(span)) {
+                iAdmin.begin_getEventContext(
+                        promise::complete, promise::fail, promise::fail);
+            } catch (RuntimeException e) {
+                promise.tryFail(e);
+            }
+            return finish(promise.future(), span);
+        });
+    }
+
+    /**
+     * Asynchronous {@link IPixelsPrx#getAllEnumerations(String, Map)},
+     * including the retrieval of the pixels service itself.
+     * @param sf session to retrieve the enumerations with
+     * @param enumClass name of the enumeration class to retrieve
+     * @param ctx call context
+     * @return See above.
+     */
+    public static Future<List<IObject>> getAllEnumerations(
+            ServiceFactoryPrx sf, String enumClass, Map<String, String> ctx) {
+        TraceContext parent = currentTraceContext();
+        return getPixelsService(sf).compose(iPixels -> {
+            Span span = startSpan("get_all_enumerations", parent);
+            span.tag("omero.enumeration_class", enumClass);
+            Promise<List<IObject>> promise = Promise.promise();
+            try (SpanInScope scope = withSpanInScope(span)) {
+                iPixels.begin_getAllEnumerations(enumClass, ctx,
+                        promise::complete, promise::fail, promise::fail);
+            } catch (RuntimeException e) {
+                promise.tryFail(e);
+            }
+            return finish(promise.future(), span);
+        });
+    }
+
+    /**
+     * Asynchronous
+     * {@link IQueryPrx#findAllByQuery(String, Parameters, Map)}.
+     * @param iQuery query service
+     * @param query HQL query
+     * @param params query parameters
+     * @param ctx call context
+     * @return See above.
+     */
+    public static Future<List<IObject>> findAllByQuery(IQueryPrx iQuery,
+            String query, Parameters params, Map<String, String> ctx) {
+        return findAllByQuery(
+                iQuery, query, params, ctx, currentTraceContext());
+    }
+
+    private static Future<List<IObject>> findAllByQuery(IQueryPrx iQuery,
+            String query, Parameters params, Map<String, String> ctx,
+            TraceContext parent) {
+        Span span = startSpan("find_all_by_query", parent);
+        Promise<List<IObject>> promise = Promise.promise();
+        try (SpanInScope scope = withSpanInScope(span)) {
+            iQuery.begin_findAllByQuery(query, params, ctx,
+                    promise::complete, promise::fail, promise::fail);
+        } catch (RuntimeException e) {
+            promise.tryFail(e);
+        }
+        return finish(promise.future(), span);
+    }
+
+    /**
+     * Asynchronous {@link IQueryPrx#projection(String, Parameters, Map)}.
+     * @param iQuery query service
+     * @param query HQL query
+     * @param params query parameters
+     * @param ctx call context
+     * @return See above.
+     */
+    public static Future<List<List<RType>>> projection(IQueryPrx iQuery,
+            String query, Parameters params, Map<String, String> ctx) {
+        Span span = startSpan("projection");
+        Promise<List<List<RType>>> promise = Promise.promise();
+        try (SpanInScope scope = withSpanInScope(span)) {
+            iQuery.begin_projection(query, params, ctx,
+                    promise::complete, promise::fail, promise::fail);
+        } catch (RuntimeException e) {
+            promise.tryFail(e);
+        }
+        return finish(promise.future(), span);
+    }
+
+    /**
+     * Asynchronously retrieves the rendering settings of the current user
+     * and of the image owner for any of the specified images.  Keyed by
+     * image rather than pixels set so that the query only waits for the
+     * event context and can be in flight at the same time as the pixels
+     * metadata query.
+     * @param iQuery query service
+     * @param eventContext event context of the current user
+     * @param imageIds image identifiers
+     * @return See above.
+     */
+    public static Future<List<IObject>> findRenderingDefs(IQueryPrx iQuery,
+            Future<EventContext> eventContext, List<Long> imageIds) {
+        Map<String, String> ctx = new HashMap<String, String>();
+        ctx.put("omero.group", "-1");
+        // Ask for rendering settings for the current user or the image owner
+        String q = PixelsImpl.RENDERING_DEF_QUERY_PREFIX
+                + "rdef.pixels.image.id in (:ids) "
+                + "and ("
+                + "  rdef.details.owner.id = rdef.pixels.details.owner.id"
+                + "    or rdef.details.owner.id = :userId"
+                + ")";
+        TraceContext parent = currentTraceContext();
+        return eventContext.compose(ec -> {
+            ParametersI params = new ParametersI();
+            params.addIds(imageIds);
+            params.add("userId", rlong(ec.userId));
+            return findAllByQuery(iQuery, q, params, ctx, parent);
+        });
+    }
+
+    /**
+     * Waits for an asynchronous call to complete.  For use by request
+     * handlers which have issued all of the calls they can before they
+     * need a result.
+     * @param future asynchronous call
+     * @return Result of the call.
+     * @throws ServerError If the call failed on the server.
+     */
+    public static <T> T await(Future<T> future) throws ServerError {
+        try {
+            return future.toCompletionStage().toCompletableFuture().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ServerError) {
+                throw (ServerError) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                // Includes Ice.LocalException
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private static Span startSpan(String name) {
+        return Tracing.currentTracer().nextSpan().name(name).start();
+    }
+
+    /**
+     * Starts a span as a child of a trace context captured when a call was
+     * issued, for calls composed onto the completion of another which run
+     * on an Ice client thread with no current span.
+     */
+    private static Span startSpan(String name, TraceContext parent) {
+        Tracer tracer = Tracing.currentTracer();
+        Span span = parent == null ? tracer.newTrace() : tracer.newChild(parent);
+        return span.name(name).start();
+    }
+
+    private static TraceContext currentTraceContext() {
+        Tracing tracing = Tracing.current();
+        return tracing == null ? null : tracing.currentTraceContext().get();
+    }
+
+    /**
+     * Makes a span current while its call is issued so that anything the
+     * Ice runtime does on the calling thread is attributed to it.
+     */
+    private static SpanInScope withSpanInScope(Span span) {
+        return Tracing.currentTracer().withSpanInScope(span);
+    }
+
+    private static <T> Future<T> finish(Future<T> future, Span span) {
+        return future.onComplete(result -> {
+            if (result.failed()) {
+                span.error(result.cause());
+            }
+            span.finish();
+        });
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A satisfiable byte range of a representation, as requested by an HTTP
+ * <code>Range</code> header (RFC 7233).  Positions are inclusive.
+ */
+public class ByteRange {
+
+    /** Maximum number of ranges accepted in a single request */
+    public static final int MAX_RANGES = 100;
+
+    /** Single byte range specification of a <code>Range</code> header */
+    private static final Pattern RANGE_SPEC =
+            Pattern.compile("^(\\d*)-(\\d*)$");
+
+    /** Position of the first byte */
+    public final long start;
+
+    /** Position of the last byte */
+    public final long end;
+
+    /**
+     * Default constructor.
+     * @param start position of the first byte
+     * @param end position of the last byte
+     */
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Number of bytes in the range.
+     * @return See above.
+     */
+    public long length() {
+        return end - start + 1;
+    }
+
+    /**
+     * Value of the <code>Content-Range</code> header for this range.
+     * @param completeLength length of the complete representation
+     * @return See above.
+     */
+    public String contentRange(long completeLength) {
+        return String.format("bytes %d-%d/%d", start, end, completeLength);
+    }
+
+    /**
+     * Parses a <code>Range</code> header.  Unsatisfiable range
+     * specifications are dropped and the remainder clamped to the
+     * representation; ranges are returned in the order requested.
+     * @param range value of the <code>Range</code> header
+     * @param length length of the complete representation
+     * @return Satisfiable ranges; empty if none are satisfiable.
+     * @throws IllegalArgumentException If the header is malformed, not in
+     * <code>bytes</code> units or contains more than {@link #MAX_RANGES}
+     * range specifications.
+     */
+    public static List<ByteRange> parse(String range, long length) {
+        String prefix = "bytes=";
+        if (range == null || !range.startsWith(prefix)) {
+            throw new IllegalArgumentException(
+                    "Range header must be of the form \"bytes=x-y\"");
+        }
+        String[] specs = range.substring(prefix.length()).split(",");
+        if (specs.length > MAX_RANGES) {
+            throw new IllegalArgumentException(
+                    "More than " + MAX_RANGES + " ranges requested");
+        }
+        List<ByteRange> ranges = new ArrayList<ByteRange>();
+        for (String spec : specs) {
+            Matcher m = RANGE_SPEC.matcher(spec.trim());
+            if (!m.matches()
+                    || (m.group(1).isEmpty() && m.group(2).isEmpty())) {
+                throw new IllegalArgumentException(
+                        "Malformed range specification: " + spec);
+            }
+            long start, end;
+            try {
+                if (m.group(1).isEmpty()) {
+                    // Suffix range; the last N bytes
+                    long suffix = Long.parseLong(m.group(2));
+                    if (suffix == 0) {
+                        continue;
+                    }
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(m.group(1));
+                    end = length - 1;
+                    if (!m.group(2).isEmpty()) {
+                        long last = Long.parseLong(m.group(2));
+                        if (last < start) {
+                            throw new IllegalArgumentException(
+                                    "Malformed range specification: " + spec);
+                        }
+                        end = Math.min(last, end);
+                    }
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(
+                        "Malformed range specification: " + spec);
+            }
+            if (start >= length) {
+                continue;
+            }
+            ranges.add(new ByteRange(start, end));
+        }
+        return ranges;
+    }
+
+    /**
+     * Header of a <code>multipart/byteranges</code> body part, including
+     * the preceding delimiter.
+     * @param boundary multipart boundary
+     * @param contentType content type of the representation
+     * @param completeLength length of the complete representation
+     * @return See above.
+     */
+    public byte[] partHeader(
+            String boundary, String contentType, long completeLength) {
+        return ("\r\n--" + boundary + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Range: " + contentRange(completeLength) + "\r\n"
+                + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Close delimiter of a <code>multipart/byteranges</code> body.
+     * @param boundary multipart boundary
+     * @return See above.
+     */
+    public static byte[] closeDelimiter(String boundary) {
+        return ("\r\n--" + boundary + "--\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Length of a <code>multipart/byteranges</code> body.
+     * @param ranges ranges of the body
+     * @param boundary multipart boundary
+     * @param contentType content type of the representation
+     * @param completeLength length of the complete representation
+     * @return See above.
+     */
+    public static long multipartLength(List<ByteRange> ranges,
+            String boundary, String contentType, long completeLength) {
+        long length = closeDelimiter(boundary).length;
+        for (ByteRange range : ranges) {
+            length += range.partHeader(
+                    boundary, contentType, completeLength).length;
+            length += range.length();
+        }
+        return length;
+    }
+}
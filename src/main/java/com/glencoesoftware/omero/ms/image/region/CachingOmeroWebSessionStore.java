@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.glencoesoftware.omero.ms.core.IConnector;
+import com.glencoesoftware.omero.ms.core.OmeroWebSessionStore;
+
+/**
+ * OMERO.web session store which caches, in memory and for a short time,
+ * the connector resolved for each OMERO.web session key.  A viewer issues
+ * dozens of tile requests per viewport, each of which would otherwise
+ * unpickle the Django session from Redis or query PostgreSQL.  Sessions
+ * which fail to resolve are never cached and entries are invalidated as
+ * soon as the OMERO server denies a request made with them.
+ */
+public class CachingOmeroWebSessionStore implements OmeroWebSessionStore {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(CachingOmeroWebSessionStore.class);
+
+    /** Session store connectors are resolved from on a miss */
+    private final OmeroWebSessionStore sessionStore;
+
+    /** Connectors keyed by OMERO.web session key */
+    private final Cache<String, IConnector> connectors;
+
+    /**
+     * Default constructor.
+     * @param sessionStore session store to resolve connectors from on a
+     * miss
+     * @param maximumSize maximum number of connectors to retain
+     * @param timeToLive time in seconds after which a connector is resolved
+     * from the session store again; <code>0</code> disables the cache
+     */
+    public CachingOmeroWebSessionStore(OmeroWebSessionStore sessionStore,
+            long maximumSize, long timeToLive) {
+        log.info("OMERO.web session cache size:{} time to live:{}s",
+                maximumSize, timeToLive);
+        this.sessionStore = sessionStore;
+        connectors = Caffeine.newBuilder()
+                .maximumSize(timeToLive > 0 ? maximumSize : 0)
+                .expireAfterWrite(Duration.ofSeconds(timeToLive))
+                .build();
+    }
+
+    /* (non-Javadoc)
+     * @see com.glencoesoftware.omero.ms.core.OmeroWebSessionStore#getConnector(java.lang.String)
+     */
+    @Override
+    public IConnector getConnector(String sessionKey) {
+        IConnector connector = connectors.getIfPresent(sessionKey);
+        if (connector == null) {
+            connector = sessionStore.getConnector(sessionKey);
+            if (connector != null) {
+                connectors.put(sessionKey, connector);
+            }
+        }
+        return connector;
+    }
+
+    /* (non-Javadoc)
+     * @see com.glencoesoftware.omero.ms.core.OmeroWebSessionStore#getConnectorAsync(java.lang.String)
+     */
+    @Override
+    public CompletionStage<IConnector> getConnectorAsync(String sessionKey) {
+        IConnector connector = connectors.getIfPresent(sessionKey);
+        if (connector != null) {
+            return CompletableFuture.completedFuture(connector);
+        }
+        return sessionStore.getConnectorAsync(sessionKey)
+                .thenApply(resolved -> {
+                    if (resolved != null) {
+                        connectors.put(sessionKey, resolved);
+                    }
+                    return resolved;
+                });
+    }
+
+    /**
+     * Discards the connector cached for an OMERO.web session, if present.
+     * @param sessionKey OMERO.web session key
+     */
+    public void invalidate(String sessionKey) {
+        if (sessionKey != null) {
+            connectors.invalidate(sessionKey);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.glencoesoftware.omero.ms.core.OmeroWebSessionStore#close()
+     */
+    @Override
+    public void close() throws IOException {
+        connectors.invalidateAll();
+        sessionStore.close();
+    }
+}
@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import com.glencoesoftware.omero.zarr.ZarrPixelsService;
+
+import ome.io.nio.PixelBuffer;
+import ome.model.core.Pixels;
+import ome.util.PixelData;
+
+/**
+ * Pixel buffer decorator which reads tiles, planes and stacks through a
+ * {@link ChunkCache}.  Requests are split along the chunk grid of the
+ * current resolution level, as given by {@link PixelBuffer#getTileSize()},
+ * and assembled from whole chunks so that adjacent tiles which land in the
+ * same chunk, or tiles whose size differs from the chunk size, share reads
+ * and decompression.  Other calls are passed on unchanged.
+ */
+public class CachingPixelBuffer implements InvocationHandler {
+
+    /** Pixel buffer calls are passed on to */
+    private final PixelBuffer delegate;
+
+    /** Chunk cache to read through */
+    private final ChunkCache chunkCache;
+
+    /** Identifies the array, for example its URI */
+    private final String array;
+
+    /** Pixels type of the array as per {@link PixelData} */
+    private final String pixelsType;
+
+    /** Reads chunks around each tile ahead of time or <code>null</code> */
+    private final ChunkReadAhead readAhead;
+
+    /** Opens a pixel buffer for reading ahead or concurrent reads */
+    private final Supplier<PixelBuffer> opener;
+
+    /** Reads the chunks of a tile concurrently or <code>null</code> */
+    private final ChunkFetchScheduler fetchScheduler;
+
+    private CachingPixelBuffer(PixelBuffer delegate, ChunkCache chunkCache,
+            String array, String pixelsType, ChunkReadAhead readAhead,
+            Supplier<PixelBuffer> opener,
+            ChunkFetchScheduler fetchScheduler) {
+        this.delegate = delegate;
+        this.chunkCache = chunkCache;
+        this.array = array;
+        this.pixelsType = pixelsType;
+        this.readAhead = readAhead;
+        this.opener = opener;
+        this.fetchScheduler = fetchScheduler;
+    }
+
+    /**
+     * Wraps a pixel buffer.
+     * @param delegate pixel buffer to wrap
+     * @param chunkCache chunk cache to read through or <code>null</code>
+     * @param array identifies the array the pixel buffer reads, for example
+     * its URI; must be unique across all pixel buffers sharing the cache
+     * @param pixelsType pixels type of the array, for example
+     * <code>uint16</code>
+     * @return See above or <code>delegate</code> if the cache is disabled.
+     */
+    public static PixelBuffer wrap(PixelBuffer delegate,
+            ChunkCache chunkCache, String array, String pixelsType) {
+        return wrap(delegate, chunkCache, array, pixelsType, null, null);
+    }
+
+    /**
+     * Wraps a pixel buffer, reading the chunks surrounding each tile ahead
+     * of time.
+     * @param delegate pixel buffer to wrap
+     * @param chunkCache chunk cache to read through or <code>null</code>
+     * @param array identifies the array the pixel buffer reads, for example
+     * its URI; must be unique across all pixel buffers sharing the cache
+     * @param pixelsType pixels type of the array, for example
+     * <code>uint16</code>
+     * @param readAhead reads chunks around each tile ahead of time or
+     * <code>null</code>
+     * @param opener opens a new pixel buffer for the same array to read
+     * ahead with, as <code>delegate</code> may be closed first
+     * @return See above or <code>delegate</code> if the cache is disabled.
+     */
+    public static PixelBuffer wrap(PixelBuffer delegate,
+            ChunkCache chunkCache, String array, String pixelsType,
+            ChunkReadAhead readAhead, Supplier<PixelBuffer> opener) {
+        return wrap(delegate, chunkCache, array, pixelsType, readAhead,
+                opener, null);
+    }
+
+    /**
+     * Wraps a pixel buffer, reading the chunks surrounding each tile ahead
+     * of time and the chunks a tile spans concurrently.
+     * @param delegate pixel buffer to wrap
+     * @param chunkCache chunk cache to read through or <code>null</code>
+     * @param array identifies the array the pixel buffer reads, for example
+     * its URI; must be unique across all pixel buffers sharing the cache
+     * @param pixelsType pixels type of the array, for example
+     * <code>uint16</code>
+     * @param readAhead reads chunks around each tile ahead of time or
+     * <code>null</code>
+     * @param opener opens a new pixel buffer for the same array to read
+     * ahead or concurrently with, as <code>delegate</code> may be closed
+     * first and cannot be read concurrently
+     * @param fetchScheduler reads the chunks a tile spans concurrently or
+     * <code>null</code>
+     * @return See above or <code>delegate</code> if the cache is disabled
+     * or <code>delegate</code> reads through memory mappings, which are
+     * already served from the page cache.
+     */
+    public static PixelBuffer wrap(PixelBuffer delegate,
+            ChunkCache chunkCache, String array, String pixelsType,
+            ChunkReadAhead readAhead, Supplier<PixelBuffer> opener,
+            ChunkFetchScheduler fetchScheduler) {
+        if (chunkCache == null || !chunkCache.isEnabled()
+                || MappedPixelBuffer.isMapped(delegate)) {
+            return delegate;
+        }
+        if (readAhead != null && !readAhead.isEnabled()) {
+            readAhead = null;
+        }
+        if (opener == null
+                || (fetchScheduler != null && !fetchScheduler.isEnabled())) {
+            fetchScheduler = null;
+        }
+        return (PixelBuffer) Proxy.newProxyInstance(
+                PixelBuffer.class.getClassLoader(),
+                new Class<?>[] { PixelBuffer.class },
+                new CachingPixelBuffer(delegate, chunkCache, array,
+                        pixelsType, readAhead, opener, fetchScheduler));
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable {
+        PixelData pixelData = null;
+        switch (method.getName()) {
+            case "getTile":
+                pixelData = getTile(
+                        (Integer) args[0], (Integer) args[1],
+                        (Integer) args[2], (Integer) args[3],
+                        (Integer) args[4], (Integer) args[5],
+                        (Integer) args[6]);
+                readAhead(pixelData, args);
+                break;
+            case "getTileDirect":
+                if (args.length == 8) {
+                    pixelData = getTile(
+                            (Integer) args[0], (Integer) args[1],
+                            (Integer) args[2], (Integer) args[3],
+                            (Integer) args[4], (Integer) args[5],
+                            (Integer) args[6]);
+                    readAhead(pixelData, args);
+                    byte[] buffer = (byte[]) args[7];
+                    if (pixelData != null
+                            && buffer.length >= pixelData.getData().limit()) {
+                        pixelData.getData().get(
+                                buffer, 0, pixelData.getData().limit());
+                        return buffer;
+                    }
+                    pixelData = null;
+                }
+                break;
+            case "getPlane":
+                if (args.length == 3) {
+                    pixelData = getTile(
+                            (Integer) args[0], (Integer) args[1],
+                            (Integer) args[2], 0, 0,
+                            delegate.getSizeX(), delegate.getSizeY());
+                }
+                break;
+            case "getStack":
+                if (args.length == 2) {
+                    pixelData = getStack((Integer) args[0], (Integer) args[1]);
+                }
+                break;
+        }
+        if (pixelData != null) {
+            return pixelData;
+        }
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Schedules reading ahead around a tile which has been read through the
+     * cache.
+     */
+    private void readAhead(PixelData pixelData, Object[] args) {
+        if (readAhead == null || pixelData == null) {
+            return;
+        }
+        readAhead.schedule(new ChunkReadAhead.Tile(array,
+                resolutionLevel(delegate), (Integer) args[0],
+                (Integer) args[1], (Integer) args[2], (Integer) args[3],
+                (Integer) args[4], (Integer) args[5], (Integer) args[6]),
+                opener);
+    }
+
+    /**
+     * Assembles a stack from its planes.
+     * @return See above or <code>null</code> if the stack cannot be read
+     * through the cache.
+     */
+    private PixelData getStack(int c, int t) throws IOException {
+        int sizeZ = delegate.getSizeZ();
+        PixelData[] planes = new PixelData[sizeZ];
+        long length = 0;
+        for (int z = 0; z < sizeZ; z++) {
+            planes[z] = getTile(z, c, t, 0, 0,
+                    delegate.getSizeX(), delegate.getSizeY());
+            if (planes[z] == null) {
+                return null;
+            }
+            length += planes[z].getData().limit();
+        }
+        if (length > Integer.MAX_VALUE - 8) {
+            return null;
+        }
+        byte[] stack = new byte[(int) length];
+        int offset = 0;
+        for (PixelData plane : planes) {
+            int planeLength = plane.getData().limit();
+            plane.getData().get(stack, offset, planeLength);
+            offset += planeLength;
+        }
+        return toPixelData(planes[0].getData().order(), stack);
+    }
+
+    /**
+     * Assembles a tile from the chunks it intersects.
+     * @return See above or <code>null</code> if the tile cannot be read
+     * through the cache, in which case the pixel buffer validates and
+     * reads it itself.
+     */
+    private PixelData getTile(int z, int c, int t, int x, int y, int w, int h)
+            throws IOException {
+        Dimension chunkSize = delegate.getTileSize();
+        int sizeX = delegate.getSizeX();
+        int sizeY = delegate.getSizeY();
+        if (chunkSize == null || chunkSize.width <= 0
+                || chunkSize.height <= 0 || x < 0 || y < 0 || w <= 0
+                || h <= 0 || x + w > sizeX || y + h > sizeY) {
+            return null;
+        }
+        int byteWidth = delegate.getByteWidth();
+        long length = (long) w * h * byteWidth;
+        if (length > Integer.MAX_VALUE - 8) {
+            return null;
+        }
+        int level = resolutionLevel(delegate);
+        byte[] tile = new byte[(int) length];
+        ByteOrder order = null;
+        int cw = chunkSize.width;
+        int ch = chunkSize.height;
+        Map<String, ChunkCache.Chunk> fetched =
+                fetchAll(level, z, c, t, x, y, w, h, chunkSize, sizeX, sizeY);
+        for (int chunkY = y / ch; chunkY <= (y + h - 1) / ch; chunkY++) {
+            for (int chunkX = x / cw; chunkX <= (x + w - 1) / cw; chunkX++) {
+                // Chunks at the edge of the array are truncated
+                int x0 = chunkX * cw;
+                int y0 = chunkY * ch;
+                int chunkWidth = Math.min(cw, sizeX - x0);
+                int chunkHeight = Math.min(ch, sizeY - y0);
+                String key = ChunkCache.key(array, level, sizeX, sizeY,
+                        chunkSize, z, c, t, chunkX, chunkY);
+                ChunkCache.Chunk chunk = fetched.get(key);
+                if (chunk == null) {
+                    chunk = chunkCache.get(key, chunkLoader(
+                            delegate, z, c, t, chunkX, chunkY,
+                            chunkSize, sizeX, sizeY));
+                }
+                if (chunk.size() != chunkWidth * chunkHeight * byteWidth) {
+                    return null;
+                }
+                order = chunk.order;
+                int fromX = Math.max(x, x0);
+                int toX = Math.min(x + w, x0 + chunkWidth);
+                int rowLength = (toX - fromX) * byteWidth;
+                for (int row = Math.max(y, y0);
+                        row < Math.min(y + h, y0 + chunkHeight); row++) {
+                    chunk.copy(
+                            ((row - y0) * chunkWidth + fromX - x0)
+                                    * byteWidth,
+                            tile,
+                            ((row - y) * w + fromX - x) * byteWidth,
+                            rowLength);
+                }
+            }
+        }
+        return toPixelData(order, tile);
+    }
+
+    /**
+     * Reads the chunks a tile spans which are not cached concurrently, each
+     * with its own pixel buffer.
+     * @return Chunks read keyed by chunk key; empty if concurrent reads are
+     * disabled or fewer than two chunks are absent from the cache.
+     */
+    private Map<String, ChunkCache.Chunk> fetchAll(int level, int z, int c,
+            int t, int x, int y, int w, int h, Dimension chunkSize,
+            int sizeX, int sizeY) throws IOException {
+        Map<String, ChunkCache.Chunk> fetched =
+                new HashMap<String, ChunkCache.Chunk>();
+        if (fetchScheduler == null) {
+            return fetched;
+        }
+        int cw = chunkSize.width;
+        int ch = chunkSize.height;
+        List<String> keys = new ArrayList<String>();
+        List<ChunkFetchScheduler.Fetch<ChunkCache.Chunk>> fetches =
+                new ArrayList<ChunkFetchScheduler.Fetch<ChunkCache.Chunk>>();
+        for (int chunkY = y / ch; chunkY <= (y + h - 1) / ch; chunkY++) {
+            for (int chunkX = x / cw; chunkX <= (x + w - 1) / cw; chunkX++) {
+                String key = ChunkCache.key(array, level, sizeX, sizeY,
+                        chunkSize, z, c, t, chunkX, chunkY);
+                if (chunkCache.contains(key)) {
+                    continue;
+                }
+                int fetchX = chunkX;
+                int fetchY = chunkY;
+                keys.add(key);
+                fetches.add(() -> {
+                    try (PixelBuffer pixelBuffer = opener.get()) {
+                        if (pixelBuffer.getResolutionLevels() > 1) {
+                            pixelBuffer.setResolutionLevel(level);
+                        }
+                        return chunkCache.get(key, chunkLoader(
+                                pixelBuffer, z, c, t, fetchX, fetchY,
+                                chunkSize, pixelBuffer.getSizeX(),
+                                pixelBuffer.getSizeY()));
+                    }
+                });
+            }
+        }
+        if (fetches.size() < 2) {
+            return fetched;
+        }
+        List<ChunkCache.Chunk> chunks = fetchScheduler.fetchAll(fetches);
+        for (int i = 0; i < keys.size(); i++) {
+            fetched.put(keys.get(i), chunks.get(i));
+        }
+        return fetched;
+    }
+
+    /**
+     * Reads a single chunk, truncated at the edge of the array, from a
+     * pixel buffer at its current resolution level.
+     * @param pixelBuffer pixel buffer to read from
+     * @param z Z index
+     * @param c channel index
+     * @param t timepoint index
+     * @param chunkX chunk column
+     * @param chunkY chunk row
+     * @param chunkSize chunk size of the current resolution level
+     * @param sizeX width of the current resolution level
+     * @param sizeY height of the current resolution level
+     * @return See above.
+     */
+    static ChunkCache.ChunkLoader chunkLoader(PixelBuffer pixelBuffer,
+            int z, int c, int t, int chunkX, int chunkY,
+            Dimension chunkSize, int sizeX, int sizeY) {
+        int x0 = chunkX * chunkSize.width;
+        int y0 = chunkY * chunkSize.height;
+        int chunkWidth = Math.min(chunkSize.width, sizeX - x0);
+        int chunkHeight = Math.min(chunkSize.height, sizeY - y0);
+        return () -> pixelBuffer.getTile(
+                z, c, t, x0, y0, chunkWidth, chunkHeight);
+    }
+
+    /**
+     * Identifies the array backing a set of pixels for use in chunk keys.
+     * NGFF images are identified by their URI so that chunks are shared by,
+     * and only by, readers of the same array; other images by their pixels
+     * identifier.
+     * @param pixelsService pixels service to look up the NGFF URI with
+     * @param pixels pixels metadata
+     * @return See above.
+     */
+    public static String array(
+            ZarrPixelsService pixelsService, Pixels pixels) {
+        String uri = null;
+        if (pixelsService != null && pixels.getImage() != null) {
+            try {
+                uri = pixelsService.getUri(pixels.getImage());
+            } catch (Exception e) {
+                // Not an NGFF image
+            }
+        }
+        return uri != null ? uri : "pixels:" + pixels.getId();
+    }
+
+    /**
+     * Current resolution level of a pixel buffer.
+     * @param pixelBuffer pixel buffer
+     * @return See above; <code>0</code> for pixel buffers which do not
+     * support resolution levels.
+     */
+    static int resolutionLevel(PixelBuffer pixelBuffer) {
+        try {
+            return pixelBuffer.getResolutionLevel();
+        } catch (UnsupportedOperationException e) {
+            // Single resolution pixel buffer
+            return 0;
+        }
+    }
+
+    private PixelData toPixelData(ByteOrder order, byte[] data) {
+        PixelData pixelData = new PixelData(pixelsType, ByteBuffer.wrap(data));
+        pixelData.setOrder(order);
+        return pixelData;
+    }
+}
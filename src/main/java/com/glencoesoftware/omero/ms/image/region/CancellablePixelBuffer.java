@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+
+import ome.io.nio.PixelBuffer;
+
+/**
+ * Pixel buffer decorator which checks whether the request it is being read
+ * for has been cancelled before every call, other than
+ * {@link PixelBuffer#close()}, is passed on.  The renderer reads each
+ * active channel separately so this provides cancellation checkpoints
+ * before pixel reads and between channels without changes to the renderer.
+ */
+public class CancellablePixelBuffer implements InvocationHandler {
+
+    /** Pixel buffer calls are passed on to */
+    private final PixelBuffer delegate;
+
+    /** Whether or not the request has been cancelled */
+    private final BooleanSupplier cancelled;
+
+    private CancellablePixelBuffer(
+            PixelBuffer delegate, BooleanSupplier cancelled) {
+        this.delegate = delegate;
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Wraps a pixel buffer.
+     * @param delegate pixel buffer to wrap
+     * @param cancelled whether or not the request the pixel buffer is being
+     * read for has been cancelled
+     * @return See above.
+     */
+    public static PixelBuffer wrap(
+            PixelBuffer delegate, BooleanSupplier cancelled) {
+        return (PixelBuffer) Proxy.newProxyInstance(
+                PixelBuffer.class.getClassLoader(),
+                new Class<?>[] { PixelBuffer.class },
+                new CancellablePixelBuffer(delegate, cancelled));
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable {
+        if (!method.getName().equals("close")
+                && method.getDeclaringClass() != Object.class
+                && cancelled.getAsBoolean()) {
+            throw new CancellationException("Request cancelled");
+        }
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import ome.util.PixelData;
+
+/**
+ * Process wide, byte bounded cache of decoded pixel data chunks keyed by
+ * array, resolution level and chunk coordinates.  Chunks are held in
+ * direct buffers, outside of the Java heap, so that a large cache does not
+ * lengthen garbage collection pauses; the memory of an evicted chunk is
+ * released once its buffer is collected.  Direct memory is limited by
+ * <code>-XX:MaxDirectMemorySize</code>, which defaults to the maximum heap
+ * size.  Chunks are read on the calling thread, outside of the cache's
+ * internal locks, with concurrent requests for the same chunk waiting on
+ * the first.
+ */
+public class ChunkCache {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(ChunkCache.class);
+
+    private static final Counter REQUESTS = Counter.build()
+            .name("omero_ms_chunk_cache_requests_total")
+            .help("Chunk cache lookups by result")
+            .labelNames("result")
+            .register();
+
+    private static final Gauge RESIDENT_BYTES = Gauge.build()
+            .name("omero_ms_chunk_cache_resident_bytes")
+            .help("Bytes of decoded chunks held by the chunk cache")
+            .register();
+
+    /**
+     * A decoded chunk.
+     */
+    public static class Chunk {
+
+        /** Byte order of the chunk */
+        public final ByteOrder order;
+
+        /** Read only, off heap pixel data of the chunk */
+        private final ByteBuffer data;
+
+        /**
+         * Copies pixel data off heap.
+         * @param pixelData pixel data of the chunk
+         */
+        public Chunk(PixelData pixelData) {
+            ByteBuffer source = pixelData.getData().duplicate();
+            source.position(0);
+            ByteBuffer data = ByteBuffer.allocateDirect(source.remaining());
+            data.put(source);
+            data.flip();
+            this.order = pixelData.getData().order();
+            this.data = data.asReadOnlyBuffer();
+        }
+
+        /**
+         * Copies chunk data off heap.
+         * @param source chunk data, from its position to its limit
+         * @param order byte order of the chunk
+         */
+        Chunk(ByteBuffer source, ByteOrder order) {
+            ByteBuffer data = ByteBuffer.allocateDirect(source.remaining());
+            data.put(source.duplicate());
+            data.flip();
+            this.order = order;
+            this.data = data.asReadOnlyBuffer();
+        }
+
+        /**
+         * Size of the chunk in bytes.
+         * @return See above.
+         */
+        public int size() {
+            return data.capacity();
+        }
+
+        /**
+         * Copies bytes out of the chunk.
+         * @param offset offset within the chunk to copy from
+         * @param destination array to copy to
+         * @param destinationOffset offset within the array to copy to
+         * @param length number of bytes to copy
+         */
+        public void copy(int offset, byte[] destination,
+                int destinationOffset, int length) {
+            ByteBuffer source = data.duplicate();
+            source.position(offset);
+            source.get(destination, destinationOffset, length);
+        }
+    }
+
+    /**
+     * Reads a chunk from its array.
+     */
+    @FunctionalInterface
+    public interface ChunkLoader {
+
+        /**
+         * Reads a chunk.
+         * @return Pixel data of the chunk.
+         * @throws IOException If there is an error reading the chunk.
+         */
+        PixelData load() throws IOException;
+    }
+
+    /** Decoded chunks keyed by array, resolution level and coordinates */
+    private final AsyncCache<String, Chunk> chunks;
+
+    /** Bytes held by the cache */
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    /** Whether or not the cache is enabled */
+    private final boolean enabled;
+
+    /** Disk tier consulted on a miss or <code>null</code> */
+    private final DiskChunkCache diskCache;
+
+    /**
+     * Default constructor.
+     * @param maximumBytes maximum number of bytes of decoded chunks to
+     * retain; <code>0</code> disables the cache
+     * @param timeToLive time in seconds after which a chunk is read again,
+     * in case the underlying array has been rewritten
+     */
+    public ChunkCache(long maximumBytes, long timeToLive) {
+        this(maximumBytes, timeToLive, null);
+    }
+
+    /**
+     * Constructor with a disk tier.
+     * @param maximumBytes maximum number of bytes of decoded chunks to
+     * retain; <code>0</code> disables the cache
+     * @param timeToLive time in seconds after which a chunk is read again,
+     * in case the underlying array has been rewritten
+     * @param diskCache disk tier consulted before reading a chunk from its
+     * array or <code>null</code>
+     */
+    public ChunkCache(
+            long maximumBytes, long timeToLive, DiskChunkCache diskCache) {
+        this.diskCache =
+                diskCache != null && diskCache.isEnabled() ? diskCache : null;
+        log.info("Chunk cache bytes:{} time to live:{}s",
+                maximumBytes, timeToLive);
+        enabled = maximumBytes > 0;
+        chunks = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((String key, Chunk chunk) -> chunk.size())
+                .expireAfterWrite(Duration.ofSeconds(timeToLive))
+                .removalListener((key, chunk, cause) -> {
+                    // Failed reads are removed without a value
+                    if (chunk != null) {
+                        RESIDENT_BYTES.set(
+                                residentBytes.addAndGet(-chunk.size()));
+                    }
+                })
+                .buildAsync();
+    }
+
+    /**
+     * Whether or not the cache is enabled.
+     * @return See above.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Builds a chunk key.  The size and chunk size of the resolution level
+     * are part of the key so that chunks of an array which has been
+     * rewritten with a different layout are never mistaken for one
+     * another.
+     * @param array identifies the array, for example its URI
+     * @param level resolution level
+     * @param sizeX width of the resolution level
+     * @param sizeY height of the resolution level
+     * @param chunkSize chunk size of the resolution level
+     * @param z Z index
+     * @param c channel index
+     * @param t timepoint index
+     * @param chunkX chunk column
+     * @param chunkY chunk row
+     * @return See above.
+     */
+    public static String key(String array, int level, int sizeX, int sizeY,
+            Dimension chunkSize, int z, int c, int t, int chunkX, int chunkY) {
+        return String.format("%s/%d/%dx%d/%dx%d/%d/%d/%d/%d/%d",
+                array, level, sizeX, sizeY, chunkSize.width,
+                chunkSize.height, z, c, t, chunkX, chunkY);
+    }
+
+    /**
+     * Retrieves a chunk, reading it if absent.  Concurrent requests for an
+     * absent chunk read it once.
+     * @param key chunk key as built by
+     * {@link #key}
+     * @param loader reads the chunk on a miss
+     * @return See above.
+     * @throws IOException If there is an error reading the chunk.
+     */
+    public Chunk get(String key, ChunkLoader loader) throws IOException {
+        if (!enabled) {
+            // Counted apart so that the hit ratio reflects the cache alone
+            REQUESTS.labels("bypass").inc();
+            return read(key, loader);
+        }
+        CompletableFuture<Chunk> future = chunks.getIfPresent(key);
+        if (future != null) {
+            REQUESTS.labels("hit").inc();
+            return join(future);
+        }
+        REQUESTS.labels("miss").inc();
+        return load(key, loader);
+    }
+
+    /**
+     * Whether or not a chunk is cached, without counting towards the
+     * cache's hit ratio.  Chunks which are still being read are not
+     * considered cached.
+     * @param key chunk key as built by
+     * {@link #key}
+     * @return See above.
+     */
+    public boolean contains(String key) {
+        if (!enabled) {
+            return false;
+        }
+        CompletableFuture<Chunk> future = chunks.getIfPresent(key);
+        return future != null && future.isDone()
+                && !future.isCompletedExceptionally();
+    }
+
+    /**
+     * Reads a chunk into the cache if absent, without counting towards the
+     * cache's hit ratio.  Used to read chunks ahead of their being
+     * requested.
+     * @param key chunk key as built by
+     * {@link #key}
+     * @param loader reads the chunk if absent
+     * @return Whether or not the chunk was read by this call; chunks
+     * present, or being read by another thread, are not read again.
+     * @throws IOException If there is an error reading the chunk.
+     */
+    public boolean prefetch(String key, ChunkLoader loader)
+            throws IOException {
+        if (!enabled || chunks.getIfPresent(key) != null) {
+            return false;
+        }
+        CompletableFuture<Chunk> future = new CompletableFuture<Chunk>();
+        if (chunks.asMap().putIfAbsent(key, future) != null) {
+            return false;
+        }
+        complete(key, loader, future);
+        return true;
+    }
+
+    /**
+     * Reads a chunk into the cache unless it is already present or being
+     * read, in which case that read is waited on.  The read is performed
+     * on the calling thread so that no cache locks are held during I/O.
+     * @return The chunk.
+     */
+    private Chunk load(String key, ChunkLoader loader) throws IOException {
+        CompletableFuture<Chunk> future = new CompletableFuture<Chunk>();
+        CompletableFuture<Chunk> existing =
+                chunks.asMap().putIfAbsent(key, future);
+        if (existing != null) {
+            return join(existing);
+        }
+        return complete(key, loader, future);
+    }
+
+    /**
+     * Reads a chunk and completes its published placeholder, which is
+     * completed exceptionally, and so removed from the cache, on error.
+     * @return The chunk.
+     */
+    private Chunk complete(String key, ChunkLoader loader,
+            CompletableFuture<Chunk> future) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = read(key, loader);
+        } catch (IOException | RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        RESIDENT_BYTES.set(residentBytes.addAndGet(chunk.size()));
+        future.complete(chunk);
+        return chunk;
+    }
+
+    /**
+     * Waits for a chunk being read by another thread.
+     * @return The chunk.
+     */
+    private Chunk join(CompletableFuture<Chunk> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw new IOException(cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Reads a chunk from the disk tier, if any and it accepts the chunk's
+     * array, or from its array, storing it in the disk tier.
+     * @return The chunk.
+     */
+    private Chunk read(String key, ChunkLoader loader) throws IOException {
+        if (diskCache == null || !diskCache.accepts(key)) {
+            return new Chunk(loader.load());
+        }
+        Chunk chunk = diskCache.get(key);
+        if (chunk == null) {
+            chunk = new Chunk(loader.load());
+            diskCache.put(key, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Number of bytes of decoded chunks held by the cache.
+     * @return See above.
+     */
+    public long residentBytes() {
+        return residentBytes.get();
+    }
+}
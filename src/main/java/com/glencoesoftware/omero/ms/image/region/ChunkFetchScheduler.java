@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+import brave.Tracing;
+import io.prometheus.client.Counter;
+
+/**
+ * Issues the chunk reads of a single request concurrently.  Regions, planes
+ * and stacks of object storage backed arrays span many chunks, each of
+ * which is a separate GET; read one after another a request pays the round
+ * trip latency of every chunk, read concurrently little more than that of
+ * one.  Concurrency is capped per request and, by the size of a shared
+ * pool of threads, across all requests.  Reads failing with an I/O error
+ * are retried with exponential backoff; missing chunks are not.
+ */
+public class ChunkFetchScheduler {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(ChunkFetchScheduler.class);
+
+    private static final Counter FETCHES = Counter.build()
+            .name("omero_ms_chunk_fetch_total")
+            .help("Scheduled chunk reads by outcome")
+            .labelNames("result")
+            .register();
+
+    /**
+     * Reads a chunk.
+     */
+    @FunctionalInterface
+    public interface Fetch<T> {
+
+        /**
+         * Reads a chunk.
+         * @return Result of the read.
+         * @throws IOException If there is an error reading the chunk.
+         */
+        T fetch() throws IOException;
+    }
+
+    /** Maximum number of concurrent reads per request */
+    private final int perRequest;
+
+    /** Maximum number of attempts of each read */
+    private final int maxAttempts;
+
+    /** Delay before the first retry in milliseconds; doubled thereafter */
+    private final long backoff;
+
+    /** Fetch threads or <code>null</code> if disabled */
+    private final ExecutorService executor;
+
+    /**
+     * Default constructor.
+     * @param threads maximum number of concurrent reads across all
+     * requests; <code>0</code> disables concurrent reads
+     * @param perRequest maximum number of concurrent reads per request
+     * @param maxAttempts maximum number of attempts of each read
+     * @param backoff delay before the first retry of a read in
+     * milliseconds, doubled for each further retry
+     */
+    public ChunkFetchScheduler(
+            int threads, int perRequest, int maxAttempts, long backoff) {
+        log.info("Chunk fetch threads:{} per request:{} attempts:{} " +
+                "backoff:{}ms", threads, perRequest, maxAttempts, backoff);
+        this.perRequest = Math.max(1, perRequest);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoff = backoff;
+        if (threads > 0 && perRequest > 1) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable,
+                        "chunk-fetch-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Whether or not reads are issued concurrently.
+     * @return See above.
+     */
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Performs reads, concurrently if enabled, and waits for all of them to
+     * complete.  If any read fails those outstanding are cancelled.
+     * @param fetches reads to perform
+     * @return Result of each read, in the same order as
+     * <code>fetches</code>.
+     * @throws IOException If a read fails after all of its attempts or the
+     * calling thread is interrupted while waiting.
+     */
+    public <T> List<T> fetchAll(List<? extends Fetch<T>> fetches)
+            throws IOException {
+        int count = fetches.size();
+        @SuppressWarnings("unchecked")
+        T[] results = (T[]) new Object[count];
+        if (executor == null || count <= 1) {
+            for (int i = 0; i < count; i++) {
+                results[i] = fetch(fetches.get(i));
+            }
+            return Arrays.asList(results);
+        }
+        CompletionService<Integer> completionService =
+                new ExecutorCompletionService<Integer>(executor);
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        Tracing tracing = Tracing.current();
+        try {
+            int next = 0;
+            int running = 0;
+            while (next < count || running > 0) {
+                while (next < count && running < perRequest) {
+                    int index = next++;
+                    Callable<Integer> task = () -> {
+                        results[index] = fetch(fetches.get(index));
+                        return index;
+                    };
+                    if (tracing != null) {
+                        task = tracing.currentTraceContext().wrap(task);
+                    }
+                    futures.add(completionService.submit(task));
+                    running++;
+                }
+                Future<Integer> future = completionService.take();
+                running--;
+                future.get();
+            }
+            return Arrays.asList(results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while waiting for chunk reads");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            for (Future<Integer> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Performs a read, retrying with exponential backoff.
+     */
+    private <T> T fetch(Fetch<T> fetch) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = fetch.fetch();
+                FETCHES.labels("ok").inc();
+                return result;
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                FETCHES.labels("failed").inc();
+                throw e;
+            } catch (IOException e) {
+                if (attempt >= maxAttempts
+                        || Thread.currentThread().isInterrupted()) {
+                    FETCHES.labels("failed").inc();
+                    throw e;
+                }
+                log.debug("Chunk read attempt {} failed; retrying",
+                        attempt, e);
+                FETCHES.labels("retried").inc();
+                try {
+                    Thread.sleep(backoff << (attempt - 1));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(
+                            "Interrupted while backing off");
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the fetch threads, interrupting reads in progress.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Counter;
+import ome.io.nio.PixelBuffer;
+
+/**
+ * Reads the chunks surrounding a tile into a {@link ChunkCache} ahead of
+ * their being requested.  Viewers pan and zoom predictably; once a tile has
+ * been read its neighbours at the same resolution level, and the area it
+ * covers at the next coarser resolution level, are likely to be requested
+ * next.  Reading ahead runs on a small pool of minimum priority threads
+ * with a bounded queue; when the queue is full further read ahead is
+ * dropped so that it backs off under load rather than competing with
+ * requests.
+ */
+public class ChunkReadAhead {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(ChunkReadAhead.class);
+
+    private static final Counter SCHEDULED = Counter.build()
+            .name("omero_ms_read_ahead_total")
+            .help("Tiles read ahead around by outcome")
+            .labelNames("result")
+            .register();
+
+    private static final Counter CHUNKS = Counter.build()
+            .name("omero_ms_read_ahead_chunks_total")
+            .help("Chunks read ahead into the chunk cache")
+            .register();
+
+    /**
+     * A tile which has been read.
+     */
+    public static class Tile {
+
+        /** Identifies the array the tile was read from */
+        final String array;
+
+        /** Resolution level the tile was read at */
+        final int level;
+
+        final int z, c, t, x, y, w, h;
+
+        /**
+         * Default constructor.
+         * @param array identifies the array the tile was read from
+         * @param level resolution level the tile was read at
+         * @param z Z index
+         * @param c channel index
+         * @param t timepoint index
+         * @param x X offset of the tile
+         * @param y Y offset of the tile
+         * @param w width of the tile
+         * @param h height of the tile
+         */
+        public Tile(String array, int level, int z, int c, int t,
+                int x, int y, int w, int h) {
+            this.array = array;
+            this.level = level;
+            this.z = z;
+            this.c = c;
+            this.t = t;
+            this.x = x;
+            this.y = y;
+            this.w = w;
+            this.h = h;
+        }
+    }
+
+    /** Cache to read chunks into */
+    private final ChunkCache chunkCache;
+
+    /** Number of rings of chunks to read around each tile */
+    private final int radius;
+
+    /** Whether or not to also read the next coarser resolution level */
+    private final boolean coarserLevel;
+
+    /** Read ahead threads or <code>null</code> if disabled */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Default constructor.
+     * @param chunkCache cache to read chunks into
+     * @param radius number of rings of chunks to read around each tile;
+     * <code>0</code> disables reading ahead
+     * @param coarserLevel whether or not to also read the area each tile
+     * covers at the next coarser resolution level
+     * @param threads number of read ahead threads
+     * @param queueSize number of tiles which may be waiting to be read
+     * around before further tiles are dropped
+     */
+    public ChunkReadAhead(ChunkCache chunkCache, int radius,
+            boolean coarserLevel, int threads, int queueSize) {
+        log.info("Read ahead radius:{} coarser level:{} threads:{} " +
+                "queue size:{}", radius, coarserLevel, threads, queueSize);
+        this.chunkCache = chunkCache;
+        this.radius = radius;
+        this.coarserLevel = coarserLevel;
+        if (radius > 0 && chunkCache.isEnabled()) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = new ThreadPoolExecutor(threads, threads,
+                    60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+                    runnable -> {
+                        Thread thread = new Thread(runnable,
+                                "read-ahead-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.MIN_PRIORITY);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Whether or not reading ahead is enabled.
+     * @return See above.
+     */
+    public boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Schedules reading the chunks surrounding a tile, unless too many
+     * tiles are already waiting.
+     * @param tile tile which has been read
+     * @param opener opens a pixel buffer for the tile's array
+     */
+    public void schedule(Tile tile, Supplier<PixelBuffer> opener) {
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try (PixelBuffer pixelBuffer = opener.get()) {
+                    readAhead(tile, pixelBuffer);
+                } catch (Exception e) {
+                    log.debug("Failed to read ahead around tile", e);
+                }
+            });
+            SCHEDULED.labels("scheduled").inc();
+        } catch (RejectedExecutionException e) {
+            SCHEDULED.labels("dropped").inc();
+        }
+    }
+
+    /**
+     * Reads the chunks surrounding a tile, nearest first, followed by the
+     * chunks covering the same area at the next coarser resolution level.
+     * @param tile tile which has been read
+     * @param pixelBuffer pixel buffer for the tile's array
+     * @return Number of chunks read.
+     * @throws IOException If there is an error reading a chunk.
+     */
+    int readAhead(Tile tile, PixelBuffer pixelBuffer) throws IOException {
+        int count = 0;
+        if (pixelBuffer.getResolutionLevels() > 1) {
+            pixelBuffer.setResolutionLevel(tile.level);
+        }
+        Dimension chunkSize = pixelBuffer.getTileSize();
+        if (chunkSize == null) {
+            return count;
+        }
+        int sizeX = pixelBuffer.getSizeX();
+        int sizeY = pixelBuffer.getSizeY();
+        int cw = chunkSize.width;
+        int ch = chunkSize.height;
+        int fromX = tile.x / cw;
+        int fromY = tile.y / ch;
+        int toX = (tile.x + tile.w - 1) / cw;
+        int toY = (tile.y + tile.h - 1) / ch;
+        int columns = (sizeX + cw - 1) / cw;
+        int rows = (sizeY + ch - 1) / ch;
+        for (int ring = 1; ring <= radius; ring++) {
+            for (int chunkY = fromY - ring; chunkY <= toY + ring; chunkY++) {
+                for (int chunkX = fromX - ring; chunkX <= toX + ring;
+                        chunkX++) {
+                    boolean onRing = chunkY == fromY - ring
+                            || chunkY == toY + ring
+                            || chunkX == fromX - ring
+                            || chunkX == toX + ring;
+                    if (!onRing || chunkX < 0 || chunkY < 0
+                            || chunkX >= columns || chunkY >= rows) {
+                        continue;
+                    }
+                    count += prefetch(tile, tile.level, pixelBuffer,
+                            chunkX, chunkY, chunkSize, sizeX, sizeY);
+                }
+            }
+        }
+        if (coarserLevel && tile.level > 0) {
+            // Resolution level 0 is the coarsest
+            int level = tile.level - 1;
+            pixelBuffer.setResolutionLevel(level);
+            Dimension coarseChunkSize = pixelBuffer.getTileSize();
+            if (coarseChunkSize == null) {
+                return count;
+            }
+            int coarseSizeX = pixelBuffer.getSizeX();
+            int coarseSizeY = pixelBuffer.getSizeY();
+            long x0 = (long) tile.x * coarseSizeX / sizeX;
+            long y0 = (long) tile.y * coarseSizeY / sizeY;
+            long x1 = ((long) tile.x + tile.w - 1) * coarseSizeX / sizeX;
+            long y1 = ((long) tile.y + tile.h - 1) * coarseSizeY / sizeY;
+            for (long chunkY = y0 / coarseChunkSize.height;
+                    chunkY <= y1 / coarseChunkSize.height; chunkY++) {
+                for (long chunkX = x0 / coarseChunkSize.width;
+                        chunkX <= x1 / coarseChunkSize.width; chunkX++) {
+                    count += prefetch(tile, level, pixelBuffer,
+                            (int) chunkX, (int) chunkY, coarseChunkSize,
+                            coarseSizeX, coarseSizeY);
+                }
+            }
+        }
+        return count;
+    }
+
+    private int prefetch(Tile tile, int level, PixelBuffer pixelBuffer,
+            int chunkX, int chunkY, Dimension chunkSize,
+            int sizeX, int sizeY) throws IOException {
+        boolean read = chunkCache.prefetch(
+                ChunkCache.key(tile.array, level, sizeX, sizeY, chunkSize,
+                        tile.z, tile.c, tile.t, chunkX, chunkY),
+                CachingPixelBuffer.chunkLoader(pixelBuffer,
+                        tile.z, tile.c, tile.t, chunkX, chunkY,
+                        chunkSize, sizeX, sizeY));
+        if (read) {
+            CHUNKS.inc();
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Discards waiting read ahead and stops the read ahead threads.
+     */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+
+/**
+ * Size bounded, persistent tier of the {@link ChunkCache} on local disk.
+ * Decoded chunks of remote arrays, those with an object storage or HTTP
+ * URI, are stored deflate compressed, one file per chunk named by a digest
+ * of the chunk key, so that they survive restarts and rolling deploys.
+ * Files are written asynchronously, to a temporary file which is then
+ * atomically moved into place, and the least recently used files are
+ * evicted once the cache is over its size.  Recency is tracked in memory
+ * and written to the modification time of each file at most once per
+ * {@link #TOUCH_INTERVAL} so that it approximately survives restarts.
+ * Each process indexes and bounds the directory independently; the
+ * directory must therefore not be shared between processes.
+ */
+public class DiskChunkCache {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(DiskChunkCache.class);
+
+    private static final Counter REQUESTS = Counter.build()
+            .name("omero_ms_disk_chunk_cache_requests_total")
+            .help("Disk chunk cache lookups by result")
+            .labelNames("result")
+            .register();
+
+    private static final Gauge RESIDENT_BYTES = Gauge.build()
+            .name("omero_ms_disk_chunk_cache_resident_bytes")
+            .help("Bytes of chunk files held by the disk chunk cache")
+            .register();
+
+    /** Identifies a chunk file and the version of its format */
+    private static final int MAGIC = 0x4f4d4331;
+
+    /** Suffix of chunk files */
+    private static final String SUFFIX = ".chunk";
+
+    /** Suffix of chunk files being written */
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    /**
+     * Minimum time in milliseconds between updates of the modification
+     * time of a chunk file on use
+     */
+    static final long TOUCH_INTERVAL = TimeUnit.MINUTES.toMillis(10);
+
+    /** URI schemes of remote arrays whose chunks are stored */
+    private static final String[] REMOTE_SCHEMES =
+            new String[] { "s3://", "gs://", "http://", "https://" };
+
+    /**
+     * A chunk file.
+     */
+    private static class Entry {
+
+        /** Size of the chunk file in bytes */
+        final long size;
+
+        /** Time in milliseconds the chunk file was last marked as used */
+        long touched;
+
+        Entry(long size, long touched) {
+            this.size = size;
+            this.touched = touched;
+        }
+    }
+
+    /** Directory chunk files are stored under or <code>null</code> */
+    private final Path directory;
+
+    /** Maximum bytes of chunk files */
+    private final long maximumBytes;
+
+    /** Time in milliseconds after which a chunk is read again */
+    private final long timeToLive;
+
+    /** Chunk files keyed by name, least recently used first */
+    private final LinkedHashMap<String, Entry> entries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+    /** Bytes of chunk files */
+    private long residentBytes;
+
+    /** Writes chunk files or <code>null</code> if disabled */
+    private final ThreadPoolExecutor writer;
+
+    /** Released once chunk files already present have been indexed */
+    private final CountDownLatch indexed = new CountDownLatch(1);
+
+    /**
+     * Default constructor.  Chunk files already present in the directory
+     * are indexed, and any left partially written removed, in the
+     * background; until then chunk files are looked up directly.
+     * @param directory directory to store chunk files under; empty
+     * disables the cache
+     * @param maximumBytes maximum bytes of chunk files; <code>0</code>
+     * disables the cache
+     * @param timeToLive time in seconds after which a chunk is read again,
+     * in case the underlying array has been rewritten
+     */
+    public DiskChunkCache(
+            String directory, long maximumBytes, long timeToLive) {
+        log.info("Disk chunk cache directory:{} bytes:{} time to live:{}s",
+                directory, maximumBytes, timeToLive);
+        this.maximumBytes = maximumBytes;
+        this.timeToLive = TimeUnit.SECONDS.toMillis(timeToLive);
+        Path root = null;
+        if (directory != null && !directory.isEmpty() && maximumBytes > 0) {
+            try {
+                root = Files.createDirectories(Paths.get(directory));
+            } catch (IOException e) {
+                log.error("Disk chunk cache disabled; cannot use {}",
+                        directory, e);
+                root = null;
+            }
+        }
+        this.directory = root;
+        if (root != null) {
+            writer = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(256),
+                    runnable -> {
+                        Thread thread = new Thread(
+                                runnable, "disk-chunk-cache-writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    new ThreadPoolExecutor.AbortPolicy());
+            writer.allowCoreThreadTimeOut(true);
+            // Chunk files written before indexing completes are merged
+            writer.execute(this::index);
+        } else {
+            writer = null;
+            indexed.countDown();
+        }
+    }
+
+    /**
+     * Whether or not the cache is enabled.
+     * @return See above.
+     */
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Whether or not chunks of an array are stored; only chunks of remote
+     * arrays, which are expensive to read again, are.
+     * @param key chunk key as built by {@link ChunkCache#key}
+     * @return See above.
+     */
+    public boolean accepts(String key) {
+        for (String scheme : REMOTE_SCHEMES) {
+            if (key.startsWith(scheme)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Retrieves a chunk.
+     * @param key chunk key as built by
+     * {@link ChunkCache#key}
+     * @return See above or <code>null</code> if absent, expired or
+     * unreadable.
+     */
+    public ChunkCache.Chunk get(String key) {
+        if (directory == null) {
+            return null;
+        }
+        String name = name(key);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(name);
+        }
+        Path file = path(name);
+        if (entry == null
+                && (indexed.getCount() == 0 || !Files.isRegularFile(file))) {
+            REQUESTS.labels("miss").inc();
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a chunk file");
+            }
+            long written = in.readLong();
+            ByteOrder order = in.readBoolean()
+                    ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            int length = in.readInt();
+            if (System.currentTimeMillis() - written > timeToLive) {
+                remove(name);
+                REQUESTS.labels("expired").inc();
+                return null;
+            }
+            if (length < 0) {
+                throw new IOException("Invalid chunk length " + length);
+            }
+            byte[] data = new byte[length];
+            try (InputStream inflater = new InflaterInputStream(in)) {
+                int offset = 0;
+                while (offset < data.length) {
+                    int n = inflater.read(
+                            data, offset, data.length - offset);
+                    if (n < 0) {
+                        throw new IOException("Truncated chunk file");
+                    }
+                    offset += n;
+                }
+            }
+            if (entry == null) {
+                // Not yet indexed
+                add(name, Files.size(file), System.currentTimeMillis());
+            } else {
+                touch(name, entry);
+            }
+            REQUESTS.labels("hit").inc();
+            return new ChunkCache.Chunk(ByteBuffer.wrap(data), order);
+        } catch (IOException e) {
+            log.debug("Failed to read chunk file {}", file, e);
+            remove(name);
+            REQUESTS.labels("miss").inc();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a chunk asynchronously; dropped if too many chunks are
+     * already waiting to be written.
+     * @param key chunk key as built by
+     * {@link ChunkCache#key}
+     * @param chunk chunk to store
+     */
+    public void put(String key, ChunkCache.Chunk chunk) {
+        if (writer == null) {
+            return;
+        }
+        byte[] data = new byte[chunk.size()];
+        chunk.copy(0, data, 0, data.length);
+        try {
+            writer.execute(() -> write(name(key), data, chunk.order));
+        } catch (RejectedExecutionException e) {
+            REQUESTS.labels("write_dropped").inc();
+        }
+    }
+
+    /**
+     * Writes a chunk file, atomically replacing any existing one.
+     */
+    void write(String name, byte[] data, ByteOrder order) {
+        Path file = path(name);
+        Path temporary = file.resolveSibling(
+                name + "." + UUID.randomUUID() + TEMPORARY_SUFFIX);
+        try {
+            Files.createDirectories(file.getParent());
+            try (OutputStream out = new BufferedOutputStream(
+                    Files.newOutputStream(temporary))) {
+                DataOutputStream header = new DataOutputStream(out);
+                header.writeInt(MAGIC);
+                header.writeLong(System.currentTimeMillis());
+                header.writeBoolean(order == ByteOrder.BIG_ENDIAN);
+                header.writeInt(data.length);
+                header.flush();
+                Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                try {
+                    DeflaterOutputStream body =
+                            new DeflaterOutputStream(out, deflater);
+                    body.write(data);
+                    body.finish();
+                } finally {
+                    deflater.end();
+                }
+            }
+            long size = Files.size(temporary);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            add(name, size, System.currentTimeMillis());
+        } catch (IOException e) {
+            log.warn("Failed to write chunk file {}", file, e);
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Removed at the next start
+            }
+        }
+    }
+
+    /**
+     * Number of chunk files.
+     * @return See above.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Bytes of chunk files.
+     * @return See above.
+     */
+    public long residentBytes() {
+        synchronized (entries) {
+            return residentBytes;
+        }
+    }
+
+    /**
+     * Waits for chunk files already present to have been indexed.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void awaitIndexed() throws InterruptedException {
+        indexed.await();
+    }
+
+    /**
+     * Stops writing chunk files, completing those already waiting.
+     */
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+        }
+    }
+
+    /**
+     * Indexes the chunk files already present, least recently used first,
+     * and removes partially written files.  Chunk files used or written
+     * while indexing are considered more recently used than all others.
+     */
+    private void index() {
+        try {
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(directory, 2)) {
+                files = walk.filter(Files::isRegularFile)
+                        .collect(Collectors.toList());
+            }
+            List<Object[]> chunks = new ArrayList<Object[]>();
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                try {
+                    if (fileName.endsWith(TEMPORARY_SUFFIX)) {
+                        Files.deleteIfExists(file);
+                    } else if (fileName.endsWith(SUFFIX)) {
+                        chunks.add(new Object[] {
+                                fileName.substring(0,
+                                        fileName.length() - SUFFIX.length()),
+                                Files.size(file),
+                                Files.getLastModifiedTime(file) });
+                    }
+                } catch (IOException e) {
+                    log.debug("Skipping {}", file, e);
+                }
+            }
+            chunks.sort(Comparator.comparing(chunk -> (FileTime) chunk[2]));
+            synchronized (entries) {
+                LinkedHashMap<String, Entry> used =
+                        new LinkedHashMap<String, Entry>(entries);
+                entries.clear();
+                residentBytes = 0;
+                for (Object[] chunk : chunks) {
+                    long size = (Long) chunk[1];
+                    entries.put((String) chunk[0], new Entry(
+                            size, ((FileTime) chunk[2]).toMillis()));
+                    residentBytes += size;
+                }
+                for (Map.Entry<String, Entry> entry : used.entrySet()) {
+                    Entry previous =
+                            entries.put(entry.getKey(), entry.getValue());
+                    residentBytes += entry.getValue().size
+                            - (previous == null ? 0 : previous.size);
+                }
+                evict();
+                log.info("Disk chunk cache indexed {} chunks, {} bytes",
+                        entries.size(), residentBytes);
+            }
+        } catch (IOException e) {
+            log.error("Failed to index disk chunk cache {}", directory, e);
+        } finally {
+            indexed.countDown();
+        }
+    }
+
+    /**
+     * Records a chunk file as the most recently used, evicting others if
+     * over size.
+     */
+    private void add(String name, long size, long touched) {
+        synchronized (entries) {
+            Entry previous = entries.put(name, new Entry(size, touched));
+            residentBytes += size - (previous == null ? 0 : previous.size);
+            evict();
+        }
+    }
+
+    /**
+     * Evicts the least recently used chunk files until under size.  Must
+     * be called with the entries lock held.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, Entry>> eldest =
+                entries.entrySet().iterator();
+        while (residentBytes > maximumBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> entry = eldest.next();
+            residentBytes -= entry.getValue().size;
+            eldest.remove();
+            try {
+                Files.deleteIfExists(path(entry.getKey()));
+            } catch (IOException e) {
+                log.warn("Failed to evict chunk file {}", entry.getKey(), e);
+            }
+        }
+        RESIDENT_BYTES.set(residentBytes);
+    }
+
+    private void remove(String name) {
+        synchronized (entries) {
+            Entry entry = entries.remove(name);
+            if (entry != null) {
+                residentBytes -= entry.size;
+                RESIDENT_BYTES.set(residentBytes);
+            }
+            try {
+                Files.deleteIfExists(path(name));
+            } catch (IOException e) {
+                log.debug("Failed to remove chunk file {}", name, e);
+            }
+        }
+    }
+
+    /**
+     * Records a use of a chunk file in its modification time, in the
+     * background and at most once per {@link #TOUCH_INTERVAL}, so that
+     * recency survives restarts without a file system write per use.
+     */
+    private void touch(String name, Entry entry) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            if (now - entry.touched < TOUCH_INTERVAL) {
+                return;
+            }
+            entry.touched = now;
+        }
+        try {
+            writer.execute(() -> {
+                try {
+                    Files.setLastModifiedTime(
+                            path(name), FileTime.fromMillis(now));
+                } catch (IOException e) {
+                    // Recency across restarts is best effort
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Recency across restarts is best effort
+        }
+    }
+
+    /**
+     * Chunk files are spread over 256 subdirectories.
+     */
+    private Path path(String name) {
+        return directory.resolve(name.substring(0, 2)).resolve(name + SUFFIX);
+    }
+
+    /**
+     * Name of the chunk file of a chunk key; the hex encoded SHA-256
+     * digest of the key.
+     */
+    static String name(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest) {
+                name.append(String.format("%02x", b));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
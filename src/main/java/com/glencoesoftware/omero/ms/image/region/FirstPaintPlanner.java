@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.LoggerFactory;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Plans the renders a viewer is about to request once it has loaded the
+ * image data of a pyramidal image: the smallest resolution level, which
+ * the birds-eye view is drawn from, followed by the tiles of the
+ * resolution level the image is first displayed at when fitted to the
+ * viewport.  Rendered ahead of time into the rendered tile cache, the
+ * first paint is then mostly served from memory.  Requests are planned
+ * with the default rendering settings of the image, encoded as
+ * OMERO.iviewer encodes them, so that they share the cache keys of the
+ * requests a viewer makes.
+ */
+public class FirstPaintPlanner {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(FirstPaintPlanner.class);
+
+    /** Maximum number of renders per image; <code>0</code> disables */
+    private final int maxTiles;
+
+    /** Width of the viewport the image is assumed to be fitted to */
+    private final int viewportWidth;
+
+    /** Height of the viewport the image is assumed to be fitted to */
+    private final int viewportHeight;
+
+    /**
+     * Default constructor.
+     * @param maxTiles maximum number of renders planned per image;
+     * <code>0</code> disables first paint pre-rendering
+     * @param viewportWidth width of the viewport the image is assumed to be
+     * fitted to
+     * @param viewportHeight height of the viewport the image is assumed to
+     * be fitted to
+     */
+    public FirstPaintPlanner(
+            int maxTiles, int viewportWidth, int viewportHeight) {
+        log.info("First paint max tiles:{} viewport:{}x{}",
+                maxTiles, viewportWidth, viewportHeight);
+        this.maxTiles = maxTiles;
+        this.viewportWidth = viewportWidth;
+        this.viewportHeight = viewportHeight;
+    }
+
+    /**
+     * Whether or not first paint pre-rendering is enabled.
+     * @return See above.
+     */
+    public boolean isEnabled() {
+        return maxTiles > 0 && viewportWidth > 0 && viewportHeight > 0;
+    }
+
+    /**
+     * Plans the first paint of an image.
+     * @param imgData image data as returned by the
+     * {@link ImageRegionVerticle#GET_IMAGE_DATA_EVENT} event
+     * @param omeroSessionKey OMERO session key to render as
+     * @return JSON encoded {@link ImageRegionCtx} of each prefetch render,
+     * most important first; empty if disabled, the image is not tiled or
+     * its image data is incomplete.
+     */
+    public List<JsonObject> plan(JsonObject imgData, String omeroSessionKey) {
+        List<JsonObject> plan = new ArrayList<JsonObject>();
+        JsonObject size = imgData.getJsonObject("size");
+        JsonObject tileSize = imgData.getJsonObject("tile_size");
+        JsonObject scaling = imgData.getJsonObject("zoomLevelScaling");
+        JsonArray channels = imgData.getJsonArray("channels");
+        JsonObject rdefs = imgData.getJsonObject("rdefs");
+        if (!isEnabled() || !imgData.getBoolean("tiles", false)
+                || size == null || tileSize == null || scaling == null
+                || channels == null || channels.isEmpty() || rdefs == null) {
+            return plan;
+        }
+        double[] scales = new double[scaling.size()];
+        for (int i = 0; i < scales.length; i++) {
+            scales[i] = scaling.getDouble(Integer.toString(i));
+        }
+        int tileWidth = tileSize.getInteger("width");
+        int tileHeight = tileSize.getInteger("height");
+        MultiMap params = MultiMap.caseInsensitiveMultiMap()
+                .add("imageId", String.valueOf(imgData.getLong("id")))
+                .add("theZ", String.valueOf(rdefs.getInteger("defaultZ")))
+                .add("theT", String.valueOf(rdefs.getInteger("defaultT")))
+                .add("c", channelsParam(channels))
+                .add("m", "greyscale".equals(rdefs.getString("model"))
+                        ? "g" : "c")
+                .add("p", "normal")
+                .add("ia", "0")
+                .add("maps", mapsParam(channels))
+                .add("q", "0.9");
+        for (int[] tile : tiles(scales, size.getInteger("width"),
+                size.getInteger("height"), tileWidth, tileHeight,
+                viewportWidth, viewportHeight, maxTiles)) {
+            params.set("tile", String.format("%d,%d,%d,%d,%d",
+                    tile[0], tile[1], tile[2], tileWidth, tileHeight));
+            ImageRegionCtx imageRegionCtx;
+            try {
+                imageRegionCtx = new ImageRegionCtx(params, omeroSessionKey);
+            } catch (IllegalArgumentException e) {
+                log.debug("Cannot plan first paint of Image:{}",
+                        imgData.getLong("id"), e);
+                return new ArrayList<JsonObject>();
+            }
+            imageRegionCtx.prefetch = true;
+            imageRegionCtx.requestId = UUID.randomUUID().toString();
+            plan.add(JsonObject.mapFrom(imageRegionCtx));
+        }
+        return plan;
+    }
+
+    /**
+     * Selects the tiles of a first paint.  The smallest resolution level is
+     * planned first, followed by the coarsest resolution level at or above
+     * the resolution the image is displayed at once fitted to the viewport,
+     * nearest the centre of the image first.
+     * @param scales scale of each resolution level relative to the full
+     * resolution level, indexed by resolution as requested by the
+     * <code>tile</code> parameter; <code>0</code> is the full resolution
+     * level
+     * @param sizeX width of the full resolution level
+     * @param sizeY height of the full resolution level
+     * @param tileWidth tile width
+     * @param tileHeight tile height
+     * @param viewportWidth viewport width
+     * @param viewportHeight viewport height
+     * @param maxTiles maximum number of tiles
+     * @return Tiles as <code>[resolution, x, y]</code> where <code>x</code>
+     * and <code>y</code> are tile indexes.
+     */
+    static List<int[]> tiles(double[] scales, int sizeX, int sizeY,
+            int tileWidth, int tileHeight, int viewportWidth,
+            int viewportHeight, int maxTiles) {
+        List<int[]> tiles = new ArrayList<int[]>();
+        if (scales.length == 0 || tileWidth <= 0 || tileHeight <= 0) {
+            return tiles;
+        }
+        double fit = Math.min(
+                (double) viewportWidth / sizeX,
+                (double) viewportHeight / sizeY);
+        int resolution = 0;
+        for (int i = 0; i < scales.length; i++) {
+            if (scales[i] >= fit) {
+                resolution = i;
+            }
+        }
+        int smallest = scales.length - 1;
+        if (resolution != smallest) {
+            addTiles(tiles, smallest, scales[smallest], sizeX, sizeY,
+                    tileWidth, tileHeight);
+        }
+        addTiles(tiles, resolution, scales[resolution], sizeX, sizeY,
+                tileWidth, tileHeight);
+        if (tiles.size() > maxTiles) {
+            return new ArrayList<int[]>(tiles.subList(0, maxTiles));
+        }
+        return tiles;
+    }
+
+    /**
+     * Adds the tiles of a resolution level, nearest the centre first.
+     */
+    private static void addTiles(List<int[]> tiles, int resolution,
+            double scale, int sizeX, int sizeY,
+            int tileWidth, int tileHeight) {
+        int width = Math.max(1, (int) Math.round(sizeX * scale));
+        int height = Math.max(1, (int) Math.round(sizeY * scale));
+        int columns = (width + tileWidth - 1) / tileWidth;
+        int rows = (height + tileHeight - 1) / tileHeight;
+        List<int[]> level = new ArrayList<int[]>();
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
+                level.add(new int[] { resolution, x, y });
+            }
+        }
+        double centreX = width / 2.0;
+        double centreY = height / 2.0;
+        Collections.sort(level, Comparator.comparingDouble(tile -> {
+            double dx = (tile[1] + 0.5) * tileWidth - centreX;
+            double dy = (tile[2] + 0.5) * tileHeight - centreY;
+            return dx * dx + dy * dy;
+        }));
+        tiles.addAll(level);
+    }
+
+    /**
+     * Encodes the active state, window and color of each channel as the
+     * <code>c</code> parameter.
+     */
+    private static String channelsParam(JsonArray channels) {
+        List<String> c = new ArrayList<String>();
+        for (int i = 0; i < channels.size(); i++) {
+            JsonObject channel = channels.getJsonObject(i);
+            JsonObject window = channel.getJsonObject("window");
+            c.add(String.format("%s%d|%s:%s$%s",
+                    channel.getBoolean("active") ? "" : "-", i + 1,
+                    window.getValue("start"), window.getValue("end"),
+                    channel.getString("color")));
+        }
+        return String.join(",", c);
+    }
+
+    /**
+     * Encodes the reverse intensity state of each channel as the
+     * <code>maps</code> parameter.
+     */
+    private static String mapsParam(JsonArray channels) {
+        JsonArray maps = new JsonArray();
+        for (int i = 0; i < channels.size(); i++) {
+            maps.add(new JsonObject().put("reverse", new JsonObject().put(
+                    "enabled", channels.getJsonObject(i)
+                            .getBoolean("reverseIntensity", false))));
+        }
+        return maps.encode();
+    }
+}
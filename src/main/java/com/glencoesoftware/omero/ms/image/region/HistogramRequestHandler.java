@@ -24,6 +24,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 import org.slf4j.LoggerFactory;
 
@@ -63,6 +64,21 @@ public class HistogramRequestHandler {
     /** OMERO server pixels service. */
     private ZarrPixelsService pixelsService;
 
+    /** Cached pyramid structure or <code>null</code> if not cached */
+    private PyramidDescriptorService pyramidDescriptorService;
+
+    /** Pool of open pixel buffers or <code>null</code> */
+    private PixelBufferPool pixelBufferPool;
+
+    /** Cache of decoded chunks or <code>null</code> */
+    private ChunkCache chunkCache;
+
+    /** Memory mappings of local pixel files or <code>null</code> */
+    private MappedFileService mappedFiles;
+
+    /** Reads the chunks a plane spans concurrently or <code>null</code> */
+    private ChunkFetchScheduler chunkFetchScheduler;
+
     /**
      * Constructor. Populates histogramCtx and pixelsService
      * @param histogramCtx
@@ -70,8 +86,54 @@ public class HistogramRequestHandler {
      */
     public HistogramRequestHandler(HistogramCtx histogramCtx,
             ZarrPixelsService pixelsService) {
+        this(histogramCtx, pixelsService, null);
+    }
+
+    /**
+     * Constructor. Populates histogramCtx, pixelsService and
+     * pyramidDescriptorService
+     * @param histogramCtx
+     * @param pixelsService
+     * @param pyramidDescriptorService cached pyramid structure used for
+     * resolution level selection or <code>null</code> to always consult the
+     * pixel buffer
+     */
+    public HistogramRequestHandler(HistogramCtx histogramCtx,
+            ZarrPixelsService pixelsService,
+            PyramidDescriptorService pyramidDescriptorService) {
         this.histogramCtx = histogramCtx;
         this.pixelsService = pixelsService;
+        this.pyramidDescriptorService = pyramidDescriptorService;
+    }
+
+    /**
+     * Find the resolution level closest to the maximum plane size without
+     * exceeding it.
+     * @param pyramidDescriptor pyramid structure of the image
+     * @param maxPlaneWidth maximum plane width
+     * @param maxPlaneHeight maximum plane height
+     * @return Resolution level as passed to
+     * {@link PixelBuffer#setResolutionLevel(int)}.
+     * @throws IllegalArgumentException If all resolution levels are larger
+     * than the maximum plane size.
+     */
+    protected static int selectResolutionLevel(
+            PyramidDescriptor pyramidDescriptor,
+            int maxPlaneWidth, int maxPlaneHeight) {
+        int resolutionLevel = -1;
+        for (int i = 0; i < pyramidDescriptor.getResolutionLevels(); i++) {
+            List<Integer> size = pyramidDescriptor.getSize(i);
+            if (size.get(0) > maxPlaneWidth || size.get(1) > maxPlaneHeight) {
+                break;
+            }
+            resolutionLevel = i;
+        }
+        if (resolutionLevel < 0) {
+            //No resolution levels exist smaller than max plane size
+            throw new IllegalArgumentException("All resolution levels larger "
+                    + "than max plane size");
+        }
+        return resolutionLevel;
     }
 
     /**
@@ -112,6 +174,43 @@ public class HistogramRequestHandler {
         return new double[] { min, max };
     }
 
+    /**
+     * Sets the pool pixel buffers are borrowed from.
+     * @param pixelBufferPool pool of open pixel buffers or <code>null</code>
+     * to open a pixel buffer for every request
+     */
+    public void setPixelBufferPool(PixelBufferPool pixelBufferPool) {
+        this.pixelBufferPool = pixelBufferPool;
+    }
+
+    /**
+     * Sets the cache decoded chunks are read through.
+     * @param chunkCache cache of decoded chunks or <code>null</code> to
+     * read chunks from the pixel buffer for every request
+     */
+    public void setChunkCache(ChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+    }
+
+    /**
+     * Sets the memory mappings ROMIO pixel files are read through.
+     * @param mappedFiles memory mappings of local pixel files or
+     * <code>null</code> to read pixel files with stream based I/O
+     */
+    public void setMappedFiles(MappedFileService mappedFiles) {
+        this.mappedFiles = mappedFiles;
+    }
+
+    /**
+     * Sets the scheduler the chunks a plane spans are read concurrently by.
+     * @param chunkFetchScheduler reads the chunks a plane spans concurrently
+     * or <code>null</code> to read them one after another
+     */
+    public void setChunkFetchScheduler(
+            ChunkFetchScheduler chunkFetchScheduler) {
+        this.chunkFetchScheduler = chunkFetchScheduler;
+    }
+
     /**
      * Read through the pixel data and produce histogram data reflecting
      * the occurrance of pixel values within each bin
@@ -183,27 +282,18 @@ public class HistogramRequestHandler {
             try(PixelBuffer pb = getPixelBuffer(pixels)) {
                 //Find resolution level closest to max plane size without
                 //exceeding it
-                int resolutionLevel = -1;
-                for (int i = 0; i < pb.getResolutionLevels(); i++) {
-                    //If there's only 1 resolution level, we may have a
-                    //RomioPixelBuffer, which doesn't support setResolutionLevel,
-                    //so just check the size of the buffer
-                    //and use it if it's small enough
-                    if (pb.getResolutionLevels() > 1) {
-                        pb.setResolutionLevel(i);
-                    }
-                    if (pb.getSizeX() > histogramCtx.maxPlaneWidth ||
-                            pb.getSizeY() > histogramCtx.maxPlaneHeight) {
-                        break;
-                    }
-                    resolutionLevel = i;
-                }
-                if (resolutionLevel < 0) {
-                    //No resolution levels exist smaller than max plane size
-                    throw new IllegalArgumentException("All resolution levels larger "
-                            + "than max plane size");
-                }
-                if (pb.getResolutionLevels() > 1) {
+                PyramidDescriptor pyramidDescriptor =
+                        pyramidDescriptorService == null
+                        ? new PyramidDescriptor(pb)
+                        : pyramidDescriptorService.get(pixels.getId(),
+                                () -> new PyramidDescriptor(pb));
+                int resolutionLevel = selectResolutionLevel(
+                        pyramidDescriptor,
+                        histogramCtx.maxPlaneWidth,
+                        histogramCtx.maxPlaneHeight);
+                //If there's only 1 resolution level, we may have a
+                //RomioPixelBuffer, which doesn't support setResolutionLevel
+                if (pyramidDescriptor.getResolutionLevels() > 1) {
                     pb.setResolutionLevel(resolutionLevel);
                 }
                 PixelData pd = pb.getPlane(histogramCtx.z, histogramCtx.c,
@@ -295,7 +385,17 @@ public class HistogramRequestHandler {
         ScopedSpan span = tracer.startScopedSpan("get_pixel_buffer");
         try {
             span.tag("omero.pixels_id", Long.toString(pixels.getId()));
-            return pixelsService.getPixelBuffer(pixels, false);
+            String pixelsType = pixels.getPixelsType().getValue();
+            Supplier<PixelBuffer> loader = () -> MappedPixelBuffer.wrap(
+                    pixelsService.getPixelBuffer(pixels, false),
+                    mappedFiles, pixelsType);
+            Supplier<PixelBuffer> opener = () -> pixelBufferPool == null
+                    ? loader.get()
+                    : pixelBufferPool.borrow(pixels.getId(), loader);
+            return CachingPixelBuffer.wrap(
+                    opener.get(), chunkCache,
+                    CachingPixelBuffer.array(pixelsService, pixels),
+                    pixelsType, null, opener, chunkFetchScheduler);
         } catch (Exception e) {
             span.error(e);
             throw e;
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.time.Duration;
+
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * In memory cache of assembled image data (<code>imgData</code>) JSON keyed
+ * by its entity tag.  The entity tag is derived from the image, user and
+ * the update events of the image and its rendering settings (see
+ * {@link ImageDataRequestHandler#getImageDataVersion(omero.client)}) so an
+ * entry never has to be invalidated explicitly; any modification produces a
+ * new key.  Shared between all image region verticle instances.
+ */
+public class ImageDataCache {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(ImageDataCache.class);
+
+    /** Image data keyed by entity tag */
+    private final Cache<String, JsonObject> imageData;
+
+    /**
+     * Default constructor.
+     * @param maximumSize maximum number of image data documents to retain
+     * @param timeToLive time in seconds after which image data is
+     * reassembled, picking up changes such as container links which do not
+     * affect the entity tag.
+     */
+    public ImageDataCache(long maximumSize, long timeToLive) {
+        log.info("Image data cache size:{} time to live:{}s",
+                maximumSize, timeToLive);
+        imageData = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(timeToLive))
+                .build();
+    }
+
+    /**
+     * Retrieves cached image data.
+     * @param etag entity tag of the image data
+     * @return A copy of the cached image data or <code>null</code> if
+     * absent.
+     */
+    public JsonObject get(String etag) {
+        JsonObject cached = imageData.getIfPresent(etag);
+        return cached == null? null : cached.copy();
+    }
+
+    /**
+     * Caches image data.
+     * @param etag entity tag of the image data
+     * @param value image data to cache; a copy is retained
+     */
+    public void put(String etag, JsonObject value) {
+        imageData.put(etag, value.copy());
+    }
+}
@@ -20,6 +20,7 @@ package com.glencoesoftware.omero.ms.image.region;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.slf4j.LoggerFactory;
 
@@ -32,12 +33,21 @@ public class ImageDataCtx extends OmeroRequestCtx {
     private static final org.slf4j.Logger log =
             LoggerFactory.getLogger(ImageDataCtx.class);
 
+    /** Default maximum number of image IDs in a batch request */
+    public static final int DEFAULT_MAX_IMAGE_IDS = 100;
+
     /** Image ID to get image data for */
     public Long imageId;
 
+    /** Image IDs to get image data for in a batch request */
+    public List<Long> imageIds;
+
     /** Keys to use as a result filter */
     public List<String> keys;
 
+    /** Entity tags from the <code>If-None-Match</code> request header */
+    public String ifNoneMatch;
+
     /**
      * Constructor for jackson to decode the object from string
      */
@@ -50,11 +60,76 @@ public class ImageDataCtx extends OmeroRequestCtx {
      * @param omeroSessionKey OMERO session key.
      */
     ImageDataCtx(MultiMap params, String omeroSessionKey) {
+        this(params, null, omeroSessionKey);
+    }
+
+    /**
+     * Constructor for conditional requests.
+     * @param params {@link io.vertx.core.http.HttpServerRequest} parameters
+     * required for rendering an image region.
+     * @param ifNoneMatch value of the <code>If-None-Match</code> request
+     * header or <code>null</code> if absent.
+     * @param omeroSessionKey OMERO session key.
+     */
+    ImageDataCtx(
+            MultiMap params, String ifNoneMatch, String omeroSessionKey) {
+        this(params, ifNoneMatch, omeroSessionKey, DEFAULT_MAX_IMAGE_IDS);
+    }
+
+    /**
+     * Constructor for conditional and batch requests.
+     * @param params {@link io.vertx.core.http.HttpServerRequest} parameters
+     * required for rendering an image region.
+     * @param ifNoneMatch value of the <code>If-None-Match</code> request
+     * header or <code>null</code> if absent.
+     * @param omeroSessionKey OMERO session key.
+     * @param maxImageIds maximum number of distinct image IDs in a batch
+     * request
+     */
+    ImageDataCtx(MultiMap params, String ifNoneMatch,
+            String omeroSessionKey, int maxImageIds) {
         this.omeroSessionKey = omeroSessionKey;
+        this.ifNoneMatch = ifNoneMatch;
 
-        imageId = Long.parseLong(params.get("imageId"));
+        if (params.contains("imageId")) {
+            imageId = Long.parseLong(params.get("imageId"));
+        } else {
+            imageIds = params.getAll("id").stream()
+                    .map(Long::parseLong)
+                    .distinct()
+                    .collect(Collectors.toList());
+            if (imageIds.isEmpty()) {
+                throw new IllegalArgumentException(
+                        "Missing parameter 'imageId' or 'id'");
+            }
+            if (imageIds.size() > maxImageIds) {
+                throw new IllegalArgumentException(String.format(
+                        "Too many 'id' parameters: %d > %d",
+                        imageIds.size(), maxImageIds));
+            }
+        }
         if (params.contains("key")) {
             keys = Arrays.asList(params.get("key").split("\\."));
         }
     }
+
+    /**
+     * Whether or not the <code>If-None-Match</code> request header matches
+     * an entity tag.
+     * @param etag strong entity tag of the current image data
+     * @return See above.
+     */
+    public boolean notModified(String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || candidate.equals(etag)
+                    || candidate.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -20,6 +20,11 @@ package com.glencoesoftware.omero.ms.image.region;
 
 import com.glencoesoftware.omero.zarr.ZarrPixelsService;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -27,16 +32,18 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 import org.slf4j.LoggerFactory;
 
 import brave.ScopedSpan;
 import brave.Tracer;
 import brave.Tracing;
+import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import ome.io.nio.PixelBuffer;
-import ome.logic.PixelsImpl;
 import ome.model.units.BigResult;
 import omero.model.Channel;
 import omero.model.ChannelBinding;
@@ -57,11 +64,13 @@ import omero.model.Event;
 import omero.model.Experimenter;
 import omero.model.IObject;
 import omero.ApiUsageException;
+import omero.RType;
 import omero.ServerError;
 import omero.api.IQueryPrx;
 import omero.api.ServiceFactoryPrx;
 import omero.model.WellSampleI;
 import omero.model.enums.UnitsLength;
+import omero.sys.EventContext;
 import omero.sys.ParametersI;
 import omero.util.IceMapper;
 import omeis.providers.re.metadata.StatsFactory;
@@ -74,9 +83,41 @@ public class ImageDataRequestHandler {
     private static final org.slf4j.Logger log = LoggerFactory
             .getLogger(ImageDataRequestHandler.class);
 
+    /** Image graph required to populate image data, without restriction */
+    private static final String IMAGE_DATA_GRAPH =
+            "from Image as i"
+            + " left outer join fetch i.details.externalInfo "
+            + " join fetch i.pixels as p"
+            + " left outer join fetch i.format"
+            + " left outer JOIN FETCH i.datasetLinks as links "
+            + " left outer join fetch links.parent as dataset "
+            + " left outer join fetch dataset.projectLinks as plinks "
+            + " left outer join fetch plinks.parent as project "
+            + " left outer join fetch i.objectiveSettings as os "
+            + " left outer join fetch os.objective as objective "
+            + " join fetch i.details.owner as owner "
+            + " join fetch i.details.creationEvent "
+            + " left outer join fetch i.wellSamples as ws"
+            + " left outer join fetch ws.well"
+            + " join fetch p.pixelsType "
+            + " join fetch p.channels as c "
+            + " join fetch c.logicalChannel as lc "
+            + " left outer join fetch c.statsInfo "
+            + " left outer join fetch lc.photometricInterpretation "
+            + " left outer join fetch lc.illumination "
+            + " left outer join fetch lc.mode "
+            + " left outer join fetch lc.contrastMethod ";
+
     /** Image Data Context **/
     private ImageDataCtx imageDataCtx;
 
+    /**
+     * Event context of the session, retrieved once per request by whichever
+     * of {@link #getImageDataVersion(omero.client)} and
+     * {@link #getImageData(omero.client)} needs it first
+     */
+    private Future<EventContext> eventContext;
+
     /** OMERO server pixels service. */
     private ZarrPixelsService pixelsService;
 
@@ -86,6 +127,18 @@ public class ImageDataRequestHandler {
     /** Interpolation server setting **/
     private boolean interpolate;
 
+    /** Cached pyramid structure or <code>null</code> if not cached **/
+    private PyramidDescriptorService pyramidDescriptorService;
+
+    /** Pool of open pixel buffers or <code>null</code> */
+    private PixelBufferPool pixelBufferPool;
+
+    /**
+     * Pool the images of a batch are populated on or <code>null</code> to
+     * populate them one after another on the calling thread
+     */
+    private RenderExecutor renderExecutor;
+
     /**
      * Constructor
      * @param imageDataCtx Image Data Context
@@ -96,10 +149,45 @@ public class ImageDataRequestHandler {
     public ImageDataRequestHandler(ImageDataCtx imageDataCtx,
             ZarrPixelsService pixelsService,
             int initZoom, boolean interpolate) {
+        this(imageDataCtx, pixelsService, initZoom, interpolate, null);
+    }
+
+    /**
+     * Constructor
+     * @param imageDataCtx Image Data Context
+     * @param pixelsService OMERO server pixels service.
+     * @param initZoom Initial Zoom level from server settings
+     * @param interpolate Interpolation server setting
+     * @param pyramidDescriptorService Cached pyramid structure or
+     * <code>null</code> to always open a pixel buffer
+     */
+    public ImageDataRequestHandler(ImageDataCtx imageDataCtx,
+            ZarrPixelsService pixelsService,
+            int initZoom, boolean interpolate,
+            PyramidDescriptorService pyramidDescriptorService) {
         this.imageDataCtx = imageDataCtx;
         this.pixelsService = pixelsService;
         this.initZoom = initZoom;
         this.interpolate = interpolate;
+        this.pyramidDescriptorService = pyramidDescriptorService;
+    }
+
+    /**
+     * Sets the pool pixel buffers are borrowed from.
+     * @param pixelBufferPool pool of open pixel buffers or <code>null</code>
+     * to open a pixel buffer for every request
+     */
+    public void setPixelBufferPool(PixelBufferPool pixelBufferPool) {
+        this.pixelBufferPool = pixelBufferPool;
+    }
+
+    /**
+     * Sets the pool the images of a batch are populated on.
+     * @param renderExecutor platform thread pool or <code>null</code> to
+     * populate images one after another on the calling thread
+     */
+    public void setRenderExecutor(RenderExecutor renderExecutor) {
+        this.renderExecutor = renderExecutor;
     }
 
     /**
@@ -111,31 +199,301 @@ public class ImageDataRequestHandler {
         ServiceFactoryPrx sf = client.getSession();
         try {
             Long imageId = imageDataCtx.imageId;
+            // Independent of the image graph so retrieved concurrently
+            Future<EventContext> eventContext = getEventContext(sf);
             IQueryPrx iQuery = sf.getQueryService();
+            Future<List<IObject>> pendingRdefs =
+                    AsyncMetadataService.findRenderingDefs(
+                            iQuery, eventContext, Arrays.asList(imageId));
             Image image = queryImageData(iQuery, imageId);
             if (image == null) {
                 return null;
             }
             Pixels pixels = image.getPrimaryPixels();
-            List<Long> imageIds = new ArrayList<Long>();
-            imageIds.add(imageId);
-            long userId = sf.getAdminService().getEventContext().userId;
-            try (PixelBuffer pixelBuffer = getPixelBuffer(pixels)) {
-                List<Long> pixIds = new ArrayList<Long>();
-                pixIds.add(pixels.getId().getValue());
-                List<IObject> rdefs = retrieveRenderingDefs(client, userId,
-                        pixIds);
-
-                Map<String, String> pixCtx = new HashMap<String, String>();
-                pixCtx.put("omero.group", "-1");
-                return populateImageData(image, pixelBuffer, rdefs, userId);
+            long userId = AsyncMetadataService.await(eventContext).userId;
+            PyramidDescriptor pyramidDescriptor =
+                    getPyramidDescriptor(pixels);
+            List<IObject> rdefs = awaitRenderingDefs(pendingRdefs);
+            return populateImageData(image, pyramidDescriptor, rdefs, userId);
+        } catch (Exception e) {
+            log.error("Error getting image data", e);
+        }
+        return null;
+    }
+
+    /**
+     * Get the image data of several images at once.  The image graphs and
+     * rendering settings of all images are each retrieved with a single
+     * query and the per-image JSON populated concurrently on the render
+     * pool, if set.
+     * @param client Omero client object
+     * @return Map of image identifier to JsonObject with the image
+     * data/metadata.  Images which do not exist or the user does not have
+     * permissions to access are omitted.
+     */
+    public Map<Long, JsonObject> getImageDataBatch(omero.client client) {
+        ServiceFactoryPrx sf = client.getSession();
+        ScopedSpan span = Tracing.currentTracer()
+                .startScopedSpan("get_image_data_batch");
+        try {
+            // Independent of the image graphs so retrieved concurrently
+            Future<EventContext> eventContext = getEventContext(sf);
+            IQueryPrx iQuery = sf.getQueryService();
+            Future<List<IObject>> pendingRdefs =
+                    AsyncMetadataService.findRenderingDefs(
+                            iQuery, eventContext, imageDataCtx.imageIds);
+            List<Image> images =
+                    queryImageData(iQuery, imageDataCtx.imageIds);
+            if (images.isEmpty()) {
+                return new HashMap<Long, JsonObject>();
             }
+            long userId = AsyncMetadataService.await(eventContext).userId;
+            List<IObject> rdefs = awaitRenderingDefs(pendingRdefs);
+            return populateImageData(images, rdefs, userId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            span.error(e);
+            log.error("Interrupted getting image data", e);
         } catch (Exception e) {
+            span.error(e);
             log.error("Error getting image data", e);
+        } finally {
+            span.finish();
+        }
+        return null;
+    }
+
+    /**
+     * Populates the image data of several images.  Only opening pixel
+     * buffers for uncached pyramid descriptors blocks, so images are
+     * populated concurrently on the render pool, if set.
+     * @param images images with their graphs loaded
+     * @param rdefs rendering settings of all of the images
+     * @param userId current user ID
+     * @return Map of image identifier to JsonObject with the image
+     * data/metadata.  Images whose image data cannot be populated, for
+     * example because their pixels cannot be read, are omitted.
+     * @throws Exception If the calling thread is interrupted while waiting.
+     */
+    Map<Long, JsonObject> populateImageData(List<Image> images,
+            List<IObject> rdefs, long userId) throws Exception {
+        List<Callable<JsonObject>> tasks =
+                new ArrayList<Callable<JsonObject>>();
+        for (Image image : images) {
+            tasks.add(() -> {
+                long imageId = image.getId().getValue();
+                try {
+                    PyramidDescriptor pyramidDescriptor =
+                            getPyramidDescriptor(image.getPrimaryPixels());
+                    return populateImageData(
+                            image, pyramidDescriptor, rdefs, userId);
+                } catch (Exception e) {
+                    log.error("Error getting image data for Image:{}",
+                            imageId, e);
+                    return null;
+                }
+            });
+        }
+        List<JsonObject> populated;
+        if (renderExecutor == null) {
+            populated = new ArrayList<JsonObject>();
+            for (Callable<JsonObject> task : tasks) {
+                populated.add(task.call());
+            }
+        } else {
+            populated = renderExecutor.executeAll(tasks);
+        }
+        Map<Long, JsonObject> imgData = new HashMap<Long, JsonObject>();
+        for (int i = 0; i < images.size(); i++) {
+            if (populated.get(i) != null) {
+                imgData.put(images.get(i).getId().getValue(),
+                        populated.get(i));
+            }
+        }
+        return imgData;
+    }
+
+    /**
+     * Assembles the response to a batch request; a JSON object mapping each
+     * requested image identifier, in request order, to its image data.
+     * Images which do not exist, the user does not have permissions to
+     * access or whose image data could not be populated are omitted.
+     * @param imageIds requested image identifiers
+     * @param imgData image data keyed by image identifier
+     * @return See above.
+     */
+    public static JsonObject toJson(
+            List<Long> imageIds, Map<Long, JsonObject> imgData) {
+        JsonObject imgDataJson = new JsonObject();
+        for (Long imageId : imageIds) {
+            if (imgData.containsKey(imageId)) {
+                imgDataJson.put(imageId.toString(), imgData.get(imageId));
+            }
+        }
+        return imgDataJson;
+    }
+
+    /**
+     * Retrieves the event context of the session, at most once per request.
+     * @param sf session to retrieve the event context of
+     * @return See above.
+     */
+    private Future<EventContext> getEventContext(ServiceFactoryPrx sf) {
+        if (eventContext == null) {
+            eventContext = AsyncMetadataService.getEventContext(sf);
+        }
+        return eventContext;
+    }
+
+    /**
+     * Retrieves a strong entity tag for the image data of the requested
+     * image as seen by the current user.  Only the update events of the
+     * entities {@link #getImageData(omero.client)} reads are queried; the
+     * image, its pixels and channels, its dataset, project and well links
+     * and their parents, its owner and group, the current user's
+     * permissions on it and the rendering settings that would be selected.
+     * The queries are independent and issued concurrently, so validating a
+     * cached response is far cheaper than assembling it.
+     * @param client Omero client object
+     * @return See above or <code>null</code> if the image does not exist or
+     * the user does not have permissions to access it.
+     */
+    public String getImageDataVersion(omero.client client) {
+        ServiceFactoryPrx sf = client.getSession();
+        ScopedSpan span = Tracing.currentTracer()
+                .startScopedSpan("get_image_data_version");
+        try {
+            Long imageId = imageDataCtx.imageId;
+            span.tag("omero.image_id", imageId.toString());
+            Map<String, String> ctx = new HashMap<String, String>();
+            ctx.put("omero.group", "-1");
+            Future<EventContext> eventContext = getEventContext(sf);
+            IQueryPrx iQuery = sf.getQueryService();
+            ParametersI params = new ParametersI();
+            params.addId(imageId);
+            Future<List<List<RType>>> images =
+                    AsyncMetadataService.projection(iQuery,
+                    "select i.details.updateEvent.id, p.id, "
+                    + "p.details.updateEvent.id, "
+                    + "i.details.owner.id, i.details.group.id, "
+                    + "max(c.details.updateEvent.id), "
+                    + "max(lc.details.updateEvent.id) "
+                    + "from Image as i join i.pixels as p "
+                    + "join p.channels as c join c.logicalChannel as lc "
+                    + "where i.id = :id "
+                    + "group by i.details.updateEvent.id, p.id, "
+                    + "p.details.updateEvent.id, i.details.owner.id, "
+                    + "i.details.group.id", params, ctx);
+            // Links are aggregated separately from channels to avoid a
+            // Cartesian product; counts catch unlinking
+            Future<List<List<RType>>> containers =
+                    AsyncMetadataService.projection(iQuery,
+                    "select count(distinct dl.id), "
+                    + "max(dl.details.updateEvent.id), "
+                    + "max(d.details.updateEvent.id), "
+                    + "count(distinct pl.id), "
+                    + "max(pl.details.updateEvent.id), "
+                    + "max(pr.details.updateEvent.id) "
+                    + "from Image as i "
+                    + "left outer join i.datasetLinks as dl "
+                    + "left outer join dl.parent as d "
+                    + "left outer join d.projectLinks as pl "
+                    + "left outer join pl.parent as pr "
+                    + "where i.id = :id", params, ctx);
+            Future<List<List<RType>>> wells =
+                    AsyncMetadataService.projection(iQuery,
+                    "select count(ws.id), max(ws.details.updateEvent.id), "
+                    + "max(w.details.updateEvent.id) "
+                    + "from WellSample as ws join ws.well as w "
+                    + "where ws.image.id = :id", params, ctx);
+            // The current user's permissions on the image, including those
+            // inherited from its group, are only available on the object
+            Future<List<IObject>> permissions =
+                    AsyncMetadataService.findAllByQuery(iQuery,
+                    "select i from Image as i where i.id = :id", params, ctx);
+
+            List<List<RType>> imageRows = AsyncMetadataService.await(images);
+            if (imageRows.isEmpty()) {
+                return null;
+            }
+            List<RType> image = imageRows.get(0);
+            long pixelsId = (Long) unwrap(image.get(1));
+            EventContext context = AsyncMetadataService.await(eventContext);
+            long userId = context.userId;
+            long groupId = (Long) unwrap(image.get(4));
+
+            params = new ParametersI();
+            params.addId(pixelsId);
+            params.add("userId", rlong(userId));
+            List<List<RType>> rdefs = iQuery.projection(
+                    "select count(distinct rdef.id), "
+                    + "max(rdef.details.updateEvent.id), "
+                    + "max(cb.details.updateEvent.id) "
+                    + "from RenderingDef as rdef "
+                    + "left outer join rdef.waveRendering as cb "
+                    + "where rdef.pixels.id = :id and ("
+                    + "  rdef.details.owner.id = rdef.pixels.details.owner.id"
+                    + "    or rdef.details.owner.id = :userId)",
+                    params, ctx);
+            List<Object> version = new ArrayList<Object>();
+            version.add(imageId);
+            version.add(userId);
+            version.add(context.isAdmin);
+            version.add(context.leaderOfGroups.contains(groupId));
+            version.add(initZoom);
+            version.add(interpolate);
+            for (List<List<RType>> rows : Arrays.asList(
+                    imageRows, AsyncMetadataService.await(containers),
+                    AsyncMetadataService.await(wells), rdefs)) {
+                if (!rows.isEmpty()) {
+                    for (RType v : rows.get(0)) {
+                        version.add(unwrap(v));
+                    }
+                }
+            }
+            List<IObject> objects = AsyncMetadataService.await(permissions);
+            if (objects.isEmpty()) {
+                return null;
+            }
+            Permissions perms = objects.get(0).getDetails().getPermissions();
+            version.add(perms.getPerm1());
+            version.add(perms.canAnnotate());
+            version.add(perms.canEdit());
+            version.add(perms.canLink());
+            version.add(perms.canDelete());
+            return etag(version);
+        } catch (Exception e) {
+            span.error(e);
+            log.error("Error getting image data version", e);
+        } finally {
+            span.finish();
         }
         return null;
     }
 
+    /**
+     * Builds a strong entity tag from the components of a version.
+     * @param version version components; order is significant
+     * @return Quoted hex encoded SHA-256 digest of <code>version</code>.
+     */
+    protected static String etag(List<?> version) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(version.stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(":"))
+                    .getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder("\"");
+            for (byte b : hash) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 is required of every Java platform implementation
+            throw new IllegalStateException(e);
+        }
+    }
+
     /**
      * Takes populated Omero model objects and populates the data into
      * a JsonObject
@@ -149,6 +507,23 @@ public class ImageDataRequestHandler {
     public JsonObject populateImageData(
             Image image, PixelBuffer pixelBuffer, List<IObject> rdefs,
             long userId) throws ApiUsageException {
+        return populateImageData(
+                image, new PyramidDescriptor(pixelBuffer), rdefs, userId);
+    }
+
+    /**
+     * Takes populated Omero model objects and populates the data into
+     * a JsonObject
+     * @param image
+     * @param pyramidDescriptor
+     * @param rdefs
+     * @param userId
+     * @return
+     * @throws ApiUsageException
+     */
+    public JsonObject populateImageData(
+            Image image, PyramidDescriptor pyramidDescriptor,
+            List<IObject> rdefs, long userId) throws ApiUsageException {
         Permissions permissions = image.getDetails().getPermissions();
         Pixels pixels = image.getPrimaryPixels();
         RenderingDef rdef = selectRenderingDef(
@@ -167,10 +542,11 @@ public class ImageDataRequestHandler {
         JsonObject perms = getImageDataPerms(permissions);
         imgData.put("perms", perms);
 
-        int resLvlCount = pixelBuffer.getResolutionLevels();
+        int resLvlCount = pyramidDescriptor.getResolutionLevels();
         if (resLvlCount > 1) {
             imgData.put("tiles", true);
-            imgData.put("tile_size", getImageDataTileSize(pixelBuffer));
+            imgData.put("tile_size",
+                    getImageDataTileSize(pyramidDescriptor));
             imgData.put("levels", resLvlCount);
         } else {
             imgData.put("tiles", false);
@@ -186,7 +562,7 @@ public class ImageDataRequestHandler {
 
         if (resLvlCount > 1) {
             imgData.put("zoomLevelScaling",
-                    getImageDataZoomLevelScaling(pixelBuffer));
+                    getImageDataZoomLevelScaling(pyramidDescriptor));
         }
 
         try {
@@ -324,13 +700,14 @@ public class ImageDataRequestHandler {
 
     /**
      * Populates the tile_size image data
-     * @param pixelBuffer
+     * @param pyramidDescriptor
      * @return the tile size JsonObject
      */
-    private JsonObject getImageDataTileSize(PixelBuffer pixelBuffer) {
+    private JsonObject getImageDataTileSize(
+            PyramidDescriptor pyramidDescriptor) {
         JsonObject tileSize = new JsonObject();
-        tileSize.put("width", pixelBuffer.getTileSize().width);
-        tileSize.put("height", pixelBuffer.getTileSize().height);
+        tileSize.put("width", pyramidDescriptor.getTileSize().width);
+        tileSize.put("height", pyramidDescriptor.getTileSize().height);
         return tileSize;
     }
 
@@ -392,12 +769,14 @@ public class ImageDataRequestHandler {
 
     /**
      * Populate zoom level scaling image data
-     * @param pixelBuffer
+     * @param pyramidDescriptor
      * @return the zoom level scaling image data
      */
-    private JsonObject getImageDataZoomLevelScaling(PixelBuffer pixelBuffer) {
+    private JsonObject getImageDataZoomLevelScaling(
+            PyramidDescriptor pyramidDescriptor) {
         JsonObject zoomLvlScaling = new JsonObject();
-        List<List<Integer>> resDescs = pixelBuffer.getResolutionDescriptions();
+        List<List<Integer>> resDescs =
+                pyramidDescriptor.getResolutionDescriptions();
         int maxXSize = resDescs.get(0).get(0);
         for (int i = 0; i < resDescs.size(); i++) {
             List<Integer> desc = resDescs.get(i);
@@ -626,28 +1005,7 @@ public class ImageDataRequestHandler {
             ParametersI params = new ParametersI();
             params.addId(imageId);
             Image image = (Image) iQuery
-                    .findByQuery("select i from Image as i"
-                            + " left outer join fetch i.details.externalInfo "
-                            + " join fetch i.pixels as p"
-                            + " left outer join fetch i.format"
-                            + " left outer JOIN FETCH i.datasetLinks as links "
-                            + " left outer join fetch links.parent as dataset "
-                            + " left outer join fetch dataset.projectLinks as plinks "
-                            + " left outer join fetch plinks.parent as project "
-                            + " left outer join fetch i.objectiveSettings as os "
-                            + " left outer join fetch os.objective as objective "
-                            + " join fetch i.details.owner as owner "
-                            + " join fetch i.details.creationEvent "
-                            + " left outer join fetch i.wellSamples as ws"
-                            + " left outer join fetch ws.well"
-                            + " join fetch p.pixelsType "
-                            + " join fetch p.channels as c "
-                            + " join fetch c.logicalChannel as lc "
-                            + " left outer join fetch c.statsInfo "
-                            + " left outer join fetch lc.photometricInterpretation "
-                            + " left outer join fetch lc.illumination "
-                            + " left outer join fetch lc.mode "
-                            + " left outer join fetch lc.contrastMethod "
+                    .findByQuery("select i " + IMAGE_DATA_GRAPH
                             + " where i.id=:id", params, ctx);
             return image;
         } finally {
@@ -655,6 +1013,74 @@ public class ImageDataRequestHandler {
         }
     }
 
+    /**
+     * Query the server to get all possible relevant data about several
+     * images at once
+     * @param iQuery
+     * @param imageIds
+     * @return ImageI objects containing most image data for each of the
+     * images which exist and the user has permissions to access.
+     * @throws ApiUsageException
+     * @throws ServerError
+     */
+    protected List<Image> queryImageData(IQueryPrx iQuery, List<Long> imageIds)
+            throws ApiUsageException, ServerError {
+        ScopedSpan span = Tracing.currentTracer()
+                .startScopedSpan("query_image_data_batch");
+        try {
+            Map<String, String> ctx = new HashMap<String, String>();
+            ctx.put("omero.group", "-1");
+            span.tag("omero.image_ids", imageIds.toString());
+            ParametersI params = new ParametersI();
+            params.addIds(imageIds);
+            // Fetching collections repeats the root entity once per row
+            return iQuery.findAllByQuery("select distinct i "
+                    + IMAGE_DATA_GRAPH + " where i.id in (:ids)", params, ctx)
+                    .stream()
+                    .map(Image.class::cast)
+                    .collect(Collectors.toList());
+        } finally {
+            span.finish();
+        }
+    }
+
+    /**
+     * Returns the pyramid structure for a given set of pixels, only opening
+     * a pixel buffer if it is not already cached.
+     *
+     * @param pixels pixels metadata
+     * @return See above.
+     * @throws ApiUsageException
+     * @throws IOException
+     */
+    private PyramidDescriptor getPyramidDescriptor(Pixels pixels)
+            throws ApiUsageException, IOException {
+        if (pyramidDescriptorService == null) {
+            try (PixelBuffer pixelBuffer = getPixelBuffer(pixels)) {
+                return new PyramidDescriptor(pixelBuffer);
+            }
+        }
+        try {
+            return pyramidDescriptorService.get(
+                    pixels.getId().getValue(), () -> {
+                try (PixelBuffer pixelBuffer = getPixelBuffer(pixels)) {
+                    return new PyramidDescriptor(pixelBuffer);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (ApiUsageException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof ApiUsageException) {
+                throw (ApiUsageException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
     /**
      * Returns a pixel buffer for a given set of pixels.
      *
@@ -670,8 +1096,13 @@ public class ImageDataRequestHandler {
         try {
             span.tag("omero.pixels_id",
                     Long.toString(pixels.getId().getValue()));
-            return pixelsService.getPixelBuffer((ome.model.core.Pixels)
-                     new IceMapper().reverse(pixels), false);
+            ome.model.core.Pixels pixelsI = (ome.model.core.Pixels)
+                     new IceMapper().reverse(pixels);
+            if (pixelBufferPool == null) {
+                return pixelsService.getPixelBuffer(pixelsI, false);
+            }
+            return pixelBufferPool.borrow(pixelsI.getId(),
+                    () -> pixelsService.getPixelBuffer(pixelsI, false));
         } catch (ApiUsageException e) {
             span.error(e);
             throw e;
@@ -681,37 +1112,18 @@ public class ImageDataRequestHandler {
     }
 
     /**
-     * Retrieves rendering settings either from the user or image owner
-     * corresponding to any of the specified pixels sets.
-     *
-     * @param client    OMERO client to use for querying.
-     * @param userId    The current user ID.
-     * @param pixelsIds The pixels set identifiers.
-     * @return See above.
+     * Waits for rendering settings retrieved by
+     * {@link AsyncMetadataService#findRenderingDefs(IQueryPrx, Future, List)}.
+     * @param rdefs asynchronous rendering settings retrieval
+     * @return See above or <code>null</code> if they could not be
+     * retrieved.
      */
-    protected List<IObject> retrieveRenderingDefs(omero.client client,
-            final long userId, final List<Long> pixelsIds) throws ServerError {
-        Map<String, String> ctx = new HashMap<String, String>();
-        ctx.put("omero.group", "-1");
-        ScopedSpan span = Tracing.currentTracer()
-                .startScopedSpan("retrieve_rendering_defs");
-        // Ask for rendering settings for the current user or the image owner
-        String q = PixelsImpl.RENDERING_DEF_QUERY_PREFIX
-                + "rdef.pixels.id in (:ids) " + "and ("
-                + "  rdef.details.owner.id = rdef.pixels.details.owner.id"
-                + "    or rdef.details.owner.id = :userId" + ")";
+    private List<IObject> awaitRenderingDefs(Future<List<IObject>> rdefs) {
         try {
-            ServiceFactoryPrx sf = client.getSession();
-            IQueryPrx iQuery = sf.getQueryService();
-            ParametersI params = new ParametersI();
-            params.addIds(pixelsIds);
-            params.add("userId", rlong(userId));
-            return iQuery.findAllByQuery(q, params, ctx);
-        } catch (Exception e) {
-            span.error(e);
+            return AsyncMetadataService.await(rdefs);
+        } catch (ServerError | RuntimeException e) {
+            log.error("Error retrieving rendering settings", e);
             return null;
-        } finally {
-            span.finish();
         }
     }
 
@@ -110,6 +110,38 @@ public class ImageRegionCtx extends OmeroRequestCtx {
     /** Whether or not to flip vertically */
     public boolean flipVertical;
 
+    /**
+     * Maximum width of the rendered image in pixels; the resolution level
+     * is then selected automatically
+     */
+    public Integer width;
+
+    /**
+     * Maximum height of the rendered image in pixels; the resolution level
+     * is then selected automatically
+     */
+    public Integer height;
+
+    /**
+     * Scale of the rendered image relative to the full resolution level;
+     * the resolution level is then selected automatically
+     */
+    public Double zoom;
+
+    /**
+     * Identifier the request can be cancelled by or <code>null</code> if it
+     * cannot be cancelled
+     * @see ImageRegionVerticle#CANCELLED_REQUESTS_MAP
+     */
+    public String requestId;
+
+    /**
+     * Whether or not the request is a prefetch, rendered ahead of its being
+     * requested into the rendered tile cache
+     * @see PrefetchPlanner
+     */
+    public boolean prefetch;
+
     /**
      * Constructor for jackson to decode the object from string
      */
@@ -142,6 +174,8 @@ public class ImageRegionCtx extends OmeroRequestCtx {
         getCompressionQualityFromString(params.get("q"));
         getInvertedAxisFromString(params.get("ia"));
         getProjectionFromString(params.get("p"));
+        getOutputSizeFromString(
+                params.get("width"), params.get("height"), params.get("zoom"));
         String mapsString = params.get("maps");
         String flip = Optional.ofNullable(params.get("flip"))
                 .orElse("").toLowerCase();
@@ -230,6 +264,78 @@ public class ImageRegionCtx extends OmeroRequestCtx {
         }
     }
 
+    /**
+     * Parses strings to the requested output size.  Either or both of
+     * width and height, or a zoom factor, may be requested but only when
+     * the resolution level is not requested explicitly with a tile.
+     * @param widthString maximum width of the rendered image: "1000"
+     * @param heightString maximum height of the rendered image: "1000"
+     * @param zoomString scale of the rendered image relative to the full
+     * resolution level, greater than 0 and at most 1: "0.25"
+     */
+    private void getOutputSizeFromString(
+            String widthString, String heightString, String zoomString) {
+        try {
+            width = widthString == null? null : Integer.parseInt(widthString);
+            height = heightString == null?
+                    null : Integer.parseInt(heightString);
+            zoom = zoomString == null? null : Double.parseDouble(zoomString);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(
+                    "Improper number formatting in output size");
+        }
+        if (!hasOutputSize()) {
+            return;
+        }
+        if (tile != null) {
+            throw new IllegalArgumentException(
+                    "Output size cannot be combined with 'tile'");
+        }
+        if (zoom != null && (width != null || height != null)) {
+            throw new IllegalArgumentException(
+                    "Provide either 'zoom' or 'width' and 'height'");
+        }
+        if ((width != null && width < 1) || (height != null && height < 1)) {
+            throw new IllegalArgumentException(
+                    "Output width and height must be positive");
+        }
+        if (zoom != null && !(zoom > 0 && zoom <= 1)) {
+            throw new IllegalArgumentException(
+                    "Zoom must be greater than 0 and at most 1");
+        }
+    }
+
+    /**
+     * Whether or not an output size has been requested.
+     * @return See above.
+     */
+    public boolean hasOutputSize() {
+        return width != null || height != null || zoom != null;
+    }
+
+    /**
+     * Scale of the rendered image relative to the full resolution level
+     * that satisfies the requested output size.  Width and height are
+     * maximums; the aspect ratio of the region is preserved and images are
+     * never scaled up.
+     * @param regionWidth width of the region at full resolution
+     * @param regionHeight height of the region at full resolution
+     * @return See above; <code>1</code> if no output size was requested.
+     */
+    public double getOutputScale(int regionWidth, int regionHeight) {
+        double scale = 1;
+        if (zoom != null) {
+            scale = zoom;
+        }
+        if (width != null) {
+            scale = Math.min(scale, (double) width / regionWidth);
+        }
+        if (height != null) {
+            scale = Math.min(scale, (double) height / regionHeight);
+        }
+        return scale;
+    }
+
     /**
      * Parses a string to channel rendering settings.
      * Populates channels, windows and colors lists.
@@ -521,7 +627,27 @@ public class ImageRegionCtx extends OmeroRequestCtx {
      * @param pixelBuffer pixel buffer providing data for the image
      */
     public void setResolutionLevel(Renderer renderer, PixelBuffer pixelBuffer) {
-        int resolutionLevelCount = pixelBuffer.getResolutionLevels();
+        setResolutionLevel(renderer, pixelBuffer.getResolutionLevels());
+    }
+
+    /**
+     * Sets the pyramid resolution level on the <code>renderingEngine</code>
+     * @param renderer fully initialized renderer
+     * @param pyramidDescriptor pyramid structure of the image
+     */
+    public void setResolutionLevel(
+            Renderer renderer, PyramidDescriptor pyramidDescriptor) {
+        setResolutionLevel(
+                renderer, pyramidDescriptor.getResolutionLevels());
+    }
+
+    /**
+     * Sets the pyramid resolution level on the <code>renderingEngine</code>
+     * @param renderer fully initialized renderer
+     * @param resolutionLevelCount number of resolution levels of the image
+     */
+    private void setResolutionLevel(
+            Renderer renderer, int resolutionLevelCount) {
         log.debug("Number of available resolution levels: {}",
                 resolutionLevelCount);
 
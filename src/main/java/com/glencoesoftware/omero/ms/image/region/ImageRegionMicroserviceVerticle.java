@@ -19,16 +19,12 @@
 package com.glencoesoftware.omero.ms.image.region;
 
 import java.io.File;
-import java.io.IOException;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.UUID;
 
-import org.apache.tika.Tika;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
@@ -41,6 +37,7 @@ import com.glencoesoftware.omero.ms.core.PrometheusSpanHandler;
 import com.glencoesoftware.omero.ms.core.OmeroWebSessionRequestHandler;
 import com.glencoesoftware.omero.ms.core.LogSpanReporter;
 import com.glencoesoftware.omero.ms.core.OmeroHttpTracingHandler;
+import com.glencoesoftware.omero.ms.image.region.AnnotationMetadataCache.FileMetadata;
 
 import io.vertx.config.ConfigRetriever;
 import io.vertx.config.ConfigRetrieverOptions;
@@ -55,6 +52,8 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.eventbus.ReplyException;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.http.Cookie;
 import io.vertx.core.http.HttpMethod;
 import io.vertx.core.http.HttpServer;
 import io.vertx.core.http.HttpServerOptions;
@@ -65,6 +64,7 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.spi.json.JsonCodec;
 import io.vertx.core.json.jackson.JacksonCodec;
 import io.vertx.core.json.JsonArray;
+import io.vertx.core.shareddata.LocalMap;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
 import io.vertx.micrometer.PrometheusScrapingHandler;
@@ -117,10 +117,31 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
     /** Default number of workers to be assigned to the worker verticle */
     private int DEFAULT_WORKER_POOL_SIZE;
 
+    /**
+     * Default number of verticle instances, and so concurrent requests, when
+     * running on virtual threads
+     */
+    private static final int DEFAULT_VIRTUAL_THREAD_INSTANCES = 256;
+
 
     /** Default max number of channels to allow per request */
     private int MAX_ACTIVE_CHANNELS;
 
+    /** Maximum number of images in a batch image data request */
+    private int maxImageDataBatchSize;
+
+    /** File annotation metadata and readability cache */
+    private AnnotationMetadataCache annotationMetadataCache;
+
+    /** Admission control for rendering, thumbnail and histogram requests */
+    private AdmissionController admissionController;
+
+    /** Seconds clients are asked to wait before retrying shed requests */
+    private String retryAfter;
+
+    /** Plans the renders of a viewer's first paint of an image */
+    private FirstPaintPlanner firstPaintPlanner;
+
     /** Zipkin HTTP Tracing*/
     private HttpTracing httpTracing;
 
@@ -249,19 +270,45 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
         int workerPoolSize = Optional.ofNullable(
                 config.getInteger("worker_pool_size")
                 ).orElse(DEFAULT_WORKER_POOL_SIZE);
+        ThreadingModel threadingModel =
+                getThreadingModel(config, Runtime.version().feature());
+        // Each verticle instance handles one event at a time
+        int instances = workerPoolSize;
+        if (threadingModel == ThreadingModel.VIRTUAL_THREAD) {
+            instances = config.getInteger(
+                    "virtual-thread-instances", DEFAULT_VIRTUAL_THREAD_INSTANCES);
+        }
+        JsonObject admissionConfig =
+                config.getJsonObject("admission-control", new JsonObject());
+        admissionController = new AdmissionController("render",
+                admissionConfig.getInteger("initial-limit", instances),
+                admissionConfig.getInteger("min-limit", 1),
+                admissionConfig.getInteger("max-limit", instances * 4),
+                admissionConfig.getInteger("max-queue-size", instances * 2));
+        retryAfter = String.valueOf(
+                admissionConfig.getInteger("retry-after", 1));
+        JsonObject firstPaintConfig =
+                config.getJsonObject("first-paint", new JsonObject());
+        firstPaintPlanner = new FirstPaintPlanner(
+                firstPaintConfig.getInteger("max-tiles", 0),
+                firstPaintConfig.getInteger("viewport-width", 1920),
+                firstPaintConfig.getInteger("viewport-height", 1080));
+        vertx.eventBus().<String>consumer(
+                ImageRegionVerticle.PREFETCH_IMAGE_REGION_EVENT,
+                this::prefetch);
         vertx.deployVerticle("omero:omero-ms-redis-cache-verticle",
                 new DeploymentOptions().setConfig(config));
         vertx.deployVerticle("omero:omero-ms-image-region-verticle",
                 new DeploymentOptions()
-                        .setThreadingModel(ThreadingModel.WORKER)
-                        .setInstances(workerPoolSize)
+                        .setThreadingModel(threadingModel)
+                        .setInstances(instances)
                         .setWorkerPoolName("render-image-region-pool")
                         .setWorkerPoolSize(workerPoolSize)
                         .setConfig(config));
         vertx.deployVerticle("omero:omero-ms-shape-mask-verticle",
                 new DeploymentOptions()
-                .setThreadingModel(ThreadingModel.WORKER)
-                        .setInstances(workerPoolSize)
+                .setThreadingModel(threadingModel)
+                        .setInstances(instances)
                         .setWorkerPoolName("render-shape-mask-pool")
                         .setWorkerPoolSize(workerPoolSize)
                         .setConfig(config));
@@ -336,8 +383,34 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
             throw new IllegalArgumentException(
                 "Missing/invalid value for 'session-store.type' in config");
         }
+        JsonObject sessionCacheConfig =
+                config.getJsonObject("session-cache", new JsonObject());
+        CachingOmeroWebSessionStore cachingSessionStore =
+                new CachingOmeroWebSessionStore(
+                        sessionStore,
+                        sessionCacheConfig.getLong("maximum-size", 10000L),
+                        sessionCacheConfig.getLong("time-to-live", 30L));
+        sessionStore = cachingSessionStore;
         router.route().handler(
                 new OmeroWebSessionRequestHandler(config, sessionStore));
+        // Forget the OMERO session resolved for an OMERO.web session as soon
+        // as the server denies a request made with it; it may have expired
+        // or the user may have logged out.
+        String sessionCookieName = config
+                .getJsonObject("omero.web", new JsonObject())
+                .getString("session_cookie_name", "sessionid");
+        router.route().handler(event -> {
+            event.addHeadersEndHandler(v -> {
+                if (event.response().getStatusCode() == 403) {
+                    Cookie cookie = event.request().getCookie(
+                            sessionCookieName);
+                    if (cookie != null) {
+                        cachingSessionStore.invalidate(cookie.getValue());
+                    }
+                }
+            });
+            event.next();
+        });
 
         // ImageRegion request handlers
         router.get(
@@ -381,6 +454,8 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
         router.get("/webgateway/imgData/:imageId*").handler(this::getImageData);
         router.get("/pathviewer/imgData/:imageId/:keys*").handler(this::getImageData);
         router.get("/pathviewer/imgData/:imageId*").handler(this::getImageData);
+        router.get("/omero_ms_image_region/get_image_data*")
+            .handler(this::getImageDataBatch);
 
         //histogram_json/(?P<iid>[0-9]+)/channel/(?P<theC>[0-9]+)/
         // Histogram request handlers
@@ -399,6 +474,12 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
         router.get(
                 "/omero_ms_image_region/get_label_image_metadata/:shapeId*")
             .handler(this::getLabelImageMetadata);
+        router.get(
+                "/omero_ms_image_region/get_label_image_statistics/:shapeId*")
+            .handler(this::getLabelImageStatistics);
+        router.get(
+                "/omero_ms_image_region/render_shape_overlay/:imageId*")
+            .handler(this::renderShapeOverlay);
 
         // Thumbnail request handlers
         router.get(
@@ -439,6 +520,17 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
             .handler(this::getThumbnails);
 
         MAX_ACTIVE_CHANNELS = config.getInteger("max-active-channels", 10);
+        maxImageDataBatchSize = config.getInteger(
+                "max-image-data-batch-size",
+                ImageDataCtx.DEFAULT_MAX_IMAGE_IDS);
+
+        JsonObject annotationCacheConfig =
+                config.getJsonObject("annotation-cache", new JsonObject());
+        annotationMetadataCache = new AnnotationMetadataCache(
+                annotationCacheConfig.getLong("maximum-size", 10000L),
+                annotationCacheConfig.getLong("time-to-live", 3600L),
+                annotationCacheConfig.getLong(
+                        "permission-time-to-live", 60L));
 
         int port = config.getInteger("port");
         log.info("Starting HTTP server *:{}", port);
@@ -467,6 +559,163 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
         }
     }
 
+    /**
+     * Selects the threading model of the image region and shape mask
+     * verticles from the <code>threading-model</code> configuration key.
+     * Virtual threads require a Java 21 or later runtime; on older runtimes
+     * the default worker threading model is used instead.
+     * @param config Current configuration
+     * @param feature feature release version of the Java runtime
+     * @return See above.
+     */
+    static ThreadingModel getThreadingModel(JsonObject config, int feature) {
+        String threadingModel = config.getString("threading-model", "worker");
+        if (threadingModel.equals("worker")) {
+            return ThreadingModel.WORKER;
+        }
+        if (!threadingModel.equals("virtual-thread")) {
+            throw new IllegalArgumentException(
+                "Missing/invalid value for 'threading-model' in config");
+        }
+        if (feature < 21) {
+            log.warn("Virtual threads require Java 21 or later, running " +
+                    "Java {}; falling back to worker threads", feature);
+            return ThreadingModel.WORKER;
+        }
+        if (feature < 24) {
+            // Before JEP 491 a virtual thread waiting for an Ice reply
+            // inside a synchronized block pins its carrier thread
+            log.warn("Synchronous OMERO calls pin carrier threads on Java " +
+                    "{}; Java 24 or later is recommended", feature);
+        }
+        log.info("Using virtual threads");
+        return ThreadingModel.VIRTUAL_THREAD;
+    }
+
+    /**
+     * Sends an event bus request to the worker verticles once admitted by
+     * the render admission controller, responding with
+     * <code>503 Service Unavailable</code> if the request is shed.  Requests
+     * whose client has gone away while queued are never sent.
+     * @param response HTTP response
+     * @param address event bus address
+     * @param body JSON encoded request context
+     * @param options event bus delivery options
+     * @param replyHandler event bus reply handler
+     */
+    private <T> void admitRequest(
+            HttpServerResponse response, String address, String body,
+            DeliveryOptions options,
+            Handler<AsyncResult<Message<T>>> replyHandler) {
+        admitRequest(response, address, body, null, options, replyHandler);
+    }
+
+    /**
+     * Sends a cancellable event bus request to the worker verticles once
+     * admitted by the render admission controller.  If the client goes away
+     * before the reply is received the request is flagged as cancelled in
+     * the {@link ImageRegionVerticle#CANCELLED_REQUESTS_MAP} so that the
+     * worker can abandon it.
+     * @param response HTTP response
+     * @param address event bus address
+     * @param body JSON encoded request context
+     * @param requestId identifier of the request as encoded in
+     * <code>body</code> or <code>null</code> if it cannot be cancelled
+     * @param options event bus delivery options
+     * @param replyHandler event bus reply handler
+     */
+    private <T> void admitRequest(
+            HttpServerResponse response, String address, String body,
+            String requestId, DeliveryOptions options,
+            Handler<AsyncResult<Message<T>>> replyHandler) {
+        LocalMap<String, Boolean> cancelledRequests = vertx.sharedData()
+                .getLocalMap(ImageRegionVerticle.CANCELLED_REQUESTS_MAP);
+        boolean admitted = admissionController.submit(permit -> {
+            if (response.closed()) {
+                permit.cancel();
+                return;
+            }
+            if (requestId != null) {
+                response.closeHandler(v -> {
+                    if (!response.ended()) {
+                        log.debug("Client closed request {}", requestId);
+                        cancelledRequests.put(requestId, true);
+                    }
+                });
+            }
+            vertx.eventBus().<T>request(address, body, options, result -> {
+                permit.release();
+                // Replies, including timeouts, always arrive
+                if (requestId != null) {
+                    cancelledRequests.remove(requestId);
+                }
+                replyHandler.handle(result);
+            });
+        });
+        if (!admitted && !response.closed()) {
+            response.setStatusCode(503)
+                    .putHeader("Retry-After", retryAfter)
+                    .end("Server busy, please retry");
+        }
+    }
+
+    /**
+     * Renders the first paint of an image into the rendered tile cache, one
+     * render at a time so that no more than a single worker is occupied per
+     * image.  Renders are only dispatched while the render admission
+     * controller is idle; the remainder are skipped as soon as it is not or
+     * a render fails.
+     * @param prefetch JSON encoded {@link ImageRegionCtx} of each remaining
+     * prefetch render
+     */
+    private void firstPaint(Iterator<JsonObject> prefetch) {
+        if (!prefetch.hasNext()) {
+            return;
+        }
+        AdmissionController.Permit permit =
+                admissionController.tryAcquireIdle();
+        if (permit == null) {
+            log.debug("Skipping first paint renders under load");
+            return;
+        }
+        JsonObject prefetchCtx = prefetch.next();
+        vertx.eventBus().<byte[]>request(
+                ImageRegionVerticle.RENDER_IMAGE_REGION_EVENT,
+                prefetchCtx.encode(), deliveryOptions, result -> {
+            permit.release();
+            if (result.succeeded()) {
+                firstPaint(prefetch);
+            }
+        });
+    }
+
+    /**
+     * Dispatches a prefetch render planned by a worker verticle only while
+     * the render admission controller is idle, failing it otherwise so that
+     * its share of the session's prefetch budget is released.
+     * @param message JSON encoded {@link ImageRegionCtx} of the prefetch
+     * render
+     */
+    private void prefetch(Message<String> message) {
+        AdmissionController.Permit permit =
+                admissionController.tryAcquireIdle();
+        if (permit == null) {
+            log.debug("Skipping prefetch render under load");
+            message.fail(503, "Server busy");
+            return;
+        }
+        vertx.eventBus().<byte[]>request(
+                ImageRegionVerticle.RENDER_IMAGE_REGION_EVENT,
+                message.body(), deliveryOptions, result -> {
+            permit.release();
+            if (result.succeeded()) {
+                message.reply(result.result().body());
+            } else {
+                message.fail(500, result.cause().getMessage());
+            }
+        });
+    }
+
     /**
      * If the result of the eventbus message is a failure, handle it and
      * return a response to the client.
@@ -541,7 +790,9 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
                                  .add("png-tiles")
                                  .add("quantization")
                                  .add("support-missing-channels")
-                                 .add("annotation-range-request"))
+                                 .add("annotation-range-request")
+                                 .add("shape-overlay-tiles")
+                                 .add("batch-image-data"))
                 .put("options",new JsonObject()
                                .put("maxTileLength", maxTileLength)
                                .put("maxPlaneWidth", maxPlaneWidth)
@@ -591,11 +842,13 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
             return;
         }
         imageRegionCtx.injectCurrentTraceContext();
+        imageRegionCtx.requestId = UUID.randomUUID().toString();
 
         final HttpServerResponse response = event.response();
-        vertx.eventBus().<byte[]>request(
+        this.<byte[]>admitRequest(event.response(),
                 ImageRegionVerticle.RENDER_IMAGE_REGION_EVENT,
-                Json.encode(imageRegionCtx), deliveryOptions, result -> {
+                Json.encode(imageRegionCtx), imageRegionCtx.requestId,
+                deliveryOptions, result -> {
             try {
                 if (handleResultFailed(result, response)) {
                     return;
@@ -667,6 +920,58 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
         });
     }
 
+    /**
+     * Render shape overlay event handler.
+     * Responds with a transparent <code>image/png</code> tile on success
+     * containing the shapes of the Image encoded in the URL that intersect
+     * the requested tile, or HTTP 404 if the Image does not exist or the user
+     * does not have permissions to access it.
+     * @param event Current routing context.
+     */
+    private void renderShapeOverlay(RoutingContext event) {
+        log.info("Rendering shape overlay");
+        HttpServerRequest request = event.request();
+        final ShapeOverlayCtx shapeOverlayCtx;
+        try {
+            shapeOverlayCtx = new ShapeOverlayCtx(
+                    request.params(), event.get("omero.session_key"));
+        } catch (IllegalArgumentException e) {
+            HttpServerResponse response = event.response();
+            if (!response.closed()) {
+                response.setStatusCode(400).end(e.getMessage());
+            }
+            return;
+        }
+        shapeOverlayCtx.injectCurrentTraceContext();
+
+        final HttpServerResponse response = event.response();
+
+        vertx.eventBus().<byte[]>request(
+                ShapeMaskVerticle.RENDER_SHAPE_OVERLAY_EVENT,
+                Json.encode(shapeOverlayCtx), deliveryOptions, result -> {
+            try {
+                if (handleResultFailed(result, response)) {
+                    return;
+                }
+                byte[] overlay = result.result().body();
+                response.headers().set("Content-Type", "image/png");
+                response.headers().set(
+                        "Content-Length",
+                        String.valueOf(overlay.length));
+                if (!cacheControlHeader.equals("")) {
+                    response.headers().set(
+                            "Cache-Control", cacheControlHeader);
+                }
+                response.write(Buffer.buffer(overlay));
+            } finally {
+                if (!response.closed()) {
+                    response.end();
+                }
+                log.debug("Response ended");
+            }
+        });
+    }
+
     /**
      * Get shape mask bytes event handler.
      * Responds with raws image bytes on success based
@@ -678,8 +983,17 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
     private void getShapeMaskBytes(RoutingContext event) {
         log.info("Getting shape mask bytes");
         HttpServerRequest request = event.request();
-        ShapeMaskCtx shapeMaskCtx = new ShapeMaskCtx(
-                request.params(), event.get("omero.session_key"));
+        final ShapeMaskCtx shapeMaskCtx;
+        try {
+            shapeMaskCtx = new ShapeMaskCtx(
+                    request.params(), event.get("omero.session_key"));
+        } catch (IllegalArgumentException e) {
+            HttpServerResponse response = event.response();
+            if (!response.closed()) {
+                response.setStatusCode(400).end(e.getMessage());
+            }
+            return;
+        }
         shapeMaskCtx.injectCurrentTraceContext();
 
         final HttpServerResponse response = event.response();
@@ -694,6 +1008,10 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
                 byte[] shapeMask = result.result().body();
                 response.headers()
                         .set("Content-Type", "application/octet-stream");
+                if (shapeMaskCtx.compression != null) {
+                    response.headers().set(
+                            "Content-Encoding", shapeMaskCtx.compression);
+                }
                 response.headers().set(
                         "Content-Length",
                         String.valueOf(shapeMask.length));
@@ -746,6 +1064,54 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
         });
     }
 
+    /**
+     * Get label image statistics event handler.
+     * Responds with JSON payload of per-label pixel counts, bounding boxes
+     * and centroids on success based on the <code>shapeId</code> encoded in
+     * the URL or HTTP 404 if the LabelImage does not exist or the user does
+     * not have permissions to access it.
+     * @param event Current routing context.
+     */
+    private void getLabelImageStatistics(RoutingContext event) {
+        log.info("Getting label image statistics");
+        HttpServerRequest request = event.request();
+        final ShapeMaskCtx shapeMaskCtx;
+        try {
+            shapeMaskCtx = new ShapeMaskCtx(
+                    request.params(), event.get("omero.session_key"));
+        } catch (IllegalArgumentException e) {
+            HttpServerResponse response = event.response();
+            if (!response.closed()) {
+                response.setStatusCode(400).end(e.getMessage());
+            }
+            return;
+        }
+        shapeMaskCtx.injectCurrentTraceContext();
+
+        final HttpServerResponse response = event.response();
+
+        vertx.eventBus().<JsonObject>request(
+                ShapeMaskVerticle.GET_LABEL_IMAGE_STATISTICS_EVENT,
+                Json.encode(shapeMaskCtx), deliveryOptions, result -> {
+            try {
+                if (handleResultFailed(result, response)) {
+                    return;
+                }
+                String statistics = result.result().body().encode();
+                response.headers().set("Content-Type", "application/json");
+                response.headers().set(
+                        "Content-Length",
+                        String.valueOf(statistics.length()));
+                response.write(statistics);
+            } finally {
+                if (!response.closed()) {
+                    response.end();
+                }
+                log.debug("Response ended");
+            }
+        });
+    }
+
     /**
      * Get image data event handler.
      * Responds with JSON payload of image data on success based
@@ -761,6 +1127,7 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
         ImageDataCtx imageDataCtx = null;
         try {
             imageDataCtx = new ImageDataCtx(request.params(),
+                request.getHeader("If-None-Match"),
                 event.get("omero.session_key"));
         } catch (Exception e) {
             log.error("Error creating ImageDataCtx", e);
@@ -779,7 +1146,18 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
                 if (handleResultFailed(result, response)) {
                     return;
                 }
+                String etag = result.result().headers().get("ETag");
+                if (etag != null) {
+                    response.headers().set("ETag", etag);
+                }
                 JsonObject imgDataJson = result.result().body();
+                if (imgDataJson == null) {
+                    response.setStatusCode(304);
+                    return;
+                }
+                firstPaint(firstPaintPlanner.plan(
+                        imgDataJson, event.get("omero.session_key"))
+                        .iterator());
                 Object toReturn = imgDataJson;
                 if (request.params().contains("keys")) {
                     String[] keys = request.params().get("keys").split("\\.");
@@ -815,6 +1193,56 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
     }
 
 
+    /**
+     * Get image data of several images handler.  Responds with a JSON
+     * dictionary of image data keyed by {@link Image} identifier for each
+     * of the <code>id</code> request parameters which exists and the user
+     * has permissions to access.  Requests for more than
+     * <code>max-image-data-batch-size</code> images are rejected.
+     * @param event Current routing context.
+     */
+    private void getImageDataBatch(RoutingContext event) {
+        log.info("Getting image data batch");
+        HttpServerRequest request = event.request();
+        final HttpServerResponse response = event.response();
+        final String callback = request.getParam("callback");
+        ImageDataCtx imageDataCtx = null;
+        try {
+            imageDataCtx = new ImageDataCtx(request.params(), null,
+                event.get("omero.session_key"), maxImageDataBatchSize);
+        } catch (IllegalArgumentException e) {
+            if (!response.closed()) {
+                response.setStatusCode(400).end(e.getMessage());
+            }
+            return;
+        }
+        imageDataCtx.injectCurrentTraceContext();
+
+        vertx.eventBus().<JsonObject>request(
+                ImageRegionVerticle.GET_IMAGE_DATA_BATCH_EVENT,
+                Json.encode(imageDataCtx), deliveryOptions, result -> {
+            String chunk = "";
+            try {
+                if (handleResultFailed(result, response)) {
+                    return;
+                }
+                chunk = result.result().body().encode();
+                if (callback != null) {
+                    chunk = String.format("%s(%s)", callback, chunk);
+                    response.headers().set("Content-Type",
+                            "application/javascript");
+                } else {
+                    response.headers().set("Content-Type",
+                            "application/json");
+                }
+            } finally {
+                if (!response.closed()) {
+                    response.end(chunk);
+                }
+            }
+        });
+    }
+
     /******* HISTOGRAM HANDLER **********/
 
     /**
@@ -856,7 +1284,7 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
         }
         histogramCtx.injectCurrentTraceContext();
 
-        vertx.eventBus().<JsonObject>request(
+        this.<JsonObject>admitRequest(event.response(),
                 ImageRegionVerticle.GET_HISTOGRAM_JSON_EVENT,
                 Json.encode(histogramCtx), deliveryOptions, result -> {
             final HttpServerResponse response = event.response();
@@ -903,7 +1331,7 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
 
         thumbnailCtx.injectCurrentTraceContext();
 
-        vertx.eventBus().<byte[]>request(
+        this.<byte[]>admitRequest(event.response(),
                 ImageRegionVerticle.RENDER_THUMBNAIL_EVENT,
                 Json.encode(thumbnailCtx), deliveryOptions, result -> {
             try {
@@ -949,7 +1377,7 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
         }
         thumbnailCtx.injectCurrentTraceContext();
 
-        vertx.eventBus().<String>request(
+        this.<String>admitRequest(event.response(),
                 ImageRegionVerticle.GET_THUMBNAILS_EVENT,
                 Json.encode(thumbnailCtx), deliveryOptions, result -> {
             try {
@@ -993,6 +1421,12 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
             }
             return;
         }
+        FileMetadata cached = annotationMetadataCache.get(
+                annotationCtx.omeroSessionKey, annotationCtx.annotationId);
+        if (cached != null) {
+            sendFileAnnotation(request, response, cached);
+            return;
+        }
         annotationCtx.injectCurrentTraceContext();
 
         vertx.eventBus().<JsonObject>request(
@@ -1009,11 +1443,18 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
                         return;
                     }
                     JsonObject fileInfo = result.result().body();
-                    String fileName = fileInfo.getString("originalFileName");
-                    String filePath = fileInfo.getString("originalFilePath");
+                    FileMetadata fileMetadata = annotationMetadataCache
+                            .getIfPresent(annotationCtx.annotationId);
+                    if (fileMetadata == null
+                            || fileMetadata.originalFileId
+                                != fileInfo.getLong("originalFileId")) {
+                        fileMetadata = FileMetadata.of(fileInfo);
+                    }
                     //If the path is a directory, send error response
-                    File file = new File(filePath);
+                    File file = new File(fileMetadata.path);
                     if (!file.exists()) {
+                        annotationMetadataCache.invalidate(
+                                annotationCtx.annotationId);
                         response.setStatusCode(404);
                         response.end("File for given Annotation does not exist");
                         return;
@@ -1023,76 +1464,141 @@ public class ImageRegionMicroserviceVerticle extends AbstractVerticle {
                         response.end("File Annotation of Unsupported File Type");
                         return;
                     }
-                    else {
-                        String contentType = "application/octet-stream";
-                        try {
-                            contentType = new Tika().detect(file);
-                        } catch (IOException e) {
-                            log.warn(String.format(
-                                    "Failed to detect content type of file %s",
-                                    fileName));
-                        }
-                        response.headers().set("Content-Type", contentType);
-
-                        response.headers().set("Accept-Ranges", "bytes");
-                        ZonedDateTime zonedDateTime = ZonedDateTime.ofInstant(
-                                Instant.ofEpochMilli(file.lastModified()),
-                                ZoneId.of("UTC"));
-                        DateTimeFormatter formatter =
-                                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-                        response.headers().set("Last-Modified", zonedDateTime.format(formatter));
-                        response.headers().set("Content-Disposition",
-                                "attachment; filename=\"" + fileName + "\"");
-
-                        if (request.method() == HttpMethod.HEAD) {
-                            response.headers().set("Content-Length", Long.toString(file.length()));
-                            response.end();
-                            return;
-                        }
-                        if (request.headers().contains("Range")) {
-                            String range = request.getHeader("Range");
-                            long start;
-                            long end;
-                            if (range.matches("^bytes=\\d+-\\d+$")) {
-                                String[] startEndStr =
-                                        range.substring("bytes=".length()).split("-");
-                                start = Long.valueOf(startEndStr[0]);
-                                end = Long.valueOf(startEndStr[1]);
-                                end = Math.min(end, file.length() - 1);
-                            }
-                            else if (range.matches("^bytes=\\d+-$")) {
-                                String[] startEndStr =
-                                        range.substring("bytes=".length()).split("-");
-                                start = Long.valueOf(startEndStr[0]);
-                                end = file.length() - 1;
-                            } else if (range.matches("bytes=-\\d+$")) {
-                                start = file.length() - Long.valueOf(range.substring("bytes=-".length()));
-                                end = file.length() - 1;
-                            } else {
-                                response.setStatusCode(400);
-                                response.end("Malformed Range header - "
-                                        + "must be of the form \"bytes=x-y\" or \"bytes=x-\"");
-                                return;
-                            }
-                            if (start >= file.length() || start > end) {
-                                response.setStatusCode(416);
-                                response.headers().set("Content-Range",
-                                        String.format("*/%d", file.length()));
-                                response.end("Invalid range");
-                                return;
-                            }
-                            response.setStatusCode(206);
-                            log.info("Setting content-range");
-                            response.headers().set("Content-Range",
-                                    String.format("%d-%d/%d", start, end,
-                                            file.length()));
-                            log.info("Sending file...");
-                            response.sendFile(filePath, start, end - start + 1);
-                        } else {
-                            response.sendFile(filePath);
-                        }
-                    }
+                    annotationMetadataCache.put(annotationCtx.omeroSessionKey,
+                            annotationCtx.annotationId, fileMetadata);
+                    sendFileAnnotation(request, response, fileMetadata);
             }
         });
     }
+
+    /**
+     * Sends the file backing a file annotation, or the requested ranges of
+     * it, using previously retrieved metadata.  Conditional requests are
+     * evaluated as per RFC 7232 and range requests as per RFC 7233.
+     * @param request HTTP request
+     * @param response HTTP response
+     * @param fileMetadata metadata of the file to send
+     */
+    private void sendFileAnnotation(HttpServerRequest request,
+            HttpServerResponse response, FileMetadata fileMetadata) {
+        String filePath = fileMetadata.path;
+        long fileLength = fileMetadata.size;
+        response.headers().set("Accept-Ranges", "bytes");
+        response.headers().set("ETag", fileMetadata.etag());
+        response.headers().set(
+                "Last-Modified", fileMetadata.lastModifiedHttpDate());
+        if (fileMetadata.notModified(request.getHeader("If-None-Match"),
+                request.getHeader("If-Modified-Since"))) {
+            response.setStatusCode(304).end();
+            return;
+        }
+        response.headers().set("Content-Type", fileMetadata.contentType);
+        response.headers().set("Content-Disposition",
+                "attachment; filename=\"" + fileMetadata.name + "\"");
+
+        if (request.method() == HttpMethod.HEAD) {
+            response.headers().set("Content-Length", Long.toString(fileLength));
+            response.end();
+            return;
+        }
+        if (!request.headers().contains("Range")
+                || !fileMetadata.ifRange(request.getHeader("If-Range"))) {
+            response.sendFile(filePath)
+                .onFailure(t -> sendFileFailed(request, t));
+            return;
+        }
+        List<ByteRange> ranges;
+        try {
+            ranges = ByteRange.parse(request.getHeader("Range"), fileLength);
+        } catch (IllegalArgumentException e) {
+            response.setStatusCode(400);
+            response.end("Malformed Range header - " + e.getMessage());
+            return;
+        }
+        if (ranges.isEmpty()) {
+            response.setStatusCode(416);
+            response.headers().set("Content-Range",
+                    String.format("bytes */%d", fileLength));
+            response.end("Invalid range");
+            return;
+        }
+        response.setStatusCode(206);
+        if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+            response.headers().set(
+                    "Content-Range", range.contentRange(fileLength));
+            response.sendFile(filePath, range.start, range.length())
+                .onFailure(t -> sendFileFailed(request, t));
+            return;
+        }
+        String boundary = UUID.randomUUID().toString();
+        response.headers().set("Content-Type",
+                "multipart/byteranges; boundary=" + boundary);
+        response.headers().set("Content-Length", Long.toString(
+                ByteRange.multipartLength(ranges, boundary,
+                        fileMetadata.contentType, fileLength)));
+        sendRanges(request, response, fileMetadata, ranges, boundary, 0);
+    }
+
+    /**
+     * Writes the body parts of a <code>multipart/byteranges</code> response
+     * one after the other, each part's bytes streamed directly from the
+     * file.
+     * @param request HTTP request
+     * @param response HTTP response
+     * @param fileMetadata metadata of the file to send
+     * @param ranges ranges to send
+     * @param boundary multipart boundary
+     * @param index index of the next range to send
+     */
+    private void sendRanges(HttpServerRequest request,
+            HttpServerResponse response, FileMetadata fileMetadata,
+            List<ByteRange> ranges, String boundary, int index) {
+        if (response.closed()) {
+            return;
+        }
+        if (index == ranges.size()) {
+            response.end(Buffer.buffer(ByteRange.closeDelimiter(boundary)));
+            return;
+        }
+        ByteRange range = ranges.get(index);
+        vertx.fileSystem().open(
+                fileMetadata.path, new OpenOptions().setRead(true))
+            .onFailure(t -> {
+                sendFileFailed(request, t);
+                response.reset();
+            })
+            .onSuccess(file -> {
+                response.write(Buffer.buffer(range.partHeader(boundary,
+                        fileMetadata.contentType, fileMetadata.size)));
+                file.setReadPos(range.start).setReadLength(range.length());
+                file.pipe().endOnSuccess(false).to(response)
+                    .onComplete(result -> {
+                        file.close();
+                        if (result.failed()) {
+                            sendFileFailed(request, result.cause());
+                            response.reset();
+                            return;
+                        }
+                        sendRanges(request, response, fileMetadata,
+                                ranges, boundary, index + 1);
+                    });
+            });
+    }
+
+    /**
+     * Discards cached metadata of a file annotation whose file could not be
+     * sent, so that the next request stats the file again.
+     * @param request HTTP request
+     * @param t cause of the failure
+     */
+    private void sendFileFailed(HttpServerRequest request, Throwable t) {
+        log.error("Failed to send file annotation", t);
+        try {
+            annotationMetadataCache.invalidate(
+                    Long.parseLong(request.getParam("annotationId")));
+        } catch (NumberFormatException e) {
+            // Not a file annotation request
+        }
+    }
 }
@@ -21,14 +21,21 @@ package com.glencoesoftware.omero.ms.image.region;
 import com.glencoesoftware.omero.zarr.ZarrPixelsService;
 
 import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 import java.lang.IllegalArgumentException;
 import java.lang.Math;
 
@@ -46,6 +53,8 @@ import com.sun.media.imageioimpl.plugins.tiff.TIFFImageWriterSpi;
 import brave.ScopedSpan;
 import brave.Tracer;
 import brave.Tracing;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
 import ome.api.local.LocalCompress;
 import ome.io.nio.InMemoryPlanarPixelBuffer;
 import ome.io.nio.PixelBuffer;
@@ -67,6 +76,7 @@ import omero.ApiUsageException;
 import omero.ServerError;
 import omero.api.IQueryPrx;
 import omero.api.ServiceFactoryPrx;
+import omero.sys.EventContext;
 import omero.sys.ParametersI;
 import omero.util.IceMapper;
 import ucar.ma2.Array;
@@ -103,6 +113,57 @@ public class ImageRegionRequestHandler {
     /** Configured maximum size size in either dimension */
     private final int maxTileLength;
 
+    /** Cached pyramid structure or <code>null</code> if not cached */
+    private final PyramidDescriptorService pyramidDescriptorService;
+
+    /**
+     * Platform thread pool encoding is performed on or <code>null</code> to
+     * encode on the calling thread
+     */
+    private final RenderExecutor renderExecutor;
+
+    /** Whether or not the request has been cancelled */
+    private BooleanSupplier cancelled = () -> false;
+
+    /**
+     * Shares renders between identical concurrent requests or
+     * <code>null</code> if every request is rendered independently
+     */
+    protected RequestCoalescer<String, byte[]> requestCoalescer;
+
+    /** Pool of open pixel buffers or <code>null</code> */
+    protected PixelBufferPool pixelBufferPool;
+
+    /** Cache of decoded chunks or <code>null</code> */
+    protected ChunkCache chunkCache;
+
+    /** Reads chunks around each tile ahead of time or <code>null</code> */
+    protected ChunkReadAhead chunkReadAhead;
+
+    /** Image regions rendered ahead of time or <code>null</code> */
+    protected RenderedTileCache renderedTileCache;
+
+    /** Memory mappings of local pixel files or <code>null</code> */
+    protected MappedFileService mappedFiles;
+
+    /** Reads the chunks a tile spans concurrently or <code>null</code> */
+    protected ChunkFetchScheduler chunkFetchScheduler;
+
+    /** Pixels metadata of the rendered image or <code>null</code> */
+    private Pixels renderedPixels;
+
+    /**
+     * Size of the full resolution level when the resolution level has been
+     * selected from the requested output size, otherwise <code>null</code>
+     */
+    private Dimension fullResolutionSize;
+
+    /**
+     * Size the rendered image is resampled to or <code>null</code> if no
+     * output size has been requested
+     */
+    private Dimension outputSize;
+
     /**
      * Default constructor.
      * @param imageRegionCtx {@link ImageRegionCtx} object
@@ -115,6 +176,53 @@ public class ImageRegionRequestHandler {
             LocalCompress compressionSrv,
             int maxTileLength,
             ZarrPixelsService pixelsService) {
+        this(imageRegionCtx, families, renderingModels, lutProvider,
+                compressionSrv, maxTileLength, pixelsService, null);
+    }
+
+    /**
+     * Constructor with cached pyramid structure.
+     * @param imageRegionCtx {@link ImageRegionCtx} object
+     * @param pyramidDescriptorService cached pyramid structure used for
+     * resolution level selection or <code>null</code> to always consult the
+     * pixel buffer
+     */
+    public ImageRegionRequestHandler(
+            ImageRegionCtx imageRegionCtx,
+            List<Family> families,
+            List<RenderingModel> renderingModels,
+            LutProvider lutProvider,
+            LocalCompress compressionSrv,
+            int maxTileLength,
+            ZarrPixelsService pixelsService,
+            PyramidDescriptorService pyramidDescriptorService) {
+        this(imageRegionCtx, families, renderingModels, lutProvider,
+                compressionSrv, maxTileLength, pixelsService,
+                pyramidDescriptorService, null);
+    }
+
+    /**
+     * Constructor with cached pyramid structure and a dedicated encoding
+     * pool.
+     * @param imageRegionCtx {@link ImageRegionCtx} object
+     * @param pyramidDescriptorService cached pyramid structure used for
+     * resolution level selection or <code>null</code> to always consult the
+     * pixel buffer
+     * @param renderExecutor platform thread pool to encode on or
+     * <code>null</code> to encode on the calling thread
+     */
+    public ImageRegionRequestHandler(
+            ImageRegionCtx imageRegionCtx,
+            List<Family> families,
+            List<RenderingModel> renderingModels,
+            LutProvider lutProvider,
+            LocalCompress compressionSrv,
+            int maxTileLength,
+            ZarrPixelsService pixelsService,
+            PyramidDescriptorService pyramidDescriptorService,
+            RenderExecutor renderExecutor) {
+        this.pyramidDescriptorService = pyramidDescriptorService;
+        this.renderExecutor = renderExecutor;
         this.compressionSrv = compressionSrv;
         this.lutProvider = lutProvider;
         this.families = families;
@@ -125,6 +233,128 @@ public class ImageRegionRequestHandler {
         projectionService = new ProjectionService();
     }
 
+    /**
+     * Sets the check for whether or not the request has been cancelled,
+     * which is made before pixel data is read, between channels and before
+     * encoding.
+     * @param cancelled whether or not the request has been cancelled
+     */
+    public void setCancelled(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * Sets the coalescer used to share renders between identical concurrent
+     * requests.  Requests are only coalesced once the caller has retrieved
+     * the metadata and rendering settings with their own session, and are
+     * keyed by the rendering settings used, so neither permissions nor
+     * per-user rendering settings are bypassed.
+     * @param requestCoalescer shares renders between identical concurrent
+     * requests or <code>null</code> to render every request independently
+     */
+    public void setRequestCoalescer(
+            RequestCoalescer<String, byte[]> requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * Sets the pool pixel buffers are borrowed from.
+     * @param pixelBufferPool pool of open pixel buffers or <code>null</code>
+     * to open a pixel buffer for every request
+     */
+    public void setPixelBufferPool(PixelBufferPool pixelBufferPool) {
+        this.pixelBufferPool = pixelBufferPool;
+    }
+
+    /**
+     * Sets the cache decoded chunks are read through.
+     * @param chunkCache cache of decoded chunks or <code>null</code> to
+     * read chunks from the pixel buffer for every request
+     */
+    public void setChunkCache(ChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+    }
+
+    /**
+     * Sets the read ahead used to read the chunks surrounding a requested
+     * tile into the chunk cache.  Only tile requests read ahead.
+     * @param chunkReadAhead reads chunks around each tile ahead of time or
+     * <code>null</code> to disable reading ahead
+     */
+    public void setChunkReadAhead(ChunkReadAhead chunkReadAhead) {
+        this.chunkReadAhead = chunkReadAhead;
+    }
+
+    /**
+     * Sets the cache of image regions rendered ahead of their being
+     * requested.  Prefetch requests render into the cache and all other
+     * requests are served from it when possible.
+     * @param renderedTileCache cache of image regions rendered ahead of
+     * time or <code>null</code>
+     */
+    public void setRenderedTileCache(RenderedTileCache renderedTileCache) {
+        this.renderedTileCache = renderedTileCache;
+    }
+
+    /**
+     * Pixels metadata of the image rendered by
+     * {@link #renderImageRegion(omero.client)}.
+     * @return See above or <code>null</code> if nothing has been rendered.
+     */
+    public Pixels getRenderedPixels() {
+        return renderedPixels;
+    }
+
+    /**
+     * Sets the memory mappings ROMIO pixel files are read through.
+     * @param mappedFiles memory mappings of local pixel files or
+     * <code>null</code> to read pixel files with stream based I/O
+     */
+    public void setMappedFiles(MappedFileService mappedFiles) {
+        this.mappedFiles = mappedFiles;
+    }
+
+    /**
+     * Sets the scheduler the chunks a tile spans are read concurrently by.
+     * @param chunkFetchScheduler reads the chunks a tile spans concurrently
+     * or <code>null</code> to read them one after another
+     */
+    public void setChunkFetchScheduler(
+            ChunkFetchScheduler chunkFetchScheduler) {
+        this.chunkFetchScheduler = chunkFetchScheduler;
+    }
+
+    /**
+     * Builds the part of a coalescing key identifying the rendering settings
+     * a render will use, including their version so that concurrent edits
+     * are never shared.
+     * @param renderingDef rendering settings or <code>null</code>
+     * @return See above.
+     */
+    protected static String renderingDefKey(RenderingDef renderingDef) {
+        if (renderingDef == null) {
+            return "none";
+        }
+        StringBuilder key = new StringBuilder()
+                .append(renderingDef.getId())
+                .append(':')
+                .append(renderingDef.getVersion());
+        for (ChannelBinding cb : renderingDef.unmodifiableWaveRendering()) {
+            key.append(':').append(cb.getVersion());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Cancellation checkpoint.
+     * @throws CancellationException If the request has been cancelled.
+     */
+    protected void checkCancelled() {
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Request cancelled");
+        }
+    }
+
     /**
      * Get Pixels information from Image IDs
      * @param imageIds Image IDs to get Pixels information for
@@ -220,9 +450,7 @@ public class ImageRegionRequestHandler {
         try {
             ServiceFactoryPrx sf = client.getSession();
             long userId = sf.getAdminService().getEventContext().userId;
-            List<RenderingDef> renderingDefs = retrieveRenderingDefs(
-                    client, userId, Arrays.asList(pixelsId));
-            return selectRenderingDef(renderingDefs, userId, pixelsId);
+            return getRenderingDef(client, userId, pixelsId);
         } catch (Exception e) {
             span.error(e);
         } finally {
@@ -231,6 +459,25 @@ public class ImageRegionRequestHandler {
         return null;
     }
 
+    /**
+     * Gets the correct rendering settings either from the user (preferred) or
+     * image owner corresponding to the specified pixels set.
+     * @param client OMERO client to use for querying.
+     * @param userId The current user ID.
+     * @param pixelsId The identifier of the pixels.
+     * @return See above.
+     */
+    protected RenderingDef getRenderingDef(
+            omero.client client, final long userId, final long pixelsId)
+                throws ServerError {
+        List<RenderingDef> renderingDefs = retrieveRenderingDefs(
+                client, userId, Arrays.asList(pixelsId));
+        if (renderingDefs == null) {
+            return null;
+        }
+        return selectRenderingDef(renderingDefs, userId, pixelsId);
+    }
+
     /**
      * Retrieves rendering settings either from the user or image owner
      * corresponding to any of the specified pixels sets.
@@ -269,6 +516,47 @@ public class ImageRegionRequestHandler {
         }
     }
 
+    /**
+     * Asynchronously retrieves rendering settings either from the user or
+     * image owner corresponding to any of the specified images.
+     * @param iQuery Query proxy service
+     * @param eventContext event context of the current user
+     * @param imageIds The image identifiers.
+     * @return See above.
+     * @see AsyncMetadataService#findRenderingDefs(IQueryPrx, Future, List)
+     */
+    protected Future<List<RenderingDef>> retrieveRenderingDefs(
+            IQueryPrx iQuery, Future<EventContext> eventContext,
+            List<Long> imageIds) {
+        return AsyncMetadataService
+                .findRenderingDefs(iQuery, eventContext, imageIds)
+                .map(renderingDefs -> {
+                    try {
+                        return (List<RenderingDef>) new IceMapper()
+                                .reverse(renderingDefs);
+                    } catch (ApiUsageException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+    }
+
+    /**
+     * Waits for rendering settings retrieved by
+     * {@link #retrieveRenderingDefs(IQueryPrx, Future, List)}.
+     * @param renderingDefs asynchronous rendering settings retrieval
+     * @return See above or an empty list if they could not be retrieved,
+     * in which case default rendering settings are used.
+     */
+    protected List<RenderingDef> awaitRenderingDefs(
+            Future<List<RenderingDef>> renderingDefs) {
+        try {
+            return AsyncMetadataService.await(renderingDefs);
+        } catch (ServerError | RuntimeException e) {
+            log.error("Exception while retrieving rendering settings", e);
+            return Collections.emptyList();
+        }
+    }
+
     /**
      * Copied from {@link RenderingBean#checkPlaneDef}. A client side version
      * of this is required when we are rendering uncompressed.
@@ -316,16 +604,33 @@ public class ImageRegionRequestHandler {
                 Tracing.currentTracer().startScopedSpan("render_image_region");
         try {
             ServiceFactoryPrx sf = client.getSession();
+            List<Long> imageIds = Arrays.asList(imageRegionCtx.imageId);
+            // Independent of the pixels metadata so retrieved concurrently
+            Future<EventContext> eventContext =
+                    AsyncMetadataService.getEventContext(sf);
             IQueryPrx iQuery = sf.getQueryService();
-            Map<Long, Pixels> imagePixels = retrievePixDescription(
-                    iQuery, Arrays.asList(imageRegionCtx.imageId));
+            Future<List<RenderingDef>> renderingDefs =
+                    retrieveRenderingDefs(iQuery, eventContext, imageIds);
+            Map<Long, Pixels> imagePixels =
+                    retrievePixDescription(iQuery, imageIds);
             Pixels pixels = imagePixels.get(imageRegionCtx.imageId);
             if (pixels != null) {
-                RenderingDef renderingDef =
-                        getRenderingDef(client, pixels.getId());
-                return getRegion(pixels, renderingDef);
+                long userId = AsyncMetadataService.await(eventContext).userId;
+                RenderingDef renderingDef = selectRenderingDef(
+                        awaitRenderingDefs(renderingDefs), userId,
+                        pixels.getId());
+                byte[] region = getRegion(pixels, renderingDef);
+                renderedPixels = pixels;
+                return region;
             }
             log.debug("Cannot find Image:{}", imageRegionCtx.imageId);
+        } catch (CancellationException e) {
+            span.tag("omero.cancelled", "true");
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            span.error(e);
+            log.error("Interrupted while retrieving image region", e);
         } catch (Exception e) {
             span.error(e);
             log.error("Exception while retrieving image region", e);
@@ -344,9 +649,65 @@ public class ImageRegionRequestHandler {
      * @throws QuantizationException
      */
     private byte[] getRegion(Pixels pixels, RenderingDef renderingDef)
-                    throws IllegalArgumentException, ServerError, IOException,
-                        QuantizationException {
-        return compress(getBufferedImage(render(pixels, renderingDef)));
+                    throws Exception {
+        if (requestCoalescer == null && renderedTileCache == null) {
+            return renderRegion(pixels, renderingDef);
+        }
+        // Everything which identifies the render except who is asking
+        JsonObject json = JsonObject.mapFrom(imageRegionCtx);
+        json.remove("omeroSessionKey");
+        json.remove("traceContext");
+        json.remove("requestId");
+        json.remove("prefetch");
+        json.put("renderingDef", renderingDefKey(renderingDef));
+        String key = json.encode();
+        if (renderedTileCache != null) {
+            if (imageRegionCtx.prefetch) {
+                if (renderedTileCache.contains(key)) {
+                    return new byte[0];
+                }
+            } else {
+                byte[] tile = renderedTileCache.get(key);
+                if (tile != null) {
+                    return tile;
+                }
+            }
+        }
+        byte[] region = requestCoalescer == null
+                ? renderRegion(pixels, renderingDef)
+                : requestCoalescer.execute(
+                        key, () -> renderRegion(pixels, renderingDef));
+        if (renderedTileCache != null && imageRegionCtx.prefetch) {
+            renderedTileCache.put(key, region);
+        }
+        return region;
+    }
+
+    /**
+     * Renders and encodes a single region.
+     * @param pixels pixels metadata
+     * @param renderingDef rendering settings to use
+     * @return Image region as a byte array.
+     */
+    private byte[] renderRegion(Pixels pixels, RenderingDef renderingDef)
+                    throws Exception {
+        Array array = render(pixels, renderingDef);
+        checkCancelled();
+        return encode(() -> compress(resample(getBufferedImage(array))));
+    }
+
+    /**
+     * Runs an encoding task on the configured encoding pool or, if there
+     * is none, on the calling thread.
+     * @param task encoding task
+     * @return Result of the task.
+     * @throws Exception If the task throws.
+     */
+    protected <T> T encode(Callable<T> task) throws Exception {
+        if (renderExecutor == null) {
+            return task.call();
+        }
+        return renderExecutor.execute(task);
     }
 
     /**
@@ -367,6 +728,36 @@ public class ImageRegionRequestHandler {
         );
     }
 
+    /**
+     * Resamples a rendered image to the requested output size, if any.
+     * The image has been rendered from the smallest resolution level at
+     * least as large so this is at most a modest reduction.
+     * @param image rendered image
+     * @return Resampled image or <code>image</code> if no output size has
+     * been requested or it is already the requested size.
+     */
+    protected BufferedImage resample(BufferedImage image) {
+        if (outputSize == null
+                || (image.getWidth() == outputSize.width
+                    && image.getHeight() == outputSize.height)) {
+            return image;
+        }
+        int type = image.getType() == BufferedImage.TYPE_CUSTOM
+                ? BufferedImage.TYPE_INT_ARGB : image.getType();
+        BufferedImage resampled = new BufferedImage(
+                outputSize.width, outputSize.height, type);
+        Graphics2D graphics = resampled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(
+                    image, 0, 0, outputSize.width, outputSize.height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return resampled;
+    }
+
     /**
      * Compress rendered pixel data in accordance with the current
      * <code>imageRegionCtx</code>.
@@ -416,7 +807,23 @@ public class ImageRegionRequestHandler {
         ScopedSpan span = tracer.startScopedSpan("get_pixel_buffer");
         try {
             span.tag("omero.pixels_id", Long.toString(pixels.getId()));
-            return pixelsService.getPixelBuffer(pixels, false);
+            checkCancelled();
+            String pixelsType = pixels.getPixelsType().getValue();
+            Supplier<PixelBuffer> loader = () -> MappedPixelBuffer.wrap(
+                    pixelsService.getPixelBuffer(pixels, false),
+                    mappedFiles, pixelsType);
+            Supplier<PixelBuffer> opener = () -> pixelBufferPool == null
+                    ? loader.get()
+                    : pixelBufferPool.borrow(pixels.getId(), loader);
+            boolean readAhead = imageRegionCtx != null
+                    && imageRegionCtx.tile != null;
+            PixelBuffer pixelBuffer = CachingPixelBuffer.wrap(
+                    opener.get(), chunkCache,
+                    CachingPixelBuffer.array(pixelsService, pixels),
+                    pixelsType,
+                    readAhead ? chunkReadAhead : null, opener,
+                    chunkFetchScheduler);
+            return CancellablePixelBuffer.wrap(pixelBuffer, cancelled);
         } catch (Exception e) {
             span.error(e);
             throw e;
@@ -526,8 +933,23 @@ public class ImageRegionRequestHandler {
             planeDef.setZ(z);
 
             // Avoid asking for resolution descriptions if there is no image
-            // pyramid.  This can be *very* expensive.
-            imageRegionCtx.setResolutionLevel(renderer, pixelBuffer);
+            // pyramid.  This can be *very* expensive so when a descriptor
+            // cache is available they are only asked for once.
+            PyramidDescriptor pyramidDescriptor = null;
+            if (pyramidDescriptorService == null) {
+                imageRegionCtx.setResolutionLevel(renderer, pixelBuffer);
+            } else {
+                pyramidDescriptor = pyramidDescriptorService.get(
+                        pixels.getId(),
+                        () -> new PyramidDescriptor(pixelBuffer));
+                imageRegionCtx.setResolutionLevel(renderer, pyramidDescriptor);
+            }
+            if (imageRegionCtx.hasOutputSize()) {
+                if (pyramidDescriptor == null) {
+                    pyramidDescriptor = new PyramidDescriptor(pixelBuffer);
+                }
+                selectResolutionLevel(renderer, pyramidDescriptor);
+            }
             RegionDef regionDef = getRegionDef(pixelBuffer);
             planeDef.setRegion(regionDef);
             checkPlaneDef(pixelBuffer.getSizeX(), pixelBuffer.getSizeY(), planeDef);
@@ -565,6 +987,68 @@ public class ImageRegionRequestHandler {
         }
     }
 
+    /**
+     * Selects the resolution level to render from the requested output
+     * size: the smallest level that still meets the requested scale.  The
+     * rendered image is resampled to the exact output size afterwards.
+     * Projections are always rendered from the full resolution level.
+     * @param renderer fully initialized renderer
+     * @param pyramidDescriptor pyramid structure of the image
+     */
+    private void selectResolutionLevel(
+            Renderer renderer, PyramidDescriptor pyramidDescriptor) {
+        List<Integer> full = pyramidDescriptor.getSize(
+                pyramidDescriptor.getResolutionLevels() - 1);
+        int sizeX = full.get(0);
+        int sizeY = full.get(1);
+        RegionDef region = imageRegionCtx.region;
+        int regionWidth = sizeX;
+        int regionHeight = sizeY;
+        if (region != null) {
+            regionWidth = Math.max(1,
+                    Math.min(region.getWidth(), sizeX - region.getX()));
+            regionHeight = Math.max(1,
+                    Math.min(region.getHeight(), sizeY - region.getY()));
+        }
+        double scale =
+                imageRegionCtx.getOutputScale(regionWidth, regionHeight);
+        outputSize = new Dimension(
+                (int) Math.max(1, Math.round(regionWidth * scale)),
+                (int) Math.max(1, Math.round(regionHeight * scale)));
+        if (imageRegionCtx.projection != null) {
+            return;
+        }
+        int level = pyramidDescriptor.getResolutionLevel(scale);
+        log.debug("Selected resolution level {} for scale {}", level, scale);
+        if (level != pyramidDescriptor.getResolutionLevels() - 1) {
+            renderer.setResolutionLevel(level);
+            fullResolutionSize = new Dimension(sizeX, sizeY);
+        }
+    }
+
+    /**
+     * Translates a region of the full resolution level into the
+     * coordinates of the current resolution level.
+     * @param region region at full resolution
+     * @param sizeX width of the image at the current resolution
+     * @param sizeY height of the image at the current resolution
+     * @param fullSize size of the full resolution level
+     * @return See above.
+     */
+    static RegionDef scaleRegionDef(
+            RegionDef region, int sizeX, int sizeY, Dimension fullSize) {
+        double scaleX = (double) sizeX / fullSize.width;
+        double scaleY = (double) sizeY / fullSize.height;
+        int x = (int) Math.floor(region.getX() * scaleX);
+        int y = (int) Math.floor(region.getY() * scaleY);
+        int endX = (int) Math.ceil(
+                (region.getX() + region.getWidth()) * scaleX);
+        int endY = (int) Math.ceil(
+                (region.getY() + region.getHeight()) * scaleY);
+        return new RegionDef(x, y, Math.max(1, endX - x),
+                Math.max(1, endY - y));
+    }
+
     /**
      * Update RegionDef to fit within the image boundaries.
      * @param sizeX width of the image at the current resolution
@@ -646,10 +1130,15 @@ public class ImageRegionRequestHandler {
             regionDef.setX(imageRegionCtx.tile.getX() * tileSizeX);
             regionDef.setY(imageRegionCtx.tile.getY() * tileSizeY);
         } else if (imageRegionCtx.region != null) {
-            regionDef.setX(imageRegionCtx.region.getX());
-            regionDef.setY(imageRegionCtx.region.getY());
-            regionDef.setWidth(imageRegionCtx.region.getWidth());
-            regionDef.setHeight(imageRegionCtx.region.getHeight());
+            RegionDef region = imageRegionCtx.region;
+            if (fullResolutionSize != null) {
+                region = scaleRegionDef(
+                        region, sizeX, sizeY, fullResolutionSize);
+            }
+            regionDef.setX(region.getX());
+            regionDef.setY(region.getY());
+            regionDef.setWidth(region.getWidth());
+            regionDef.setHeight(region.getHeight());
         } else {
             regionDef.setX(0);
             regionDef.setY(0);
@@ -23,6 +23,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
 import org.slf4j.LoggerFactory;
@@ -38,10 +40,15 @@ import Glacier2.PermissionDeniedException;
 import brave.ScopedSpan;
 import brave.Tracing;
 import brave.propagation.TraceContext;
+import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.ThreadingModel;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import ome.model.core.Pixels;
 import ome.model.enums.Family;
 import ome.model.enums.RenderingModel;
 import ome.api.IScale;
@@ -50,6 +57,7 @@ import ome.io.nio.OriginalFilesService;
 import omeis.providers.re.lut.LutProvider;
 import omero.ApiUsageException;
 import omero.ServerError;
+import omero.api.ServiceFactoryPrx;
 import omero.model.Image;
 import omero.util.IceMapper;
 
@@ -61,6 +69,13 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
     public static final String RENDER_IMAGE_REGION_EVENT =
             "omero.render_image_region";
 
+    /**
+     * Prefetch renders, admitted by the HTTP verticle before being
+     * dispatched to {@link #RENDER_IMAGE_REGION_EVENT}
+     */
+    public static final String PREFETCH_IMAGE_REGION_EVENT =
+            "omero.prefetch_image_region";
+
     public static final String RENDER_THUMBNAIL_EVENT =
             "omero.render_thumbnail";
 
@@ -70,12 +85,25 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
     public static final String GET_IMAGE_DATA_EVENT =
             "omero.get_image_data";
 
+    public static final String GET_IMAGE_DATA_BATCH_EVENT =
+            "omero.get_image_data_batch";
+
     public static final String GET_HISTOGRAM_JSON_EVENT =
             "omero.get_histogram_json";
 
     public static final String GET_FILE_ANNOTATION_METADATA_EVENT =
             "omero.get_file_annotation";
 
+    /**
+     * Name of the local shared map of identifiers of requests whose client
+     * has gone away and which should be abandoned
+     */
+    public static final String CANCELLED_REQUESTS_MAP =
+            "omero.cancelled_requests";
+
+    /** Failure code for requests abandoned because the client went away */
+    public static final int CLIENT_CLOSED_REQUEST = 499;
+
     /** OMERO server host */
     private String host;
 
@@ -105,6 +133,52 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
     /** Original File Service for getting paths */
     private OriginalFilesService ioService;
 
+    /** Assembled image data keyed by entity tag */
+    private final ImageDataCache imageDataCache;
+
+    /** Cached pyramid structure keyed by pixels identifier */
+    private final PyramidDescriptorService pyramidDescriptorService;
+
+    /**
+     * Platform thread pool for encoding when running on virtual threads
+     * and for populating the images of a batch
+     */
+    private final RenderExecutor renderExecutor;
+
+    /**
+     * Platform thread pool handlers encode on or <code>null</code> if they
+     * encode on the thread handling the event
+     */
+    private RenderExecutor encodingExecutor;
+
+    /** Shares renders between identical concurrent requests */
+    private final RequestCoalescer<String, byte[]> requestCoalescer;
+
+    /** Pool of open pixel buffers */
+    private final PixelBufferPool pixelBufferPool;
+
+    /** Decoded chunk cache shared by all verticle instances */
+    private final ChunkCache chunkCache;
+
+    /** Reads chunks around requested tiles ahead of time */
+    private final ChunkReadAhead chunkReadAhead;
+
+    /** Plans prefetch renders of sequential Z or T access */
+    private final PrefetchPlanner prefetchPlanner;
+
+    /**
+     * Image regions rendered ahead of their being requested or
+     * <code>null</code> if neither prefetching nor first paint rendering
+     * is enabled
+     */
+    private RenderedTileCache renderedTileCache;
+
+    /** Memory mappings of local pixel files */
+    private final MappedFileService mappedFiles;
+
+    /** Reads the chunks a request spans concurrently */
+    private final ChunkFetchScheduler chunkFetchScheduler;
+
     /**
      * Default constructor.
      */
@@ -114,7 +188,18 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
             int maxTileLength,
             ZarrPixelsService pixelsService,
             IScale iScale,
-            OriginalFilesService ioService)
+            OriginalFilesService ioService,
+            ImageDataCache imageDataCache,
+            PyramidDescriptorService pyramidDescriptorService,
+            RenderExecutor renderExecutor,
+            RequestCoalescer<String, byte[]> requestCoalescer,
+            PixelBufferPool pixelBufferPool,
+            ChunkCache chunkCache,
+            ChunkReadAhead chunkReadAhead,
+            PrefetchPlanner prefetchPlanner,
+            RenderedTileCache renderedTileCache,
+            MappedFileService mappedFiles,
+            ChunkFetchScheduler chunkFetchScheduler)
     {
         this.compressionService = compressionService;
         this.lutProvider = lutProvider;
@@ -122,6 +207,17 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
         this.pixelsService = pixelsService;
         this.iScale = iScale;
         this.ioService = ioService;
+        this.imageDataCache = imageDataCache;
+        this.pyramidDescriptorService = pyramidDescriptorService;
+        this.renderExecutor = renderExecutor;
+        this.requestCoalescer = requestCoalescer;
+        this.pixelBufferPool = pixelBufferPool;
+        this.chunkCache = chunkCache;
+        this.chunkReadAhead = chunkReadAhead;
+        this.prefetchPlanner = prefetchPlanner;
+        this.renderedTileCache = renderedTileCache;
+        this.mappedFiles = mappedFiles;
+        this.chunkFetchScheduler = chunkFetchScheduler;
     }
 
     /* (non-Javadoc)
@@ -137,6 +233,18 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
             }
             host = omero.getString("host");
             port = omero.getInteger("port");
+            // Virtual threads are cheap and numerous but share a carrier
+            // thread per CPU; keep encoding off of them.
+            if (context.threadingModel() == ThreadingModel.VIRTUAL_THREAD) {
+                encodingExecutor = renderExecutor;
+            }
+            // Spare every render building a tile cache key otherwise
+            JsonObject firstPaint =
+                    config().getJsonObject("first-paint", new JsonObject());
+            if (!prefetchPlanner.isEnabled()
+                    && firstPaint.getInteger("max-tiles", 0) <= 0) {
+                renderedTileCache = null;
+            }
             vertx.eventBus().<String>consumer(
                     RENDER_IMAGE_REGION_EVENT, event -> {
                         renderImageRegion(event);
@@ -147,6 +255,8 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
                     GET_THUMBNAILS_EVENT, this::getThumbnails);
             vertx.eventBus().<String>consumer(
                     GET_IMAGE_DATA_EVENT, this::getImageData);
+            vertx.eventBus().<String>consumer(
+                    GET_IMAGE_DATA_BATCH_EVENT, this::getImageDataBatch);
             vertx.eventBus().<String>consumer(
                     GET_HISTOGRAM_JSON_EVENT, this::getHistogramJson);
             vertx.eventBus().<String>consumer(
@@ -185,30 +295,62 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
                 traceCtx);
         span.tag("ctx", message.body());
 
+        BooleanSupplier cancelled = () -> false;
+        if (imageRegionCtx.requestId != null) {
+            LocalMap<String, Boolean> cancelledRequests =
+                    vertx.sharedData().getLocalMap(CANCELLED_REQUESTS_MAP);
+            String requestId = imageRegionCtx.requestId;
+            cancelled = () -> cancelledRequests.containsKey(requestId);
+        }
+        if (cancelled.getAsBoolean()) {
+            // Abandoned while waiting for a worker
+            span.tag("omero.cancelled", "true");
+            span.finish();
+            message.fail(CLIENT_CLOSED_REQUEST, "Client closed request");
+            return;
+        }
         try (OmeroRequest request = new OmeroRequest(
                  host, port, imageRegionCtx.omeroSessionKey))
         {
-            if (families == null) {
-                request.execute(this::updateFamilies);
+            if (families == null || renderingModels == null) {
+                request.execute(this::updateEnumerations);
             }
-            if (renderingModels == null) {
-                request.execute(this::updateRenderingModels);
-            }
-            byte[] imageRegion = null;
-            imageRegion = request.execute(
+            ImageRegionRequestHandler requestHandler =
                     new ImageRegionRequestHandler(imageRegionCtx,
                             families,
                             renderingModels,
                             lutProvider,
                             compressionService,
                             maxTileLength,
-                            pixelsService)::renderImageRegion);
+                            pixelsService,
+                            pyramidDescriptorService,
+                            encodingExecutor);
+            requestHandler.setCancelled(cancelled);
+            requestHandler.setChunkReadAhead(chunkReadAhead);
+            requestHandler.setRequestCoalescer(requestCoalescer);
+            requestHandler.setPixelBufferPool(pixelBufferPool);
+            requestHandler.setChunkCache(chunkCache);
+            requestHandler.setMappedFiles(mappedFiles);
+            requestHandler.setChunkFetchScheduler(chunkFetchScheduler);
+            requestHandler.setRenderedTileCache(renderedTileCache);
+            byte[] imageRegion = null;
+            imageRegion = request.execute(
+                    requestHandler::renderImageRegion);
             span.finish();
             if (imageRegion == null) {
                 message.fail(
                         404, "Cannot find Image:" + imageRegionCtx.imageId);
+            } else if (imageRegionCtx.prefetch) {
+                // Rendered into the tile cache; nothing to return
+                message.reply(new byte[0]);
             } else {
                 message.reply(imageRegion);
+                Pixels pixels = requestHandler.getRenderedPixels();
+                if (prefetchPlanner.isEnabled() && pixels != null) {
+                    prefetch(prefetchPlanner.observe(
+                            new JsonObject(message.body()),
+                            pixels.getSizeZ(), pixels.getSizeT()));
+                }
             }
         } catch (PermissionDeniedException
                 | CannotCreateSessionException e) {
@@ -221,6 +363,10 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
                 "Illegal argument received while retrieving image region", e);
             span.error(e);
             message.fail(400, e.getMessage());
+        } catch (CancellationException e) {
+            log.debug("Image region request cancelled");
+            span.finish();
+            message.fail(CLIENT_CLOSED_REQUEST, "Client closed request");
         } catch (Exception e) {
             String v = "Exception while retrieving image region";
             log.error(v, e);
@@ -229,6 +375,29 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
         }
     }
 
+    /**
+     * Cancels the in flight prefetch renders of a plan and starts its new
+     * ones, which render into the tile cache, releasing their share of the
+     * session's prefetch budget as each completes or is skipped.  Prefetch
+     * renders are admitted by the HTTP verticle's admission controller,
+     * which skips them unless it is idle.
+     * @param plan prefetch plan of a successfully rendered request
+     */
+    private void prefetch(PrefetchPlanner.Plan plan) {
+        LocalMap<String, Boolean> cancelledRequests =
+                vertx.sharedData().getLocalMap(CANCELLED_REQUESTS_MAP);
+        plan.cancel.forEach(id -> cancelledRequests.put(id, true));
+        for (JsonObject prefetchCtx : plan.prefetch) {
+            vertx.eventBus().<byte[]>request(
+                    PREFETCH_IMAGE_REGION_EVENT, prefetchCtx.encode(),
+                    result -> {
+                        prefetchPlanner.completed(prefetchCtx);
+                        cancelledRequests.remove(
+                                prefetchCtx.getString("requestId"));
+                    });
+        }
+    }
+
     /**
      * Render thumbnail event handler. Responds with a <code>image/jpeg</code>
      * body on success or a failure.
@@ -258,13 +427,10 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
 
         try (OmeroRequest request = new OmeroRequest(
                  host, port, omeroSessionKey)) {
-            if (families == null) {
-                request.execute(this::updateFamilies);
+            if (families == null || renderingModels == null) {
+                request.execute(this::updateEnumerations);
             }
-            if (renderingModels == null) {
-                request.execute(this::updateRenderingModels);
-            }
-            byte[] thumbnail = request.execute(
+            ThumbnailsRequestHandler requestHandler =
                 new ThumbnailsRequestHandler(
                         thumbnailCtx,
                         families,
@@ -273,7 +439,16 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
                         compressionService,
                         maxTileLength,
                         pixelsService,
-                        iScale)::renderThumbnail);
+                        iScale,
+                        pyramidDescriptorService,
+                        encodingExecutor);
+            requestHandler.setRequestCoalescer(requestCoalescer);
+            requestHandler.setPixelBufferPool(pixelBufferPool);
+            requestHandler.setChunkCache(chunkCache);
+            requestHandler.setMappedFiles(mappedFiles);
+            requestHandler.setChunkFetchScheduler(chunkFetchScheduler);
+            byte[] thumbnail = request.execute(
+                    requestHandler::renderThumbnail);
             if (thumbnail == null) {
                 message.fail(
                         404, "Cannot find Images:" + thumbnailCtx.imageIds);
@@ -323,13 +498,10 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
 
         try (OmeroRequest request = new OmeroRequest(
                 host, port, omeroSessionKey)) {
-            if (families == null) {
-                request.execute(this::updateFamilies);
+            if (families == null || renderingModels == null) {
+                request.execute(this::updateEnumerations);
             }
-            if (renderingModels == null) {
-                request.execute(this::updateRenderingModels);
-            }
-            Map<Long, byte[]> thumbnails = request.execute(
+            ThumbnailsRequestHandler requestHandler =
                     new ThumbnailsRequestHandler(
                             thumbnailCtx,
                             families,
@@ -338,7 +510,16 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
                             compressionService,
                             maxTileLength,
                             pixelsService,
-                            iScale)::renderThumbnails);
+                            iScale,
+                            pyramidDescriptorService,
+                            encodingExecutor);
+            requestHandler.setRequestCoalescer(requestCoalescer);
+            requestHandler.setPixelBufferPool(pixelBufferPool);
+            requestHandler.setChunkCache(chunkCache);
+            requestHandler.setMappedFiles(mappedFiles);
+            requestHandler.setChunkFetchScheduler(chunkFetchScheduler);
+            Map<Long, byte[]> thumbnails = request.execute(
+                    requestHandler::renderThumbnails);
 
             if (thumbnails == null) {
                 message.fail(404, "Cannot find one or more Images");
@@ -394,15 +575,94 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
         boolean interpolate = Boolean.valueOf(omeroServer.getString("omero.client.viewer.interpolate_pixels", "true"));
         try (OmeroRequest request = new OmeroRequest(
                 host, port, omeroSessionKey)) {
-                JsonObject imgData = request.execute(
+            ImageDataRequestHandler requestHandler =
                     new ImageDataRequestHandler(imgDataCtx,
                             pixelsService,
                             init_zoom,
-                            interpolate)::getImageData);
+                            interpolate,
+                            pyramidDescriptorService);
+            requestHandler.setPixelBufferPool(pixelBufferPool);
+            String etag = request.execute(
+                    requestHandler::getImageDataVersion);
+            if (etag == null) {
+                message.fail(404, "Cannot find the Image");
+                return;
+            }
+            DeliveryOptions deliveryOptions = new DeliveryOptions()
+                    .addHeader("ETag", etag);
+            if (imgDataCtx.notModified(etag)) {
+                span.tag("not_modified", "true");
+                message.reply(null, deliveryOptions);
+                return;
+            }
+            JsonObject imgData = imageDataCache.get(etag);
+            if (imgData == null) {
+                imgData = request.execute(requestHandler::getImageData);
                 if (imgData == null) {
                     message.fail(404, "Cannot find the Image");
+                    return;
                 }
-                message.reply(imgData);
+                imageDataCache.put(etag, imgData);
+            } else {
+                log.debug("Image data cache hit: {}", etag);
+            }
+            message.reply(imgData, deliveryOptions);
+        } catch (PermissionDeniedException
+                 | CannotCreateSessionException e) {
+            String v = "Permission denied";
+            log.debug(v);
+            message.fail(403, v);
+        } catch (Exception e) {
+            String v = "Exception while getting image data";
+            log.error(v, e);
+            message.fail(500, v);
+        } finally {
+            span.finish();
+        }
+    }
+
+    /**
+     * Get image data of several images event handler.  Responds with a JSON
+     * object mapping each {@link Image} identifier which exists and the
+     * user has permissions to access to its image data.
+     * @param message JSON encoded {@link ImageDataCtx} object.
+     */
+    private void getImageDataBatch(Message<String> message) {
+        ObjectMapper mapper = new ObjectMapper();
+        ImageDataCtx imgDataCtx;
+        try {
+            imgDataCtx = mapper.readValue(message.body(), ImageDataCtx.class);
+        } catch (Exception e) {
+            String v = "Illegal image data context";
+            log.error(v + ": {}", message.body(), e);
+            message.fail(400, v);
+            return;
+        }
+        ScopedSpan span = Tracing.currentTracer().startScopedSpanWithParent(
+                "get_image_data_batch",
+                extractor().extract(imgDataCtx.traceContext).context());
+        log.debug("Get image data batch request: {}", imgDataCtx.toString());
+        JsonObject omeroServer = config().getJsonObject("omero.server");
+        int init_zoom = Integer.valueOf(omeroServer.getString("omero.client.viewer.initial_zoom_level", "0"));
+        boolean interpolate = Boolean.valueOf(omeroServer.getString("omero.client.viewer.interpolate_pixels", "true"));
+        try (OmeroRequest request = new OmeroRequest(
+                host, port, imgDataCtx.omeroSessionKey)) {
+            ImageDataRequestHandler requestHandler =
+                    new ImageDataRequestHandler(imgDataCtx,
+                            pixelsService,
+                            init_zoom,
+                            interpolate,
+                            pyramidDescriptorService);
+            requestHandler.setPixelBufferPool(pixelBufferPool);
+            requestHandler.setRenderExecutor(renderExecutor);
+            Map<Long, JsonObject> imgData = request.execute(
+                    requestHandler::getImageDataBatch);
+            if (imgData == null) {
+                message.fail(500, "Exception while getting image data");
+                return;
+            }
+            message.reply(ImageDataRequestHandler.toJson(
+                    imgDataCtx.imageIds, imgData));
         } catch (PermissionDeniedException
                  | CannotCreateSessionException e) {
             String v = "Permission denied";
@@ -447,7 +707,13 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
                         }
                         HistogramRequestHandler requestHandler =
                                 new HistogramRequestHandler(histogramCtx,
-                                        pixelsService);
+                                        pixelsService,
+                                        pyramidDescriptorService);
+                        requestHandler.setPixelBufferPool(pixelBufferPool);
+                        requestHandler.setChunkCache(chunkCache);
+                        requestHandler.setMappedFiles(mappedFiles);
+                        requestHandler.setChunkFetchScheduler(
+                                chunkFetchScheduler);
 
                         // If the histogram is in the cache, check we have permissions
                         // to access it and assign and return
@@ -542,42 +808,39 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
     }
 
     /**
-     * Updates the available enumerations from the server.
-     * @param client valid client to use to perform actions
-     */
-    private Void updateFamilies(omero.client client) {
-        families = getAllEnumerations(client, Family.class);
-        return null;
-    }
-
-    /**
-     * Updates the available enumerations from the server.
+     * Updates the available enumerations from the server.  Both enumeration
+     * classes are requested concurrently.
      * @param client valid client to use to perform actions
      */
-    private Void updateRenderingModels(omero.client client) {
-        renderingModels = getAllEnumerations(client, RenderingModel.class);
+    private Void updateEnumerations(omero.client client) {
+        ServiceFactoryPrx sf = client.getSession();
+        Future<List<Family>> families = getAllEnumerations(sf, Family.class);
+        Future<List<RenderingModel>> renderingModels =
+                getAllEnumerations(sf, RenderingModel.class);
+        try {
+            this.families = AsyncMetadataService.await(families);
+            this.renderingModels = AsyncMetadataService.await(renderingModels);
+        } catch (ServerError e) {
+            // *Should* never happen
+            throw new RuntimeException(e);
+        }
         return null;
     }
 
     /**
      * Retrieves a list of all enumerations from the server of a particular
      * class.
-     * @param client valid client to use to perform actions
+     * @param sf valid session to use to perform actions
      * @param klass enumeration class to retrieve.
      * @return See above.
      */
-    private <T> List<T> getAllEnumerations(
-            omero.client client, Class<T> klass) {
+    private <T> Future<List<T>> getAllEnumerations(
+            ServiceFactoryPrx sf, Class<T> klass) {
         Map<String, String> ctx = new HashMap<String, String>();
         ctx.put("omero.group", "-1");
-        ScopedSpan span =
-                Tracing.currentTracer().startScopedSpan("get_all_enumerations");
-        span.tag("omero.enumeration_class", klass.getName());
-        try {
-            return client
-                    .getSession()
-                    .getPixelsService()
-                    .getAllEnumerations(klass.getName(), ctx)
+        return AsyncMetadataService
+                .getAllEnumerations(sf, klass.getName(), ctx)
+                .map(enumerations -> enumerations
                     .stream()
                     .map(x -> {
                         try {
@@ -587,13 +850,6 @@ public class ImageRegionVerticle extends OmeroMsAbstractVerticle {
                             throw new RuntimeException(e);
                         }
                     })
-                    .collect(Collectors.toList());
-        } catch (ServerError e) {
-            span.error(e);
-            // *Should* never happen
-            throw new RuntimeException(e);
-        } finally {
-            span.finish();
-        }
+                    .collect(Collectors.toList()));
     }
 }
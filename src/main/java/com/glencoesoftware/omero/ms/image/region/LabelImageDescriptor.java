@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.glencoesoftware.omero.zarr.ZarrPixelBuffer;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import loci.formats.FormatTools;
+
+/**
+ * Immutable description of an NGFF label image's multiscale metadata.  Built
+ * once from an open {@link ZarrPixelBuffer} so that it can be cached and
+ * reused without further reads from the underlying storage.
+ */
+public class LabelImageDescriptor {
+
+    /** Dataset paths, full resolution first */
+    private final List<String> paths;
+
+    /** Chunk shapes (TCZYX) for each dataset, full resolution first */
+    private final int[][] chunks;
+
+    /** Label minimum or <code>null</code> if not present */
+    private final Integer min;
+
+    /** Label maximum or <code>null</code> if not present */
+    private final Integer max;
+
+    private final int sizeT;
+
+    private final int sizeC;
+
+    private final int sizeZ;
+
+    private final int sizeY;
+
+    private final int sizeX;
+
+    /** Bio-Formats pixel type string */
+    private final String type;
+
+    /**
+     * Default constructor.
+     * @param pixelBuffer open label image pixel buffer at full resolution
+     */
+    @SuppressWarnings("unchecked")
+    public LabelImageDescriptor(ZarrPixelBuffer pixelBuffer) {
+        List<String> paths = new ArrayList<String>();
+        for (Map<String, String> dataset : pixelBuffer.getDatasets()) {
+            paths.add(dataset.get("path"));
+        }
+        this.paths = Collections.unmodifiableList(paths);
+        this.chunks = pixelBuffer.getChunks();
+        Map<String, Object> rootGroupAttributes =
+                pixelBuffer.getRootGroupAttributes();
+        if (rootGroupAttributes.containsKey("minmax")) {
+            List<Integer> minMax =
+                    (List<Integer>) rootGroupAttributes.get("minmax");
+            min = minMax.get(0);
+            max = minMax.get(1);
+        } else {
+            min = null;
+            max = null;
+        }
+        sizeT = pixelBuffer.getSizeT();
+        sizeC = pixelBuffer.getSizeC();
+        sizeZ = pixelBuffer.getSizeZ();
+        sizeY = pixelBuffer.getSizeY();
+        sizeX = pixelBuffer.getSizeX();
+        type = FormatTools.getPixelTypeString(pixelBuffer.getPixelsType());
+    }
+
+    /**
+     * Number of resolution levels in the label image.
+     * @return See above.
+     */
+    public int getResolutionLevels() {
+        return paths.size();
+    }
+
+    /**
+     * Builds the label image metadata JSON as returned by the
+     * <code>get_label_image_metadata</code> endpoint.  A new object is
+     * returned on each call so that callers may add request specific
+     * properties.
+     * @return See above.
+     */
+    public JsonObject toJson() {
+        JsonObject metadata = new JsonObject();
+        JsonObject multiscalesAsJson = new JsonObject();
+        JsonArray datasetsAsJson = new JsonArray();
+        metadata.put("multiscales", multiscalesAsJson);
+        for (int i = 0; i < paths.size(); i++) {
+            JsonObject datasetAsJson = new JsonObject();
+            datasetAsJson.put("path", paths.get(i));
+            JsonArray chunksize = new JsonArray();
+            for (int chunk : chunks[i]) {
+                chunksize.add(chunk);
+            }
+            datasetAsJson.put("chunksize", chunksize);
+            datasetsAsJson.add(datasetAsJson);
+        }
+        multiscalesAsJson.put("datasets", datasetsAsJson);
+
+        if (min != null) {
+            metadata.put("min", min);
+            metadata.put("max", max);
+        }
+
+        JsonObject size = new JsonObject();
+        size.put("t", sizeT);
+        size.put("c", sizeC);
+        size.put("z", sizeZ);
+        size.put("height", sizeY);
+        size.put("width", sizeX);
+        metadata.put("size", size);
+
+        metadata.put("type", type);
+        return metadata;
+    }
+}
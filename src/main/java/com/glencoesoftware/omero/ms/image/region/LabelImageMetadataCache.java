@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * In memory cache of {@link LabelImageDescriptor} instances keyed by NGFF
+ * label image URI.  Shared between all shape mask verticle instances so that
+ * repeated metadata lookups, especially against object storage where every
+ * <code>.zattrs</code> or <code>.zarray</code> read is a remote request, do
+ * not have to touch the label image at all.
+ */
+public class LabelImageMetadataCache {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(LabelImageMetadataCache.class);
+
+    /** Descriptors keyed by label image URI */
+    private final Cache<String, LabelImageDescriptor> descriptors;
+
+    /**
+     * Default constructor.
+     * @param maximumSize maximum number of descriptors to retain
+     * @param timeToLive time in seconds after which a descriptor is reloaded
+     * from the label image, in case it has been rewritten.
+     */
+    public LabelImageMetadataCache(long maximumSize, long timeToLive) {
+        log.info("Label image metadata cache size:{} time to live:{}s",
+                maximumSize, timeToLive);
+        descriptors = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(timeToLive))
+                .build();
+    }
+
+    /**
+     * Retrieves the descriptor for a label image, loading it if absent.
+     * @param uri label image URI
+     * @param loader loads the descriptor for <code>uri</code> on a miss
+     * @return See above.
+     */
+    public LabelImageDescriptor get(
+            String uri, Function<String, LabelImageDescriptor> loader) {
+        return descriptors.get(uri, loader);
+    }
+
+    /**
+     * Discards the descriptor for a label image, if present.
+     * @param uri label image URI
+     */
+    public void invalidate(String uri) {
+        descriptors.invalidate(uri);
+    }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Per-label pixel count, bounding box and centroid accumulator for label
+ * images.  Labels are kept in a primitive open addressing hash table so
+ * that accumulating a tile does not box or allocate per pixel.  Label
+ * <code>0</code> is background and is never recorded.  Instances are not
+ * thread safe; accumulate into one instance per thread and
+ * {@link #merge(LabelStatistics)} the results.
+ */
+public class LabelStatistics {
+
+    /** Initial hash table capacity; must be a power of two */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Label values; <code>0</code> marks an empty slot */
+    private long[] labels;
+
+    private long[] counts;
+
+    private int[] minX;
+
+    private int[] minY;
+
+    private int[] minZ;
+
+    private int[] maxX;
+
+    private int[] maxY;
+
+    private int[] maxZ;
+
+    private long[] sumX;
+
+    private long[] sumY;
+
+    private long[] sumZ;
+
+    /** Number of labels recorded */
+    private int size;
+
+    /**
+     * Default constructor.
+     */
+    public LabelStatistics() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        labels = new long[capacity];
+        counts = new long[capacity];
+        minX = new int[capacity];
+        minY = new int[capacity];
+        minZ = new int[capacity];
+        maxX = new int[capacity];
+        maxY = new int[capacity];
+        maxZ = new int[capacity];
+        sumX = new long[capacity];
+        sumY = new long[capacity];
+        sumZ = new long[capacity];
+    }
+
+    /**
+     * Finds the slot for a label, claiming an empty slot if the label has
+     * not been seen before.
+     * @param label non-zero label value
+     * @return See above.
+     */
+    private int slot(long label) {
+        if ((size + 1) * 2 > labels.length) {
+            rehash();
+        }
+        int mask = labels.length - 1;
+        int i = hash(label) & mask;
+        while (labels[i] != 0) {
+            if (labels[i] == label) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        labels[i] = label;
+        minX[i] = Integer.MAX_VALUE;
+        minY[i] = Integer.MAX_VALUE;
+        minZ[i] = Integer.MAX_VALUE;
+        maxX[i] = Integer.MIN_VALUE;
+        maxY[i] = Integer.MIN_VALUE;
+        maxZ[i] = Integer.MIN_VALUE;
+        size++;
+        return i;
+    }
+
+    /**
+     * Spreads label values, which are frequently sequential, across the
+     * hash table using the 64-bit finalizer from MurmurHash3.
+     * @param label label value
+     * @return See above.
+     */
+    private static int hash(long label) {
+        long h = label;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private void rehash() {
+        long[] labels = this.labels;
+        long[] counts = this.counts;
+        int[] minX = this.minX, minY = this.minY, minZ = this.minZ;
+        int[] maxX = this.maxX, maxY = this.maxY, maxZ = this.maxZ;
+        long[] sumX = this.sumX, sumY = this.sumY, sumZ = this.sumZ;
+        allocate(labels.length * 2);
+        size = 0;
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] != 0) {
+                merge(labels[i], counts[i],
+                        minX[i], minY[i], minZ[i],
+                        maxX[i], maxY[i], maxZ[i],
+                        sumX[i], sumY[i], sumZ[i]);
+            }
+        }
+    }
+
+    private void merge(long label, long count,
+            int minX, int minY, int minZ, int maxX, int maxY, int maxZ,
+            long sumX, long sumY, long sumZ) {
+        int i = slot(label);
+        counts[i] += count;
+        this.minX[i] = Math.min(this.minX[i], minX);
+        this.minY[i] = Math.min(this.minY[i], minY);
+        this.minZ[i] = Math.min(this.minZ[i], minZ);
+        this.maxX[i] = Math.max(this.maxX[i], maxX);
+        this.maxY[i] = Math.max(this.maxY[i], maxY);
+        this.maxZ[i] = Math.max(this.maxZ[i], maxZ);
+        this.sumX[i] += sumX;
+        this.sumY[i] += sumY;
+        this.sumZ[i] += sumZ;
+    }
+
+    /**
+     * Records a single labeled pixel.
+     * @param label label value; <code>0</code> is ignored
+     * @param x X coordinate of the pixel
+     * @param y Y coordinate of the pixel
+     * @param z Z coordinate of the pixel
+     */
+    public void add(long label, int x, int y, int z) {
+        if (label == 0) {
+            return;
+        }
+        int i = slot(label);
+        counts[i]++;
+        if (x < minX[i]) minX[i] = x;
+        if (y < minY[i]) minY[i] = y;
+        if (z < minZ[i]) minZ[i] = z;
+        if (x > maxX[i]) maxX[i] = x;
+        if (y > maxY[i]) maxY[i] = y;
+        if (z > maxZ[i]) maxZ[i] = z;
+        sumX[i] += x;
+        sumY[i] += y;
+        sumZ[i] += z;
+    }
+
+    /**
+     * Records all pixels of a tile read from a label image.
+     * @param data tile data in the byte order of the label image
+     * @param bytesPerPixel size of each label value in bytes; 1, 2, 4 or 8
+     * @param signed whether or not label values are signed
+     * @param x0 X offset of the tile
+     * @param y0 Y offset of the tile
+     * @param z Z coordinate of the tile
+     * @param width width of the tile
+     * @param height height of the tile
+     */
+    public void add(ByteBuffer data, int bytesPerPixel, boolean signed,
+            int x0, int y0, int z, int width, int height) {
+        int i = 0;
+        for (int y = y0; y < y0 + height; y++) {
+            for (int x = x0; x < x0 + width; x++, i++) {
+                long label;
+                switch (bytesPerPixel) {
+                    case 1:
+                        label = signed? data.get(i) : data.get(i) & 0xFFL;
+                        break;
+                    case 2:
+                        label = signed? data.getShort(i * 2)
+                                : data.getShort(i * 2) & 0xFFFFL;
+                        break;
+                    case 4:
+                        label = signed? data.getInt(i * 4)
+                                : data.getInt(i * 4) & 0xFFFFFFFFL;
+                        break;
+                    case 8:
+                        label = data.getLong(i * 8);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(
+                                "Unsupported label byte width: "
+                                + bytesPerPixel);
+                }
+                if (label != 0) {
+                    add(label, x, y, z);
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the statistics accumulated by another instance into this one.
+     * @param other statistics to merge
+     * @return This instance.
+     */
+    public LabelStatistics merge(LabelStatistics other) {
+        for (int i = 0; i < other.labels.length; i++) {
+            if (other.labels[i] != 0) {
+                merge(other.labels[i], other.counts[i],
+                        other.minX[i], other.minY[i], other.minZ[i],
+                        other.maxX[i], other.maxY[i], other.maxZ[i],
+                        other.sumX[i], other.sumY[i], other.sumZ[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Number of distinct labels recorded.
+     * @return See above.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Pixel count of a label.
+     * @param label label value
+     * @return See above or <code>0</code> if the label has not been
+     * recorded.
+     */
+    public long getCount(long label) {
+        int i = find(label);
+        return i < 0? 0 : counts[i];
+    }
+
+    /**
+     * Builds a JSON representation of the statistics ordered by label.
+     * Bounding boxes are inclusive of their minimum and exclusive of their
+     * maximum coordinates.
+     * @return See above.
+     */
+    public JsonObject toJson() {
+        int[] order = new int[size];
+        int n = 0;
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i] != 0) {
+                order[n++] = i;
+            }
+        }
+        long[] sorted = new long[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = labels[order[i]];
+        }
+        Arrays.sort(sorted);
+        JsonArray labelsAsJson = new JsonArray();
+        for (long label : sorted) {
+            int i = find(label);
+            double count = counts[i];
+            labelsAsJson.add(new JsonObject()
+                .put("label", label)
+                .put("count", counts[i])
+                .put("bbox", new JsonObject()
+                    .put("x", minX[i])
+                    .put("y", minY[i])
+                    .put("z", minZ[i])
+                    .put("width", maxX[i] - minX[i] + 1)
+                    .put("height", maxY[i] - minY[i] + 1)
+                    .put("depth", maxZ[i] - minZ[i] + 1))
+                .put("centroid", new JsonObject()
+                    .put("x", sumX[i] / count)
+                    .put("y", sumY[i] / count)
+                    .put("z", sumZ[i] / count)));
+        }
+        return new JsonObject().put("labels", labelsAsJson);
+    }
+
+    /**
+     * Finds the slot of a recorded label.
+     * @param label label value
+     * @return See above or <code>-1</code> if the label has not been
+     * recorded.
+     */
+    private int find(long label) {
+        int mask = labels.length - 1;
+        int i = hash(label) & mask;
+        while (labels[i] != 0) {
+            if (labels[i] == label) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.vertx.core.json.JsonObject;
+import ome.io.nio.PixelBuffer;
+import ome.util.PixelData;
+
+/**
+ * Computes per-label statistics of NGFF label images by streaming the label
+ * pixel buffer chunk by chunk, accumulating chunks across a dedicated
+ * fork-join pool while the next is read.  Results are cached per label
+ * image and resolution so that the label image is read at most once per
+ * time to live; concurrent requests for the same result wait for the
+ * first.  Shared between all shape mask verticle instances.
+ */
+public class LabelStatisticsService {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(LabelStatisticsService.class);
+
+    /** Pool on which label image chunks are accumulated */
+    private final ForkJoinPool pool;
+
+    /** Maximum number of chunks accumulated concurrently */
+    private final int parallelism;
+
+    /** Statistics JSON keyed by label image URI and resolution */
+    private final AsyncCache<String, JsonObject> statistics;
+
+    /**
+     * Default constructor.
+     * @param parallelism number of label image chunks to accumulate
+     * concurrently
+     * @param maximumSize maximum number of results to retain
+     * @param timeToLive time in seconds after which results are recomputed
+     */
+    public LabelStatisticsService(
+            int parallelism, long maximumSize, long timeToLive) {
+        log.info("Label statistics parallelism:{} cache size:{} " +
+                "time to live:{}s", parallelism, maximumSize, timeToLive);
+        this.parallelism = parallelism;
+        pool = new ForkJoinPool(parallelism);
+        statistics = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(timeToLive))
+                .buildAsync();
+    }
+
+    /**
+     * Retrieves statistics for a label image, computing them on a miss.
+     * Statistics are aggregated over every Z section, channel and
+     * timepoint of the label image; pixel counts, bounding boxes and
+     * centroids of a label which appears in several channels or timepoints
+     * therefore span all of them.  NGFF label images have a single channel
+     * and, almost always, a single timepoint.  The computation runs on the
+     * calling thread, outside of the cache's internal locks.
+     * @param uri label image URI
+     * @param resolution resolution to compute statistics at;
+     * <code>0</code> is full resolution
+     * @param opener opens the label image pixel buffer; called once per
+     * computation
+     * @return See above.
+     */
+    public JsonObject getStatistics(
+            String uri, int resolution, Callable<PixelBuffer> opener) {
+        String key = uri + ":" + resolution;
+        CompletableFuture<JsonObject> future =
+                new CompletableFuture<JsonObject>();
+        CompletableFuture<JsonObject> existing =
+                statistics.asMap().putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw new UncheckedIOException((IOException) cause);
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw e;
+            }
+        }
+        try {
+            JsonObject json = compute(opener, resolution).toJson()
+                    .put("resolution", resolution);
+            future.complete(json);
+            return json;
+        } catch (IOException e) {
+            fail(key, future, e);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException | Error e) {
+            fail(key, future, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Fails a pending computation, releasing any waiters, and evicts it so
+     * that the next request retries rather than replaying the failure.
+     */
+    private void fail(String key, CompletableFuture<JsonObject> future,
+            Throwable cause) {
+        statistics.asMap().remove(key, future);
+        future.completeExceptionally(cause);
+    }
+
+    /**
+     * Computes statistics for a label image.  A single pixel buffer is
+     * opened and read one chunk at a time along the chunk grid of the
+     * resolution level, as given by {@link PixelBuffer#getTileSize()}, so
+     * that no chunk is read or decompressed more than once per plane.
+     * Each chunk is accumulated on the pool while the next is read, with at
+     * most <code>parallelism</code> chunks pending, and the results merged.
+     * @param opener opens the label image pixel buffer
+     * @param resolution resolution to compute statistics at;
+     * <code>0</code> is full resolution
+     * @return See above.
+     * @throws IOException If there is an error reading the label image.
+     */
+    protected LabelStatistics compute(
+            Callable<PixelBuffer> opener, int resolution) throws IOException {
+        try (PixelBuffer pixelBuffer = open(opener)) {
+            int resolutionLevels = pixelBuffer.getResolutionLevels();
+            if (resolution < 0 || resolution >= resolutionLevels) {
+                throw new IllegalArgumentException(
+                        "Resolution " + resolution + " outside of range " +
+                        "[0, " + resolutionLevels + ")");
+            }
+            pixelBuffer.setResolutionLevel(resolutionLevels - 1 - resolution);
+            if (pixelBuffer.isFloat()) {
+                throw new IllegalArgumentException(
+                        "Floating point label images are not supported");
+            }
+            int sizeX = pixelBuffer.getSizeX();
+            int sizeY = pixelBuffer.getSizeY();
+            Dimension chunkSize = pixelBuffer.getTileSize();
+            int chunkWidth = (int) chunkSize.getWidth();
+            int chunkHeight = (int) chunkSize.getHeight();
+            int bytesPerPixel = pixelBuffer.getByteWidth();
+            boolean signed = pixelBuffer.isSigned();
+            log.debug("Computing label statistics over {}x{} chunks",
+                    chunkWidth, chunkHeight);
+
+            LabelStatistics stats = new LabelStatistics();
+            Deque<Future<LabelStatistics>> pending =
+                    new ArrayDeque<Future<LabelStatistics>>();
+            try {
+                for (int t = 0; t < pixelBuffer.getSizeT(); t++) {
+                    for (int c = 0; c < pixelBuffer.getSizeC(); c++) {
+                        for (int z = 0; z < pixelBuffer.getSizeZ(); z++) {
+                            for (int y = 0; y < sizeY; y += chunkHeight) {
+                                int h = Math.min(chunkHeight, sizeY - y);
+                                for (int x = 0; x < sizeX; x += chunkWidth) {
+                                    int w = Math.min(chunkWidth, sizeX - x);
+                                    PixelData chunk = pixelBuffer.getTile(
+                                            z, c, t, x, y, w, h);
+                                    ByteBuffer data = chunk.getData();
+                                    int fx = x, fy = y, fz = z;
+                                    pending.add(pool.submit(() -> {
+                                        LabelStatistics chunkStats =
+                                                new LabelStatistics();
+                                        chunkStats.add(data, bytesPerPixel,
+                                                signed, fx, fy, fz, w, h);
+                                        return chunkStats;
+                                    }));
+                                    while (pending.size() > parallelism) {
+                                        stats.merge(await(pending.poll()));
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    stats.merge(await(pending.poll()));
+                }
+                return stats;
+            } finally {
+                for (Future<LabelStatistics> future : pending) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for a chunk to be accumulated.
+     * @return See above.
+     * @throws IOException If interrupted while waiting.
+     */
+    private LabelStatistics await(Future<LabelStatistics> future)
+            throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Opens a label image pixel buffer.
+     * @param opener opens a new label image pixel buffer
+     * @return See above.
+     * @throws IOException If the pixel buffer cannot be opened.
+     */
+    private PixelBuffer open(Callable<PixelBuffer> opener)
+            throws IOException {
+        try {
+            return opener.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+
+/**
+ * Process wide, bounded set of read only memory mappings of local pixel
+ * files keyed by path.  Reads from a mapping are served from the page
+ * cache without a system call or intermediate buffer per read.  Both the
+ * number of mappings and the total bytes mapped are capped; the least
+ * recently used mappings are dropped to make room.  The JDK offers no way
+ * to unmap a file, so the address space of a dropped mapping is only
+ * released once its buffers are garbage collected and the bytes mapped by
+ * the process may exceed the cap until then.  A mapping is replaced if the
+ * size or modification time of its file changes, which is checked when the
+ * file is mapped and then at most once per check interval rather than on
+ * every read.
+ */
+public class MappedFileService {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(MappedFileService.class);
+
+    private static final Counter REQUESTS = Counter.build()
+            .name("omero_ms_mapped_file_requests_total")
+            .help("Memory mapped pixel file lookups by result")
+            .labelNames("result")
+            .register();
+
+    private static final Gauge MAPPED_BYTES = Gauge.build()
+            .name("omero_ms_mapped_file_bytes")
+            .help("Bytes of pixel files memory mapped")
+            .register();
+
+    /** Maximum size of a single mapped segment */
+    static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * A read only memory mapping of a whole file, in segments of at most
+     * {@link #SEGMENT_SIZE} bytes.
+     */
+    public static class Mapping {
+
+        /** Size of the file in bytes when mapped */
+        public final long length;
+
+        /** Last modification time of the file when mapped */
+        final long lastModified;
+
+        /**
+         * Time the file was last checked for changes in nanoseconds;
+         * guarded by the service's mappings
+         */
+        long checked;
+
+        /** Mapped segments of the file, in order */
+        private final MappedByteBuffer[] segments;
+
+        Mapping(Path path, long length, long lastModified)
+                throws IOException {
+            this.length = length;
+            this.lastModified = lastModified;
+            int count = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            segments = new MappedByteBuffer[count];
+            try (FileChannel channel =
+                    FileChannel.open(path, StandardOpenOption.READ)) {
+                for (int i = 0; i < count; i++) {
+                    long position = i * SEGMENT_SIZE;
+                    segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                            position, Math.min(SEGMENT_SIZE,
+                                    length - position));
+                }
+            }
+        }
+
+        /**
+         * Copies bytes of the file.
+         * @param position position of the first byte in the file
+         * @param destination array to copy to
+         * @param offset offset in <code>destination</code> to copy to
+         * @param count number of bytes to copy
+         * @throws IndexOutOfBoundsException If the bytes are not all within
+         * the mapping.
+         */
+        public void copy(long position, byte[] destination, int offset,
+                int count) {
+            if (position < 0 || count < 0 || position + count > length) {
+                throw new IndexOutOfBoundsException(String.format(
+                        "%d bytes at %d of %d", count, position, length));
+            }
+            while (count > 0) {
+                ByteBuffer segment =
+                        segments[(int) (position / SEGMENT_SIZE)].duplicate();
+                int from = (int) (position % SEGMENT_SIZE);
+                int n = Math.min(count, segment.capacity() - from);
+                segment.position(from);
+                segment.get(destination, offset, n);
+                position += n;
+                offset += n;
+                count -= n;
+            }
+        }
+
+        /**
+         * A read only view of bytes of the file, without copying, if they
+         * lie within a single segment.
+         * @param position position of the first byte in the file
+         * @param count number of bytes
+         * @return See above or <code>null</code> if the bytes span segments
+         * or are not all within the mapping.
+         */
+        public ByteBuffer slice(long position, int count) {
+            if (position < 0 || count < 0 || position + count > length) {
+                return null;
+            }
+            int index = (int) (position / SEGMENT_SIZE);
+            int from = (int) (position % SEGMENT_SIZE);
+            if (from + (long) count > segments[index].capacity()) {
+                return null;
+            }
+            ByteBuffer view = segments[index].asReadOnlyBuffer();
+            view.position(from);
+            view.limit(from + count);
+            return view.slice();
+        }
+    }
+
+    /** Maximum total bytes mapped; <code>0</code> disables */
+    private final long maximumBytes;
+
+    /** Maximum number of mappings */
+    private final int maximumMappings;
+
+    /** Time in nanoseconds between checks of a mapped file for changes */
+    private final long checkInterval;
+
+    /** Mappings keyed by path, least recently used first */
+    private final LinkedHashMap<String, Mapping> mappings =
+            new LinkedHashMap<String, Mapping>(16, 0.75f, true);
+
+    /** Total bytes mapped */
+    private long mappedBytes;
+
+    /**
+     * Default constructor.
+     * @param maximumBytes maximum total bytes of files mapped;
+     * <code>0</code> disables memory mapping
+     * @param maximumMappings maximum number of files mapped
+     * @param checkInterval time in seconds between checks of a mapped file
+     * for changes; <code>0</code> checks on every lookup
+     */
+    public MappedFileService(
+            long maximumBytes, int maximumMappings, long checkInterval) {
+        log.info("Memory mapped pixel files:{} bytes:{} check interval:{}s",
+                maximumMappings, maximumBytes, checkInterval);
+        this.maximumBytes = maximumBytes;
+        this.maximumMappings = maximumMappings;
+        this.checkInterval = TimeUnit.SECONDS.toNanos(checkInterval);
+    }
+
+    /**
+     * Whether or not memory mapping is enabled.
+     * @return See above.
+     */
+    public boolean isEnabled() {
+        return maximumBytes > 0 && maximumMappings > 0;
+    }
+
+    /**
+     * Retrieves the mapping of a file, mapping it if absent or stale.  The
+     * file is only checked for changes once per check interval.
+     * @param path path of the file
+     * @return See above or <code>null</code> if mapping is disabled, the
+     * file cannot be mapped or is larger than the total bytes allowed.
+     */
+    public Mapping get(String path) {
+        if (!isEnabled() || path == null) {
+            return null;
+        }
+        synchronized (mappings) {
+            Mapping mapping = mappings.get(path);
+            if (mapping != null
+                    && System.nanoTime() - mapping.checked < checkInterval) {
+                REQUESTS.labels("hit").inc();
+                return mapping;
+            }
+        }
+        Path file = Paths.get(path);
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(
+                    file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            log.debug("Cannot stat {}", path, e);
+            REQUESTS.labels("unavailable").inc();
+            return null;
+        }
+        long length = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        if (!attributes.isRegularFile() || length == 0
+                || length > maximumBytes) {
+            REQUESTS.labels("unavailable").inc();
+            return null;
+        }
+        synchronized (mappings) {
+            Mapping mapping = mappings.get(path);
+            if (mapping != null && mapping.length == length
+                    && mapping.lastModified == lastModified) {
+                mapping.checked = System.nanoTime();
+                REQUESTS.labels("hit").inc();
+                return mapping;
+            }
+            remove(path);
+            try {
+                mapping = new Mapping(file, length, lastModified);
+                mapping.checked = System.nanoTime();
+            } catch (IOException e) {
+                log.warn("Failed to memory map {}", path, e);
+                REQUESTS.labels("unavailable").inc();
+                return null;
+            }
+            Iterator<Map.Entry<String, Mapping>> eldest =
+                    mappings.entrySet().iterator();
+            while (eldest.hasNext() && (mappings.size() >= maximumMappings
+                    || mappedBytes + length > maximumBytes)) {
+                mappedBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+            mappings.put(path, mapping);
+            mappedBytes += length;
+            MAPPED_BYTES.set(mappedBytes);
+            REQUESTS.labels("miss").inc();
+            return mapping;
+        }
+    }
+
+    /**
+     * Drops the mapping of a file, if present.
+     * @param path path of the file
+     */
+    public void invalidate(String path) {
+        synchronized (mappings) {
+            remove(path);
+        }
+    }
+
+    /**
+     * Number of files mapped.
+     * @return See above.
+     */
+    public int size() {
+        synchronized (mappings) {
+            return mappings.size();
+        }
+    }
+
+    /**
+     * Total bytes mapped.
+     * @return See above.
+     */
+    public long mappedBytes() {
+        synchronized (mappings) {
+            return mappedBytes;
+        }
+    }
+
+    private void remove(String path) {
+        Mapping mapping = mappings.remove(path);
+        if (mapping != null) {
+            mappedBytes -= mapping.length;
+            MAPPED_BYTES.set(mappedBytes);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+
+import ome.io.nio.PixelBuffer;
+import ome.io.nio.RomioPixelBuffer;
+import ome.util.PixelData;
+
+/**
+ * Pixel buffer decorator which reads tiles, planes and stacks of a ROMIO
+ * pixel file from a memory mapping of the file rather than through stream
+ * based file I/O.  ROMIO pixel files are uncompressed with planes stored
+ * in XYZCT order so full planes, stacks and full width tiles are returned
+ * as views of the mapping without copying, and other tiles are copied row
+ * by row straight into the destination buffer.  Requests which cannot be
+ * served from the mapping, and all other calls, are passed on unchanged.
+ */
+public class MappedPixelBuffer implements InvocationHandler {
+
+    /** Pixel buffer calls are passed on to */
+    private final PixelBuffer delegate;
+
+    /** Mappings to read through */
+    private final MappedFileService mappedFiles;
+
+    /** Path of the pixel file */
+    private final String path;
+
+    /** Pixels type of the pixel file as per {@link PixelData} */
+    private final String pixelsType;
+
+    private MappedPixelBuffer(PixelBuffer delegate,
+            MappedFileService mappedFiles, String path, String pixelsType) {
+        this.delegate = delegate;
+        this.mappedFiles = mappedFiles;
+        this.path = path;
+        this.pixelsType = pixelsType;
+    }
+
+    /**
+     * Wraps a pixel buffer.
+     * @param delegate pixel buffer to wrap
+     * @param mappedFiles mappings to read through or <code>null</code>
+     * @param pixelsType pixels type of the pixel file, for example
+     * <code>uint16</code>
+     * @return See above or <code>delegate</code> if memory mapping is
+     * disabled or <code>delegate</code> does not read a ROMIO pixel file.
+     */
+    public static PixelBuffer wrap(PixelBuffer delegate,
+            MappedFileService mappedFiles, String pixelsType) {
+        if (mappedFiles == null || !mappedFiles.isEnabled()
+                || !(delegate instanceof RomioPixelBuffer)) {
+            return delegate;
+        }
+        return wrap(delegate, mappedFiles, delegate.getPath(), pixelsType);
+    }
+
+    /**
+     * Wraps a pixel buffer reading an uncompressed XYZCT pixel file.
+     */
+    static PixelBuffer wrap(PixelBuffer delegate,
+            MappedFileService mappedFiles, String path, String pixelsType) {
+        return (PixelBuffer) Proxy.newProxyInstance(
+                PixelBuffer.class.getClassLoader(),
+                new Class<?>[] { PixelBuffer.class },
+                new MappedPixelBuffer(
+                        delegate, mappedFiles, path, pixelsType));
+    }
+
+    /**
+     * Whether or not a pixel buffer, borrowed from a pool or otherwise,
+     * reads through memory mappings.
+     * @param pixelBuffer pixel buffer to check
+     * @return See above.
+     */
+    public static boolean isMapped(PixelBuffer pixelBuffer) {
+        pixelBuffer = PixelBufferPool.unwrap(pixelBuffer);
+        return pixelBuffer != null
+                && Proxy.isProxyClass(pixelBuffer.getClass())
+                && Proxy.getInvocationHandler(pixelBuffer)
+                        instanceof MappedPixelBuffer;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable {
+        Object result = null;
+        switch (method.getName()) {
+            case "getTile":
+                result = getTile(
+                        (Integer) args[0], (Integer) args[1],
+                        (Integer) args[2], (Integer) args[3],
+                        (Integer) args[4], (Integer) args[5],
+                        (Integer) args[6], null);
+                break;
+            case "getTileDirect":
+                if (args.length == 8) {
+                    result = getTile(
+                            (Integer) args[0], (Integer) args[1],
+                            (Integer) args[2], (Integer) args[3],
+                            (Integer) args[4], (Integer) args[5],
+                            (Integer) args[6], (byte[]) args[7]);
+                }
+                break;
+            case "getPlane":
+                if (args.length == 3) {
+                    result = getTile(
+                            (Integer) args[0], (Integer) args[1],
+                            (Integer) args[2], 0, 0,
+                            delegate.getSizeX(), delegate.getSizeY(), null);
+                }
+                break;
+            case "getPlaneDirect":
+                if (args.length == 4) {
+                    result = getTile(
+                            (Integer) args[0], (Integer) args[1],
+                            (Integer) args[2], 0, 0,
+                            delegate.getSizeX(), delegate.getSizeY(),
+                            (byte[]) args[3]);
+                }
+                break;
+            case "getStack":
+                if (args.length == 2) {
+                    result = getStack((Integer) args[0], (Integer) args[1]);
+                }
+                break;
+        }
+        if (result != null) {
+            return result;
+        }
+        try {
+            return method.invoke(delegate, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Offset of a plane in the pixel file.
+     * @return See above or <code>-1</code> if out of bounds.
+     */
+    private long planeOffset(int z, int c, int t) {
+        int sizeZ = delegate.getSizeZ();
+        int sizeC = delegate.getSizeC();
+        if (z < 0 || c < 0 || t < 0 || z >= sizeZ || c >= sizeC
+                || t >= delegate.getSizeT()) {
+            return -1;
+        }
+        return (((long) t * sizeC + c) * sizeZ + z) * planeSize();
+    }
+
+    private long planeSize() {
+        return (long) delegate.getSizeX() * delegate.getSizeY()
+                * delegate.getByteWidth();
+    }
+
+    /**
+     * Reads a stack, which is contiguous in the pixel file.
+     * @return See above or <code>null</code> if the stack cannot be read
+     * from the mapping.
+     */
+    private PixelData getStack(int c, int t) {
+        long offset = planeOffset(0, c, t);
+        long length = planeSize() * delegate.getSizeZ();
+        if (offset < 0 || length > Integer.MAX_VALUE) {
+            return null;
+        }
+        MappedFileService.Mapping mapping = mappedFiles.get(path);
+        if (mapping == null) {
+            return null;
+        }
+        return toPixelData(mapping.slice(offset, (int) length));
+    }
+
+    /**
+     * Reads a tile, into <code>buffer</code> if provided.
+     * @return <code>buffer</code>, the tile or <code>null</code> if the
+     * tile cannot be read from the mapping, in which case the pixel buffer
+     * validates and reads it itself.
+     */
+    private Object getTile(int z, int c, int t, int x, int y, int w, int h,
+            byte[] buffer) {
+        int sizeX = delegate.getSizeX();
+        int byteWidth = delegate.getByteWidth();
+        long planeOffset = planeOffset(z, c, t);
+        long length = (long) w * h * byteWidth;
+        if (planeOffset < 0 || x < 0 || y < 0 || w <= 0 || h <= 0
+                || x + w > sizeX || y + h > delegate.getSizeY()
+                || length > Integer.MAX_VALUE
+                || (buffer != null && buffer.length < length)) {
+            return null;
+        }
+        MappedFileService.Mapping mapping = mappedFiles.get(path);
+        if (mapping == null) {
+            return null;
+        }
+        long offset = planeOffset + ((long) y * sizeX + x) * byteWidth;
+        if (buffer == null && w == sizeX) {
+            // Whole rows are contiguous
+            ByteBuffer view = mapping.slice(offset, (int) length);
+            if (view != null) {
+                return toPixelData(view);
+            }
+        }
+        if (offset + length > mapping.length) {
+            // Pixel file not yet fully written
+            return null;
+        }
+        byte[] tile = buffer == null ? new byte[(int) length] : buffer;
+        int rowLength = w * byteWidth;
+        for (int row = 0; row < h; row++) {
+            mapping.copy(offset + (long) row * sizeX * byteWidth,
+                    tile, row * rowLength, rowLength);
+        }
+        if (buffer != null) {
+            return buffer;
+        }
+        return toPixelData(ByteBuffer.wrap(tile));
+    }
+
+    private PixelData toPixelData(ByteBuffer data) {
+        if (data == null) {
+            return null;
+        }
+        // ROMIO pixel files are big endian, the default of PixelData
+        return new PixelData(pixelsType, data);
+    }
+}
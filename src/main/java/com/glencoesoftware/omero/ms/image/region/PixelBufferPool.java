@@ -0,0 +1,463 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import ome.io.nio.PixelBuffer;
+
+/**
+ * Pool of open pixel buffers keyed by pixels identifier.  Opening a pixel
+ * buffer deserializes a memo file and initializes a reader for Bio-Formats
+ * backed images, or reads the array metadata of every resolution level for
+ * NGFF images, so consecutive requests for the same image borrow an already
+ * open handle instead.
+ * <p>
+ * Borrowers receive a pixel buffer of their own which is returned to the
+ * pool when closed.  Each borrower has its own resolution level, starting
+ * at the default, full resolution level, which is applied to the pooled
+ * handle before every call.  A borrow is given an idle handle where one is
+ * available and a newly opened handle while the pool has capacity; only
+ * once the maximum number of open handles is reached are handles shared
+ * between concurrent borrowers, with calls to a shared handle serialized.
+ * Idle handles are closed least recently used first when capacity is
+ * required and once they have been idle for the configured time.
+ * </p>
+ */
+public class PixelBufferPool {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(PixelBufferPool.class);
+
+    private static final Gauge OPEN = Gauge.build()
+            .name("omero_ms_pixel_buffer_pool_open")
+            .help("Pixel buffers held open by the pool")
+            .register();
+
+    private static final Counter BORROWS = Counter.build()
+            .name("omero_ms_pixel_buffer_pool_borrows_total")
+            .help("Pixel buffers borrowed from the pool by outcome")
+            .labelNames("result")
+            .register();
+
+    /** An open pixel buffer and its borrowers */
+    private static class Handle {
+
+        /** Pixels identifier */
+        final long pixelsId;
+
+        /** Open pixel buffer */
+        final PixelBuffer pixelBuffer;
+
+        /**
+         * Resolution level of the pixel buffer when opened or
+         * <code>null</code> if the pixel buffer does not support resolution
+         * levels
+         */
+        final Integer defaultResolutionLevel;
+
+        /** Resolution level the pixel buffer is currently set to */
+        Integer resolutionLevel;
+
+        /** Number of outstanding borrows */
+        int references;
+
+        /** Time the last borrow was returned in nanoseconds */
+        long lastReleased;
+
+        /** Whether or not to close once the last borrow is returned */
+        boolean retired;
+
+        Handle(long pixelsId, PixelBuffer pixelBuffer) {
+            this.pixelsId = pixelsId;
+            this.pixelBuffer = pixelBuffer;
+            Integer level = null;
+            try {
+                level = pixelBuffer.getResolutionLevel();
+            } catch (UnsupportedOperationException e) {
+                // Single resolution pixel buffer
+            }
+            defaultResolutionLevel = level;
+            resolutionLevel = level;
+        }
+    }
+
+    /** Pixel buffer handed to a single borrower */
+    private class Borrow implements InvocationHandler {
+
+        /** Pooled handle calls are passed on to */
+        private final Handle handle;
+
+        /** Resolution level of this borrow */
+        private Integer resolutionLevel;
+
+        /** Whether or not this borrow has been returned */
+        private boolean closed;
+
+        Borrow(Handle handle) {
+            this.handle = handle;
+            resolutionLevel = handle.defaultResolutionLevel;
+        }
+
+        /* (non-Javadoc)
+         * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object, java.lang.reflect.Method, java.lang.Object[])
+         */
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+            String name = method.getName();
+            if (method.getDeclaringClass() == Object.class) {
+                switch (name) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return "Pooled " + handle.pixelBuffer.toString();
+                }
+            }
+            synchronized (this) {
+                if (name.equals("close")) {
+                    if (!closed) {
+                        closed = true;
+                        release(handle);
+                    }
+                    return null;
+                }
+                if (closed) {
+                    throw new IllegalStateException(
+                            "Pixel buffer returned to the pool");
+                }
+            }
+            synchronized (handle) {
+                if (name.equals("setResolutionLevel")) {
+                    // Validated by the pixel buffer itself
+                    setResolutionLevel((Integer) args[0]);
+                    resolutionLevel = (Integer) args[0];
+                    return null;
+                }
+                setResolutionLevel(resolutionLevel);
+                try {
+                    return method.invoke(handle.pixelBuffer, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }
+        }
+
+        private void setResolutionLevel(Integer level) {
+            if (level != null && !level.equals(handle.resolutionLevel)) {
+                handle.pixelBuffer.setResolutionLevel(level);
+                handle.resolutionLevel = level;
+            }
+        }
+    }
+
+    /** Maximum number of open handles; <code>0</code> disables pooling */
+    private final int maximumSize;
+
+    /** Time in nanoseconds after which an idle handle is closed */
+    private final long idleTimeout;
+
+    /** Open handles keyed by pixels identifier */
+    private final Map<Long, List<Handle>> handles =
+            new HashMap<Long, List<Handle>>();
+
+    /** Idle handles, least recently used first */
+    private final LinkedHashSet<Handle> idle = new LinkedHashSet<Handle>();
+
+    /** Number of open handles, including those being opened */
+    private int size;
+
+    /**
+     * Default constructor.
+     * @param maximumSize maximum number of pixel buffers to hold open;
+     * <code>0</code> disables pooling
+     * @param idleTimeout time in seconds after which an idle pixel buffer
+     * is closed
+     */
+    public PixelBufferPool(int maximumSize, long idleTimeout) {
+        log.info("Pixel buffer pool size:{} idle timeout:{}s",
+                maximumSize, idleTimeout);
+        this.maximumSize = maximumSize;
+        this.idleTimeout = TimeUnit.SECONDS.toNanos(idleTimeout);
+    }
+
+    /**
+     * Borrows a pixel buffer from the pool, opening one if required.  The
+     * pixel buffer must be closed to return it to the pool.
+     * @param pixelsId pixels identifier
+     * @param opener opens a pixel buffer for the pixels set
+     * @return See above.
+     */
+    public PixelBuffer borrow(long pixelsId, Supplier<PixelBuffer> opener) {
+        if (maximumSize <= 0) {
+            return opener.get();
+        }
+        List<Handle> toClose = new ArrayList<Handle>();
+        Handle handle = null;
+        synchronized (this) {
+            expire(toClose);
+            List<Handle> open = handles.get(pixelsId);
+            if (open != null) {
+                for (Handle candidate : open) {
+                    if (candidate.references == 0) {
+                        handle = candidate;
+                        break;
+                    }
+                }
+                if (handle != null) {
+                    idle.remove(handle);
+                    BORROWS.labels("idle").inc();
+                } else if (size >= maximumSize && !evict(toClose)) {
+                    // Everything is in use; share the least used handle
+                    for (Handle candidate : open) {
+                        if (handle == null
+                                || candidate.references < handle.references) {
+                            handle = candidate;
+                        }
+                    }
+                    BORROWS.labels("shared").inc();
+                }
+            } else if (size >= maximumSize) {
+                // Temporarily exceed capacity rather than block if
+                // everything is in use
+                evict(toClose);
+            }
+            if (handle != null) {
+                handle.references++;
+            } else {
+                size++;
+            }
+        }
+        close(toClose);
+        if (handle == null) {
+            handle = open(pixelsId, opener);
+        }
+        return (PixelBuffer) Proxy.newProxyInstance(
+                PixelBuffer.class.getClassLoader(),
+                new Class<?>[] { PixelBuffer.class },
+                new Borrow(handle));
+    }
+
+    /**
+     * Retrieves the pooled pixel buffer a borrowed pixel buffer passes calls
+     * on to.
+     * @param pixelBuffer pixel buffer, borrowed or otherwise
+     * @return See above or <code>pixelBuffer</code> if it was not borrowed
+     * from a pool.
+     */
+    static PixelBuffer unwrap(PixelBuffer pixelBuffer) {
+        if (pixelBuffer != null
+                && Proxy.isProxyClass(pixelBuffer.getClass())) {
+            InvocationHandler handler =
+                    Proxy.getInvocationHandler(pixelBuffer);
+            if (handler instanceof Borrow) {
+                return ((Borrow) handler).handle.pixelBuffer;
+            }
+        }
+        return pixelBuffer;
+    }
+
+    /**
+     * Opens a pixel buffer for which capacity has been reserved and adds it
+     * to the pool, borrowed.
+     */
+    private Handle open(long pixelsId, Supplier<PixelBuffer> opener) {
+        PixelBuffer pixelBuffer;
+        try {
+            pixelBuffer = opener.get();
+        } catch (RuntimeException | Error e) {
+            synchronized (this) {
+                size--;
+            }
+            throw e;
+        }
+        Handle handle = new Handle(pixelsId, pixelBuffer);
+        handle.references = 1;
+        synchronized (this) {
+            handles.computeIfAbsent(
+                    pixelsId, k -> new ArrayList<Handle>()).add(handle);
+        }
+        BORROWS.labels("opened").inc();
+        OPEN.inc();
+        return handle;
+    }
+
+    /**
+     * Returns a borrowed handle to the pool, closing it if the pool is over
+     * capacity or the handle has been retired.
+     */
+    private void release(Handle handle) {
+        synchronized (this) {
+            handle.references--;
+            if (handle.references > 0) {
+                return;
+            }
+            handle.lastReleased = System.nanoTime();
+            if (!handle.retired) {
+                if (size <= maximumSize) {
+                    idle.add(handle);
+                    return;
+                }
+                remove(handle);
+            }
+        }
+        close(handle);
+    }
+
+    /**
+     * Removes the least recently used idle handle from the pool, if any.
+     * Must be called holding the pool's lock.
+     * @return Whether or not a handle was removed.
+     */
+    private boolean evict(List<Handle> toClose) {
+        Iterator<Handle> i = idle.iterator();
+        if (!i.hasNext()) {
+            return false;
+        }
+        Handle handle = i.next();
+        i.remove();
+        remove(handle);
+        toClose.add(handle);
+        return true;
+    }
+
+    /**
+     * Removes handles which have been idle for longer than the idle
+     * timeout from the pool.  Must be called holding the pool's lock.
+     */
+    private void expire(List<Handle> toClose) {
+        long now = System.nanoTime();
+        Iterator<Handle> i = idle.iterator();
+        while (i.hasNext()) {
+            Handle handle = i.next();
+            if (now - handle.lastReleased < idleTimeout) {
+                break;
+            }
+            i.remove();
+            remove(handle);
+            toClose.add(handle);
+        }
+    }
+
+    /**
+     * Removes a handle from the pool.  Must be called holding the pool's
+     * lock.
+     */
+    private void remove(Handle handle) {
+        List<Handle> open = handles.get(handle.pixelsId);
+        if (open != null && open.remove(handle) && open.isEmpty()) {
+            handles.remove(handle.pixelsId);
+        }
+        size--;
+    }
+
+    private void close(List<Handle> toClose) {
+        for (Handle handle : toClose) {
+            close(handle);
+        }
+    }
+
+    private void close(Handle handle) {
+        OPEN.dec();
+        try {
+            handle.pixelBuffer.close();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to close pixel buffer for Pixels:{}",
+                    handle.pixelsId, e);
+        }
+    }
+
+    /**
+     * Discards the pooled pixel buffers for a pixels set, for example if
+     * its pyramid has been regenerated.  Borrowed pixel buffers are closed
+     * once returned.
+     * @param pixelsId pixels identifier
+     */
+    public void invalidate(long pixelsId) {
+        List<Handle> toClose = new ArrayList<Handle>();
+        synchronized (this) {
+            List<Handle> open = handles.get(pixelsId);
+            if (open == null) {
+                return;
+            }
+            for (Handle handle : new ArrayList<Handle>(open)) {
+                retire(handle, toClose);
+            }
+        }
+        close(toClose);
+    }
+
+    /**
+     * Closes all idle pixel buffers; borrowed pixel buffers are closed once
+     * returned.
+     */
+    public void shutdown() {
+        List<Handle> toClose = new ArrayList<Handle>();
+        synchronized (this) {
+            for (List<Handle> open : new ArrayList<List<Handle>>(
+                    handles.values())) {
+                for (Handle handle : new ArrayList<Handle>(open)) {
+                    retire(handle, toClose);
+                }
+            }
+        }
+        close(toClose);
+    }
+
+    /**
+     * Removes a handle from the pool, closing it immediately if idle or
+     * once the last borrow is returned otherwise.  Must be called holding
+     * the pool's lock.
+     */
+    private void retire(Handle handle, List<Handle> toClose) {
+        handle.retired = true;
+        remove(handle);
+        if (handle.references == 0) {
+            idle.remove(handle);
+            toClose.add(handle);
+        }
+    }
+
+    /**
+     * Number of open pixel buffers.
+     * @return See above.
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
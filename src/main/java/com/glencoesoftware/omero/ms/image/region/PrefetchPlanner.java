@@ -0,0 +1,317 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.prometheus.client.Counter;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Detects sequential Z or T access, as made by a user scrubbing through a
+ * stack or playing a time-lapse, in the stream of image region requests of
+ * each OMERO session and plans prefetch renders of the next few planes of
+ * the same tile.  The number of prefetch renders in flight is bounded per
+ * session and those in flight are cancelled once the pattern breaks.
+ * Shared between all image region verticle instances.
+ */
+public class PrefetchPlanner {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(PrefetchPlanner.class);
+
+    private static final Counter PREFETCHES = Counter.build()
+            .name("omero_ms_prefetch_total")
+            .help("Prefetch renders by outcome")
+            .labelNames("result")
+            .register();
+
+    /** Maximum number of sequences tracked per session */
+    private static final int MAX_SEQUENCES = 64;
+
+    /**
+     * Prefetch renders to start and in flight prefetch renders to cancel in
+     * response to a request.
+     */
+    public static class Plan {
+
+        /** Empty plan */
+        static final Plan NONE = new Plan(
+                Collections.<JsonObject>emptyList(),
+                Collections.<String>emptyList());
+
+        /** JSON encoded {@link ImageRegionCtx} of each prefetch render */
+        public final List<JsonObject> prefetch;
+
+        /** Request identifiers of the prefetch renders to cancel */
+        public final List<String> cancel;
+
+        Plan(List<JsonObject> prefetch, List<String> cancel) {
+            this.prefetch = prefetch;
+            this.cancel = cancel;
+        }
+    }
+
+    /** Requests for a single tile of an image differing only in Z or T */
+    private static class Sequence {
+
+        /** Z index of the last request */
+        int z;
+
+        /** T index of the last request */
+        int t;
+
+        /** Dimension of the current run; <code>z</code> or <code>t</code> */
+        char dimension;
+
+        /** Direction of the current run; <code>-1</code> or <code>1</code> */
+        int direction;
+
+        /** Number of consecutive sequential steps */
+        int run;
+
+        /** Planes prefetched during the current run as <code>z:t</code> */
+        final Set<String> prefetched = new HashSet<String>();
+
+        /** Request identifiers of in flight prefetch renders */
+        final Set<String> inFlight = new HashSet<String>();
+
+        Sequence(int z, int t) {
+            this.z = z;
+            this.t = t;
+        }
+    }
+
+    /** Sequences of a single session */
+    private static class Session {
+
+        /** Sequences keyed by signature, least recently used first */
+        final Map<String, Sequence> sequences =
+                new LinkedHashMap<String, Sequence>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(
+                            Map.Entry<String, Sequence> eldest) {
+                        return size() > MAX_SEQUENCES;
+                    }
+                };
+
+        /** Request identifiers of in flight prefetch renders */
+        final Set<String> inFlight = new HashSet<String>();
+    }
+
+    /** Number of planes to prefetch ahead; <code>0</code> disables */
+    private final int depth;
+
+    /** Maximum number of in flight prefetch renders per session */
+    private final int budget;
+
+    /** Sessions keyed by OMERO session key */
+    private final Cache<String, Session> sessions;
+
+    /**
+     * Default constructor.
+     * @param depth number of planes to prefetch ahead of a sequential
+     * request; <code>0</code> disables prefetching
+     * @param budget maximum number of in flight prefetch renders per
+     * session
+     * @param timeToLive time in seconds after which an idle session's
+     * access pattern is forgotten
+     */
+    public PrefetchPlanner(int depth, int budget, long timeToLive) {
+        log.info("Prefetch depth:{} budget:{} time to live:{}s",
+                depth, budget, timeToLive);
+        this.depth = depth;
+        this.budget = budget;
+        sessions = Caffeine.newBuilder()
+                .maximumSize(10000)
+                .expireAfterAccess(Duration.ofSeconds(timeToLive))
+                .build();
+    }
+
+    /**
+     * Whether or not prefetching is enabled.
+     * @return See above.
+     */
+    public boolean isEnabled() {
+        return depth > 0 && budget > 0;
+    }
+
+    /**
+     * Records a successfully rendered image region request and plans
+     * prefetch renders if it continues a sequential run through Z or T.
+     * @param imageRegionCtx JSON encoded {@link ImageRegionCtx} of the
+     * request
+     * @param sizeZ number of Z sections of the image; no prefetch renders
+     * are planned beyond the last
+     * @param sizeT number of timepoints of the image; no prefetch renders
+     * are planned beyond the last
+     * @return See above.
+     */
+    public Plan observe(JsonObject imageRegionCtx, int sizeZ, int sizeT) {
+        Integer z = imageRegionCtx.getInteger("z");
+        Integer t = imageRegionCtx.getInteger("t");
+        String sessionKey = imageRegionCtx.getString("omeroSessionKey");
+        if (!isEnabled() || z == null || t == null || sessionKey == null
+                || imageRegionCtx.getBoolean("prefetch", false)) {
+            return Plan.NONE;
+        }
+        String signature = signature(imageRegionCtx);
+        Session session = sessions.get(sessionKey, k -> new Session());
+        synchronized (session) {
+            Sequence sequence = session.sequences.get(signature);
+            if (sequence == null) {
+                session.sequences.put(signature, new Sequence(z, t));
+                return Plan.NONE;
+            }
+            int dz = z - sequence.z;
+            int dt = t - sequence.t;
+            if (dz == 0 && dt == 0) {
+                // Repeated request; neither continues nor breaks the run
+                return Plan.NONE;
+            }
+            char dimension = 0;
+            int direction = 0;
+            if (Math.abs(dz) == 1 && dt == 0) {
+                dimension = 'z';
+                direction = dz;
+            } else if (Math.abs(dt) == 1 && dz == 0) {
+                dimension = 't';
+                direction = dt;
+            }
+            sequence.z = z;
+            sequence.t = t;
+            List<String> cancel = new ArrayList<String>();
+            if (dimension == 0 || dimension != sequence.dimension
+                    || direction != sequence.direction) {
+                // The pattern has broken or changed direction
+                cancel.addAll(sequence.inFlight);
+                session.inFlight.removeAll(sequence.inFlight);
+                sequence.inFlight.clear();
+                sequence.prefetched.clear();
+                sequence.dimension = dimension;
+                sequence.direction = direction;
+                sequence.run = dimension == 0 ? 0 : 1;
+                PREFETCHES.labels("cancelled").inc(cancel.size());
+            } else {
+                sequence.run++;
+            }
+            List<JsonObject> prefetch = new ArrayList<JsonObject>();
+            if (sequence.run > 0) {
+                for (int i = 1; i <= depth; i++) {
+                    int nextZ = dimension == 'z' ? z + direction * i : z;
+                    int nextT = dimension == 't' ? t + direction * i : t;
+                    if (nextZ < 0 || nextT < 0
+                            || nextZ >= sizeZ || nextT >= sizeT) {
+                        // Past either end of the run's dimension
+                        break;
+                    }
+                    if (!sequence.prefetched.add(nextZ + ":" + nextT)) {
+                        continue;
+                    }
+                    if (session.inFlight.size() >= budget) {
+                        sequence.prefetched.remove(nextZ + ":" + nextT);
+                        PREFETCHES.labels("over_budget").inc();
+                        break;
+                    }
+                    String requestId = UUID.randomUUID().toString();
+                    sequence.inFlight.add(requestId);
+                    session.inFlight.add(requestId);
+                    prefetch.add(imageRegionCtx.copy()
+                            .put("z", nextZ)
+                            .put("t", nextT)
+                            .put("prefetch", true)
+                            .put("requestId", requestId));
+                    PREFETCHES.labels("started").inc();
+                }
+            }
+            if (prefetch.isEmpty() && cancel.isEmpty()) {
+                return Plan.NONE;
+            }
+            return new Plan(prefetch, cancel);
+        }
+    }
+
+    /**
+     * Records the completion of a prefetch render, successful or not,
+     * releasing its share of the session's budget.
+     * @param prefetchCtx JSON encoded {@link ImageRegionCtx} of the
+     * prefetch render as planned by
+     * {@link #observe(JsonObject, int, int)}
+     */
+    public void completed(JsonObject prefetchCtx) {
+        Session session = sessions.getIfPresent(
+                prefetchCtx.getString("omeroSessionKey"));
+        if (session == null) {
+            return;
+        }
+        String requestId = prefetchCtx.getString("requestId");
+        synchronized (session) {
+            session.inFlight.remove(requestId);
+            Sequence sequence =
+                    session.sequences.get(signature(prefetchCtx));
+            if (sequence != null) {
+                sequence.inFlight.remove(requestId);
+            }
+        }
+    }
+
+    /**
+     * Number of in flight prefetch renders of a session.
+     * @param sessionKey OMERO session key
+     * @return See above.
+     */
+    public int inFlight(String sessionKey) {
+        Session session = sessions.getIfPresent(sessionKey);
+        if (session == null) {
+            return 0;
+        }
+        synchronized (session) {
+            return session.inFlight.size();
+        }
+    }
+
+    /**
+     * Identifies the tile of an image a request is for, regardless of its Z
+     * and T indexes and who made it.
+     */
+    private String signature(JsonObject imageRegionCtx) {
+        JsonObject signature = imageRegionCtx.copy();
+        signature.remove("z");
+        signature.remove("t");
+        signature.remove("omeroSessionKey");
+        signature.remove("traceContext");
+        signature.remove("requestId");
+        signature.remove("prefetch");
+        return signature.encode();
+    }
+}
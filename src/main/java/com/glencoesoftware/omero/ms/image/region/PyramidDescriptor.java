@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ome.io.nio.PixelBuffer;
+
+/**
+ * Immutable snapshot of the pyramid structure of a pixel buffer: the number
+ * of resolution levels, the tile size and the size of each resolution level.
+ * Descriptors are cheap to retain and let callers select a resolution level
+ * without opening a pixel buffer, which for Bio-Formats backed images means
+ * deserializing a memo file and for NGFF images reading the metadata of
+ * every resolution level.
+ */
+public class PyramidDescriptor {
+
+    /** Number of resolution levels */
+    private final int resolutionLevels;
+
+    /** Tile size of the full resolution level */
+    private final Dimension tileSize;
+
+    /**
+     * Size of each resolution level as <code>[sizeX, sizeY]</code>; the
+     * first description is the full resolution level
+     */
+    private final List<List<Integer>> resolutionDescriptions;
+
+    /**
+     * Creates a descriptor from a pixel buffer at its default, full
+     * resolution level.  Resolution descriptions are only requested from
+     * pixel buffers that have a pyramid.
+     * @param pixelBuffer pixel buffer to describe
+     */
+    public PyramidDescriptor(PixelBuffer pixelBuffer) {
+        resolutionLevels = pixelBuffer.getResolutionLevels();
+        Dimension tileSize = pixelBuffer.getTileSize();
+        this.tileSize = tileSize == null? null : new Dimension(tileSize);
+        List<List<Integer>> descriptions = new ArrayList<List<Integer>>();
+        if (resolutionLevels > 1) {
+            for (List<Integer> description
+                    : pixelBuffer.getResolutionDescriptions()) {
+                descriptions.add(Collections.unmodifiableList(
+                        new ArrayList<Integer>(description)));
+            }
+        } else {
+            descriptions.add(Collections.unmodifiableList(Arrays.asList(
+                    pixelBuffer.getSizeX(), pixelBuffer.getSizeY())));
+        }
+        resolutionDescriptions = Collections.unmodifiableList(descriptions);
+    }
+
+    /**
+     * Number of resolution levels.
+     * @return See above.
+     */
+    public int getResolutionLevels() {
+        return resolutionLevels;
+    }
+
+    /**
+     * Tile size of the full resolution level.
+     * @return A copy of the tile size.
+     */
+    public Dimension getTileSize() {
+        return tileSize == null? null : new Dimension(tileSize);
+    }
+
+    /**
+     * Size of each resolution level as <code>[sizeX, sizeY]</code> in the
+     * same order as {@link PixelBuffer#getResolutionDescriptions()}; the
+     * first description is the full resolution level.
+     * @return See above.
+     */
+    public List<List<Integer>> getResolutionDescriptions() {
+        return resolutionDescriptions;
+    }
+
+    /**
+     * Size of a resolution level.
+     * @param level resolution level as passed to
+     * {@link PixelBuffer#setResolutionLevel(int)}; <code>0</code> is the
+     * smallest resolution level
+     * @return Size as <code>[sizeX, sizeY]</code>.
+     */
+    public List<Integer> getSize(int level) {
+        return resolutionDescriptions.get(resolutionLevels - 1 - level);
+    }
+
+    /**
+     * Selects the smallest resolution level that is still at least as large
+     * as the full resolution level scaled by a factor, so that an image
+     * rendered at a reduced size reads as little pixel data as possible.
+     * @param scale scale relative to the full resolution level
+     * @return Resolution level as passed to
+     * {@link PixelBuffer#setResolutionLevel(int)}.
+     */
+    public int getResolutionLevel(double scale) {
+        List<Integer> full = resolutionDescriptions.get(0);
+        long minimumX = Math.round(full.get(0) * scale);
+        long minimumY = Math.round(full.get(1) * scale);
+        for (int level = 0; level < resolutionLevels - 1; level++) {
+            List<Integer> size = getSize(level);
+            if (size.get(0) >= minimumX && size.get(1) >= minimumY) {
+                return level;
+            }
+        }
+        return resolutionLevels - 1;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import brave.ScopedSpan;
+import brave.Tracing;
+
+/**
+ * In memory cache of {@link PyramidDescriptor} instances keyed by pixels
+ * identifier.  Descriptors are populated lazily, the first time a pixel
+ * buffer for a pixels set is opened or, for callers that would otherwise
+ * only open a pixel buffer to describe it, by the supplied loader.  Shared
+ * between all image region verticle instances.
+ */
+public class PyramidDescriptorService {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(PyramidDescriptorService.class);
+
+    /** Descriptors keyed by pixels identifier */
+    private final Cache<Long, PyramidDescriptor> descriptors;
+
+    /**
+     * Default constructor.
+     * @param maximumSize maximum number of descriptors to retain
+     * @param timeToLive time in seconds after which a descriptor is reloaded,
+     * in case the underlying pyramid has been regenerated or rewritten.
+     */
+    public PyramidDescriptorService(long maximumSize, long timeToLive) {
+        log.info("Pyramid descriptor cache size:{} time to live:{}s",
+                maximumSize, timeToLive);
+        descriptors = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(Duration.ofSeconds(timeToLive))
+                .build();
+    }
+
+    /**
+     * Retrieves the descriptor for a pixels set, loading it if absent.
+     * @param pixelsId pixels identifier
+     * @param loader describes the pixels set on a miss
+     * @return See above.
+     */
+    public PyramidDescriptor get(
+            long pixelsId, Supplier<PyramidDescriptor> loader) {
+        PyramidDescriptor descriptor = descriptors.getIfPresent(pixelsId);
+        if (descriptor != null) {
+            return descriptor;
+        }
+        ScopedSpan span = Tracing.currentTracer()
+                .startScopedSpan("load_pyramid_descriptor");
+        span.tag("omero.pixels_id", Long.toString(pixelsId));
+        try {
+            return descriptors.get(pixelsId, key -> loader.get());
+        } catch (RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            span.finish();
+        }
+    }
+
+    /**
+     * Discards the descriptor for a pixels set, if present.
+     * @param pixelsId pixels identifier
+     */
+    public void invalidate(long pixelsId) {
+        descriptors.invalidate(pixelsId);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+import brave.Tracing;
+
+/**
+ * Bounded pool of platform threads for CPU-heavy work such as image
+ * encoding.  Used when request handlers run on virtual threads so that
+ * such work neither monopolizes the small set of carrier threads all
+ * virtual threads share nor competes with an unbounded number of
+ * concurrent requests.  Also used to fan out the independent parts of a
+ * request, such as the images of a batch, without resorting to the common
+ * fork-join pool.  Threads are only started once work is submitted.
+ */
+public class RenderExecutor {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(RenderExecutor.class);
+
+    /** Pool of platform threads */
+    private final ExecutorService executor;
+
+    /**
+     * Default constructor.
+     * @param poolSize number of platform threads; <code>0</code> or less
+     * for one per available processor
+     */
+    public RenderExecutor(int poolSize) {
+        if (poolSize <= 0) {
+            poolSize = Runtime.getRuntime().availableProcessors();
+        }
+        log.info("Render pool size:{}", poolSize);
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable,
+                    "render-pool-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs a task on the pool and waits for it to complete.  The current
+     * trace context is propagated to the task.
+     * @param task task to run
+     * @return Result of the task.
+     * @throws Exception If the task throws or the calling thread is
+     * interrupted while waiting.
+     */
+    public <T> T execute(Callable<T> task) throws Exception {
+        return get(executor.submit(wrap(task)));
+    }
+
+    /**
+     * Runs several tasks concurrently on the pool and waits for all of
+     * them to complete.  The current trace context is propagated to each
+     * task.  If a task throws, those still running are cancelled.
+     * @param tasks tasks to run
+     * @return Results of the tasks in the order of <code>tasks</code>.
+     * @throws Exception If a task throws or the calling thread is
+     * interrupted while waiting.
+     */
+    public <T> List<T> executeAll(List<Callable<T>> tasks) throws Exception {
+        List<Future<T>> futures = new ArrayList<Future<T>>();
+        List<T> results = new ArrayList<T>();
+        try {
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(wrap(task)));
+            }
+            for (Future<T> future : futures) {
+                results.add(get(future));
+            }
+            return results;
+        } finally {
+            if (results.size() < futures.size()) {
+                for (Future<T> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Propagates the current trace context to a task.
+     */
+    private <T> Callable<T> wrap(Callable<T> task) {
+        Tracing tracing = Tracing.current();
+        if (tracing != null) {
+            return tracing.currentTraceContext().wrap(task);
+        }
+        return task;
+    }
+
+    /**
+     * Waits for a task, rethrowing what it threw.
+     */
+    private <T> T get(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Stops the pool; tasks already submitted are completed.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.time.Duration;
+
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.prometheus.client.Counter;
+
+/**
+ * Byte bounded, in memory cache of encoded image regions rendered ahead of
+ * their being requested.  Keys identify the render, including the
+ * rendering settings and their version, but not who requested it; lookups
+ * are only made once the caller has loaded the image metadata and
+ * rendering settings with their own session.
+ * @see PrefetchPlanner
+ */
+public class RenderedTileCache {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(RenderedTileCache.class);
+
+    private static final Counter REQUESTS = Counter.build()
+            .name("omero_ms_rendered_tile_cache_requests_total")
+            .help("Rendered tile cache lookups by result")
+            .labelNames("result")
+            .register();
+
+    /** Encoded image regions keyed by render */
+    private final Cache<String, byte[]> tiles;
+
+    /**
+     * Default constructor.
+     * @param maximumBytes maximum number of bytes of encoded image regions
+     * to retain
+     * @param timeToLive time in seconds after which an unused image region
+     * is discarded
+     */
+    public RenderedTileCache(long maximumBytes, long timeToLive) {
+        log.info("Rendered tile cache bytes:{} time to live:{}s",
+                maximumBytes, timeToLive);
+        tiles = Caffeine.newBuilder()
+                .maximumWeight(maximumBytes)
+                .weigher((String key, byte[] tile) -> tile.length)
+                .expireAfterAccess(Duration.ofSeconds(timeToLive))
+                .build();
+    }
+
+    /**
+     * Retrieves an encoded image region.
+     * @param key render key
+     * @return See above or <code>null</code> if not cached.
+     */
+    public byte[] get(String key) {
+        byte[] tile = tiles.getIfPresent(key);
+        REQUESTS.labels(tile == null ? "miss" : "hit").inc();
+        return tile;
+    }
+
+    /**
+     * Caches an encoded image region.
+     * @param key render key
+     * @param tile encoded image region
+     */
+    public void put(String key, byte[] tile) {
+        tiles.put(key, tile);
+    }
+
+    /**
+     * Whether or not an image region is cached, without counting towards
+     * the cache's hit ratio.
+     * @param key render key
+     * @return See above.
+     */
+    public boolean contains(String key) {
+        return tiles.getIfPresent(key) != null;
+    }
+}
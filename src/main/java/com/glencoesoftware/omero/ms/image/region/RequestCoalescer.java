@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.LoggerFactory;
+
+import io.prometheus.client.Counter;
+
+/**
+ * Single flight execution of identical concurrent requests.  The first
+ * caller for a key performs the computation and any caller arriving with
+ * the same key while it is in flight waits for and shares its result
+ * rather than repeating it.  Nothing is retained once the computation
+ * completes; this is not a cache.  Callers are responsible for only
+ * coalescing requests they are each permitted to make and whose result
+ * does not depend on who makes them.
+ * @param <K> key type
+ * @param <V> result type
+ */
+public class RequestCoalescer<K, V> {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(RequestCoalescer.class);
+
+    private static final Counter COALESCED = Counter.build()
+            .name("omero_ms_coalesced_requests_total")
+            .help("Requests which shared an identical in flight request")
+            .labelNames("coalescer")
+            .register();
+
+    /** Name used to label exported metrics */
+    private final String name;
+
+    private static final Counter TIMED_OUT = Counter.build()
+            .name("omero_ms_coalesced_requests_timed_out_total")
+            .help("Requests which stopped waiting for an identical in " +
+                    "flight request and performed it themselves")
+            .labelNames("coalescer")
+            .register();
+
+    /** Default time in seconds a caller waits for a shared computation */
+    public static final long DEFAULT_WAIT_TIMEOUT = 60;
+
+    /** Time in milliseconds a caller waits for a shared computation */
+    private final long waitTimeout;
+
+    /** In flight computations keyed by request */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight =
+            new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+    /**
+     * Default constructor.
+     * @param name name used to label exported metrics
+     */
+    public RequestCoalescer(String name) {
+        this(name, DEFAULT_WAIT_TIMEOUT);
+    }
+
+    /**
+     * Constructor with a bounded wait.
+     * @param name name used to label exported metrics
+     * @param waitTimeout time in seconds a caller waits for an identical
+     * computation already in flight before performing it itself
+     */
+    public RequestCoalescer(String name, long waitTimeout) {
+        log.info("Request coalescer {} wait timeout:{}s", name, waitTimeout);
+        this.name = name;
+        this.waitTimeout = TimeUnit.SECONDS.toMillis(waitTimeout);
+    }
+
+    /**
+     * Performs a computation or shares the result of an identical one
+     * already in flight.  If the computation being shared is cancelled the
+     * waiting callers do not inherit the cancellation; one of them performs
+     * the computation instead.  A caller which has waited longer than the
+     * wait timeout for the shared computation performs the computation
+     * itself, without replacing the one in flight.
+     * @param key normalized request
+     * @param task computation
+     * @return Result of the computation.
+     * @throws Exception If the computation throws.
+     */
+    public V execute(K key, Callable<V> task) throws Exception {
+        while (true) {
+            CompletableFuture<V> future = new CompletableFuture<V>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+            if (existing == null) {
+                try {
+                    V result = task.call();
+                    future.complete(result);
+                    return result;
+                } catch (Exception | Error e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    inFlight.remove(key, future);
+                }
+            }
+            COALESCED.labels(name).inc();
+            log.debug("Coalescing request {}", key);
+            try {
+                return existing.get(waitTimeout, TimeUnit.MILLISECONDS);
+            } catch (CancellationException e) {
+                // The leader was cancelled; retry with a new leader
+                continue;
+            } catch (TimeoutException e) {
+                TIMED_OUT.labels(name).inc();
+                log.warn("Timed out waiting for request {}", key);
+                return task.call();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof CancellationException) {
+                    continue;
+                }
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Number of computations currently in flight.
+     * @return See above.
+     */
+    public int size() {
+        return inFlight.size();
+    }
+}
@@ -36,6 +36,13 @@ public class ShapeMaskCtx extends OmeroRequestCtx {
     public static final String CACHE_KEY_FORMAT =
             "%s:%d:%s";  // Class Name, Object ID, Color String
 
+    public static final String BYTES_CACHE_KEY_FORMAT =
+            "%s:%d:bytes:%s:%s:%s";  // Class Name, Object ID, Resolution,
+                                     // Domain, Compression
+
+    /** Supported <code>compression</code> for shape mask bytes */
+    public static final String COMPRESSION_GZIP = "gzip";
+
     /** Shape Id */
     public Long shapeId;
 
@@ -58,6 +65,11 @@ public class ShapeMaskCtx extends OmeroRequestCtx {
     /** Subarray Domain String for Label Images */
     public String subarrayDomainStr;
 
+    /**
+     * Compression to apply to shape mask bytes; <code>null</code> for none
+     */
+    public String compression;
+
     /**
      * Constructor for jackson to decode the object from string
      */
@@ -83,6 +95,12 @@ public class ShapeMaskCtx extends OmeroRequestCtx {
             }
             getTileFromString(params.get("tile"));
             subarrayDomainStr = params.get("domain");
+            compression = params.get("compression");
+            if (compression != null
+                    && !COMPRESSION_GZIP.equals(compression)) {
+                throw new IllegalArgumentException(
+                        "Unsupported compression: " + compression);
+            }
         } catch (Exception e) {
             log.error("Error creating ShapeMaskCtx", e);
             throw e;
@@ -117,4 +135,17 @@ public class ShapeMaskCtx extends OmeroRequestCtx {
         return String.format(
                 CACHE_KEY_FORMAT, Mask.class.getName(), shapeId, color);
     }
+
+    /**
+     * Creates a cache key for the raw shape mask bytes of the context.
+     * Distinct from {@link #cacheKey()} so that bytes are never served in
+     * place of a rendered PNG and covers the resolution, subarray domain
+     * and compression that determine the bytes.
+     * @return See above.
+     */
+    public String bytesCacheKey() {
+        return String.format(
+                BYTES_CACHE_KEY_FORMAT, Mask.class.getName(), shapeId,
+                resolution, subarrayDomainStr, compression);
+    }
 }
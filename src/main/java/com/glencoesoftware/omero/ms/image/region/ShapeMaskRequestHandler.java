@@ -36,6 +36,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
 
 import javax.imageio.ImageIO;
 
@@ -43,11 +46,9 @@ import org.slf4j.LoggerFactory;
 
 import brave.ScopedSpan;
 import brave.Tracing;
-import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import loci.formats.FormatTools;
 import ome.io.nio.PixelBuffer;
-import ome.util.PixelData;
 import ome.xml.model.primitives.Color;
 import omero.ApiUsageException;
 import omero.RType;
@@ -66,22 +67,129 @@ public class ShapeMaskRequestHandler {
     private static final org.slf4j.Logger log =
             LoggerFactory.getLogger(ShapeMaskRequestHandler.class);
 
+    /** Default maximum size in bytes of a shape mask bytes response */
+    public static final long DEFAULT_MAX_SUBARRAY_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * Thrown when a requested label image subarray exceeds the configured
+     * maximum shape mask bytes retrieval size.
+     */
+    public static class SubarrayTooLargeException
+            extends IllegalArgumentException {
+
+        private static final long serialVersionUID = 1L;
+
+        public SubarrayTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Mask bytes as read from the database or from an NGFF label image.
+     */
+    static class MaskBytes {
+
+        /** Bit packed mask or label values */
+        final byte[] bytes;
+
+        /**
+         * Number of bytes per label value or <code>0</code> if
+         * <code>bytes</code> is bit packed
+         */
+        final int byteWidth;
+
+        /** Size of <code>bytes</code> in X (number of columns) */
+        final int sizeX;
+
+        /** Size of <code>bytes</code> in Y (number of rows) */
+        final int sizeY;
+
+        MaskBytes(byte[] bytes, int byteWidth, int sizeX, int sizeY) {
+            this.bytes = bytes;
+            this.byteWidth = byteWidth;
+            this.sizeX = sizeX;
+            this.sizeY = sizeY;
+        }
+    }
+
     /** Shape mask context */
     private final ShapeMaskCtx shapeMaskCtx;
 
     /** Configured Pixels service */
     private final ZarrPixelsService pixelsService;
 
+    /** Label image metadata cache */
+    private final LabelImageMetadataCache labelImageMetadataCache;
+
+    /** Label image statistics service */
+    private final LabelStatisticsService labelStatisticsService;
+
+    /** Cache of decoded chunks or <code>null</code> */
+    private ChunkCache chunkCache;
+
+    /** Maximum size in bytes of a label image subarray retrieved as bytes */
+    private long maxSubarrayBytes = DEFAULT_MAX_SUBARRAY_BYTES;
+
+    /** Platform thread pool to encode on or <code>null</code> */
+    private RenderExecutor renderExecutor;
+
     /**
      * Default constructor.
      * @param shapeMaskCtx {@link ShapeMaskCtx} object
      * @param pixelsService configured pixels service
+     * @param labelImageMetadataCache label image metadata cache
+     * @param labelStatisticsService label image statistics service
      */
     public ShapeMaskRequestHandler(
-            ShapeMaskCtx shapeMaskCtx, ZarrPixelsService pixelsService) {
+            ShapeMaskCtx shapeMaskCtx, ZarrPixelsService pixelsService,
+            LabelImageMetadataCache labelImageMetadataCache,
+            LabelStatisticsService labelStatisticsService) {
         log.info("Setting up handler");
         this.shapeMaskCtx = shapeMaskCtx;
         this.pixelsService = pixelsService;
+        this.labelImageMetadataCache = labelImageMetadataCache;
+        this.labelStatisticsService = labelStatisticsService;
+    }
+
+    /**
+     * Sets the cache decoded chunks are read through.
+     * @param chunkCache cache of decoded chunks or <code>null</code> to
+     * read chunks from the label image for every request
+     */
+    public void setChunkCache(ChunkCache chunkCache) {
+        this.chunkCache = chunkCache;
+    }
+
+    /**
+     * Sets the maximum size of a label image subarray that may be retrieved
+     * as shape mask bytes.  Rendered masks are not subject to this limit.
+     * @param maxSubarrayBytes maximum size in bytes, before compression
+     */
+    public void setMaxSubarrayBytes(long maxSubarrayBytes) {
+        this.maxSubarrayBytes = maxSubarrayBytes;
+    }
+
+    /**
+     * Sets the pool masks are packed, encoded and compressed on.
+     * @param renderExecutor platform thread pool to encode on or
+     * <code>null</code> to encode on the calling thread
+     */
+    public void setRenderExecutor(RenderExecutor renderExecutor) {
+        this.renderExecutor = renderExecutor;
+    }
+
+    /**
+     * Runs an encoding task on the configured encoding pool or, if there
+     * is none, on the calling thread.
+     * @param task encoding task
+     * @return Result of the task.
+     * @throws Exception If the task throws.
+     */
+    protected <T> T encode(Callable<T> task) throws Exception {
+        if (renderExecutor == null) {
+            return task.call();
+        }
+        return renderExecutor.execute(task);
     }
 
     /**
@@ -123,52 +231,20 @@ public class ShapeMaskRequestHandler {
                 fillColor.getRed(), fillColor.getGreen(),
                 fillColor.getBlue(), fillColor.getAlpha()
             );
-            byte[] bytes = getShapeMaskBytes(mask);
-            return renderShapeMask(mask, fillColor, bytes);
+            // The retrieval size limit applies to the shape mask bytes
+            // endpoint only; rendered masks are bounded by the array size
+            MaskBytes maskBytes = getShapeMaskBytes(mask, Integer.MAX_VALUE);
+            Color color = fillColor;
+            return encode(() -> renderShapeMask(mask, color, maskBytes));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while rendering shape mask", e);
         } catch (Exception e) {
             log.error("Exception while rendering shape mask", e);
         }
         return null;
     }
 
-    /**
-     * Flip an image horizontally, vertically, or both.
-     * @param src source image buffer
-     * @param sizeX size of <code>src</code> in X (number of columns)
-     * @param sizeY size of <code>src</code> in Y (number of rows)
-     * @param flipHorizontal whether or not to flip the image horizontally
-     * @param flipVertical whether or not to flip the image vertically
-     * @return Newly allocated buffer with flipping applied or <code>src</code>
-     * if no flipping has been requested.
-     */
-    public static byte[] flip(
-            byte[] src, int sizeX, int sizeY,
-            boolean flipHorizontal, boolean flipVertical) {
-        if (!flipHorizontal && !flipVertical) {
-            return src;
-        }
-
-        if (src == null) {
-            throw new IllegalArgumentException("Attempted to flip null image");
-        } else if (sizeX == 0 || sizeY == 0) {
-            throw new IllegalArgumentException("Attempted to flip image with 0 size");
-        }
-
-        byte[] dest = new byte[src.length];
-        int srcIndex, destIndex;
-        int xOffset = flipHorizontal? sizeX : 1;
-        int yOffset = flipVertical? sizeY : 1;
-        for (int x = 0; x < sizeX; x++) {
-            for (int y = 0; y < sizeY; y++) {
-                srcIndex = (y * sizeX) + x;
-                destIndex = Math.abs(((yOffset - y - 1) * sizeX))
-                        + Math.abs((xOffset - x - 1));
-                dest[destIndex] = src[srcIndex];
-            }
-        }
-        return dest;
-    }
-
     /**
      * Retrieve URI or the NGFF label image.
      * @param object loaded {@link Mask} to check for a URI
@@ -191,40 +267,59 @@ public class ShapeMaskRequestHandler {
      * Render shape mask.
      * @param mask mask to render
      * @param fillColor fill color to use for the mask
-     * @param bytes mask bytes to render
+     * @param bytes bit packed mask bytes to render
      * @return <code>image/png</code> encoded mask
-     * @see {@link #renderShapeMaskNotByteAligned(Color, byte[], int, int)}
      */
     protected byte[] renderShapeMask(Mask mask, Color fillColor, byte[] bytes)
             throws IOException {
+        return renderShapeMask(mask, fillColor, new MaskBytes(bytes, 0,
+                (int) mask.getWidth().getValue(),
+                (int) mask.getHeight().getValue()));
+    }
+
+    /**
+     * Render shape mask.
+     * @param mask mask to render
+     * @param fillColor fill color to use for the mask
+     * @param maskBytes mask bytes to render; label values that do not cover
+     * the whole mask, having been clamped to the bounds of the label image,
+     * are left unset beyond their extent
+     * @return <code>image/png</code> encoded mask
+     */
+    protected byte[] renderShapeMask(
+            Mask mask, Color fillColor, MaskBytes maskBytes)
+                throws IOException {
         ScopedSpan span = null;
         if (Tracing.currentTracer() != null) {
             span =
                 Tracing.currentTracer().startScopedSpan("render_shape_mask");
         }
         try {
-            // The underlying raster will used a MultiPixelPackedSampleModel
-            // which expects the row stride to be evenly divisible by the byte
-            // width of the data type.  If it is not so aligned or is coming
-            // from an NGFF source and will not be packed bits we will need
-            // to convert it to a byte mask for rendering.
-            String uri = getLabelUri(mask);
-            int bitsPerPixel = 1;
+            // The underlying raster will use a MultiPixelPackedSampleModel
+            // which expects each row to start on a byte boundary.  Unless
+            // the mask bytes are already packed that way, cover the whole
+            // mask and no flipping has been requested they are packed
+            // directly from their source representation (unaligned bits or
+            // NGFF label values).
             int width = (int) mask.getWidth().getValue();
             int height = (int) mask.getHeight().getValue();
-            if (width % 8 != 0 || uri != null) {
-                bytes = convertToBytes(bytes, width * height);
-                bitsPerPixel = 8;
+            boolean flip =
+                    shapeMaskCtx.flipHorizontal || shapeMaskCtx.flipVertical;
+            byte[] bytes = maskBytes.bytes;
+            if (width % 8 != 0 || flip || maskBytes.byteWidth != 0
+                    || maskBytes.sizeX != width
+                    || maskBytes.sizeY != height) {
+                bytes = packBits(bytes, maskBytes.byteWidth,
+                        maskBytes.sizeX, maskBytes.sizeY, width, height,
+                        shapeMaskCtx.flipHorizontal,
+                        shapeMaskCtx.flipVertical);
             }
-            bytes = flip(bytes, width, height,
-                    shapeMaskCtx.flipHorizontal,
-                    shapeMaskCtx.flipVertical);
-            log.debug("Rendering Mask Width:{} Height:{} bitsPerPixel:{} " +
-                    "Size:{}", width, height, bitsPerPixel, bytes.length);
+            log.debug("Rendering Mask Width:{} Height:{} Size:{}",
+                    width, height, bytes.length);
             // Create buffered image
             DataBuffer dataBuffer = new DataBufferByte(bytes, bytes.length);
             WritableRaster raster = Raster.createPackedRaster(
-                    dataBuffer, width, height, bitsPerPixel, new Point(0, 0));
+                    dataBuffer, width, height, 1, new Point(0, 0));
             byte[] colorMap = new byte[] {
                 // First index (0); 100% transparent
                 0, 0, 0, 0,
@@ -248,38 +343,122 @@ public class ShapeMaskRequestHandler {
     }
 
     /**
-     * Wrap bytes as pixel data for generic retrieval by byte width.
-     * @param source source bytes to wrap
-     * @param size number of pixels <code>source</code> corresponds to
-     * @return See above.
+     * Packs mask data into a 1-bit per pixel buffer whose rows start on a
+     * byte boundary, as expected by a
+     * {@link java.awt.image.MultiPixelPackedSampleModel}, applying any
+     * requested flipping as the bits are written.  Any non-zero source value
+     * is considered part of the mask.
+     * @param src source mask data covering the whole mask
+     * @param byteWidth number of bytes per source value; <code>1</code>,
+     * <code>2</code> or <code>4</code> for NGFF label values or
+     * <code>0</code> for a contiguous (not necessarily row aligned) bit stream
+     * @param sizeX size of the mask in X (number of columns)
+     * @param sizeY size of the mask in Y (number of rows)
+     * @param flipHorizontal whether or not to flip the mask horizontally
+     * @param flipVertical whether or not to flip the mask vertically
+     * @return Newly allocated packed buffer.
      */
-    private PixelData asPixelData(byte[] source, int size) {
-        int bytesPerPixel = source.length / size;
-        ByteBuffer asByteBuffer = ByteBuffer.wrap(source);
-        switch (bytesPerPixel) {
-            case 1:
-                return new PixelData("uint8", asByteBuffer);
-            case 2:
-                return new PixelData("uint16", asByteBuffer);
-            case 4:
-                return new PixelData("uint32", asByteBuffer);
-            default:
-                return new PixelData("bit", asByteBuffer);
-        }
+    public static byte[] packBits(
+            byte[] src, int byteWidth, int sizeX, int sizeY,
+            boolean flipHorizontal, boolean flipVertical) {
+        return packBits(src, byteWidth, sizeX, sizeY, sizeX, sizeY,
+                flipHorizontal, flipVertical);
     }
 
     /**
-     * Converts data to a <code>[0, 1]</code> byte mask.
-     * @param source the data to convert
-     * @param size number of elements to convert
+     * Packs mask data which may only partially cover the mask, for example
+     * label values clamped to the bounds of the label image, into a 1-bit
+     * per pixel buffer whose rows start on a byte boundary.  Pixels outside
+     * of the source extent are left unset.
+     * @param src source mask data of <code>srcSizeX</code> by
+     * <code>srcSizeY</code> values
+     * @param byteWidth number of bytes per source value; <code>1</code>,
+     * <code>2</code> or <code>4</code> for NGFF label values or
+     * <code>0</code> for a contiguous (not necessarily row aligned) bit stream
+     * @param srcSizeX size of <code>src</code> in X (number of columns)
+     * @param srcSizeY size of <code>src</code> in Y (number of rows)
+     * @param sizeX size of the mask in X (number of columns)
+     * @param sizeY size of the mask in Y (number of rows)
+     * @param flipHorizontal whether or not to flip the mask horizontally
+     * @param flipVertical whether or not to flip the mask vertically
+     * @return Newly allocated packed buffer.
+     * @see #packBits(byte[], int, int, int, boolean, boolean)
      */
-    private byte[] convertToBytes(byte[] source, int size) {
-        PixelData v = asPixelData(source, size);
-        byte[] destination = new byte[size];
-        for (int i = 0; i < size; i++) {
-            destination[i] = (byte) (v.getPixelValue(i) == 0? 0 : 1);
+    public static byte[] packBits(
+            byte[] src, int byteWidth, int srcSizeX, int srcSizeY,
+            int sizeX, int sizeY,
+            boolean flipHorizontal, boolean flipVertical) {
+        if (src == null) {
+            throw new IllegalArgumentException("Attempted to pack null mask");
+        } else if (sizeX <= 0 || sizeY <= 0 || srcSizeX < 0 || srcSizeY < 0) {
+            throw new IllegalArgumentException(
+                    "Attempted to pack mask with 0 size");
+        } else if (byteWidth != 0 && byteWidth != 1 && byteWidth != 2
+                && byteWidth != 4) {
+            throw new IllegalArgumentException(
+                    "Unsupported mask byte width " + byteWidth);
         }
-        return destination;
+        long srcLength = (long) srcSizeX * srcSizeY;
+        srcLength = byteWidth == 0? (srcLength + 7) / 8 : srcLength * byteWidth;
+        if (src.length < srcLength) {
+            throw new IllegalArgumentException(
+                    "Mask of " + src.length + " bytes does not cover " +
+                    srcSizeX + "x" + srcSizeY + " pixels");
+        }
+
+        int stride = (sizeX + 7) / 8;
+        byte[] dest = new byte[stride * sizeY];
+        // Source values beyond the extent of the mask are skipped
+        int width = Math.min(srcSizeX, sizeX);
+        int height = Math.min(srcSizeY, sizeY);
+        for (int y = 0; y < height; y++) {
+            int destRow = (flipVertical? sizeY - y - 1 : y) * stride;
+            int srcIndex = y * srcSizeX * Math.max(byteWidth, 1);
+            switch (byteWidth) {
+                case 1:
+                    for (int x = 0; x < width; x++, srcIndex++) {
+                        if (src[srcIndex] != 0) {
+                            setBit(dest, destRow, x, sizeX, flipHorizontal);
+                        }
+                    }
+                    break;
+                case 2:
+                    for (int x = 0; x < width; x++, srcIndex += 2) {
+                        if ((src[srcIndex] | src[srcIndex + 1]) != 0) {
+                            setBit(dest, destRow, x, sizeX, flipHorizontal);
+                        }
+                    }
+                    break;
+                case 4:
+                    for (int x = 0; x < width; x++, srcIndex += 4) {
+                        if ((src[srcIndex] | src[srcIndex + 1]
+                                | src[srcIndex + 2] | src[srcIndex + 3])
+                                != 0) {
+                            setBit(dest, destRow, x, sizeX, flipHorizontal);
+                        }
+                    }
+                    break;
+                default:
+                    // Contiguous bit stream, most significant bit first
+                    for (int x = 0; x < width; x++, srcIndex++) {
+                        if ((src[srcIndex >> 3]
+                                & (0x80 >>> (srcIndex & 7))) != 0) {
+                            setBit(dest, destRow, x, sizeX, flipHorizontal);
+                        }
+                    }
+            }
+        }
+        return dest;
+    }
+
+    /**
+     * Sets the bit of a packed mask row for a column, flipping the column
+     * horizontally if requested.
+     */
+    private static void setBit(byte[] dest, int destRow, int x, int sizeX,
+            boolean flipHorizontal) {
+        int destX = flipHorizontal? sizeX - x - 1 : x;
+        dest[destRow + (destX >> 3)] |= 0x80 >>> (destX & 7);
     }
 
     /**
@@ -414,23 +593,57 @@ public class ShapeMaskRequestHandler {
     /**
      * Get shape mask bytes request handler.
      * @param mask loaded {@link Mask} to retrieve the mask bytes for.
+     * @param maxBytes maximum size in bytes of an NGFF label image subarray
      * @return Mask bytes either from the database or NGFF.
      * @throws IOException
      * @throws ApiUsageException
      */
-    private byte[] getShapeMaskBytes(Mask mask)
+    private MaskBytes getShapeMaskBytes(Mask mask, long maxBytes)
             throws ApiUsageException, IOException {
         String uri = getLabelUri(mask);
         if (uri == null) {
-            return mask.getBytes();
+            return new MaskBytes(mask.getBytes(), 0,
+                    (int) mask.getWidth().getValue(),
+                    (int) mask.getHeight().getValue());
         }
-        PixelBuffer pixelBuffer = pixelsService.getLabelImagePixelBuffer(
-            (ome.model.roi.Mask) new IceMapper().reverse(mask));
+        try (ZarrPixelBuffer pixelBuffer =
+                pixelsService.getLabelImagePixelBuffer(
+                    (ome.model.roi.Mask) new IceMapper().reverse(mask))) {
+            // Populate the metadata cache from the already open buffer so
+            // that subsequent metadata requests need not reopen it
+            LabelImageDescriptor descriptor = getLabelImageDescriptor(
+                    uri, key -> new LabelImageDescriptor(pixelBuffer));
+            return getShapeMaskBytes(mask,
+                    CachingPixelBuffer.wrap(pixelBuffer, chunkCache, uri,
+                            FormatTools.getPixelTypeString(
+                                    pixelBuffer.getPixelsType())),
+                    descriptor, maxBytes);
+        }
+    }
+
+    /**
+     * Get shape mask bytes from an NGFF label image.
+     * @param mask loaded {@link Mask} to retrieve the mask bytes for.
+     * @param pixelBuffer open label image pixel buffer
+     * @param descriptor label image descriptor
+     * @param maxBytes maximum size in bytes of the subarray
+     * @return Mask bytes from NGFF, clamped to the bounds of the label image.
+     * @throws IOException
+     */
+    private MaskBytes getShapeMaskBytes(
+            Mask mask, PixelBuffer pixelBuffer,
+            LabelImageDescriptor descriptor, long maxBytes)
+                throws IOException {
+        int resolutionLevels = descriptor.getResolutionLevels();
         int resolutionLevel =
                 shapeMaskCtx.resolution == null ? 0
                         : shapeMaskCtx.resolution;
-        resolutionLevel = Math.abs(
-                resolutionLevel - (pixelBuffer.getResolutionLevels() - 1));
+        if (resolutionLevel < 0 || resolutionLevel >= resolutionLevels) {
+            throw new IllegalArgumentException(
+                    "Resolution " + resolutionLevel + " outside of range " +
+                    "[0, " + resolutionLevels + ")");
+        }
+        resolutionLevel = Math.abs(resolutionLevel - (resolutionLevels - 1));
         pixelBuffer.setResolutionLevel(resolutionLevel);
         String domain = shapeMaskCtx.subarrayDomainStr;
         if (domain == null) {
@@ -440,45 +653,124 @@ public class ShapeMaskRequestHandler {
                     (Integer) unwrap(mask.getTheC())).orElse(0);
             int z = Optional.ofNullable(
                     (Integer) unwrap(mask.getTheZ())).orElse(0);
-            Integer y0 = ((Double) unwrap(mask.getY())).intValue();
-            Integer y1 = ((Double) unwrap(mask.getHeight())).intValue();
-            Integer x0 = ((Double) unwrap(mask.getX())).intValue();
-            Integer x1 = ((Double) unwrap(mask.getWidth())).intValue();
+            int y0 = ((Double) unwrap(mask.getY())).intValue();
+            int height = ((Double) unwrap(mask.getHeight())).intValue();
+            int x0 = ((Double) unwrap(mask.getX())).intValue();
+            int width = ((Double) unwrap(mask.getWidth())).intValue();
             domain = String.format(
                     "[%d:%d,%d:%d,%d:%d,%d:%d,%d:%d]",
-                    t, t, c, c, z, z, y0, y1, x0, x1);
+                    t, t + 1, c, c + 1, z, z + 1,
+                    y0, y0 + height, x0, x0 + width);
         }
         int[][] shapesAndOffsets = getShapeAndStartFromString(domain);
         clampShapes(shapesAndOffsets, pixelBuffer);
+        return new MaskBytes(
+                readSubarray(pixelBuffer, shapesAndOffsets, maxBytes),
+                pixelBuffer.getByteWidth(),
+                shapesAndOffsets[0][4], shapesAndOffsets[0][3]);
+    }
+
+    /**
+     * Reads a (possibly multi-plane) subarray from a label image pixel
+     * buffer into a single contiguous buffer.  Planes are read in
+     * <code>TCZYX</code> order, the natural order of the NGFF array, so that
+     * consecutive reads are serviced from the same Z chunks while they are
+     * still resident in the pixel buffer's chunk cache.
+     * @param pixelBuffer label image pixel buffer at the resolution level to
+     * read from
+     * @param shapesAndOffsets clamped shape and offset as returned by
+     * {@link #getShapeAndStartFromString(String)}
+     * @return Subarray bytes of shape <code>[T, C, Z, Y, X]</code>.
+     * @throws SubarrayTooLargeException If the subarray exceeds the maximum
+     * shape mask bytes retrieval size.
+     * @throws IOException If there is an error reading from the pixel buffer.
+     */
+    protected byte[] readSubarray(
+            PixelBuffer pixelBuffer, int[][] shapesAndOffsets)
+                throws IOException {
+        return readSubarray(pixelBuffer, shapesAndOffsets, maxSubarrayBytes);
+    }
+
+    /**
+     * Reads a (possibly multi-plane) subarray from a label image pixel
+     * buffer into a single contiguous buffer.
+     * @param pixelBuffer label image pixel buffer at the resolution level to
+     * read from
+     * @param shapesAndOffsets clamped shape and offset as returned by
+     * {@link #getShapeAndStartFromString(String)}
+     * @param maxBytes maximum size in bytes of the subarray
+     * @return Subarray bytes of shape <code>[T, C, Z, Y, X]</code>.
+     * @throws SubarrayTooLargeException If the subarray exceeds
+     * <code>maxBytes</code>.
+     * @throws IOException If there is an error reading from the pixel buffer.
+     * @see #readSubarray(PixelBuffer, int[][])
+     */
+    protected byte[] readSubarray(
+            PixelBuffer pixelBuffer, int[][] shapesAndOffsets, long maxBytes)
+                throws IOException {
         int sizeT = shapesAndOffsets[0][0];
         int sizeC = shapesAndOffsets[0][1];
         int sizeZ = shapesAndOffsets[0][2];
         int sizeY = shapesAndOffsets[0][3];
         int sizeX = shapesAndOffsets[0][4];
-        if (sizeT > 1) {
-            throw new IllegalArgumentException(
-                    "SizeT " + sizeT + " > 1 shape mask bytes retrieval " +
-                    "is not supported");
+        int t0 = shapesAndOffsets[1][0];
+        int c0 = shapesAndOffsets[1][1];
+        int z0 = shapesAndOffsets[1][2];
+        int y = shapesAndOffsets[1][3];
+        int x = shapesAndOffsets[1][4];
+        long planeSize = (long) sizeX * sizeY * pixelBuffer.getByteWidth();
+        long totalSize = planeSize * sizeZ * sizeC * sizeT;
+        if (totalSize > maxBytes) {
+            throw new SubarrayTooLargeException(
+                    "Requested subarray of " + totalSize + " bytes exceeds " +
+                    "the maximum shape mask bytes retrieval size of " +
+                    maxBytes + " bytes");
         }
-        if (sizeC > 1) {
-            throw new IllegalArgumentException(
-                    "SizeC " + sizeC + " > 1 shape mask bytes retrieval " +
-                    "is not supported");
+        int planeCount = sizeT * sizeC * sizeZ;
+        if (planeCount == 1) {
+            // Single plane; avoid the copy into an intermediate buffer
+            return pixelBuffer
+                    .getTile(z0, c0, t0, x, y, sizeX, sizeY)
+                    .getData()
+                    .array();
         }
-        if (sizeZ > 1) {
-            throw new IllegalArgumentException(
-                    "SizeZ " + sizeZ + " > 1 shape mask bytes retrieval " +
-                    "is not supported");
+        log.debug("Reading {} planes of {}x{} from label image",
+                planeCount, sizeX, sizeY);
+        byte[] subarray = new byte[(int) totalSize];
+        int offset = 0;
+        for (int t = t0; t < t0 + sizeT; t++) {
+            for (int c = c0; c < c0 + sizeC; c++) {
+                for (int z = z0; z < z0 + sizeZ; z++) {
+                    ByteBuffer plane = pixelBuffer
+                            .getTile(z, c, t, x, y, sizeX, sizeY)
+                            .getData();
+                    int length = (int) planeSize;
+                    plane.position(0);
+                    plane.get(subarray, offset, length);
+                    offset += length;
+                }
+            }
         }
-        int t = shapesAndOffsets[1][0];
-        int c = shapesAndOffsets[1][1];
-        int z = shapesAndOffsets[1][2];
-        int y = shapesAndOffsets[1][3];
-        int x = shapesAndOffsets[1][4];
-        return pixelBuffer
-                .getTile(z, c, t, x, y, sizeX, sizeY)
-                .getData()
-                .array();
+        return subarray;
+    }
+
+    /**
+     * Compresses shape mask bytes in accordance with the
+     * <code>compression</code> requested in the current context.
+     * @param bytes shape mask bytes to compress
+     * @return Compressed bytes or <code>bytes</code> if no compression was
+     * requested.
+     * @throws IOException If there is an error during compression.
+     */
+    protected byte[] compress(byte[] bytes) throws IOException {
+        if (!ShapeMaskCtx.COMPRESSION_GZIP.equals(shapeMaskCtx.compression)) {
+            return bytes;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+            gzip.write(bytes);
+        }
+        return output.toByteArray();
     }
 
     /**
@@ -488,16 +780,29 @@ public class ShapeMaskRequestHandler {
      * @param pixelBuffer
      */
     private void clampShapes(int[][] shapesAndOffsets, PixelBuffer pixelBuffer) {
-        if (shapesAndOffsets[1][4] >= pixelBuffer.getSizeX()) {
-            throw new IllegalArgumentException("Requested origin outside image bounds in dimension X");
-        }
-        if (shapesAndOffsets[1][3] >= pixelBuffer.getSizeY()) {
-            throw new IllegalArgumentException("Requested origin outside image bounds in dimension Y");
+        int[] sizes = new int[] {
+            pixelBuffer.getSizeT(),
+            pixelBuffer.getSizeC(),
+            pixelBuffer.getSizeZ(),
+            pixelBuffer.getSizeY(),
+            pixelBuffer.getSizeX()
+        };
+        String[] dimensions = new String[] { "T", "C", "Z", "Y", "X" };
+        for (int i = 0; i < sizes.length; i++) {
+            if (shapesAndOffsets[1][i] < 0
+                    || shapesAndOffsets[1][i] >= sizes[i]) {
+                throw new IllegalArgumentException(
+                        "Requested origin outside image bounds in dimension "
+                        + dimensions[i]);
+            }
+            if (shapesAndOffsets[0][i] < 1) {
+                throw new IllegalArgumentException(
+                        "Requested empty extent in dimension "
+                        + dimensions[i]);
+            }
+            shapesAndOffsets[0][i] = Math.min(shapesAndOffsets[0][i],
+                    sizes[i] - shapesAndOffsets[1][i]);
         }
-        shapesAndOffsets[0][4] = Math.min(shapesAndOffsets[0][4],
-                pixelBuffer.getSizeX() - shapesAndOffsets[1][4]);
-        shapesAndOffsets[0][3] = Math.min(shapesAndOffsets[0][3],
-                pixelBuffer.getSizeY() - shapesAndOffsets[1][3]);
     }
 
     /**
@@ -509,14 +814,38 @@ public class ShapeMaskRequestHandler {
         try {
             Mask mask = getMask(client, shapeMaskCtx.shapeId);
             if (mask != null) {
-                return getShapeMaskBytes(mask);
+                byte[] bytes = getShapeMaskBytes(mask, maxSubarrayBytes).bytes;
+                if (shapeMaskCtx.compression == null) {
+                    return bytes;
+                }
+                return encode(() -> compress(bytes));
             }
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while retrieving shape mask bytes", e);
         } catch (Exception e) {
             log.error("Exception while retrieving shape mask bytes", e);
         }
         return null;
     }
 
+    /**
+     * Retrieves the descriptor for a label image from the label image
+     * metadata cache, if configured, loading it on a miss.
+     * @param uri label image URI
+     * @param loader loads the descriptor for <code>uri</code>
+     * @return See above.
+     */
+    private LabelImageDescriptor getLabelImageDescriptor(
+            String uri, Function<String, LabelImageDescriptor> loader) {
+        if (labelImageMetadataCache == null) {
+            return loader.apply(uri);
+        }
+        return labelImageMetadataCache.get(uri, loader);
+    }
+
     /**
      * Get label image (NGFF extension to the base {@link Mask}) metadata.
      * @param client OMERO client to use for querying.
@@ -533,53 +862,17 @@ public class ShapeMaskRequestHandler {
                 throw new IllegalArgumentException(
                     "No NGFF metadata for Shape:" + shapeMaskCtx.shapeId);
             }
-            ZarrPixelBuffer pixelBuffer =
-                    pixelsService.getLabelImagePixelBuffer(
-                        (ome.model.roi.Mask) new IceMapper().reverse(mask));
-
-            JsonObject metadata = new JsonObject();
-            JsonObject multiscalesAsJson = new JsonObject();
-            JsonArray datasetsAsJson = new JsonArray();
-            metadata.put("multiscales", multiscalesAsJson);
-
-            Map<String, Object> rootGroupAttributes =
-                    pixelBuffer.getRootGroupAttributes();
-            List<Map<String, String>> datasets = pixelBuffer.getDatasets();
-            int[][] chunks = pixelBuffer.getChunks();
-            int resolutionLevel = 0;
-            for (Map<String, String> dataset : datasets) {
-                JsonObject datasetAsJson = new JsonObject();
-                datasetAsJson.put("path", dataset.get("path"));
-                JsonArray chunksize = new JsonArray();
-                for (int chunk : chunks[resolutionLevel]) {
-                    chunksize.add(chunk);
+            JsonObject metadata = getLabelImageDescriptor(uri, key -> {
+                try (ZarrPixelBuffer pixelBuffer =
+                        pixelsService.getLabelImagePixelBuffer(
+                            (ome.model.roi.Mask) new IceMapper()
+                                .reverse(mask))) {
+                    return new LabelImageDescriptor(pixelBuffer);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
                 }
-                datasetAsJson.put("chunksize", chunksize);
-                datasetsAsJson.add(datasetAsJson);
-                resolutionLevel++;
-            }
-            multiscalesAsJson.put("datasets", datasetsAsJson);
-
-            if (rootGroupAttributes.containsKey("minmax")) {
-                List<Integer> minMax =
-                        (List<Integer>) rootGroupAttributes.get("minmax");
-                metadata.put("min", minMax.get(0));
-                metadata.put("max", minMax.get(1));
-            }
-
-            JsonObject size = new JsonObject();
-            size.put("t", pixelBuffer.getSizeT());
-            size.put("c", pixelBuffer.getSizeC());
-            size.put("z", pixelBuffer.getSizeZ());
-            size.put("height", pixelBuffer.getSizeY());
-            size.put("width", pixelBuffer.getSizeX());
-            metadata.put("size", size);
-
+            }).toJson();
             metadata.put("uuid", getUuid(mask));
-
-            metadata.put("type", FormatTools.getPixelTypeString(
-                    pixelBuffer.getPixelsType()));
-
             return metadata;
         } catch (Exception e) {
             log.error("Exception while retrieving label image metadata", e);
@@ -589,4 +882,60 @@ public class ShapeMaskRequestHandler {
         return null;
     }
 
+    /**
+     * Opens a label image pixel buffer, reading through the chunk cache if
+     * one has been set.
+     * @param mask mask the label image belongs to
+     * @param uri label image URI
+     * @return See above.
+     * @throws IOException If there is an error opening the label image.
+     */
+    PixelBuffer openLabelImage(ome.model.roi.Mask mask, String uri)
+            throws IOException {
+        ZarrPixelBuffer pixelBuffer =
+                pixelsService.getLabelImagePixelBuffer(mask);
+        return CachingPixelBuffer.wrap(pixelBuffer, chunkCache, uri,
+                FormatTools.getPixelTypeString(pixelBuffer.getPixelsType()));
+    }
+
+    /**
+     * Get label image statistics request handler.  Computes per-label pixel
+     * counts, bounding boxes and centroids at the requested resolution,
+     * aggregated over every Z section, channel and timepoint.
+     * @param client OMERO client to use for querying.
+     * @return JSON label statistics or <code>null</code> if the
+     * {@link Mask} cannot be found.
+     */
+    public JsonObject getLabelImageStatistics(omero.client client) {
+        ScopedSpan span = Tracing.currentTracer()
+                .startScopedSpan("get_label_image_statistics_handler");
+        try {
+            Mask mask = getMask(client, shapeMaskCtx.shapeId);
+            if (mask == null) {
+                log.debug("Cannot find Shape:{}", shapeMaskCtx.shapeId);
+                return null;
+            }
+            String uri = getLabelUri(mask);
+            if (uri == null) {
+                throw new IllegalArgumentException(
+                    "No NGFF label image for Shape:" + shapeMaskCtx.shapeId);
+            }
+            int resolution = shapeMaskCtx.resolution == null ? 0
+                    : shapeMaskCtx.resolution;
+            ome.model.roi.Mask reversed =
+                    (ome.model.roi.Mask) new IceMapper().reverse(mask);
+            return labelStatisticsService.getStatistics(
+                    uri, resolution, () -> openLabelImage(reversed, uri));
+        } catch (IllegalArgumentException e) {
+            span.error(e);
+            throw e;
+        } catch (Exception e) {
+            span.error(e);
+            log.error("Exception while retrieving label image statistics", e);
+        } finally {
+            span.finish();
+        }
+        return null;
+    }
+
 }
@@ -32,6 +32,7 @@ import brave.ScopedSpan;
 import brave.Tracing;
 import brave.propagation.TraceContext;
 import io.vertx.core.Promise;
+import io.vertx.core.ThreadingModel;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonObject;
 
@@ -49,6 +50,12 @@ public class ShapeMaskVerticle extends OmeroMsAbstractVerticle {
     public static final String GET_LABEL_IMAGE_METADATA_EVENT =
             "omero.get_label_image_metadata";
 
+    public static final String RENDER_SHAPE_OVERLAY_EVENT =
+            "omero.render_shape_overlay";
+
+    public static final String GET_LABEL_IMAGE_STATISTICS_EVENT =
+            "omero.get_label_image_statistics";
+
     /** OMERO server host */
     private String host;
 
@@ -58,12 +65,57 @@ public class ShapeMaskVerticle extends OmeroMsAbstractVerticle {
     /** Configured Pixels service */
     private final ZarrPixelsService pixelsService;
 
+    /** Label image metadata cache shared by all verticle instances */
+    private final LabelImageMetadataCache labelImageMetadataCache;
+
+    /** Label image statistics service shared by all verticle instances */
+    private final LabelStatisticsService labelStatisticsService;
+
+    /** Shape overlay cache shared by all verticle instances */
+    private final ShapeOverlayCache shapeOverlayCache;
+
+    /** Configured maximum tile size in either dimension */
+    private final int maxTileLength;
+
+    /** Decoded chunk cache shared by all verticle instances */
+    private final ChunkCache chunkCache;
+
+    /** Pyramid descriptor cache shared by all verticle instances */
+    private final PyramidDescriptorService pyramidDescriptorService;
+
+    /** Configured maximum size in bytes of a shape mask bytes response */
+    private long maxShapeMaskBytes;
+
+    /** Platform thread pool for CPU-heavy work */
+    private final RenderExecutor renderExecutor;
+
+    /**
+     * Pool to encode on or <code>null</code> to encode on the verticle's
+     * own thread
+     */
+    private RenderExecutor encodingExecutor;
+
     /**
      * Default constructor.
      */
-    public ShapeMaskVerticle(ZarrPixelsService pixelsService)
+    public ShapeMaskVerticle(
+            ZarrPixelsService pixelsService,
+            LabelImageMetadataCache labelImageMetadataCache,
+            LabelStatisticsService labelStatisticsService,
+            ShapeOverlayCache shapeOverlayCache,
+            int maxTileLength,
+            ChunkCache chunkCache,
+            PyramidDescriptorService pyramidDescriptorService,
+            RenderExecutor renderExecutor)
     {
         this.pixelsService = pixelsService;
+        this.labelImageMetadataCache = labelImageMetadataCache;
+        this.labelStatisticsService = labelStatisticsService;
+        this.shapeOverlayCache = shapeOverlayCache;
+        this.maxTileLength = maxTileLength;
+        this.chunkCache = chunkCache;
+        this.pyramidDescriptorService = pyramidDescriptorService;
+        this.renderExecutor = renderExecutor;
     }
 
     /* (non-Javadoc)
@@ -79,6 +131,14 @@ public class ShapeMaskVerticle extends OmeroMsAbstractVerticle {
             }
             host = omero.getString("host");
             port = omero.getInteger("port");
+            maxShapeMaskBytes = config().getLong(
+                    "max-shape-mask-bytes",
+                    ShapeMaskRequestHandler.DEFAULT_MAX_SUBARRAY_BYTES);
+            // Virtual threads are cheap and numerous but share a carrier
+            // thread per CPU; keep encoding off of them.
+            if (context.threadingModel() == ThreadingModel.VIRTUAL_THREAD) {
+                encodingExecutor = renderExecutor;
+            }
             vertx.eventBus().<String>consumer(
                     RENDER_SHAPE_MASK_EVENT, event -> {
                         renderShapeMask(event);
@@ -91,12 +151,35 @@ public class ShapeMaskVerticle extends OmeroMsAbstractVerticle {
                     GET_LABEL_IMAGE_METADATA_EVENT, event -> {
                         getLabelImageMetadata(event);
                     });
+            vertx.eventBus().<String>consumer(
+                    GET_LABEL_IMAGE_STATISTICS_EVENT, event -> {
+                        getLabelImageStatistics(event);
+                    });
+            vertx.eventBus().<String>consumer(
+                    RENDER_SHAPE_OVERLAY_EVENT, event -> {
+                        renderShapeOverlay(event);
+                    });
         } catch (Exception e) {
             startPromise.fail(e);
         }
         startPromise.complete();
     }
 
+    /**
+     * Creates a shape mask request handler reading label images through the
+     * chunk cache and encoding on the configured executor.
+     * @param shapeMaskCtx shape mask context of the request
+     * @return See above.
+     */
+    ShapeMaskRequestHandler createRequestHandler(ShapeMaskCtx shapeMaskCtx) {
+        ShapeMaskRequestHandler requestHandler = new ShapeMaskRequestHandler(
+                shapeMaskCtx, pixelsService, labelImageMetadataCache,
+                labelStatisticsService);
+        requestHandler.setChunkCache(chunkCache);
+        requestHandler.setRenderExecutor(encodingExecutor);
+        return requestHandler;
+    }
+
     /**
      * Render shape mask event handler. Responds with a
      * <code>image/png</code> body on success based on the
@@ -131,8 +214,7 @@ public class ShapeMaskVerticle extends OmeroMsAbstractVerticle {
                     byte[] shapeMask =
                             result.succeeded()? result.result().body() : null;
                     ShapeMaskRequestHandler requestHandler =
-                        new ShapeMaskRequestHandler(
-                                shapeMaskCtx, pixelsService);
+                            createRequestHandler(shapeMaskCtx);
 
                     // If the PNG is in the cache, check we have permissions
                     // to access it and assign and return
@@ -210,14 +292,15 @@ public class ShapeMaskVerticle extends OmeroMsAbstractVerticle {
             return;
         }
 
-        String key = shapeMaskCtx.cacheKey();
+        String key = shapeMaskCtx.bytesCacheKey();
         try (OmeroRequest request = new OmeroRequest(
                  host, port, shapeMaskCtx.omeroSessionKey))
         {
             ShapeMaskRequestHandler requestHandler =
-                new ShapeMaskRequestHandler(shapeMaskCtx, pixelsService);
+                    createRequestHandler(shapeMaskCtx);
+            requestHandler.setMaxSubarrayBytes(maxShapeMaskBytes);
 
-            // The PNG is not in the cache we have to create it
+            // Read the bytes from the label image
             byte[] shapeMask = request.execute(
                     requestHandler::getShapeMaskBytes);
             if (shapeMask == null) {
@@ -229,7 +312,7 @@ public class ShapeMaskVerticle extends OmeroMsAbstractVerticle {
             span.finish();
             message.reply(shapeMask);
 
-            // Cache the PNG if the color was explicitly set
+            // Cache the bytes if the color was explicitly set
            if (shapeMaskCtx.color != null) {
                 JsonObject setMessage = new JsonObject();
                 setMessage.put("key", key);
@@ -244,6 +327,10 @@ public class ShapeMaskVerticle extends OmeroMsAbstractVerticle {
             log.debug(v);
             span.error(e);
             message.fail(403, v);
+        } catch (ShapeMaskRequestHandler.SubarrayTooLargeException e) {
+            log.debug("Shape mask bytes request too large", e);
+            span.error(e);
+            message.fail(413, e.getMessage());
         } catch (IllegalArgumentException e) {
             log.debug(
                 "Illegal argument received while retrieving shape mask", e);
@@ -281,7 +368,7 @@ public class ShapeMaskVerticle extends OmeroMsAbstractVerticle {
         {
             JsonObject metadata = null;
             ShapeMaskRequestHandler requestHandler =
-                    new ShapeMaskRequestHandler(shapeMaskCtx, pixelsService);
+                    createRequestHandler(shapeMaskCtx);
             metadata = request.execute(
                     requestHandler::getLabelImageMetadata);
             if (metadata == null) {
@@ -310,4 +397,151 @@ public class ShapeMaskVerticle extends OmeroMsAbstractVerticle {
            message.fail(500, v);
        }
     }
+
+    /**
+     * Get label image statistics event handler. Responds with per-label
+     * pixel counts, bounding boxes and centroids on success based on the
+     * <code>shapeId</code> encoded in the URL or HTTP 404 if the
+     * {@link Shape} does not exist or the user does not have permissions to
+     * access it.
+     * @param message JSON encoded {@link ShapeMaskCtx} object.
+     */
+    private void getLabelImageStatistics(Message<String> message) {
+        ObjectMapper mapper = new ObjectMapper();
+        ShapeMaskCtx shapeMaskCtx;
+        ScopedSpan span;
+        try {
+            String body = message.body();
+            shapeMaskCtx = mapper.readValue(body, ShapeMaskCtx.class);
+            span = Tracing.currentTracer().startScopedSpanWithParent(
+                    "get_label_image_statistics_verticle",
+                    extractor().extract(shapeMaskCtx.traceContext).context());
+            span.tag("ctx", body);
+        } catch (Exception e) {
+            String v = "Illegal shape mask context";
+            log.error(v + ": {}", message.body(), e);
+            message.fail(400, v);
+            return;
+        }
+        try (OmeroRequest request = new OmeroRequest(
+                host, port, shapeMaskCtx.omeroSessionKey))
+        {
+            ShapeMaskRequestHandler requestHandler =
+                    createRequestHandler(shapeMaskCtx);
+            JsonObject statistics = request.execute(
+                    requestHandler::getLabelImageStatistics);
+            if (statistics == null) {
+                span.finish();
+                message.fail(404, "Cannot get Label Image Statistics:" +
+                        shapeMaskCtx.shapeId);
+                return;
+            }
+            span.finish();
+            message.reply(statistics);
+        } catch (PermissionDeniedException
+                | CannotCreateSessionException e) {
+            String v = "Permission denied";
+            log.debug(v);
+            span.error(e);
+            message.fail(403, v);
+        } catch (IllegalArgumentException e) {
+            log.debug(
+                "Illegal argument received while retrieving label image " +
+                "statistics", e);
+            span.error(e);
+            message.fail(400, e.getMessage());
+        } catch (Exception e) {
+            String v = "Exception while retrieving label image statistics";
+            log.error(v, e);
+            span.error(e);
+            message.fail(500, v);
+        }
+    }
+
+    /**
+     * Render shape overlay event handler. Responds with a transparent
+     * <code>image/png</code> tile on success containing the shapes of the
+     * Image that intersect the requested tile, or HTTP 404 if the Image
+     * does not exist or the user does not have permissions to access it.
+     * @param message JSON encoded {@link ShapeOverlayCtx} object.
+     */
+    private void renderShapeOverlay(Message<String> message) {
+        ObjectMapper mapper = new ObjectMapper();
+        ShapeOverlayCtx shapeOverlayCtx;
+        ScopedSpan span;
+        try {
+            String body = message.body();
+            shapeOverlayCtx = mapper.readValue(body, ShapeOverlayCtx.class);
+            span = Tracing.currentTracer().startScopedSpanWithParent(
+                    "handle_render_shape_overlay",
+                    extractor().extract(shapeOverlayCtx.traceContext)
+                        .context());
+            span.tag("ctx", body);
+        } catch (Exception e) {
+            String v = "Illegal shape overlay context";
+            log.error(v + ": {}", message.body(), e);
+            message.fail(400, v);
+            return;
+        }
+
+        try (OmeroRequest request = new OmeroRequest(
+                 host, port, shapeOverlayCtx.omeroSessionKey))
+        {
+            ShapeOverlayRequestHandler requestHandler =
+                    new ShapeOverlayRequestHandler(
+                            shapeOverlayCtx, pixelsService,
+                            shapeOverlayCache, maxTileLength,
+                            pyramidDescriptorService);
+            requestHandler.setRenderExecutor(encodingExecutor);
+
+            // Which shapes are visible depends on who is asking so cache
+            // entries are per caller
+            String scope = request.execute(requestHandler::getScope);
+            if (scope == null) {
+                span.finish();
+                message.fail(500, "Cannot render shape overlay for Image:" +
+                        shapeOverlayCtx.imageId);
+                return;
+            }
+            String key = shapeOverlayCtx.cacheKey(scope);
+
+            // If the tile is in the cache, check we have permissions
+            // to access it and return
+            byte[] overlay = shapeOverlayCache.getTile(key);
+            if (overlay != null && request.execute(requestHandler::canRead)) {
+                span.finish();
+                message.reply(overlay);
+                return;
+            }
+
+            overlay = request.execute(
+                    client -> requestHandler.renderShapeOverlay(
+                            client, scope));
+            if (overlay == null) {
+                span.finish();
+                message.fail(404, "Cannot render shape overlay for Image:" +
+                        shapeOverlayCtx.imageId);
+                return;
+            }
+            shapeOverlayCache.putTile(key, overlay);
+            span.finish();
+            message.reply(overlay);
+        } catch (PermissionDeniedException
+                | CannotCreateSessionException e) {
+            String v = "Permission denied";
+            log.debug(v);
+            span.error(e);
+            message.fail(403, v);
+        } catch (IllegalArgumentException e) {
+            log.debug(
+                "Illegal argument received while rendering shape overlay", e);
+            span.error(e);
+            message.fail(400, e.getMessage());
+        } catch (Exception e) {
+            String v = "Exception while rendering shape overlay";
+            log.error(v, e);
+            span.error(e);
+            message.fail(500, v);
+        }
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import org.slf4j.LoggerFactory;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * In memory caches backing shape overlay rendering; the
+ * {@link ShapeSpatialIndex} for each image, shape filter and caller scope
+ * combination and the rendered overlay tiles themselves.  Entries are per
+ * caller scope because shapes are owned individually and need not be
+ * visible to everyone who can read the image.  Entries expire after a short
+ * time to live so that ROI edits become visible without explicit
+ * invalidation.
+ * Shared between all shape mask verticle instances.
+ */
+public class ShapeOverlayCache {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(ShapeOverlayCache.class);
+
+    /** Spatial indexes keyed by {@link ShapeOverlayCtx#indexKey(String)} */
+    private final Cache<String, ShapeSpatialIndex> indexes;
+
+    /** PNG encoded tiles keyed by {@link ShapeOverlayCtx#cacheKey(String)} */
+    private final Cache<String, byte[]> tiles;
+
+    /**
+     * Default constructor.
+     * @param maximumIndexes maximum number of spatial indexes to retain
+     * @param maximumTileBytes maximum total size in bytes of the rendered
+     * tiles to retain
+     * @param timeToLive time in seconds after which entries are discarded
+     */
+    public ShapeOverlayCache(
+            long maximumIndexes, long maximumTileBytes, long timeToLive) {
+        log.info("Shape overlay cache indexes:{} tile bytes:{} " +
+                "time to live:{}s", maximumIndexes, maximumTileBytes,
+                timeToLive);
+        indexes = Caffeine.newBuilder()
+                .maximumSize(maximumIndexes)
+                .expireAfterWrite(Duration.ofSeconds(timeToLive))
+                .build();
+        tiles = Caffeine.newBuilder()
+                .maximumWeight(maximumTileBytes)
+                .<String, byte[]>weigher((key, value) -> value.length)
+                .expireAfterWrite(Duration.ofSeconds(timeToLive))
+                .build();
+    }
+
+    /**
+     * Retrieves a spatial index, building it if absent.
+     * @param key index key
+     * @param loader builds the index for <code>key</code> on a miss
+     * @return See above.
+     */
+    public ShapeSpatialIndex getIndex(
+            String key, Function<String, ShapeSpatialIndex> loader) {
+        return indexes.get(key, loader);
+    }
+
+    /**
+     * Retrieves a rendered tile.
+     * @param key tile cache key
+     * @return PNG encoded tile or <code>null</code> if not present.
+     */
+    public byte[] getTile(String key) {
+        return tiles.getIfPresent(key);
+    }
+
+    /**
+     * Stores a rendered tile.
+     * @param key tile cache key
+     * @param tile PNG encoded tile
+     */
+    public void putTile(String key, byte[] tile) {
+        tiles.put(key, tile);
+    }
+}
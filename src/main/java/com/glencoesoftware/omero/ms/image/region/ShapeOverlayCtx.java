@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+import com.glencoesoftware.omero.ms.core.OmeroRequestCtx;
+
+import io.vertx.core.MultiMap;
+import omeis.providers.re.data.RegionDef;
+
+public class ShapeOverlayCtx extends OmeroRequestCtx {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(ShapeOverlayCtx.class);
+
+    public static final String INDEX_KEY_FORMAT =
+            "%s:%s:%d:%s:%s:%s";  // Class Name, Scope, Image ID, Z, T, ROI IDs
+
+    public static final String CACHE_KEY_FORMAT =
+            "%s:%d:%d,%d,%d,%d";  // Index Key, Resolution, Tile
+
+    /** Image Id */
+    public Long imageId;
+
+    /** Z-index to filter shapes by or <code>null</code> for all */
+    public Integer z;
+
+    /** T-index to filter shapes by or <code>null</code> for all */
+    public Integer t;
+
+    /** ROI Ids to filter shapes by or <code>null</code> for all */
+    public List<Long> roiIds;
+
+    /** Tile to render */
+    public RegionDef tile;
+
+    /** Resolution to render at */
+    public Integer resolution;
+
+    /**
+     * Constructor for jackson to decode the object from string
+     */
+    ShapeOverlayCtx() {};
+
+    /**
+     * Default constructor.
+     * @param params {@link io.vertx.core.http.HttpServerRequest} parameters
+     * required for rendering a shape overlay tile.
+     * @param omeroSessionKey OMERO session key.
+     */
+    ShapeOverlayCtx(MultiMap params, String omeroSessionKey) {
+        try {
+            this.omeroSessionKey = omeroSessionKey;
+            imageId = Long.parseLong(params.get("imageId"));
+            if (params.get("theZ") != null) {
+                z = Integer.parseInt(params.get("theZ"));
+            }
+            if (params.get("theT") != null) {
+                t = Integer.parseInt(params.get("theT"));
+            }
+            getRoiIdsFromString(params.get("roi"));
+        } catch (NumberFormatException e) {
+            log.error("Error creating ShapeOverlayCtx", e);
+            throw new IllegalArgumentException(e.getMessage());
+        }
+        getTileFromString(params.get("tile"));
+    }
+
+    /**
+     * Parse a comma separated list of ROI IDs.
+     * @param roiString string describing the ROIs to filter by: "1,2,3"
+     */
+    private void getRoiIdsFromString(String roiString) {
+        if (roiString == null) {
+            return;
+        }
+        roiIds = new ArrayList<Long>();
+        for (String roiId : roiString.split(",")) {
+            roiIds.add(Long.parseLong(roiId.trim()));
+        }
+        // Sorted so that equivalent requests share cache entries
+        Collections.sort(roiIds);
+    }
+
+    /**
+     * Parse a string to RegionDef and Int describing tile and resolution.
+     * @param tileString string describing the tile to render:
+     * "1,1,0,1024,1024"
+     */
+    private void getTileFromString(String tileString) {
+        try {
+            String[] tileArray = tileString.split(",", -1);
+            if (tileArray.length != 3 && tileArray.length != 5) {
+                throw new IllegalArgumentException();
+            }
+            tile = new RegionDef();
+            tile.setX(Integer.parseInt(tileArray[1]));
+            tile.setY(Integer.parseInt(tileArray[2]));
+            if (tileArray.length == 5) {
+                tile.setWidth(Integer.parseInt(tileArray[3]));
+                tile.setHeight(Integer.parseInt(tileArray[4]));
+            }
+            resolution = Integer.parseInt(tileArray[0]);
+        } catch (Exception e) {
+            log.error("Error parsing tile", e);
+            throw new IllegalArgumentException("Failed to parse 'tile' "
+                    + "parameter. Format is resolution,x,y or "
+                    + "resolution,x,y,w,h");
+        }
+    }
+
+    /**
+     * Creates a key for the spatial index of the shapes this context
+     * filters to.
+     * @param scope identifies which shapes of the image the caller may
+     * see, as returned by {@link ShapeOverlayRequestHandler#getScope}
+     * @return See above.
+     */
+    public String indexKey(String scope) {
+        return String.format(
+                INDEX_KEY_FORMAT, ShapeOverlayCtx.class.getName(),
+                scope, imageId, z, t, roiIds);
+    }
+
+    /**
+     * Creates a cache key for the context.
+     * @param scope identifies which shapes of the image the caller may
+     * see, as returned by {@link ShapeOverlayRequestHandler#getScope}
+     * @return See above.
+     */
+    public String cacheKey(String scope) {
+        return String.format(
+                CACHE_KEY_FORMAT, indexKey(scope), resolution,
+                tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight());
+    }
+}
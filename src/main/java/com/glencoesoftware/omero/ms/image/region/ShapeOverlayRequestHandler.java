@@ -0,0 +1,620 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static omero.rtypes.rint;
+import static omero.rtypes.rlist;
+import static omero.rtypes.rlong;
+import static omero.rtypes.unwrap;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+import javax.imageio.ImageIO;
+
+import org.slf4j.LoggerFactory;
+
+import com.glencoesoftware.omero.zarr.ZarrPixelsService;
+
+import brave.ScopedSpan;
+import brave.Tracing;
+import ome.io.nio.PixelBuffer;
+import ome.model.core.Pixels;
+import omero.RType;
+import omero.ServerError;
+import omero.api.IQueryPrx;
+import omero.model.EllipseI;
+import omero.model.IObject;
+import omero.model.LineI;
+import omero.model.PointI;
+import omero.model.PolygonI;
+import omero.model.PolylineI;
+import omero.model.RectangleI;
+import omero.model.Shape;
+import omero.sys.EventContext;
+import omero.sys.ParametersI;
+import omero.util.IceMapper;
+
+public class ShapeOverlayRequestHandler {
+
+    private static final org.slf4j.Logger log =
+            LoggerFactory.getLogger(ShapeOverlayRequestHandler.class);
+
+    /** Number of shapes to retrieve per query when building an index */
+    public static final int SHAPE_PAGE_SIZE = 5000;
+
+    /** Padding in rendered pixels applied to spatial index queries */
+    public static final int QUERY_PADDING = 8;
+
+    /** Radius in image pixels used to render a {@link PointI} */
+    public static final double POINT_RADIUS = 3;
+
+    /** Default stroke color, matching the default shape mask color */
+    public static final Color DEFAULT_STROKE_COLOR =
+            new Color(255, 255, 0, 255);
+
+    /** Shape overlay context */
+    private final ShapeOverlayCtx shapeOverlayCtx;
+
+    /** Configured Pixels service */
+    private final ZarrPixelsService pixelsService;
+
+    /** Shape overlay spatial index and tile cache */
+    private final ShapeOverlayCache shapeOverlayCache;
+
+    /** Configured maximum tile size in either dimension */
+    private final int maxTileLength;
+
+    /** Cached pyramid structure or <code>null</code> if not cached */
+    private final PyramidDescriptorService pyramidDescriptorService;
+
+    /** Platform thread pool to rasterize and encode on or <code>null</code> */
+    private RenderExecutor renderExecutor;
+
+    /**
+     * Default constructor.
+     * @param shapeOverlayCtx {@link ShapeOverlayCtx} object
+     * @param pixelsService configured pixels service
+     * @param shapeOverlayCache shape overlay spatial index and tile cache
+     * @param maxTileLength configured maximum tile size in either dimension
+     * @param pyramidDescriptorService cached pyramid structure used to
+     * avoid opening a pixel buffer per tile or <code>null</code>
+     */
+    public ShapeOverlayRequestHandler(
+            ShapeOverlayCtx shapeOverlayCtx, ZarrPixelsService pixelsService,
+            ShapeOverlayCache shapeOverlayCache, int maxTileLength,
+            PyramidDescriptorService pyramidDescriptorService) {
+        this.shapeOverlayCtx = shapeOverlayCtx;
+        this.pixelsService = pixelsService;
+        this.shapeOverlayCache = shapeOverlayCache;
+        this.maxTileLength = maxTileLength;
+        this.pyramidDescriptorService = pyramidDescriptorService;
+    }
+
+    /**
+     * Sets the pool overlay tiles are rasterized and encoded on.
+     * @param renderExecutor platform thread pool to rasterize and encode on
+     * or <code>null</code> to do so on the calling thread
+     */
+    public void setRenderExecutor(RenderExecutor renderExecutor) {
+        this.renderExecutor = renderExecutor;
+    }
+
+    /**
+     * Identifies which shapes of an image the caller may see, for use in
+     * cache keys.  Readability of the image is not enough; shapes are
+     * owned individually and, depending on the permissions of their group,
+     * may only be visible to their owner, group leaders and administrators.
+     * @param client OMERO client to use for querying.
+     * @return See above or <code>null</code> if the caller's event context
+     * cannot be retrieved.
+     */
+    public String getScope(omero.client client) {
+        ScopedSpan span = Tracing.currentTracer()
+                .startScopedSpan("get_event_context");
+        try {
+            EventContext eventContext = client.getSession()
+                    .getAdminService().getEventContext();
+            List<Long> memberOfGroups =
+                    new ArrayList<Long>(eventContext.memberOfGroups);
+            List<Long> leaderOfGroups =
+                    new ArrayList<Long>(eventContext.leaderOfGroups);
+            Collections.sort(memberOfGroups);
+            Collections.sort(leaderOfGroups);
+            return String.format("%d:%s:%s:%b", eventContext.userId,
+                    memberOfGroups, leaderOfGroups, eventContext.isAdmin);
+        } catch (Exception e) {
+            span.error(e);
+            log.error("Exception while retrieving event context", e);
+        } finally {
+            span.finish();
+        }
+        return null;
+    }
+
+    /**
+     * Render shape overlay tile request handler.
+     * @param client OMERO client to use for querying.
+     * @param scope identifies which shapes of the image the caller may
+     * see, as returned by {@link #getScope(omero.client)}
+     * @return <code>image/png</code> encoded transparent overlay tile or
+     * <code>null</code> if the image cannot be found.
+     */
+    public byte[] renderShapeOverlay(omero.client client, String scope) {
+        ScopedSpan span = Tracing.currentTracer()
+                .startScopedSpan("render_shape_overlay_handler");
+        try {
+            IQueryPrx iQuery = client.getSession().getQueryService();
+            Pixels pixels = retrievePixDescription(iQuery);
+            if (pixels == null) {
+                log.debug("Cannot find Image:{}", shapeOverlayCtx.imageId);
+                return null;
+            }
+            if ((shapeOverlayCtx.z != null
+                    && shapeOverlayCtx.z >= pixels.getSizeZ())
+                || (shapeOverlayCtx.t != null
+                    && shapeOverlayCtx.t >= pixels.getSizeT())) {
+                throw new IllegalArgumentException(
+                        "Requested plane outside image bounds");
+            }
+            PyramidDescriptor pyramidDescriptor =
+                    getPyramidDescriptor(pixels);
+            List<List<Integer>> resolutionDescriptions =
+                    pyramidDescriptor.getResolutionDescriptions();
+            Dimension tileSize = pyramidDescriptor.getTileSize();
+            int resolution = shapeOverlayCtx.resolution;
+            if (resolution < 0
+                    || resolution >= resolutionDescriptions.size()) {
+                throw new IllegalArgumentException(
+                        "Resolution " + resolution + " outside of range " +
+                        "[0, " + resolutionDescriptions.size() + ")");
+            }
+            int levelSizeX = resolutionDescriptions.get(resolution).get(0);
+            int levelSizeY = resolutionDescriptions.get(resolution).get(1);
+            int width = shapeOverlayCtx.tile.getWidth();
+            int height = shapeOverlayCtx.tile.getHeight();
+            if (width == 0) {
+                width = (int) tileSize.getWidth();
+            }
+            if (height == 0) {
+                height = (int) tileSize.getHeight();
+            }
+            width = Math.min(width, maxTileLength);
+            height = Math.min(height, maxTileLength);
+            int x = shapeOverlayCtx.tile.getX() * width;
+            int y = shapeOverlayCtx.tile.getY() * height;
+            if (x < 0 || y < 0 || x >= levelSizeX || y >= levelSizeY) {
+                throw new IllegalArgumentException(
+                        "Start position (" + x + "," + y + ") exceeds "
+                        + "image size (" + levelSizeX + "," + levelSizeY
+                        + ")");
+            }
+            width = Math.min(width, levelSizeX - x);
+            height = Math.min(height, levelSizeY - y);
+            double scaleX = pixels.getSizeX() / (double) levelSizeX;
+            double scaleY = pixels.getSizeY() / (double) levelSizeY;
+
+            ShapeSpatialIndex index = shapeOverlayCache.getIndex(
+                    shapeOverlayCtx.indexKey(scope), key -> {
+                        try {
+                            return buildIndex(
+                                    iQuery, pixels.getSizeX(),
+                                    pixels.getSizeY());
+                        } catch (ServerError e) {
+                            throw new RuntimeException(e);
+                        }
+                    });
+            // Pad the query so that strokes of shapes just outside the
+            // tile, which are constant width in rendered pixels, are drawn
+            double padX = QUERY_PADDING * scaleX;
+            double padY = QUERY_PADDING * scaleY;
+            List<ShapeSpatialIndex.Entry> shapes = index.query(
+                    new Rectangle2D.Double(
+                            x * scaleX - padX, y * scaleY - padY,
+                            width * scaleX + 2 * padX,
+                            height * scaleY + 2 * padY));
+            span.tag("omero.shape_count", Integer.toString(shapes.size()));
+            log.debug("Rendering {} of {} shapes", shapes.size(),
+                    index.size());
+            int tileX = x, tileY = y, tileWidth = width, tileHeight = height;
+            Callable<byte[]> task = () -> encode(rasterize(
+                    shapes, tileX, tileY, tileWidth, tileHeight,
+                    scaleX, scaleY));
+            if (renderExecutor == null) {
+                return task.call();
+            }
+            return renderExecutor.execute(task);
+        } catch (IllegalArgumentException e) {
+            span.error(e);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            span.error(e);
+            log.error("Interrupted while rendering shape overlay", e);
+        } catch (Exception e) {
+            span.error(e);
+            log.error("Exception while rendering shape overlay", e);
+        } finally {
+            span.finish();
+        }
+        return null;
+    }
+
+    /**
+     * Describes the pyramid of an image, only opening a pixel buffer if
+     * the description is not cached.
+     * @param pixels pixels metadata
+     * @return See above.
+     */
+    private PyramidDescriptor getPyramidDescriptor(Pixels pixels) {
+        Supplier<PyramidDescriptor> loader = () -> {
+            try (PixelBuffer pixelBuffer =
+                    pixelsService.getPixelBuffer(pixels, false)) {
+                return new PyramidDescriptor(pixelBuffer);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        if (pyramidDescriptorService == null) {
+            return loader.get();
+        }
+        return pyramidDescriptorService.get(pixels.getId(), loader);
+    }
+
+    /**
+     * Rasterizes shapes onto a transparent tile.
+     * @param shapes shapes to rasterize in draw order
+     * @param x X offset of the tile at its resolution level
+     * @param y Y offset of the tile at its resolution level
+     * @param width width of the tile
+     * @param height height of the tile
+     * @param scaleX ratio of full resolution to tile resolution in X
+     * @param scaleY ratio of full resolution to tile resolution in Y
+     * @return See above.
+     */
+    protected static BufferedImage rasterize(
+            List<ShapeSpatialIndex.Entry> shapes, int x, int y,
+            int width, int height, double scaleX, double scaleY) {
+        BufferedImage image = new BufferedImage(
+                width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            // Shapes are transformed into tile space rather than setting a
+            // transform on the graphics so that stroke widths are constant
+            // in rendered pixels across resolution levels
+            AffineTransform toTile = new AffineTransform();
+            toTile.translate(-x, -y);
+            toTile.scale(1 / scaleX, 1 / scaleY);
+            for (ShapeSpatialIndex.Entry entry : shapes) {
+                java.awt.Shape shape = toTile.createTransformedShape(
+                        entry.shape);
+                if (entry.fillColor != null) {
+                    graphics.setColor(entry.fillColor);
+                    graphics.fill(shape);
+                }
+                if (entry.strokeColor != null) {
+                    graphics.setColor(entry.strokeColor);
+                    graphics.setStroke(new BasicStroke(entry.strokeWidth));
+                    graphics.draw(shape);
+                }
+            }
+        } finally {
+            graphics.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Encodes a tile as PNG.
+     * @param image tile to encode
+     * @return See above.
+     * @throws IOException If there is an error encoding the tile.
+     */
+    private byte[] encode(BufferedImage image) throws IOException {
+        ScopedSpan span = Tracing.currentTracer()
+                .startScopedSpan("encode_shape_overlay");
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", output);
+            return output.toByteArray();
+        } finally {
+            span.finish();
+        }
+    }
+
+    /**
+     * Builds the spatial index over the shapes matching the current context
+     * filters.  Shapes are retrieved in pages to bound the size of each
+     * server response for images with very large numbers of ROIs.
+     * @param iQuery OMERO query service to use for metadata access.
+     * @param sizeX full resolution size of the image in X
+     * @param sizeY full resolution size of the image in Y
+     * @return See above.
+     * @throws ServerError If there was any sort of error retrieving shapes.
+     */
+    private ShapeSpatialIndex buildIndex(
+            IQueryPrx iQuery, int sizeX, int sizeY) throws ServerError {
+        ScopedSpan span = Tracing.currentTracer()
+                .startScopedSpan("build_shape_spatial_index");
+        try {
+            Map<String, String> ctx = new HashMap<String, String>();
+            ctx.put("omero.group", "-1");
+            ParametersI params = new ParametersI();
+            params.addId(shapeOverlayCtx.imageId);
+            StringBuilder query = new StringBuilder(
+                    "select s from Shape as s " +
+                    "join s.roi as r " +
+                    "left outer join fetch s.transform " +
+                    "where r.image.id = :id " +
+                    "and s.class in " +
+                    "(Rectangle, Ellipse, Polygon, Polyline, Line, Point) ");
+            if (shapeOverlayCtx.z != null) {
+                query.append("and (s.theZ is null or s.theZ = :z) ");
+                params.add("z", rint(shapeOverlayCtx.z));
+            }
+            if (shapeOverlayCtx.t != null) {
+                query.append("and (s.theT is null or s.theT = :t) ");
+                params.add("t", rint(shapeOverlayCtx.t));
+            }
+            if (shapeOverlayCtx.roiIds != null) {
+                query.append("and r.id in (:roiIds) ");
+                List<RType> roiIds = new ArrayList<RType>();
+                for (Long roiId : shapeOverlayCtx.roiIds) {
+                    roiIds.add(rlong(roiId));
+                }
+                params.add("roiIds", rlist(roiIds));
+            }
+            query.append("order by r.id, s.id");
+
+            List<ShapeSpatialIndex.Entry> entries =
+                    new ArrayList<ShapeSpatialIndex.Entry>();
+            for (int offset = 0; ; offset += SHAPE_PAGE_SIZE) {
+                params.page(offset, SHAPE_PAGE_SIZE);
+                List<IObject> shapes = iQuery.findAllByQuery(
+                        query.toString(), params, ctx);
+                for (IObject shape : shapes) {
+                    ShapeSpatialIndex.Entry entry = toEntry((Shape) shape);
+                    if (entry != null) {
+                        entries.add(entry);
+                    }
+                }
+                if (shapes.size() < SHAPE_PAGE_SIZE) {
+                    break;
+                }
+            }
+            span.tag("omero.shape_count", Integer.toString(entries.size()));
+            return new ShapeSpatialIndex(entries, sizeX, sizeY);
+        } finally {
+            span.finish();
+        }
+    }
+
+    /**
+     * Converts an OMERO shape into a spatial index entry.
+     * @param shape shape to convert
+     * @return See above or <code>null</code> if the shape cannot be
+     * converted.
+     */
+    protected static ShapeSpatialIndex.Entry toEntry(Shape shape) {
+        java.awt.Shape outline;
+        boolean fillable = true;
+        try {
+            if (shape instanceof RectangleI) {
+                RectangleI o = (RectangleI) shape;
+                outline = new Rectangle2D.Double(
+                        (Double) unwrap(o.getX()), (Double) unwrap(o.getY()),
+                        (Double) unwrap(o.getWidth()),
+                        (Double) unwrap(o.getHeight()));
+            } else if (shape instanceof EllipseI) {
+                EllipseI o = (EllipseI) shape;
+                double radiusX = (Double) unwrap(o.getRadiusX());
+                double radiusY = (Double) unwrap(o.getRadiusY());
+                outline = new Ellipse2D.Double(
+                        (Double) unwrap(o.getX()) - radiusX,
+                        (Double) unwrap(o.getY()) - radiusY,
+                        radiusX * 2, radiusY * 2);
+            } else if (shape instanceof PointI) {
+                PointI o = (PointI) shape;
+                outline = new Ellipse2D.Double(
+                        (Double) unwrap(o.getX()) - POINT_RADIUS,
+                        (Double) unwrap(o.getY()) - POINT_RADIUS,
+                        POINT_RADIUS * 2, POINT_RADIUS * 2);
+            } else if (shape instanceof LineI) {
+                LineI o = (LineI) shape;
+                outline = new Line2D.Double(
+                        (Double) unwrap(o.getX1()), (Double) unwrap(o.getY1()),
+                        (Double) unwrap(o.getX2()), (Double) unwrap(o.getY2()));
+                fillable = false;
+            } else if (shape instanceof PolygonI) {
+                outline = parsePoints(
+                        (String) unwrap(((PolygonI) shape).getPoints()), true);
+            } else if (shape instanceof PolylineI) {
+                outline = parsePoints(
+                        (String) unwrap(((PolylineI) shape).getPoints()),
+                        false);
+                fillable = false;
+            } else {
+                return null;
+            }
+        } catch (NullPointerException | IllegalArgumentException e) {
+            log.debug("Skipping malformed Shape:{}",
+                    unwrap(shape.getId()), e);
+            return null;
+        }
+
+        omero.model.AffineTransform t = shape.getTransform();
+        if (t != null) {
+            outline = new AffineTransform(
+                    (Double) unwrap(t.getA00()), (Double) unwrap(t.getA10()),
+                    (Double) unwrap(t.getA01()), (Double) unwrap(t.getA11()),
+                    (Double) unwrap(t.getA02()), (Double) unwrap(t.getA12()))
+                .createTransformedShape(outline);
+        }
+
+        Color fillColor = fillable? toColor(shape.getFillColor()) : null;
+        Color strokeColor = toColor(shape.getStrokeColor());
+        if (strokeColor == null && fillColor == null) {
+            strokeColor = DEFAULT_STROKE_COLOR;
+        }
+        float strokeWidth = 1;
+        if (shape.getStrokeWidth() != null) {
+            strokeWidth = (float) shape.getStrokeWidth().getValue();
+        }
+        return new ShapeSpatialIndex.Entry(
+                outline, fillColor, strokeColor, strokeWidth);
+    }
+
+    /**
+     * Parses an OMERO points string; <code>"x1,y1 x2,y2 ..."</code>.
+     * @param points points string
+     * @param closed whether or not to close the resulting path
+     * @return See above.
+     */
+    protected static Path2D parsePoints(String points, boolean closed) {
+        // Legacy OMERO.insight format; "points[x1,y1, x2,y2] points1[...]"
+        int start = points.indexOf("points[");
+        if (start >= 0) {
+            int end = points.indexOf(']', start);
+            points = points.substring(start + "points[".length(), end);
+        }
+        Path2D.Double path = new Path2D.Double();
+        boolean first = true;
+        for (String point : points.trim().split("\\s+")) {
+            String[] xy = point.split(",");
+            if (xy.length != 2) {
+                throw new IllegalArgumentException(
+                        "Invalid point: " + point);
+            }
+            double x = Double.parseDouble(xy[0]);
+            double y = Double.parseDouble(xy[1]);
+            if (first) {
+                path.moveTo(x, y);
+                first = false;
+            } else {
+                path.lineTo(x, y);
+            }
+        }
+        if (closed) {
+            path.closePath();
+        }
+        return path;
+    }
+
+    /**
+     * Converts an OMERO RGBA color to an AWT color.
+     * @param color OMERO color
+     * @return See above or <code>null</code> if <code>color</code> is not
+     * set.
+     */
+    private static Color toColor(omero.RInt color) {
+        if (color == null) {
+            return null;
+        }
+        ome.xml.model.primitives.Color rgba =
+                new ome.xml.model.primitives.Color(color.getValue());
+        return new Color(rgba.getRed(), rgba.getGreen(), rgba.getBlue(),
+                rgba.getAlpha());
+    }
+
+    /**
+     * Get Pixels information for the Image in the current context.
+     * @param iQuery OMERO query service to use for metadata access.
+     * @return Populated Pixels object or <code>null</code> if the Image
+     * cannot be found.
+     * @throws ServerError If there was any sort of error retrieving the
+     * Pixels.
+     */
+    private Pixels retrievePixDescription(IQueryPrx iQuery)
+            throws ServerError {
+        ScopedSpan span = Tracing.currentTracer()
+                .startScopedSpan("retrieve_pix_description");
+        try {
+            Map<String, String> ctx = new HashMap<String, String>();
+            ctx.put("omero.group", "-1");
+            ParametersI params = new ParametersI();
+            params.addId(shapeOverlayCtx.imageId);
+            IObject pixels = iQuery.findByQuery(
+                    "select p from Pixels as p "
+                    + "join fetch p.image as i "
+                    + "left outer join fetch i.format "
+                    + "left outer join fetch i.details.externalInfo "
+                    + "join fetch p.pixelsType "
+                    + "where i.id = :id", params, ctx);
+            if (pixels == null) {
+                return null;
+            }
+            return (Pixels) new IceMapper().reverse(pixels);
+        } finally {
+            span.finish();
+        }
+    }
+
+    /**
+     * Whether or not the Image the overlay is for can be read from the
+     * server.
+     * @param client OMERO client to use for querying.
+     * @return <code>true</code> if the Image can be loaded or
+     * <code>false</code> otherwise.
+     */
+    public boolean canRead(omero.client client) {
+        Map<String, String> ctx = new HashMap<String, String>();
+        ctx.put("omero.group", "-1");
+        ParametersI params = new ParametersI();
+        params.addId(shapeOverlayCtx.imageId);
+        ScopedSpan span =
+                Tracing.currentTracer().startScopedSpan("can_read");
+        try {
+            List<List<RType>> rows = client.getSession()
+                    .getQueryService().projection(
+                            "SELECT i.id FROM Image as i " +
+                            "WHERE i.id = :id", params, ctx);
+            if (rows.size() > 0) {
+                return true;
+            }
+        } catch (Exception e) {
+            span.error(e);
+            log.error("Exception while checking shape overlay readability",
+                    e);
+        } finally {
+            span.finish();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.awt.Color;
+import java.awt.Shape;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Uniform grid spatial index over the shapes of an image, in full
+ * resolution image coordinates.  Each grid cell records the indexes of the
+ * shapes whose bounds intersect it so that rendering a tile only touches
+ * the shapes which may be visible in that tile.  Query results preserve the
+ * order in which shapes were added so that draw order is stable between
+ * tiles.
+ */
+public class ShapeSpatialIndex {
+
+    /** Minimum size of a grid cell in image pixels */
+    public static final int MINIMUM_CELL_SIZE = 512;
+
+    /** Maximum number of grid cells along either axis */
+    public static final int MAXIMUM_CELLS = 256;
+
+    /**
+     * A single shape prepared for rendering.
+     */
+    public static class Entry {
+
+        /** Outline in full resolution image coordinates */
+        public final Shape shape;
+
+        /** Fill color or <code>null</code> if the shape is not filled */
+        public final Color fillColor;
+
+        /** Stroke color or <code>null</code> if the shape is not stroked */
+        public final Color strokeColor;
+
+        /** Stroke width in rendered pixels */
+        public final float strokeWidth;
+
+        /** Bounds of the outline including any stroke */
+        final Rectangle2D bounds;
+
+        /**
+         * Default constructor.
+         * @param shape outline in full resolution image coordinates
+         * @param fillColor fill color or <code>null</code>
+         * @param strokeColor stroke color or <code>null</code>
+         * @param strokeWidth stroke width in rendered pixels
+         */
+        public Entry(Shape shape, Color fillColor, Color strokeColor,
+                float strokeWidth) {
+            this.shape = shape;
+            this.fillColor = fillColor;
+            this.strokeColor = strokeColor;
+            this.strokeWidth = strokeWidth;
+            Rectangle2D bounds = shape.getBounds2D();
+            // Points and lines have no area; pad so that they still
+            // intersect the cells they are drawn in
+            double pad = Math.max(strokeWidth, 1);
+            this.bounds = new Rectangle2D.Double(
+                    bounds.getX() - pad, bounds.getY() - pad,
+                    bounds.getWidth() + 2 * pad, bounds.getHeight() + 2 * pad);
+        }
+    }
+
+    private final List<Entry> entries;
+
+    private final double cellWidth;
+
+    private final double cellHeight;
+
+    private final int columns;
+
+    private final int rows;
+
+    /** Shape indexes for each cell, row major */
+    private final int[][] cells;
+
+    /**
+     * Default constructor.
+     * @param entries shapes to index in draw order
+     * @param sizeX full resolution size of the image in X
+     * @param sizeY full resolution size of the image in Y
+     */
+    public ShapeSpatialIndex(List<Entry> entries, int sizeX, int sizeY) {
+        this.entries = Collections.unmodifiableList(
+                new ArrayList<Entry>(entries));
+        columns = Math.max(1, Math.min(MAXIMUM_CELLS,
+                (int) Math.ceil(sizeX / (double) MINIMUM_CELL_SIZE)));
+        rows = Math.max(1, Math.min(MAXIMUM_CELLS,
+                (int) Math.ceil(sizeY / (double) MINIMUM_CELL_SIZE)));
+        cellWidth = Math.max(1, sizeX) / (double) columns;
+        cellHeight = Math.max(1, sizeY) / (double) rows;
+
+        // Two passes; count then fill so that each cell is a single
+        // exactly sized primitive array
+        int[] counts = new int[columns * rows];
+        for (Entry entry : this.entries) {
+            int[] range = cellRange(entry.bounds);
+            if (range == null) {
+                continue;
+            }
+            for (int row = range[1]; row <= range[3]; row++) {
+                for (int column = range[0]; column <= range[2]; column++) {
+                    counts[row * columns + column]++;
+                }
+            }
+        }
+        cells = new int[columns * rows][];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (int i = 0; i < this.entries.size(); i++) {
+            int[] range = cellRange(this.entries.get(i).bounds);
+            if (range == null) {
+                continue;
+            }
+            for (int row = range[1]; row <= range[3]; row++) {
+                for (int column = range[0]; column <= range[2]; column++) {
+                    int cell = row * columns + column;
+                    cells[cell][counts[cell]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the inclusive range of cells a rectangle intersects.
+     * @param bounds rectangle in full resolution image coordinates
+     * @return <code>[minColumn, minRow, maxColumn, maxRow]</code> or
+     * <code>null</code> if the rectangle lies entirely outside the grid.
+     */
+    private int[] cellRange(Rectangle2D bounds) {
+        int minColumn = (int) Math.floor(bounds.getMinX() / cellWidth);
+        int minRow = (int) Math.floor(bounds.getMinY() / cellHeight);
+        int maxColumn = (int) Math.floor(bounds.getMaxX() / cellWidth);
+        int maxRow = (int) Math.floor(bounds.getMaxY() / cellHeight);
+        if (maxColumn < 0 || maxRow < 0
+                || minColumn >= columns || minRow >= rows) {
+            return null;
+        }
+        return new int[] {
+            Math.max(0, minColumn), Math.max(0, minRow),
+            Math.min(columns - 1, maxColumn), Math.min(rows - 1, maxRow)
+        };
+    }
+
+    /**
+     * Finds all shapes whose bounds intersect a region.
+     * @param region region in full resolution image coordinates
+     * @return Intersecting shapes in the order they were added.
+     */
+    public List<Entry> query(Rectangle2D region) {
+        int[] range = cellRange(region);
+        if (range == null) {
+            return Collections.emptyList();
+        }
+        BitSet candidates = new BitSet(entries.size());
+        for (int row = range[1]; row <= range[3]; row++) {
+            for (int column = range[0]; column <= range[2]; column++) {
+                for (int i : cells[row * columns + column]) {
+                    candidates.set(i);
+                }
+            }
+        }
+        List<Entry> toReturn = new ArrayList<Entry>();
+        for (int i = candidates.nextSetBit(0); i >= 0;
+                i = candidates.nextSetBit(i + 1)) {
+            Entry entry = entries.get(i);
+            if (entry.bounds.intersects(region)) {
+                toReturn.add(entry);
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * Number of shapes in the index.
+     * @return See above.
+     */
+    public int size() {
+        return entries.size();
+    }
+}
@@ -88,8 +88,29 @@ public class ThumbnailCtx extends ImageRegionCtx {
     @Override
     public void setResolutionLevel(
             Renderer renderer, PixelBuffer pixelBuffer) {
-        List<List<Integer>> rds = pixelBuffer.getResolutionDescriptions();
+        applyResolutionLevel(
+                renderer, pixelBuffer.getResolutionDescriptions());
+    }
 
+    /**
+     * Apply the first resolution level larger than the thumbnail
+     * @param renderer fully initialized renderer
+     * @param pyramidDescriptor pyramid structure of the image
+     */
+    @Override
+    public void setResolutionLevel(
+            Renderer renderer, PyramidDescriptor pyramidDescriptor) {
+        applyResolutionLevel(
+                renderer, pyramidDescriptor.getResolutionDescriptions());
+    }
+
+    /**
+     * Apply the first resolution level larger than the thumbnail
+     * @param renderer fully initialized renderer
+     * @param rds resolution descriptions of the image, full resolution first
+     */
+    private void applyResolutionLevel(
+            Renderer renderer, List<List<Integer>> rds) {
         int resolutionLevel = 0;
         for (; resolutionLevel < rds.size(); resolutionLevel++) {
             if (rds.get(resolutionLevel).get(0) < longestSide
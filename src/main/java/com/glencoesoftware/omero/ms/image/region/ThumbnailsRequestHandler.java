@@ -25,12 +25,12 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import org.slf4j.LoggerFactory;
 
 import brave.ScopedSpan;
 import brave.Tracing;
+import io.vertx.core.Future;
 import ome.api.IScale;
 import ome.api.local.LocalCompress;
 import ome.model.core.Pixels;
@@ -41,6 +41,7 @@ import omeis.providers.re.lut.LutProvider;
 import omero.api.IQueryPrx;
 import omero.api.ServiceFactoryPrx;
 import omero.model.Image;
+import omero.sys.EventContext;
 import ucar.ma2.Array;
 
 public class ThumbnailsRequestHandler extends ImageRegionRequestHandler {
@@ -78,13 +79,62 @@ public class ThumbnailsRequestHandler extends ImageRegionRequestHandler {
             int maxTileLength,
             ZarrPixelsService pixelsService,
             IScale iScale) {
+        this(thumbnailCtx, families, renderingModels, lutProvider,
+                compressionSrv, maxTileLength, pixelsService, iScale, null);
+    }
+
+    /**
+     * Constructor with cached pyramid structure.
+     * @param thumbnailCtx ThumbnailCtx object
+     * @param pyramidDescriptorService cached pyramid structure used for
+     * resolution level selection or <code>null</code> to always consult the
+     * pixel buffer
+     */
+    public ThumbnailsRequestHandler(
+            ThumbnailCtx thumbnailCtx,
+            List<Family> families,
+            List<RenderingModel> renderingModels,
+            LutProvider lutProvider,
+            LocalCompress compressionSrv,
+            int maxTileLength,
+            ZarrPixelsService pixelsService,
+            IScale iScale,
+            PyramidDescriptorService pyramidDescriptorService) {
+        this(thumbnailCtx, families, renderingModels, lutProvider,
+                compressionSrv, maxTileLength, pixelsService, iScale,
+                pyramidDescriptorService, null);
+    }
+
+    /**
+     * Constructor with cached pyramid structure and a dedicated encoding
+     * pool.
+     * @param thumbnailCtx ThumbnailCtx object
+     * @param pyramidDescriptorService cached pyramid structure used for
+     * resolution level selection or <code>null</code> to always consult the
+     * pixel buffer
+     * @param renderExecutor platform thread pool to scale and encode on or
+     * <code>null</code> to do so on the calling thread
+     */
+    public ThumbnailsRequestHandler(
+            ThumbnailCtx thumbnailCtx,
+            List<Family> families,
+            List<RenderingModel> renderingModels,
+            LutProvider lutProvider,
+            LocalCompress compressionSrv,
+            int maxTileLength,
+            ZarrPixelsService pixelsService,
+            IScale iScale,
+            PyramidDescriptorService pyramidDescriptorService,
+            RenderExecutor renderExecutor) {
         super(thumbnailCtx,
                 families,
                 renderingModels,
                 lutProvider,
                 compressionSrv,
                 maxTileLength,
-                pixelsService);
+                pixelsService,
+                pyramidDescriptorService,
+                renderExecutor);
         this.thumbnailCtx = thumbnailCtx;
         this.iScale = iScale;
     }
@@ -101,17 +151,18 @@ public class ThumbnailsRequestHandler extends ImageRegionRequestHandler {
         try {
             span.tag("omero.image_ids", thumbnailCtx.imageIds.toString());
             ServiceFactoryPrx sf = client.getSession();
+            // Independent of the pixels metadata so retrieved concurrently
+            Future<EventContext> eventContext =
+                    AsyncMetadataService.getEventContext(sf);
             IQueryPrx iQuery = sf.getQueryService();
-            long userId = sf.getAdminService().getEventContext().userId;
+            Future<List<RenderingDef>> pendingRenderingDefs =
+                    retrieveRenderingDefs(
+                            iQuery, eventContext, thumbnailCtx.imageIds);
             Map<Long, Pixels> imagePixels = retrievePixDescription(
                     iQuery, thumbnailCtx.imageIds);
-            List<Long> pixelsIds = imagePixels
-                    .values()
-                    .stream()
-                    .map(v -> v.getId())
-                    .collect(Collectors.toList());
-            List<RenderingDef> renderingDefs = retrieveRenderingDefs(
-                    client, userId, pixelsIds);
+            long userId = AsyncMetadataService.await(eventContext).userId;
+            List<RenderingDef> renderingDefs =
+                    awaitRenderingDefs(pendingRenderingDefs);
             for (Long imageId  : thumbnailCtx.imageIds) {
                 Pixels pixels = imagePixels.get(imageId);
                 byte[] thumbnail = new byte[0];
@@ -143,14 +194,22 @@ public class ThumbnailsRequestHandler extends ImageRegionRequestHandler {
      */
     public byte[] renderThumbnail(omero.client client) {
         try {
-            IQueryPrx iQuery = client.getSession().getQueryService();
+            ServiceFactoryPrx sf = client.getSession();
+            // Independent of the pixels metadata so retrieved concurrently
+            Future<EventContext> eventContext =
+                    AsyncMetadataService.getEventContext(sf);
+            IQueryPrx iQuery = sf.getQueryService();
             long imageId = thumbnailCtx.imageIds.get(0);
+            Future<List<RenderingDef>> renderingDefs = retrieveRenderingDefs(
+                    iQuery, eventContext, thumbnailCtx.imageIds);
             Map<Long, Pixels> imagePixels = retrievePixDescription(
                     iQuery, thumbnailCtx.imageIds);
             Pixels pixels = imagePixels.get(imageId);
             if (pixels != null) {
-                RenderingDef renderingDef =
-                        getRenderingDef(client, pixels.getId());
+                long userId = AsyncMetadataService.await(eventContext).userId;
+                RenderingDef renderingDef = selectRenderingDef(
+                        awaitRenderingDefs(renderingDefs), userId,
+                        pixels.getId());
                 return renderThumbnail(client, pixels, renderingDef);
             }
             log.debug("Cannot find Image:{}", imageId);
@@ -169,6 +228,33 @@ public class ThumbnailsRequestHandler extends ImageRegionRequestHandler {
      */
     private byte[] renderThumbnail(
             omero.client client, Pixels pixels, RenderingDef renderingDef) {
+        if (requestCoalescer == null) {
+            return doRenderThumbnail(client, pixels, renderingDef);
+        }
+        String key = String.format("thumbnail:%d:%d:%s",
+                pixels.getId(), thumbnailCtx.longestSide,
+                renderingDefKey(renderingDef));
+        try {
+            return requestCoalescer.execute(key,
+                    () -> doRenderThumbnail(client, pixels, renderingDef));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while rendering thumbnail", e);
+        } catch (Exception e) {
+            log.error("Exception while rendering thumbnail", e);
+        }
+        return null;
+    }
+
+    /**
+     * Renders a JPEG thumbnail without coalescing.
+     * @param client OMERO client to use for querying.
+     * @param pixels pixels metadata
+     * @param renderingDef rendering settings to use for rendering
+     * @return JPEG thumbnail byte array.
+     */
+    private byte[] doRenderThumbnail(
+            omero.client client, Pixels pixels, RenderingDef renderingDef) {
         ScopedSpan span =
                 Tracing.currentTracer().startScopedSpan("render_thumbnail");
         try {
@@ -176,11 +262,18 @@ public class ThumbnailsRequestHandler extends ImageRegionRequestHandler {
             span.tag("omero.pixels_id", pixels.getId().toString());
             thumbnailCtx.format = "jpeg";
             Array array = render(pixels, renderingDef);
-            int[] shape = array.getShape();
-            BufferedImage image = getBufferedImage(array);
-            int longestSide = Arrays.stream(shape).max().getAsInt();
-            float scale = (float) thumbnailCtx.longestSide / longestSide;
-            return compress(iScale.scaleBufferedImage(image, scale, scale));
+            return encode(() -> {
+                int[] shape = array.getShape();
+                BufferedImage image = getBufferedImage(array);
+                int longestSide = Arrays.stream(shape).max().getAsInt();
+                float scale = (float) thumbnailCtx.longestSide / longestSide;
+                return compress(
+                        iScale.scaleBufferedImage(image, scale, scale));
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            span.error(e);
+            log.error("Interrupted while rendering thumbnail", e);
         } catch (Exception e) {
             span.error(e);
             log.error("Exception while rendering thumbnail", e);
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.glencoesoftware.omero.ms.image.region.AdmissionController.Permit;
+
+public class AdmissionControllerTest {
+
+    @Test
+    public void testAdmitQueueReject() {
+        AdmissionController controller =
+                new AdmissionController("test-admit", 2, 1, 10, 1);
+        List<Permit> permits = new ArrayList<Permit>();
+        Assert.assertTrue(controller.submit(permits::add));
+        Assert.assertTrue(controller.submit(permits::add));
+        Assert.assertEquals(2, permits.size());
+        Assert.assertEquals(2, controller.getInFlight());
+        // Over the limit; queued
+        Assert.assertTrue(controller.submit(permits::add));
+        Assert.assertEquals(2, permits.size());
+        Assert.assertEquals(1, controller.getQueueDepth());
+        // Queue full; rejected
+        Assert.assertFalse(controller.submit(permits::add));
+        // Releasing a permit admits the queued request
+        permits.get(0).cancel();
+        Assert.assertEquals(3, permits.size());
+        Assert.assertEquals(0, controller.getQueueDepth());
+        Assert.assertEquals(2, controller.getInFlight());
+    }
+
+    @Test
+    public void testReleaseIdempotent() {
+        AdmissionController controller =
+                new AdmissionController("test-release", 2, 1, 10, 0);
+        List<Permit> permits = new ArrayList<Permit>();
+        controller.submit(permits::add);
+        controller.submit(permits::add);
+        permits.get(0).release();
+        permits.get(0).release();
+        permits.get(0).cancel();
+        Assert.assertEquals(1, controller.getInFlight());
+    }
+
+    @Test
+    public void testTryAcquireIdle() {
+        AdmissionController controller =
+                new AdmissionController("test-idle", 4, 1, 10, 1);
+        Permit idle = controller.tryAcquireIdle();
+        Assert.assertNotNull(idle);
+        Assert.assertEquals(1, controller.getInFlight());
+        List<Permit> permits = new ArrayList<Permit>();
+        controller.submit(permits::add);
+        // Half the limit in use
+        Assert.assertNull(controller.tryAcquireIdle());
+        permits.get(0).release();
+        idle.release();
+        for (int i = 0; i < 5; i++) {
+            controller.submit(permits::add);
+        }
+        // Something is waiting to be admitted
+        Assert.assertEquals(1, controller.getQueueDepth());
+        Assert.assertNull(controller.tryAcquireIdle());
+    }
+
+    @Test
+    public void testLimitGrowsWithSteadyLatency() {
+        AdmissionController controller =
+                new AdmissionController("test-grow", 4, 1, 100, 0);
+        for (int i = 0; i < 50; i++) {
+            controller.update(10000000L, controller.getLimit());
+        }
+        Assert.assertTrue(controller.getLimit() > 4);
+        Assert.assertTrue(controller.getLimit() <= 100);
+    }
+
+    @Test
+    public void testLimitNotGrownWhenUnused() {
+        AdmissionController controller =
+                new AdmissionController("test-unused", 4, 1, 100, 0);
+        for (int i = 0; i < 50; i++) {
+            controller.update(10000000L, 1);
+        }
+        Assert.assertEquals(4, controller.getLimit());
+    }
+
+    @Test
+    public void testLimitShrinksWithRisingLatency() {
+        AdmissionController controller =
+                new AdmissionController("test-shrink", 40, 2, 100, 0);
+        for (int i = 0; i < 20; i++) {
+            controller.update(10000000L, controller.getLimit());
+        }
+        int limit = controller.getLimit();
+        for (int i = 0; i < 50; i++) {
+            controller.update(100000000L, controller.getLimit());
+        }
+        Assert.assertTrue(controller.getLimit() < limit);
+        Assert.assertTrue(controller.getLimit() >= 2);
+    }
+}
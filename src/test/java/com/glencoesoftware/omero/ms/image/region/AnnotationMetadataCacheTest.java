@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.glencoesoftware.omero.ms.image.region.AnnotationMetadataCache.FileMetadata;
+
+import io.vertx.core.json.JsonObject;
+
+public class AnnotationMetadataCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileMetadata fileMetadata() {
+        return new FileMetadata(
+                2L, "a.txt", "/OMERO/Files/2", 10L, 0L, "text/plain");
+    }
+
+    @Test
+    public void testGetRequiresReadability() {
+        AnnotationMetadataCache cache =
+                new AnnotationMetadataCache(10, 60, 60);
+        FileMetadata fileMetadata = fileMetadata();
+        Assert.assertNull(cache.get("session", 1L));
+        cache.put("session", 1L, fileMetadata);
+        Assert.assertSame(fileMetadata, cache.get("session", 1L));
+        // Metadata is shared but readability is per session
+        Assert.assertNull(cache.get("other", 1L));
+        Assert.assertSame(fileMetadata, cache.getIfPresent(1L));
+        cache.invalidate(1L);
+        Assert.assertNull(cache.get("session", 1L));
+    }
+
+    @Test
+    public void testDisabled() {
+        AnnotationMetadataCache cache =
+                new AnnotationMetadataCache(10, 0, 60);
+        cache.put("session", 1L, fileMetadata());
+        Assert.assertNull(cache.get("session", 1L));
+    }
+
+    @Test
+    public void testFileMetadataOf() throws IOException {
+        File file = folder.newFile("a.txt");
+        Files.write(file.toPath(), "Hello".getBytes(StandardCharsets.UTF_8));
+        FileMetadata fileMetadata = FileMetadata.of(new JsonObject()
+                .put("originalFileId", 2L)
+                .put("originalFileName", "a.txt")
+                .put("originalFilePath", file.getAbsolutePath()));
+        Assert.assertEquals(2L, fileMetadata.originalFileId);
+        Assert.assertEquals("a.txt", fileMetadata.name);
+        Assert.assertEquals(5L, fileMetadata.size);
+        Assert.assertEquals(file.lastModified(), fileMetadata.lastModified);
+        Assert.assertEquals("text/plain", fileMetadata.contentType);
+    }
+
+    @Test
+    public void testNotModified() {
+        // Thu, 01 Jan 2026 00:00:00 GMT
+        FileMetadata fileMetadata = new FileMetadata(
+                2L, "a.txt", "/OMERO/Files/2", 10L, 1767225600000L,
+                "text/plain");
+        String etag = fileMetadata.etag();
+        Assert.assertEquals("Thu, 01 Jan 2026 00:00:00 GMT",
+                fileMetadata.lastModifiedHttpDate());
+        Assert.assertFalse(fileMetadata.notModified(null, null));
+        Assert.assertTrue(fileMetadata.notModified(etag, null));
+        Assert.assertTrue(fileMetadata.notModified("W/" + etag, null));
+        Assert.assertTrue(fileMetadata.notModified("\"x\", " + etag, null));
+        Assert.assertTrue(fileMetadata.notModified("*", null));
+        // If-None-Match takes precedence over If-Modified-Since
+        Assert.assertFalse(fileMetadata.notModified(
+                "\"x\"", "Fri, 02 Jan 2026 00:00:00 GMT"));
+        Assert.assertTrue(fileMetadata.notModified(
+                null, "Thu, 01 Jan 2026 00:00:00 GMT"));
+        Assert.assertFalse(fileMetadata.notModified(
+                null, "Wed, 31 Dec 2025 23:59:59 GMT"));
+        Assert.assertFalse(fileMetadata.notModified(null, "garbage"));
+    }
+
+    @Test
+    public void testIfRange() {
+        FileMetadata fileMetadata = new FileMetadata(
+                2L, "a.txt", "/OMERO/Files/2", 10L, 1767225600000L,
+                "text/plain");
+        Assert.assertTrue(fileMetadata.ifRange(null));
+        Assert.assertTrue(fileMetadata.ifRange(fileMetadata.etag()));
+        Assert.assertFalse(fileMetadata.ifRange("W/" + fileMetadata.etag()));
+        Assert.assertFalse(fileMetadata.ifRange("\"x\""));
+        Assert.assertTrue(fileMetadata.ifRange(
+                fileMetadata.lastModifiedHttpDate()));
+        Assert.assertFalse(fileMetadata.ifRange(
+                "Wed, 31 Dec 2025 23:59:59 GMT"));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static org.mockito.Mockito.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import omero.SecurityViolation;
+import omero.ServerError;
+import omero.api.IQueryPrx;
+import omero.model.IObject;
+
+public class AsyncMetadataServiceTest {
+
+    @Test
+    public void testAwait() throws ServerError {
+        Promise<Long> promise = Promise.promise();
+        new Thread(() -> promise.complete(1L)).start();
+        Assert.assertEquals(
+                Long.valueOf(1L), AsyncMetadataService.await(promise.future()));
+    }
+
+    @Test(expected = SecurityViolation.class)
+    public void testAwaitServerError() throws ServerError {
+        AsyncMetadataService.await(
+                Future.failedFuture(new SecurityViolation()));
+    }
+
+    @Test(expected = Ice.ConnectionLostException.class)
+    public void testAwaitLocalException() throws ServerError {
+        AsyncMetadataService.await(
+                Future.failedFuture(new Ice.ConnectionLostException()));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testAwaitOtherException() throws ServerError {
+        AsyncMetadataService.await(Future.failedFuture(new Exception()));
+    }
+
+    @Test
+    public void testAwaitInterrupted() {
+        Thread.currentThread().interrupt();
+        try {
+            AsyncMetadataService.await(Promise.<Long>promise().future());
+            Assert.fail("Expected RuntimeException");
+        } catch (RuntimeException | ServerError e) {
+            Assert.assertTrue(e.getCause() instanceof InterruptedException);
+            // The interrupt is restored for the caller
+            Assert.assertTrue(Thread.interrupted());
+        }
+    }
+
+    @Test
+    public void testFindRenderingDefsWaitsForEventContext() {
+        IQueryPrx iQuery = mock(IQueryPrx.class);
+        Future<List<IObject>> renderingDefs =
+                AsyncMetadataService.findRenderingDefs(iQuery,
+                        Future.failedFuture(new SecurityViolation()),
+                        Arrays.asList(1L));
+        Assert.assertTrue(renderingDefs.failed());
+        Assert.assertTrue(
+                renderingDefs.cause() instanceof SecurityViolation);
+        verifyZeroInteractions(iQuery);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ByteRangeTest {
+
+    private void assertRange(ByteRange range, long start, long end) {
+        Assert.assertEquals(start, range.start);
+        Assert.assertEquals(end, range.end);
+    }
+
+    @Test
+    public void testSingleRanges() {
+        assertRange(ByteRange.parse("bytes=0-9", 100).get(0), 0, 9);
+        assertRange(ByteRange.parse("bytes=90-", 100).get(0), 90, 99);
+        assertRange(ByteRange.parse("bytes=-10", 100).get(0), 90, 99);
+        // Clamped to the representation
+        assertRange(ByteRange.parse("bytes=90-200", 100).get(0), 90, 99);
+        assertRange(ByteRange.parse("bytes=-200", 100).get(0), 0, 99);
+    }
+
+    @Test
+    public void testMultipleRanges() {
+        List<ByteRange> ranges =
+                ByteRange.parse("bytes=50-59, 0-9,-5", 100);
+        Assert.assertEquals(3, ranges.size());
+        assertRange(ranges.get(0), 50, 59);
+        assertRange(ranges.get(1), 0, 9);
+        assertRange(ranges.get(2), 95, 99);
+    }
+
+    @Test
+    public void testUnsatisfiable() {
+        Assert.assertTrue(ByteRange.parse("bytes=100-", 100).isEmpty());
+        Assert.assertTrue(ByteRange.parse("bytes=-0", 100).isEmpty());
+        Assert.assertEquals(1, ByteRange.parse("bytes=200-,0-0", 100).size());
+    }
+
+    @Test
+    public void testMalformed() {
+        for (String range : Arrays.asList(
+                null, "0-9", "items=0-9", "bytes=", "bytes=-", "bytes=9-0",
+                "bytes=a-b", "bytes=0-9;1-2")) {
+            try {
+                ByteRange.parse(range, 100);
+                Assert.fail("Expected failure parsing: " + range);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyRanges() {
+        String range = "bytes=" + String.join(",", Collections.nCopies(
+                ByteRange.MAX_RANGES + 1, "0-0"));
+        ByteRange.parse(range, 100);
+    }
+
+    @Test
+    public void testMultipartLength() {
+        List<ByteRange> ranges = ByteRange.parse("bytes=0-9,20-24", 100);
+        long expected = ByteRange.closeDelimiter("b").length;
+        for (ByteRange range : ranges) {
+            expected += range.partHeader("b", "text/plain", 100).length;
+        }
+        expected += 15;
+        Assert.assertEquals(expected, ByteRange.multipartLength(
+                ranges, "b", "text/plain", 100));
+        Assert.assertEquals("\r\n--b\r\nContent-Type: text/plain\r\n"
+                + "Content-Range: bytes 0-9/100\r\n\r\n",
+                new String(ranges.get(0).partHeader("b", "text/plain", 100)));
+    }
+}
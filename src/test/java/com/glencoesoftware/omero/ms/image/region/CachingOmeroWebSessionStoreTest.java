@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.glencoesoftware.omero.ms.core.IConnector;
+import com.glencoesoftware.omero.ms.core.OmeroWebSessionStore;
+
+public class CachingOmeroWebSessionStoreTest {
+
+    private OmeroWebSessionStore sessionStore;
+
+    private IConnector connector;
+
+    @Before
+    public void setUp() {
+        sessionStore = mock(OmeroWebSessionStore.class);
+        connector = mock(IConnector.class);
+        when(sessionStore.getConnector("valid")).thenReturn(connector);
+        when(sessionStore.getConnectorAsync("valid")).thenReturn(
+                CompletableFuture.completedFuture(connector));
+        when(sessionStore.getConnectorAsync("invalid")).thenReturn(
+                CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    public void testGetConnectorCached() {
+        CachingOmeroWebSessionStore store =
+                new CachingOmeroWebSessionStore(sessionStore, 10, 60);
+        Assert.assertSame(connector, store.getConnector("valid"));
+        Assert.assertSame(connector, store.getConnector("valid"));
+        verify(sessionStore, times(1)).getConnector("valid");
+    }
+
+    @Test
+    public void testGetConnectorAsyncCached() throws Exception {
+        CachingOmeroWebSessionStore store =
+                new CachingOmeroWebSessionStore(sessionStore, 10, 60);
+        Assert.assertSame(connector, store.getConnectorAsync("valid")
+                .toCompletableFuture().get());
+        Assert.assertSame(connector, store.getConnectorAsync("valid")
+                .toCompletableFuture().get());
+        verify(sessionStore, times(1)).getConnectorAsync("valid");
+    }
+
+    @Test
+    public void testUnresolvedNotCached() throws Exception {
+        CachingOmeroWebSessionStore store =
+                new CachingOmeroWebSessionStore(sessionStore, 10, 60);
+        Assert.assertNull(store.getConnectorAsync("invalid")
+                .toCompletableFuture().get());
+        Assert.assertNull(store.getConnectorAsync("invalid")
+                .toCompletableFuture().get());
+        verify(sessionStore, times(2)).getConnectorAsync("invalid");
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        CachingOmeroWebSessionStore store =
+                new CachingOmeroWebSessionStore(sessionStore, 10, 60);
+        store.getConnectorAsync("valid").toCompletableFuture().get();
+        store.invalidate("valid");
+        store.getConnectorAsync("valid").toCompletableFuture().get();
+        verify(sessionStore, times(2)).getConnectorAsync("valid");
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        CachingOmeroWebSessionStore store =
+                new CachingOmeroWebSessionStore(sessionStore, 10, 0);
+        store.getConnectorAsync("valid").toCompletableFuture().get();
+        store.getConnectorAsync("valid").toCompletableFuture().get();
+        verify(sessionStore, times(2)).getConnectorAsync("valid");
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ome.io.nio.PixelBuffer;
+import ome.util.PixelData;
+
+public class CachingPixelBufferTest {
+
+    private static final int SIZE_X = 10;
+
+    private static final int SIZE_Y = 9;
+
+    private PixelBuffer delegate;
+
+    private ChunkCache chunkCache;
+
+    /** Value of the pixel at x, y of the synthetic 8-bit image */
+    private static byte pixel(int x, int y) {
+        return (byte) (y * SIZE_X + x);
+    }
+
+    private static PixelData tile(int x, int y, int w, int h) {
+        byte[] data = new byte[w * h];
+        for (int row = 0; row < h; row++) {
+            for (int column = 0; column < w; column++) {
+                data[row * w + column] = pixel(x + column, y + row);
+            }
+        }
+        return new PixelData("uint8", ByteBuffer.wrap(data));
+    }
+
+    private static PixelBuffer mockPixelBuffer() throws IOException {
+        PixelBuffer pixelBuffer = mock(PixelBuffer.class);
+        when(pixelBuffer.getSizeX()).thenReturn(SIZE_X);
+        when(pixelBuffer.getSizeY()).thenReturn(SIZE_Y);
+        when(pixelBuffer.getSizeZ()).thenReturn(1);
+        when(pixelBuffer.getByteWidth()).thenReturn(1);
+        when(pixelBuffer.getResolutionLevel()).thenReturn(0);
+        when(pixelBuffer.getTileSize()).thenReturn(new Dimension(4, 4));
+        when(pixelBuffer.getTile(
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                anyInt())).thenAnswer(invocation -> tile(
+                        invocation.getArgument(3), invocation.getArgument(4),
+                        invocation.getArgument(5), invocation.getArgument(6)));
+        return pixelBuffer;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        delegate = mockPixelBuffer();
+        chunkCache = new ChunkCache(1024 * 1024, 60);
+    }
+
+    private void assertTile(PixelData pixelData, int x, int y, int w, int h) {
+        byte[] expected = tile(x, y, w, h).getData().array();
+        byte[] actual = new byte[pixelData.getData().limit()];
+        pixelData.getData().get(actual);
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testTileSpanningChunks() throws IOException {
+        PixelBuffer pixelBuffer =
+                CachingPixelBuffer.wrap(
+                        delegate, chunkCache, "a", "uint8");
+        assertTile(pixelBuffer.getTile(0, 0, 0, 3, 3, 5, 5), 3, 3, 5, 5);
+        // Four chunks, read whole
+        verify(delegate, times(4)).getTile(
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                anyInt());
+        verify(delegate).getTile(0, 0, 0, 0, 0, 4, 4);
+        verify(delegate).getTile(0, 0, 0, 4, 4, 4, 4);
+        // An adjacent tile within the same chunks is read from the cache
+        assertTile(pixelBuffer.getTile(0, 0, 0, 4, 4, 2, 2), 4, 4, 2, 2);
+        verify(delegate, times(4)).getTile(
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                anyInt());
+        Assert.assertEquals(64, chunkCache.residentBytes());
+    }
+
+    @Test
+    public void testConcurrentFetch() throws IOException {
+        PixelBuffer opened = mockPixelBuffer();
+        ChunkFetchScheduler fetchScheduler =
+                new ChunkFetchScheduler(4, 4, 1, 0);
+        try {
+            PixelBuffer pixelBuffer = CachingPixelBuffer.wrap(
+                    delegate, chunkCache, "a", "uint8", null,
+                    () -> opened, fetchScheduler);
+            assertTile(pixelBuffer.getTile(0, 0, 0, 3, 3, 5, 5), 3, 3, 5, 5);
+            // Chunks are read with their own pixel buffers
+            verify(opened, times(4)).getTile(
+                    anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                    anyInt(), anyInt());
+            verify(opened, times(4)).close();
+            // A single absent chunk is read with the wrapped pixel buffer
+            assertTile(pixelBuffer.getTile(0, 0, 0, 4, 4, 5, 4), 4, 4, 5, 4);
+            verify(delegate).getTile(0, 0, 0, 8, 4, 2, 4);
+            verify(delegate, times(1)).getTile(
+                    anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                    anyInt(), anyInt());
+        } finally {
+            fetchScheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testEdgeChunksTruncated() throws IOException {
+        PixelBuffer pixelBuffer =
+                CachingPixelBuffer.wrap(
+                        delegate, chunkCache, "a", "uint8");
+        assertTile(pixelBuffer.getTile(0, 0, 0, 7, 7, 3, 2), 7, 7, 3, 2);
+        verify(delegate).getTile(0, 0, 0, 4, 4, 4, 4);
+        verify(delegate).getTile(0, 0, 0, 8, 4, 2, 4);
+        verify(delegate).getTile(0, 0, 0, 4, 8, 4, 1);
+        verify(delegate).getTile(0, 0, 0, 8, 8, 2, 1);
+    }
+
+    @Test
+    public void testPlane() throws IOException {
+        PixelBuffer pixelBuffer =
+                CachingPixelBuffer.wrap(
+                        delegate, chunkCache, "a", "uint8");
+        assertTile(pixelBuffer.getPlane(0, 0, 0), 0, 0, SIZE_X, SIZE_Y);
+        assertTile(pixelBuffer.getStack(0, 0), 0, 0, SIZE_X, SIZE_Y);
+        // Nine chunks, each read once
+        verify(delegate, times(9)).getTile(
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                anyInt());
+    }
+
+    @Test
+    public void testArraysAndPlanesDistinct() throws IOException {
+        CachingPixelBuffer.wrap(delegate, chunkCache, "a", "uint8")
+                .getTile(0, 0, 0, 0, 0, 4, 4);
+        CachingPixelBuffer.wrap(delegate, chunkCache, "b", "uint8")
+                .getTile(0, 0, 0, 0, 0, 4, 4);
+        CachingPixelBuffer.wrap(delegate, chunkCache, "a", "uint8")
+                .getTile(1, 0, 0, 0, 0, 4, 4);
+        verify(delegate, times(2)).getTile(0, 0, 0, 0, 0, 4, 4);
+        verify(delegate).getTile(1, 0, 0, 0, 0, 4, 4);
+    }
+
+    @Test
+    public void testOutOfBoundsPassedOn() throws IOException {
+        PixelBuffer pixelBuffer =
+                CachingPixelBuffer.wrap(
+                        delegate, chunkCache, "a", "uint8");
+        pixelBuffer.getTile(0, 0, 0, 8, 0, 4, 4);
+        verify(delegate).getTile(0, 0, 0, 8, 0, 4, 4);
+        Assert.assertEquals(0, chunkCache.residentBytes());
+    }
+
+    @Test
+    public void testDisabled() {
+        Assert.assertSame(delegate, CachingPixelBuffer.wrap(
+                delegate, new ChunkCache(0, 60), "a", "uint8"));
+        Assert.assertSame(delegate,
+                CachingPixelBuffer.wrap(delegate, null, "a", "uint8"));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ome.io.nio.PixelBuffer;
+
+public class CancellablePixelBufferTest {
+
+    private PixelBuffer delegate;
+
+    private AtomicBoolean cancelled;
+
+    private PixelBuffer pixelBuffer;
+
+    @Before
+    public void setUp() {
+        delegate = mock(PixelBuffer.class);
+        when(delegate.getSizeX()).thenReturn(512);
+        cancelled = new AtomicBoolean();
+        pixelBuffer = CancellablePixelBuffer.wrap(delegate, cancelled::get);
+    }
+
+    @Test
+    public void testPassesThrough() {
+        Assert.assertEquals(512, pixelBuffer.getSizeX());
+        verify(delegate).getSizeX();
+    }
+
+    @Test
+    public void testCancelled() {
+        cancelled.set(true);
+        try {
+            pixelBuffer.getSizeX();
+            Assert.fail("Expected CancellationException");
+        } catch (CancellationException e) {
+            // Expected
+        }
+        verify(delegate, never()).getSizeX();
+    }
+
+    @Test
+    public void testCloseWhenCancelled() throws IOException {
+        cancelled.set(true);
+        pixelBuffer.close();
+        verify(delegate).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testExceptionUnwrapped() throws IOException {
+        doThrow(new IOException()).when(delegate).close();
+        pixelBuffer.close();
+    }
+}
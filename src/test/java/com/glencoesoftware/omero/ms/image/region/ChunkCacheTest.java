@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.prometheus.client.CollectorRegistry;
+import ome.util.PixelData;
+
+public class ChunkCacheTest {
+
+    private ChunkCache chunkCache;
+
+    private ExecutorService executor;
+
+    private AtomicInteger reads;
+
+    @Before
+    public void setUp() {
+        chunkCache = new ChunkCache(1024 * 1024, 60);
+        executor = Executors.newSingleThreadExecutor();
+        reads = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private PixelData read() {
+        reads.incrementAndGet();
+        return new PixelData("uint8", ByteBuffer.wrap(new byte[16]));
+    }
+
+    /** Number of chunk cache lookups counted with a given result */
+    private double requests(String result) {
+        Double value = CollectorRegistry.defaultRegistry.getSampleValue(
+                "omero_ms_chunk_cache_requests_total",
+                new String[] { "result" }, new String[] { result });
+        return value == null ? 0 : value;
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        ChunkCache.Chunk chunk = chunkCache.get("a", this::read);
+        Assert.assertSame(chunk, chunkCache.get("a", this::read));
+        Assert.assertEquals(1, reads.get());
+        Assert.assertTrue(chunkCache.contains("a"));
+        Assert.assertEquals(16, chunkCache.residentBytes());
+    }
+
+    @Test
+    public void testPrefetch() throws IOException {
+        Assert.assertTrue(chunkCache.prefetch("a", this::read));
+        Assert.assertFalse(chunkCache.prefetch("a", this::read));
+        chunkCache.get("a", this::read);
+        Assert.assertEquals(1, reads.get());
+    }
+
+    @Test
+    public void testConcurrentReadsPerformedOnce() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<ChunkCache.Chunk> leader = executor.submit(
+                () -> chunkCache.get("a", () -> {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return read();
+                }));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        // In flight chunks are neither cached nor read again
+        Assert.assertFalse(chunkCache.contains("a"));
+        Assert.assertFalse(chunkCache.prefetch("a", this::read));
+        release.countDown();
+        Assert.assertSame(
+                leader.get(10, TimeUnit.SECONDS),
+                chunkCache.get("a", this::read));
+        Assert.assertEquals(1, reads.get());
+    }
+
+    @Test
+    public void testFailedReadNotCached() throws IOException {
+        try {
+            chunkCache.get("a", () -> {
+                throw new IOException("failed");
+            });
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            Assert.assertEquals("failed", e.getMessage());
+        }
+        Assert.assertFalse(chunkCache.contains("a"));
+        chunkCache.get("a", this::read);
+        Assert.assertEquals(1, reads.get());
+        Assert.assertTrue(chunkCache.contains("a"));
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        chunkCache = new ChunkCache(0, 60);
+        double misses = requests("miss");
+        double bypasses = requests("bypass");
+        chunkCache.get("a", this::read);
+        chunkCache.get("a", this::read);
+        Assert.assertEquals(2, reads.get());
+        // Not counted as misses
+        Assert.assertEquals(misses, requests("miss"), 0);
+        Assert.assertEquals(bypasses + 2, requests("bypass"), 0);
+        Assert.assertFalse(chunkCache.contains("a"));
+        Assert.assertFalse(chunkCache.prefetch("a", this::read));
+    }
+
+    @Test
+    public void testKeyIncludesLayout() {
+        Assert.assertNotEquals(
+                ChunkCache.key("a", 0, 1024, 1024, new Dimension(256, 256),
+                        0, 0, 0, 1, 1),
+                ChunkCache.key("a", 0, 1024, 1024, new Dimension(512, 512),
+                        0, 0, 0, 1, 1));
+        Assert.assertNotEquals(
+                ChunkCache.key("a", 0, 1024, 1024, new Dimension(256, 256),
+                        0, 0, 0, 1, 1),
+                ChunkCache.key("a", 0, 2048, 1024, new Dimension(256, 256),
+                        0, 0, 0, 1, 1));
+    }
+
+    @Test
+    public void testArrayFallsBackToPixelsId() {
+        ome.model.core.Pixels pixels = new ome.model.core.Pixels(1L, true);
+        Assert.assertEquals(
+                "pixels:1", CachingPixelBuffer.array(null, pixels));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ChunkFetchSchedulerTest {
+
+    /** Simulated round trip latency of a ranged GET in milliseconds */
+    private static final long LATENCY = 200;
+
+    private ChunkFetchScheduler scheduler;
+
+    /** Number of reads in progress */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /** Largest number of reads observed in progress */
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Stand-in for a chunk GET against object storage.
+     */
+    private ChunkFetchScheduler.Fetch<Integer> get(int chunk) {
+        return () -> {
+            maxInFlight.accumulateAndGet(
+                    inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(LATENCY);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return chunk;
+        };
+    }
+
+    private List<ChunkFetchScheduler.Fetch<Integer>> gets(int count) {
+        List<ChunkFetchScheduler.Fetch<Integer>> fetches =
+                new ArrayList<ChunkFetchScheduler.Fetch<Integer>>();
+        for (int i = 0; i < count; i++) {
+            fetches.add(get(i));
+        }
+        return fetches;
+    }
+
+    @Test
+    public void testConcurrentReadsApproachOneRoundTrip() throws IOException {
+        scheduler = new ChunkFetchScheduler(8, 8, 1, 0);
+        long start = System.nanoTime();
+        List<Integer> results = scheduler.fetchAll(gets(8));
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        Assert.assertEquals(
+                List.of(0, 1, 2, 3, 4, 5, 6, 7), results);
+        Assert.assertTrue("Took " + elapsed + "ms", elapsed < LATENCY * 3);
+    }
+
+    @Test
+    public void testPerRequestCap() throws IOException {
+        scheduler = new ChunkFetchScheduler(8, 2, 1, 0);
+        Assert.assertEquals(6, scheduler.fetchAll(gets(6)).size());
+        Assert.assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void testGlobalCap() throws Exception {
+        scheduler = new ChunkFetchScheduler(3, 8, 1, 0);
+        Thread other = new Thread(() -> {
+            try {
+                scheduler.fetchAll(gets(4));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        other.start();
+        scheduler.fetchAll(gets(4));
+        other.join();
+        Assert.assertEquals(3, maxInFlight.get());
+    }
+
+    @Test
+    public void testRetry() throws IOException {
+        scheduler = new ChunkFetchScheduler(2, 2, 3, 1);
+        AtomicInteger attempts = new AtomicInteger();
+        List<ChunkFetchScheduler.Fetch<Integer>> fetches = gets(1);
+        fetches.add(() -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IOException("Connection reset");
+            }
+            return 1;
+        });
+        Assert.assertEquals(List.of(0, 1), scheduler.fetchAll(fetches));
+        Assert.assertEquals(3, attempts.get());
+    }
+
+    @Test
+    public void testFailureAfterAttempts() {
+        scheduler = new ChunkFetchScheduler(2, 2, 2, 1);
+        AtomicInteger attempts = new AtomicInteger();
+        List<ChunkFetchScheduler.Fetch<Integer>> fetches = gets(1);
+        fetches.add(() -> {
+            attempts.incrementAndGet();
+            throw new IOException("Service unavailable");
+        });
+        try {
+            scheduler.fetchAll(fetches);
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            Assert.assertEquals("Service unavailable", e.getMessage());
+        }
+        Assert.assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void testMissingChunkNotRetried() {
+        scheduler = new ChunkFetchScheduler(2, 2, 3, 1);
+        AtomicInteger attempts = new AtomicInteger();
+        List<ChunkFetchScheduler.Fetch<Integer>> fetches =
+                new ArrayList<ChunkFetchScheduler.Fetch<Integer>>();
+        fetches.add(() -> {
+            attempts.incrementAndGet();
+            throw new FileNotFoundException("0/0/0");
+        });
+        try {
+            scheduler.fetchAll(fetches);
+            Assert.fail("Expected FileNotFoundException");
+        } catch (IOException e) {
+            Assert.assertTrue(e instanceof FileNotFoundException);
+        }
+        Assert.assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testDisabledReadsSequentially() throws IOException {
+        scheduler = new ChunkFetchScheduler(0, 8, 1, 0);
+        Assert.assertFalse(scheduler.isEnabled());
+        Assert.assertEquals(List.of(0, 1, 2), scheduler.fetchAll(gets(3)));
+        Assert.assertEquals(1, maxInFlight.get());
+    }
+}
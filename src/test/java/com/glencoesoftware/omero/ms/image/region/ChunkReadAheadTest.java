@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ome.io.nio.PixelBuffer;
+import ome.util.PixelData;
+
+public class ChunkReadAheadTest {
+
+    private PixelBuffer pixelBuffer;
+
+    private ChunkCache chunkCache;
+
+    private ChunkReadAhead readAhead;
+
+    /**
+     * Two resolution levels of 16x16 and 8x8 with 4x4 chunks.
+     */
+    @Before
+    public void setUp() throws IOException {
+        AtomicInteger level = new AtomicInteger(1);
+        pixelBuffer = mock(PixelBuffer.class);
+        when(pixelBuffer.getResolutionLevels()).thenReturn(2);
+        doAnswer(invocation -> {
+            level.set(invocation.getArgument(0));
+            return null;
+        }).when(pixelBuffer).setResolutionLevel(anyInt());
+        when(pixelBuffer.getSizeX()).thenAnswer(
+                invocation -> level.get() == 1 ? 16 : 8);
+        when(pixelBuffer.getSizeY()).thenAnswer(
+                invocation -> level.get() == 1 ? 16 : 8);
+        when(pixelBuffer.getTileSize()).thenReturn(new Dimension(4, 4));
+        when(pixelBuffer.getTile(
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                anyInt())).thenAnswer(invocation -> {
+                    int w = invocation.getArgument(5);
+                    int h = invocation.getArgument(6);
+                    return new PixelData(
+                            "uint8", ByteBuffer.wrap(new byte[w * h]));
+                });
+        chunkCache = new ChunkCache(1024 * 1024, 60);
+    }
+
+    @After
+    public void tearDown() {
+        if (readAhead != null) {
+            readAhead.shutdown();
+        }
+    }
+
+    @Test
+    public void testRing() throws IOException {
+        readAhead = new ChunkReadAhead(chunkCache, 1, false, 1, 1);
+        ChunkReadAhead.Tile tile =
+                new ChunkReadAhead.Tile("a", 1, 0, 0, 0, 4, 4, 4, 4);
+        Assert.assertEquals(8, readAhead.readAhead(tile, pixelBuffer));
+        // The tile's own chunk is not read ahead
+        verify(pixelBuffer, never()).getTile(0, 0, 0, 4, 4, 4, 4);
+        verify(pixelBuffer).getTile(0, 0, 0, 0, 0, 4, 4);
+        verify(pixelBuffer).getTile(0, 0, 0, 8, 8, 4, 4);
+        // Already cached
+        Assert.assertEquals(0, readAhead.readAhead(tile, pixelBuffer));
+    }
+
+    @Test
+    public void testRingClipped() throws IOException {
+        readAhead = new ChunkReadAhead(chunkCache, 2, false, 1, 1);
+        ChunkReadAhead.Tile tile =
+                new ChunkReadAhead.Tile("a", 1, 0, 0, 0, 0, 0, 4, 4);
+        // 3x3 chunks less the tile's own
+        Assert.assertEquals(8, readAhead.readAhead(tile, pixelBuffer));
+    }
+
+    @Test
+    public void testCoarserLevel() throws IOException {
+        readAhead = new ChunkReadAhead(chunkCache, 1, true, 1, 1);
+        ChunkReadAhead.Tile tile =
+                new ChunkReadAhead.Tile("a", 1, 0, 0, 0, 12, 12, 4, 4);
+        // Three neighbours in the corner and one coarser chunk
+        Assert.assertEquals(4, readAhead.readAhead(tile, pixelBuffer));
+        verify(pixelBuffer).setResolutionLevel(0);
+        verify(pixelBuffer).getTile(0, 0, 0, 4, 4, 4, 4);
+    }
+
+    @Test
+    public void testDisabled() {
+        readAhead = new ChunkReadAhead(chunkCache, 0, true, 1, 1);
+        Assert.assertFalse(readAhead.isEnabled());
+        readAhead = new ChunkReadAhead(new ChunkCache(0, 60), 1, true, 1, 1);
+        Assert.assertFalse(readAhead.isEnabled());
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.glencoesoftware.omero.ms.image.region.ChunkCache.Chunk;
+
+import ome.util.PixelData;
+
+public class DiskChunkCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = folder.newFolder("chunks");
+    }
+
+    /**
+     * Incompressible chunk data so that file sizes are predictable.
+     */
+    private byte[] data(int seed) {
+        byte[] data = new byte[1000];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private void write(DiskChunkCache cache, String key, byte[] data) {
+        cache.write(DiskChunkCache.name(key), data, ByteOrder.BIG_ENDIAN);
+    }
+
+    private void assertChunk(byte[] expected, Chunk chunk) {
+        Assert.assertNotNull(chunk);
+        byte[] actual = new byte[chunk.size()];
+        chunk.copy(0, actual, 0, actual.length);
+        Assert.assertArrayEquals(expected, actual);
+    }
+
+    private Path file(String key) {
+        String name = DiskChunkCache.name(key);
+        return directory.toPath().resolve(name.substring(0, 2))
+                .resolve(name + ".chunk");
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        DiskChunkCache cache = new DiskChunkCache(
+                directory.getAbsolutePath(), 1000000, 60);
+        cache.awaitIndexed();
+        Assert.assertTrue(cache.isEnabled());
+        Assert.assertNull(cache.get("a"));
+        byte[] data = data(1);
+        cache.write(DiskChunkCache.name("a"), data, ByteOrder.LITTLE_ENDIAN);
+        Chunk chunk = cache.get("a");
+        assertChunk(data, chunk);
+        Assert.assertEquals(ByteOrder.LITTLE_ENDIAN, chunk.order);
+        Assert.assertEquals(1, cache.size());
+        Assert.assertTrue(cache.residentBytes() > 0);
+    }
+
+    @Test
+    public void testPersistent() throws Exception {
+        DiskChunkCache cache = new DiskChunkCache(
+                directory.getAbsolutePath(), 1000000, 60);
+        cache.awaitIndexed();
+        byte[] data = data(1);
+        write(cache, "a", data);
+        long residentBytes = cache.residentBytes();
+        cache.shutdown();
+
+        cache = new DiskChunkCache(directory.getAbsolutePath(), 1000000, 60);
+        cache.awaitIndexed();
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(residentBytes, cache.residentBytes());
+        assertChunk(data, cache.get("a"));
+    }
+
+    @Test
+    public void testTemporaryFilesRemoved() throws Exception {
+        Path temporary = directory.toPath().resolve("ab");
+        Files.createDirectories(temporary);
+        temporary = Files.createFile(temporary.resolve("ab.1234.tmp"));
+        DiskChunkCache cache = new DiskChunkCache(
+                directory.getAbsolutePath(), 1000000, 60);
+        cache.awaitIndexed();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertFalse(Files.exists(temporary));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEvicted() throws Exception {
+        // Room for two chunks
+        DiskChunkCache cache = new DiskChunkCache(
+                directory.getAbsolutePath(), 2500, 60);
+        cache.awaitIndexed();
+        write(cache, "a", data(1));
+        write(cache, "b", data(2));
+        Assert.assertNotNull(cache.get("a"));
+        write(cache, "c", data(3));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertTrue(cache.residentBytes() <= 2500);
+        Assert.assertFalse(Files.exists(file("b")));
+        Assert.assertNull(cache.get("b"));
+        assertChunk(data(1), cache.get("a"));
+        assertChunk(data(3), cache.get("c"));
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        DiskChunkCache cache = new DiskChunkCache(
+                directory.getAbsolutePath(), 1000000, 60);
+        cache.awaitIndexed();
+        write(cache, "a", data(1));
+        cache.shutdown();
+        Thread.sleep(5);
+
+        cache = new DiskChunkCache(directory.getAbsolutePath(), 1000000, 0);
+        cache.awaitIndexed();
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertFalse(Files.exists(file("a")));
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        DiskChunkCache cache = new DiskChunkCache(
+                directory.getAbsolutePath(), 1000000, 60);
+        cache.awaitIndexed();
+        write(cache, "a", data(1));
+        Files.write(file("a"), new byte[] { 1, 2, 3 });
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.residentBytes());
+        Assert.assertFalse(Files.exists(file("a")));
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        DiskChunkCache cache = new DiskChunkCache(
+                directory.getAbsolutePath(), 0, 60);
+        Assert.assertFalse(cache.isEnabled());
+        cache.put("a", new Chunk(ByteBuffer.wrap(data(1)),
+                ByteOrder.BIG_ENDIAN));
+        Assert.assertNull(cache.get("a"));
+        Assert.assertFalse(new DiskChunkCache("", 1000000, 60).isEnabled());
+    }
+
+    @Test
+    public void testChunkCacheReadsThrough() throws Exception {
+        DiskChunkCache diskCache = new DiskChunkCache(
+                directory.getAbsolutePath(), 1000000, 60);
+        diskCache.awaitIndexed();
+        byte[] data = data(1);
+        write(diskCache, "s3://bucket/a.zarr/0", data);
+        ChunkCache chunkCache = new ChunkCache(1000000, 60, diskCache);
+        assertChunk(data, chunkCache.get("s3://bucket/a.zarr/0", () -> {
+            throw new IOException("Chunk should be read from disk");
+        }));
+    }
+
+    @Test
+    public void testOnlyRemoteArraysStored() throws Exception {
+        DiskChunkCache diskCache = new DiskChunkCache(
+                directory.getAbsolutePath(), 1000000, 60);
+        diskCache.awaitIndexed();
+        Assert.assertTrue(diskCache.accepts("s3://bucket/a.zarr/0"));
+        Assert.assertTrue(diskCache.accepts("https://host/a.zarr/0"));
+        Assert.assertFalse(diskCache.accepts("pixels:1/0"));
+        Assert.assertFalse(diskCache.accepts("/data/a.zarr/0"));
+        byte[] data = data(1);
+        write(diskCache, "pixels:1/0", data);
+        ChunkCache chunkCache = new ChunkCache(1000000, 60, diskCache);
+        assertChunk(data(2), chunkCache.get("pixels:1/0", () ->
+                new PixelData("uint8", ByteBuffer.wrap(data(2)))));
+    }
+
+    @Test
+    public void testUsedBeforeIndexed() throws Exception {
+        DiskChunkCache cache = new DiskChunkCache(
+                directory.getAbsolutePath(), 1000000, 60);
+        cache.awaitIndexed();
+        byte[] data = data(1);
+        write(cache, "a", data);
+        cache.shutdown();
+
+        // Whether or not indexing has completed the chunk is found, and
+        // accounted for once
+        cache = new DiskChunkCache(directory.getAbsolutePath(), 1000000, 60);
+        assertChunk(data, cache.get("a"));
+        cache.awaitIndexed();
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(Files.size(file("a")), cache.residentBytes());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.MultiMap;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+public class FirstPaintPlannerTest {
+
+    private JsonObject imgData() {
+        JsonObject channel = new JsonObject()
+                .put("active", true)
+                .put("color", "FF0000")
+                .put("reverseIntensity", false)
+                .put("window", new JsonObject()
+                        .put("min", 0).put("max", 255)
+                        .put("start", 0.0).put("end", 255.0));
+        JsonObject inactive = channel.copy()
+                .put("active", false)
+                .put("color", "00FF00");
+        return new JsonObject()
+                .put("id", 1L)
+                .put("tiles", true)
+                .put("tile_size", new JsonObject()
+                        .put("width", 512).put("height", 512))
+                .put("levels", 3)
+                .put("size", new JsonObject()
+                        .put("width", 8192).put("height", 4096))
+                .put("zoomLevelScaling", new JsonObject()
+                        .put("0", 1.0).put("1", 0.5).put("2", 0.25))
+                .put("channels", new JsonArray().add(channel).add(inactive))
+                .put("rdefs", new JsonObject()
+                        .put("model", "color")
+                        .put("defaultZ", 2)
+                        .put("defaultT", 3));
+    }
+
+    private void assertTile(int[] tile, int resolution, int x, int y) {
+        Assert.assertArrayEquals(new int[] { resolution, x, y }, tile);
+    }
+
+    @Test
+    public void testTilesSmallestLevelFits() {
+        List<int[]> tiles = FirstPaintPlanner.tiles(
+                new double[] { 1.0, 0.5, 0.25 }, 8192, 4096, 512, 512,
+                1920, 1080, 100);
+        // 2048x1024 smallest level only, nearest the centre first
+        Assert.assertEquals(8, tiles.size());
+        assertTile(tiles.get(0), 2, 1, 0);
+        assertTile(tiles.get(7), 2, 3, 1);
+    }
+
+    @Test
+    public void testTilesBirdsEyeFirst() {
+        List<int[]> tiles = FirstPaintPlanner.tiles(
+                new double[] { 1.0, 0.5, 0.25, 0.125 }, 16384, 16384,
+                512, 512, 4096, 4096, 20);
+        Assert.assertEquals(20, tiles.size());
+        for (int i = 0; i < 16; i++) {
+            Assert.assertEquals(3, tiles.get(i)[0]);
+        }
+        // Central tiles of the 4096x4096 level the image is fitted to
+        for (int i = 16; i < 20; i++) {
+            Assert.assertEquals(2, tiles.get(i)[0]);
+            Assert.assertTrue(tiles.get(i)[1] == 3 || tiles.get(i)[1] == 4);
+            Assert.assertTrue(tiles.get(i)[2] == 3 || tiles.get(i)[2] == 4);
+        }
+    }
+
+    @Test
+    public void testTilesSmallerThanViewport() {
+        List<int[]> tiles = FirstPaintPlanner.tiles(
+                new double[] { 1.0, 0.5 }, 1024, 512, 512, 512,
+                1920, 1080, 100);
+        Assert.assertEquals(3, tiles.size());
+        assertTile(tiles.get(0), 1, 0, 0);
+        Assert.assertEquals(0, tiles.get(1)[0]);
+        Assert.assertEquals(0, tiles.get(2)[0]);
+    }
+
+    @Test
+    public void testPlan() {
+        FirstPaintPlanner planner = new FirstPaintPlanner(2, 1920, 1080);
+        List<JsonObject> plan = planner.plan(imgData(), "session");
+        Assert.assertEquals(2, plan.size());
+        // As requested by a viewer with the default rendering settings
+        MultiMap params = MultiMap.caseInsensitiveMultiMap()
+                .add("imageId", "1")
+                .add("theZ", "2")
+                .add("theT", "3")
+                .add("tile", "2,1,0,512,512")
+                .add("c", "1|0:255$FF0000,-2|0:255$00FF00")
+                .add("m", "c")
+                .add("p", "normal")
+                .add("ia", "0")
+                .add("maps", "[{\"reverse\":{\"enabled\":false}},"
+                        + "{\"reverse\":{\"enabled\":false}}]")
+                .add("q", "0.9");
+        JsonObject expected = JsonObject.mapFrom(
+                new ImageRegionCtx(params, "session"));
+        JsonObject first = plan.get(0);
+        Assert.assertTrue(first.getBoolean("prefetch"));
+        Assert.assertNotNull(first.getString("requestId"));
+        Assert.assertNotEquals(
+                first.getString("requestId"),
+                plan.get(1).getString("requestId"));
+        first.remove("prefetch");
+        first.remove("requestId");
+        expected.remove("prefetch");
+        expected.remove("requestId");
+        Assert.assertEquals(expected, first);
+    }
+
+    @Test
+    public void testPlanSkipped() {
+        Assert.assertTrue(new FirstPaintPlanner(0, 1920, 1080)
+                .plan(imgData(), "session").isEmpty());
+        FirstPaintPlanner planner = new FirstPaintPlanner(8, 1920, 1080);
+        Assert.assertTrue(planner.plan(
+                imgData().put("tiles", false), "session").isEmpty());
+        JsonObject imgData = imgData();
+        imgData.remove("rdefs");
+        Assert.assertTrue(planner.plan(imgData, "session").isEmpty());
+    }
+}
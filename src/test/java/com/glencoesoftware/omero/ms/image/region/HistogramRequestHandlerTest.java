@@ -1,16 +1,22 @@
 package com.glencoesoftware.omero.ms.image.region;
 
 
+import static org.mockito.Mockito.*;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import java.awt.Dimension;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 
 import io.vertx.core.MultiMap;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
 import org.junit.Assert;
+import ome.io.nio.PixelBuffer;
 import ome.model.enums.PixelsType;
 import ome.util.PixelData;
 
@@ -408,4 +414,35 @@ public class HistogramRequestHandlerTest {
         Assert.assertEquals(histogramData.getInteger(
                 HistogramRequestHandler.RIGHT_OUTLIER_COUNT_KEY).intValue(), 0);
     }
+
+    private PyramidDescriptor pyramid(int resolutionLevels) {
+        PixelBuffer pixelBuffer = mock(PixelBuffer.class);
+        when(pixelBuffer.getResolutionLevels()).thenReturn(resolutionLevels);
+        when(pixelBuffer.getTileSize()).thenReturn(new Dimension(256, 256));
+        when(pixelBuffer.getSizeX()).thenReturn(4096);
+        when(pixelBuffer.getSizeY()).thenReturn(3072);
+        List<List<Integer>> descriptions = Arrays.asList(
+                Arrays.asList(4096, 3072),
+                Arrays.asList(2048, 1536),
+                Arrays.asList(1024, 768));
+        when(pixelBuffer.getResolutionDescriptions())
+                .thenReturn(descriptions.subList(0, resolutionLevels));
+        return new PyramidDescriptor(pixelBuffer);
+    }
+
+    @Test
+    public void testSelectResolutionLevel() {
+        PyramidDescriptor pyramidDescriptor = pyramid(3);
+        Assert.assertEquals(1, HistogramRequestHandler.selectResolutionLevel(
+                pyramidDescriptor, 2048, 2048));
+        Assert.assertEquals(2, HistogramRequestHandler.selectResolutionLevel(
+                pyramidDescriptor, 4096, 4096));
+        Assert.assertEquals(0, HistogramRequestHandler.selectResolutionLevel(
+                pyramidDescriptor, 1024, 1024));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSelectResolutionLevelTooLarge() {
+        HistogramRequestHandler.selectResolutionLevel(pyramid(1), 2048, 2048);
+    }
 }
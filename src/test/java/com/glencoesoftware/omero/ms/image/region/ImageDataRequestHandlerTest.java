@@ -34,6 +34,7 @@ import java.util.Map;
 
 import org.junit.Test;
 
+import io.vertx.core.MultiMap;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import ome.io.nio.PixelBuffer;
@@ -1229,4 +1230,118 @@ public class ImageDataRequestHandlerTest {
         missingRdefCorrect.put("rdefs", rdefsJson);
         Assert.assertEquals(basicObj, missingRdefCorrect);
     }
+
+    @Test
+    public void testImageDataEtag() {
+        List<Long> version = Arrays.asList(IMAGE_ID, OWNER_ID, 0L, 1L);
+        String etag = ImageDataRequestHandler.etag(version);
+        Assert.assertTrue(etag.matches("\"[0-9a-f]{64}\""));
+        Assert.assertEquals(etag, ImageDataRequestHandler.etag(
+                new ArrayList<Long>(version)));
+        Assert.assertNotEquals(etag, ImageDataRequestHandler.etag(
+                Arrays.asList(IMAGE_ID, OWNER_ID, 0L, 2L)));
+        Assert.assertNotEquals(etag, ImageDataRequestHandler.etag(
+                Arrays.asList(IMAGE_ID, OWNER_ID + 1, 0L, 1L)));
+    }
+
+    @Test
+    public void testImageDataNotModified() {
+        String etag = ImageDataRequestHandler.etag(
+                Arrays.asList(IMAGE_ID, OWNER_ID));
+        ImageDataCtx ctx = new ImageDataCtx();
+        Assert.assertFalse(ctx.notModified(etag));
+        ctx.ifNoneMatch = "\"other\", " + etag;
+        Assert.assertTrue(ctx.notModified(etag));
+        ctx.ifNoneMatch = "W/" + etag;
+        Assert.assertTrue(ctx.notModified(etag));
+        ctx.ifNoneMatch = "*";
+        Assert.assertTrue(ctx.notModified(etag));
+        ctx.ifNoneMatch = "\"other\"";
+        Assert.assertFalse(ctx.notModified(etag));
+    }
+
+    @Test
+    public void testImageDataCtxBatch() {
+        MultiMap params = MultiMap.caseInsensitiveMultiMap();
+        params.add("id", "3");
+        params.add("id", "1");
+        params.add("id", "3");
+        ImageDataCtx ctx = new ImageDataCtx(params, "");
+        Assert.assertNull(ctx.imageId);
+        Assert.assertEquals(Arrays.asList(3L, 1L), ctx.imageIds);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testImageDataCtxBatchMissingIds() {
+        new ImageDataCtx(MultiMap.caseInsensitiveMultiMap(), "");
+    }
+
+    @Test
+    public void testImageDataCtxBatchOverCap() {
+        MultiMap params = MultiMap.caseInsensitiveMultiMap();
+        params.add("id", "1");
+        params.add("id", "2");
+        params.add("id", "2");
+        Assert.assertEquals(Arrays.asList(1L, 2L),
+                new ImageDataCtx(params, null, "", 2).imageIds);
+        params.add("id", "3");
+        try {
+            new ImageDataCtx(params, null, "", 2);
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage().contains("3 > 2"));
+        }
+    }
+
+    /**
+     * Populates a batch of a readable image and one whose pixels cannot be
+     * read, as no pixels service is available to open them.
+     */
+    private Map<Long, JsonObject> populateBatch(
+            RenderExecutor renderExecutor) throws Exception {
+        PyramidDescriptorService pyramidDescriptorService =
+                new PyramidDescriptorService(10, 60);
+        pyramidDescriptorService.get(
+                PIXELS_ID, () -> new PyramidDescriptor(pixelBuffer));
+        ImageDataCtx ctx = new ImageDataCtx();
+        ctx.imageIds = Arrays.asList(IMAGE_ID, IMAGE_ID + 1);
+        ImageDataRequestHandler reqHandler = new ImageDataRequestHandler(
+                ctx, null, 0, true, pyramidDescriptorService);
+        reqHandler.setRenderExecutor(renderExecutor);
+        ImageI unreadable = new ImageI(IMAGE_ID + 1, true);
+        unreadable.addPixels(new PixelsI(PIXELS_ID + 1, true));
+        return reqHandler.populateImageData(
+                Arrays.asList(image, unreadable), rdefs, OWNER_ID);
+    }
+
+    @Test
+    public void testImageDataBatchPartiallyUnreadable() throws Exception {
+        Map<Long, JsonObject> batch = populateBatch(null);
+        Assert.assertEquals(1, batch.size());
+        Assert.assertEquals(imgData, batch.get(IMAGE_ID));
+    }
+
+    @Test
+    public void testImageDataBatchOnRenderExecutor() throws Exception {
+        RenderExecutor renderExecutor = new RenderExecutor(2);
+        try {
+            Map<Long, JsonObject> batch = populateBatch(renderExecutor);
+            Assert.assertEquals(1, batch.size());
+            Assert.assertEquals(imgData, batch.get(IMAGE_ID));
+        } finally {
+            renderExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testImageDataBatchMissingIds() {
+        Map<Long, JsonObject> batch = new HashMap<Long, JsonObject>();
+        batch.put(3L, new JsonObject().put("id", 3));
+        batch.put(1L, new JsonObject().put("id", 1));
+        JsonObject json = ImageDataRequestHandler.toJson(
+                Arrays.asList(3L, 2L, 1L), batch);
+        Assert.assertEquals(Arrays.asList("3", "1"),
+                new ArrayList<String>(json.fieldNames()));
+        Assert.assertEquals(1, (int) json.getJsonObject("1").getInteger("id"));
+    }
 }
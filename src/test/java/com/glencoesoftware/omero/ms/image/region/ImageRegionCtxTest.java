@@ -950,4 +950,61 @@ public class ImageRegionCtxTest {
         params.add("c", channelsWithFirstMissing);
         ImageRegionCtx ctx = new ImageRegionCtx(params, "");
     }
+
+    @Test
+    public void testOutputSize() {
+        params.remove("tile");
+        params.add("width", "1000");
+        ImageRegionCtx imageCtx = new ImageRegionCtx(params, "");
+        Assert.assertTrue(imageCtx.hasOutputSize());
+        Assert.assertEquals(0.1, imageCtx.getOutputScale(10000, 5000), 0);
+        // Height is a maximum too; the aspect ratio is preserved
+        imageCtx.height = 250;
+        Assert.assertEquals(0.05, imageCtx.getOutputScale(10000, 5000), 0);
+        // Never scaled up
+        Assert.assertEquals(1, imageCtx.getOutputScale(100, 100), 0);
+    }
+
+    @Test
+    public void testOutputSizeZoom() {
+        params.remove("tile");
+        params.add("zoom", "0.25");
+        ImageRegionCtx imageCtx = new ImageRegionCtx(params, "");
+        Assert.assertEquals(0.25, imageCtx.getOutputScale(10000, 5000), 0);
+    }
+
+    @Test
+    public void testNoOutputSize() {
+        ImageRegionCtx imageCtx = new ImageRegionCtx(params, "");
+        Assert.assertFalse(imageCtx.hasOutputSize());
+        Assert.assertEquals(1, imageCtx.getOutputScale(10000, 5000), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutputSizeWithTile() {
+        params.add("width", "1000");
+        new ImageRegionCtx(params, "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutputSizeZoomWithWidth() {
+        params.remove("tile");
+        params.add("width", "1000");
+        params.add("zoom", "0.5");
+        new ImageRegionCtx(params, "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutputSizeZoomOutOfRange() {
+        params.remove("tile");
+        params.add("zoom", "2");
+        new ImageRegionCtx(params, "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutputSizeNotPositive() {
+        params.remove("tile");
+        params.add("height", "0");
+        new ImageRegionCtx(params, "");
+    }
 }
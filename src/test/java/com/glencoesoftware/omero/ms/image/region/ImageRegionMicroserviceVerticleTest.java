@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.glencoesoftware.omero.ms.image.region;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.ThreadingModel;
+import io.vertx.core.json.JsonObject;
+
+public class ImageRegionMicroserviceVerticleTest {
+
+    private JsonObject config(String threadingModel) {
+        return new JsonObject().put("threading-model", threadingModel);
+    }
+
+    @Test
+    public void testThreadingModelDefault() {
+        Assert.assertEquals(ThreadingModel.WORKER,
+                ImageRegionMicroserviceVerticle.getThreadingModel(
+                        new JsonObject(), 21));
+    }
+
+    @Test
+    public void testThreadingModelWorker() {
+        Assert.assertEquals(ThreadingModel.WORKER,
+                ImageRegionMicroserviceVerticle.getThreadingModel(
+                        config("worker"), 24));
+    }
+
+    @Test
+    public void testThreadingModelVirtualThread() {
+        Assert.assertEquals(ThreadingModel.VIRTUAL_THREAD,
+                ImageRegionMicroserviceVerticle.getThreadingModel(
+                        config("virtual-thread"), 21));
+        Assert.assertEquals(ThreadingModel.VIRTUAL_THREAD,
+                ImageRegionMicroserviceVerticle.getThreadingModel(
+                        config("virtual-thread"), 24));
+    }
+
+    @Test
+    public void testThreadingModelVirtualThreadFallback() {
+        Assert.assertEquals(ThreadingModel.WORKER,
+                ImageRegionMicroserviceVerticle.getThreadingModel(
+                        config("virtual-thread"), 11));
+        Assert.assertEquals(ThreadingModel.WORKER,
+                ImageRegionMicroserviceVerticle.getThreadingModel(
+                        config("virtual-thread"), 17));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testThreadingModelUnknown() {
+        ImageRegionMicroserviceVerticle.getThreadingModel(
+                config("event-loop"), 24);
+    }
+}
@@ -119,6 +119,18 @@ public class ImageRegionRequestHandlerTest {
                 rdef.getHeight(), imageRegionCtx.region.getHeight());
     }
 
+    @Test
+    public void testScaleRegionDef() {
+        // 100k pixel wide region of a 200k x 100k image read at 1/64
+        RegionDef region = new RegionDef(50000, 25000, 100000, 50000);
+        RegionDef rdef = ImageRegionRequestHandler.scaleRegionDef(
+                region, 3125, 1563, new Dimension(200000, 100000));
+        Assert.assertEquals(781, rdef.getX());
+        Assert.assertEquals(390, rdef.getY());
+        Assert.assertEquals(2344 - 781, rdef.getWidth());
+        Assert.assertEquals(1173 - 390, rdef.getHeight());
+    }
+
     @Test
     public void testGetRegionDefCtxNoTileOrRegion()
     throws IllegalArgumentException, ServerError {
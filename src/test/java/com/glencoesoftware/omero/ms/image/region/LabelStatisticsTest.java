@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static org.mockito.Mockito.*;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import ome.io.nio.PixelBuffer;
+import ome.util.PixelData;
+
+public class LabelStatisticsTest {
+
+    @Test
+    public void testAddIgnoresBackground() {
+        LabelStatistics stats = new LabelStatistics();
+        stats.add(0, 1, 1, 0);
+        Assert.assertEquals(0, stats.size());
+    }
+
+    @Test
+    public void testAddBoundingBoxAndCentroid() {
+        LabelStatistics stats = new LabelStatistics();
+        stats.add(5, 2, 3, 0);
+        stats.add(5, 4, 7, 1);
+        stats.add(9, 0, 0, 0);
+        Assert.assertEquals(2, stats.size());
+        Assert.assertEquals(2, stats.getCount(5));
+        Assert.assertEquals(1, stats.getCount(9));
+        Assert.assertEquals(0, stats.getCount(7));
+
+        JsonArray labels = stats.toJson().getJsonArray("labels");
+        Assert.assertEquals(2, labels.size());
+        JsonObject five = labels.getJsonObject(0);
+        Assert.assertEquals(Long.valueOf(5), five.getLong("label"));
+        JsonObject bbox = five.getJsonObject("bbox");
+        Assert.assertEquals(Integer.valueOf(2), bbox.getInteger("x"));
+        Assert.assertEquals(Integer.valueOf(3), bbox.getInteger("y"));
+        Assert.assertEquals(Integer.valueOf(0), bbox.getInteger("z"));
+        Assert.assertEquals(Integer.valueOf(3), bbox.getInteger("width"));
+        Assert.assertEquals(Integer.valueOf(5), bbox.getInteger("height"));
+        Assert.assertEquals(Integer.valueOf(2), bbox.getInteger("depth"));
+        JsonObject centroid = five.getJsonObject("centroid");
+        Assert.assertEquals(3.0, centroid.getDouble("x"), 0);
+        Assert.assertEquals(5.0, centroid.getDouble("y"), 0);
+        Assert.assertEquals(0.5, centroid.getDouble("z"), 0);
+        Assert.assertEquals(
+                Long.valueOf(9), labels.getJsonObject(1).getLong("label"));
+    }
+
+    @Test
+    public void testManyLabels() {
+        LabelStatistics stats = new LabelStatistics();
+        for (int label = 1; label <= 10000; label++) {
+            stats.add(label, label, 0, 0);
+            stats.add(label, label, 1, 0);
+        }
+        Assert.assertEquals(10000, stats.size());
+        for (int label = 1; label <= 10000; label++) {
+            Assert.assertEquals(2, stats.getCount(label));
+        }
+    }
+
+    @Test
+    public void testMerge() {
+        LabelStatistics a = new LabelStatistics();
+        a.add(1, 0, 0, 0);
+        a.add(2, 10, 10, 0);
+        LabelStatistics b = new LabelStatistics();
+        b.add(1, 4, 4, 0);
+        b.add(3, 5, 5, 0);
+        a.merge(b);
+        Assert.assertEquals(3, a.size());
+        Assert.assertEquals(2, a.getCount(1));
+        JsonObject bbox = a.toJson().getJsonArray("labels")
+                .getJsonObject(0).getJsonObject("bbox");
+        Assert.assertEquals(Integer.valueOf(5), bbox.getInteger("width"));
+        Assert.assertEquals(Integer.valueOf(5), bbox.getInteger("height"));
+    }
+
+    @Test
+    public void testAddTileUnsigned() {
+        LabelStatistics stats = new LabelStatistics();
+        ByteBuffer data = ByteBuffer.allocate(4 * 2);
+        data.putShort(0, (short) 0);
+        data.putShort(2, (short) 0xFFFF);
+        data.putShort(4, (short) 1);
+        data.putShort(6, (short) 0xFFFF);
+        stats.add(data, 2, false, 10, 20, 0, 2, 2);
+        Assert.assertEquals(2, stats.size());
+        Assert.assertEquals(2, stats.getCount(0xFFFF));
+        Assert.assertEquals(1, stats.getCount(1));
+        JsonObject bbox = stats.toJson().getJsonArray("labels")
+                .getJsonObject(0).getJsonObject("bbox");
+        Assert.assertEquals(Integer.valueOf(10), bbox.getInteger("x"));
+        Assert.assertEquals(Integer.valueOf(21), bbox.getInteger("y"));
+    }
+
+    /**
+     * 5x3 uint8 label image with 2x2 chunks; label = x + 1 in the first
+     * row, background elsewhere
+     */
+    private PixelBuffer labelImage() throws IOException {
+        PixelBuffer pixelBuffer = mock(PixelBuffer.class);
+        when(pixelBuffer.getResolutionLevels()).thenReturn(1);
+        when(pixelBuffer.getSizeX()).thenReturn(5);
+        when(pixelBuffer.getSizeY()).thenReturn(3);
+        when(pixelBuffer.getSizeZ()).thenReturn(1);
+        when(pixelBuffer.getSizeC()).thenReturn(1);
+        when(pixelBuffer.getSizeT()).thenReturn(1);
+        when(pixelBuffer.getTileSize()).thenReturn(new Dimension(2, 2));
+        when(pixelBuffer.getByteWidth()).thenReturn(1);
+        when(pixelBuffer.getTile(
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt())).thenAnswer(invocation -> {
+            int x = invocation.getArgument(3);
+            int y = invocation.getArgument(4);
+            int w = invocation.getArgument(5);
+            int h = invocation.getArgument(6);
+            byte[] tile = new byte[w * h];
+            for (int j = 0; j < h; j++) {
+                for (int i = 0; i < w; i++) {
+                    tile[j * w + i] = (byte) (y + j == 0? x + i + 1 : 0);
+                }
+            }
+            return new PixelData("uint8", ByteBuffer.wrap(tile));
+        });
+        return pixelBuffer;
+    }
+
+    @Test
+    public void testCompute() throws IOException {
+        PixelBuffer pixelBuffer = labelImage();
+        LabelStatisticsService service =
+                new LabelStatisticsService(2, 10, 60);
+        LabelStatistics stats = service.compute(() -> pixelBuffer, 0);
+        Assert.assertEquals(5, stats.size());
+        for (int label = 1; label <= 5; label++) {
+            Assert.assertEquals(1, stats.getCount(label));
+        }
+    }
+
+    @Test
+    public void testComputeReadsEachChunkOnce() throws IOException {
+        PixelBuffer pixelBuffer = labelImage();
+        new LabelStatisticsService(2, 10, 60).compute(() -> pixelBuffer, 0);
+        for (int y = 0; y < 3; y += 2) {
+            for (int x = 0; x < 5; x += 2) {
+                verify(pixelBuffer).getTile(0, 0, 0, x, y,
+                        Math.min(2, 5 - x), Math.min(2, 3 - y));
+            }
+        }
+        verify(pixelBuffer, times(6)).getTile(
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt());
+    }
+
+    @Test
+    public void testGetStatisticsOpensOnce() throws IOException {
+        PixelBuffer pixelBuffer = labelImage();
+        AtomicInteger opened = new AtomicInteger();
+        LabelStatisticsService service =
+                new LabelStatisticsService(2, 10, 60);
+        JsonObject first = service.getStatistics("label", 0, () -> {
+            opened.incrementAndGet();
+            return pixelBuffer;
+        });
+        JsonObject second = service.getStatistics("label", 0, () -> {
+            opened.incrementAndGet();
+            return pixelBuffer;
+        });
+        Assert.assertEquals(1, opened.get());
+        Assert.assertSame(first, second);
+        Assert.assertEquals(
+                5, first.getJsonArray("labels").size());
+        Assert.assertEquals(Integer.valueOf(0), first.getInteger("resolution"));
+    }
+
+    @Test
+    public void testGetStatisticsNotCachedOnError() {
+        PixelBuffer pixelBuffer = mock(PixelBuffer.class);
+        when(pixelBuffer.getResolutionLevels()).thenReturn(1);
+        AtomicInteger opened = new AtomicInteger();
+        LabelStatisticsService service =
+                new LabelStatisticsService(1, 10, 60);
+        for (int i = 0; i < 2; i++) {
+            try {
+                service.getStatistics("label", 1, () -> {
+                    opened.incrementAndGet();
+                    return pixelBuffer;
+                });
+                Assert.fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        // Failed computations are evicted rather than replayed
+        Assert.assertEquals(2, opened.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testComputeInvalidResolution() throws IOException {
+        PixelBuffer pixelBuffer = mock(PixelBuffer.class);
+        when(pixelBuffer.getResolutionLevels()).thenReturn(1);
+        new LabelStatisticsService(1, 10, 60).compute(() -> pixelBuffer, 1);
+    }
+}
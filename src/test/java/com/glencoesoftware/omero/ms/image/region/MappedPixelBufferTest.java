@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ome.io.nio.PixelBuffer;
+import ome.util.PixelData;
+
+public class MappedPixelBufferTest {
+
+    private static final int SIZE_X = 5;
+
+    private static final int SIZE_Y = 4;
+
+    private static final int SIZE_Z = 2;
+
+    private static final int SIZE_C = 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    private PixelBuffer delegate;
+
+    /** Value of the pixel at x, y, z, c of the synthetic 16-bit image */
+    private static short pixel(int x, int y, int z, int c) {
+        return (short) (((c * SIZE_Z + z) * SIZE_Y + y) * SIZE_X + x);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        // Big endian, XYZCT
+        ByteBuffer data = ByteBuffer.allocate(
+                SIZE_X * SIZE_Y * SIZE_Z * SIZE_C * 2);
+        for (int c = 0; c < SIZE_C; c++) {
+            for (int z = 0; z < SIZE_Z; z++) {
+                for (int y = 0; y < SIZE_Y; y++) {
+                    for (int x = 0; x < SIZE_X; x++) {
+                        data.putShort(pixel(x, y, z, c));
+                    }
+                }
+            }
+        }
+        file = folder.newFile("1");
+        Files.write(file.toPath(), data.array());
+        delegate = mock(PixelBuffer.class);
+        when(delegate.getSizeX()).thenReturn(SIZE_X);
+        when(delegate.getSizeY()).thenReturn(SIZE_Y);
+        when(delegate.getSizeZ()).thenReturn(SIZE_Z);
+        when(delegate.getSizeC()).thenReturn(SIZE_C);
+        when(delegate.getSizeT()).thenReturn(1);
+        when(delegate.getByteWidth()).thenReturn(2);
+    }
+
+    private PixelBuffer wrap(MappedFileService mappedFiles) {
+        return MappedPixelBuffer.wrap(
+                delegate, mappedFiles, file.getAbsolutePath(), "uint16");
+    }
+
+    private void assertTile(PixelData pixelData,
+            int x, int y, int w, int h, int z, int c) {
+        Assert.assertEquals(w * h, pixelData.size());
+        for (int row = 0; row < h; row++) {
+            for (int column = 0; column < w; column++) {
+                Assert.assertEquals(pixel(x + column, y + row, z, c),
+                        (short) pixelData.getPixelValue(row * w + column));
+            }
+        }
+    }
+
+    @Test
+    public void testGetTile() throws IOException {
+        PixelBuffer pixelBuffer = wrap(new MappedFileService(1024, 4, 0));
+        assertTile(pixelBuffer.getTile(1, 1, 0, 1, 1, 3, 2), 1, 1, 3, 2, 1, 1);
+        // Full width tiles are views of the mapping
+        PixelData rows = pixelBuffer.getTile(0, 1, 0, 0, 2, SIZE_X, 2);
+        Assert.assertTrue(rows.getData().isDirect());
+        assertTile(rows, 0, 2, SIZE_X, 2, 0, 1);
+        assertTile(pixelBuffer.getPlane(1, 0, 0),
+                0, 0, SIZE_X, SIZE_Y, 1, 0);
+        verify(delegate, never()).getTile(anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt(), anyInt(), anyInt());
+    }
+
+    @Test
+    public void testGetTileDirect() throws IOException {
+        PixelBuffer pixelBuffer = wrap(new MappedFileService(1024, 4, 0));
+        byte[] buffer = new byte[12];
+        Assert.assertSame(buffer, pixelBuffer.getTileDirect(
+                0, 1, 0, 2, 1, 3, 2, buffer));
+        assertTile(new PixelData("uint16", ByteBuffer.wrap(buffer)),
+                2, 1, 3, 2, 0, 1);
+    }
+
+    @Test
+    public void testGetStack() throws IOException {
+        PixelBuffer pixelBuffer = wrap(new MappedFileService(1024, 4, 0));
+        PixelData stack = pixelBuffer.getStack(1, 0);
+        Assert.assertEquals(SIZE_X * SIZE_Y * SIZE_Z, stack.size());
+        Assert.assertEquals(pixel(0, 0, 0, 1),
+                (short) stack.getPixelValue(0));
+        Assert.assertEquals(pixel(4, 3, 1, 1),
+                (short) stack.getPixelValue(stack.size() - 1));
+    }
+
+    @Test
+    public void testOutOfBoundsPassedOn() throws IOException {
+        PixelBuffer pixelBuffer = wrap(new MappedFileService(1024, 4, 0));
+        pixelBuffer.getTile(0, 0, 0, 3, 0, 3, 1);
+        pixelBuffer.getTile(0, 2, 0, 0, 0, 1, 1);
+        verify(delegate).getTile(0, 0, 0, 3, 0, 3, 1);
+        verify(delegate).getTile(0, 2, 0, 0, 0, 1, 1);
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        MappedFileService mappedFiles = new MappedFileService(0, 4, 0);
+        Assert.assertNull(mappedFiles.get(file.getAbsolutePath()));
+        // Not a ROMIO pixel buffer
+        Assert.assertSame(delegate, MappedPixelBuffer.wrap(
+                delegate, new MappedFileService(1024, 4, 0), "uint16"));
+        wrap(mappedFiles).getTile(0, 0, 0, 0, 0, 1, 1);
+        verify(delegate).getTile(0, 0, 0, 0, 0, 1, 1);
+    }
+
+    @Test
+    public void testMappingLimits() throws IOException {
+        File other = folder.newFile("2");
+        Files.write(other.toPath(), new byte[100]);
+        File large = folder.newFile("3");
+        Files.write(large.toPath(), new byte[300]);
+        // 160 bytes
+        String path = file.getAbsolutePath();
+        MappedFileService mappedFiles = new MappedFileService(260, 2, 0);
+        Assert.assertNull(mappedFiles.get(large.getAbsolutePath()));
+        Assert.assertNotNull(mappedFiles.get(path));
+        Assert.assertNotNull(mappedFiles.get(other.getAbsolutePath()));
+        Assert.assertEquals(2, mappedFiles.size());
+        Assert.assertEquals(260, mappedFiles.mappedBytes());
+        // Over the byte limit; least recently used dropped
+        File third = folder.newFile("4");
+        Files.write(third.toPath(), new byte[10]);
+        Assert.assertNotNull(mappedFiles.get(third.getAbsolutePath()));
+        Assert.assertEquals(2, mappedFiles.size());
+        Assert.assertEquals(110, mappedFiles.mappedBytes());
+        mappedFiles.invalidate(third.getAbsolutePath());
+        Assert.assertEquals(1, mappedFiles.size());
+    }
+
+    @Test
+    public void testRemappedWhenChanged() throws IOException {
+        String path = file.getAbsolutePath();
+        MappedFileService mappedFiles = new MappedFileService(1024, 4, 0);
+        MappedFileService.Mapping mapping = mappedFiles.get(path);
+        Assert.assertSame(mapping, mappedFiles.get(path));
+        Files.write(file.toPath(), new byte[8]);
+        MappedFileService.Mapping remapped = mappedFiles.get(path);
+        Assert.assertNotSame(mapping, remapped);
+        Assert.assertEquals(8, remapped.length);
+        Assert.assertEquals(8, mappedFiles.mappedBytes());
+    }
+
+    @Test
+    public void testNotCheckedWithinInterval() throws IOException {
+        String path = file.getAbsolutePath();
+        MappedFileService mappedFiles = new MappedFileService(1024, 4, 60);
+        MappedFileService.Mapping mapping = mappedFiles.get(path);
+        // Grown rather than truncated so the stale mapping remains readable
+        Files.write(file.toPath(), new byte[320]);
+        Assert.assertSame(mapping, mappedFiles.get(path));
+        Assert.assertEquals(160, mappedFiles.mappedBytes());
+        mappedFiles.invalidate(path);
+        Assert.assertEquals(320, mappedFiles.get(path).length);
+    }
+
+    @Test
+    public void testMappedNotChunkCached() throws IOException {
+        PixelBuffer pixelBuffer = wrap(new MappedFileService(1024, 4, 0));
+        Assert.assertTrue(MappedPixelBuffer.isMapped(pixelBuffer));
+        Assert.assertFalse(MappedPixelBuffer.isMapped(delegate));
+        PixelBufferPool pool = new PixelBufferPool(2, 60);
+        PixelBuffer borrowed = pool.borrow(1L, () -> pixelBuffer);
+        Assert.assertTrue(MappedPixelBuffer.isMapped(borrowed));
+        ChunkCache chunkCache = new ChunkCache(1024 * 1024, 60);
+        Assert.assertSame(borrowed, CachingPixelBuffer.wrap(
+                borrowed, chunkCache, "a", "uint16"));
+        Assert.assertNotSame(delegate, CachingPixelBuffer.wrap(
+                delegate, chunkCache, "b", "uint16"));
+        borrowed.close();
+    }
+}
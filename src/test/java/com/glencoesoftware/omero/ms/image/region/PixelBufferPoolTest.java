@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import ome.io.nio.PixelBuffer;
+
+public class PixelBufferPoolTest {
+
+    private final AtomicInteger opened = new AtomicInteger();
+
+    private Supplier<PixelBuffer> opener(PixelBuffer pixelBuffer) {
+        return () -> {
+            opened.incrementAndGet();
+            return pixelBuffer;
+        };
+    }
+
+    private PixelBuffer pixelBuffer() {
+        PixelBuffer pixelBuffer = mock(PixelBuffer.class);
+        when(pixelBuffer.getResolutionLevel()).thenReturn(2);
+        return pixelBuffer;
+    }
+
+    @Test
+    public void testReuse() throws IOException {
+        PixelBufferPool pool = new PixelBufferPool(2, 60);
+        PixelBuffer pixelBuffer = pixelBuffer();
+        when(pixelBuffer.getSizeX()).thenReturn(512);
+        PixelBuffer borrowed = pool.borrow(1L, opener(pixelBuffer));
+        Assert.assertEquals(Integer.valueOf(512), borrowed.getSizeX());
+        borrowed.close();
+        // Closing twice returns the pixel buffer once
+        borrowed.close();
+        verify(pixelBuffer, never()).close();
+        borrowed = pool.borrow(1L, opener(pixelBuffer()));
+        Assert.assertEquals(Integer.valueOf(512), borrowed.getSizeX());
+        borrowed.close();
+        Assert.assertEquals(1, opened.get());
+        Assert.assertEquals(1, pool.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUseAfterClose() throws IOException {
+        PixelBufferPool pool = new PixelBufferPool(2, 60);
+        PixelBuffer borrowed = pool.borrow(1L, opener(pixelBuffer()));
+        borrowed.close();
+        borrowed.getSizeX();
+    }
+
+    @Test
+    public void testConcurrentBorrowsOpenSeparately() throws IOException {
+        PixelBufferPool pool = new PixelBufferPool(2, 60);
+        PixelBuffer a = pool.borrow(1L, opener(pixelBuffer()));
+        PixelBuffer b = pool.borrow(1L, opener(pixelBuffer()));
+        Assert.assertEquals(2, opened.get());
+        a.close();
+        b.close();
+        Assert.assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testResolutionLevelPerBorrow() throws IOException {
+        // A single handle is shared once the pool is at capacity
+        PixelBufferPool pool = new PixelBufferPool(1, 60);
+        PixelBuffer pixelBuffer = pixelBuffer();
+        PixelBuffer a = pool.borrow(1L, opener(pixelBuffer));
+        PixelBuffer b = pool.borrow(1L, opener(pixelBuffer()));
+        Assert.assertEquals(1, opened.get());
+        a.setResolutionLevel(0);
+        verify(pixelBuffer).setResolutionLevel(0);
+        // The other borrower still reads at the default resolution level
+        b.getSizeX();
+        verify(pixelBuffer).setResolutionLevel(2);
+        a.getSizeX();
+        verify(pixelBuffer, times(2)).setResolutionLevel(0);
+        a.close();
+        b.close();
+        // A new borrow starts at the default resolution level
+        PixelBuffer c = pool.borrow(1L, opener(pixelBuffer()));
+        c.getSizeX();
+        verify(pixelBuffer, times(2)).setResolutionLevel(2);
+        c.close();
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsed() throws IOException {
+        PixelBufferPool pool = new PixelBufferPool(2, 60);
+        PixelBuffer one = pixelBuffer();
+        PixelBuffer two = pixelBuffer();
+        pool.borrow(1L, opener(one)).close();
+        pool.borrow(2L, opener(two)).close();
+        pool.borrow(1L, opener(pixelBuffer())).close();
+        // Pixels:2 is now the least recently used
+        pool.borrow(3L, opener(pixelBuffer())).close();
+        verify(two).close();
+        verify(one, never()).close();
+        Assert.assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testOverCapacityClosedOnReturn() throws IOException {
+        PixelBufferPool pool = new PixelBufferPool(1, 60);
+        PixelBuffer one = pixelBuffer();
+        PixelBuffer two = pixelBuffer();
+        PixelBuffer a = pool.borrow(1L, opener(one));
+        PixelBuffer b = pool.borrow(2L, opener(two));
+        Assert.assertEquals(2, pool.size());
+        a.close();
+        verify(one).close();
+        b.close();
+        verify(two, never()).close();
+        Assert.assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testIdleTimeout() throws IOException {
+        PixelBufferPool pool = new PixelBufferPool(2, 0);
+        PixelBuffer one = pixelBuffer();
+        pool.borrow(1L, opener(one)).close();
+        pool.borrow(1L, opener(pixelBuffer())).close();
+        verify(one).close();
+        Assert.assertEquals(2, opened.get());
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        PixelBufferPool pool = new PixelBufferPool(2, 60);
+        PixelBuffer one = pixelBuffer();
+        PixelBuffer borrowed = pool.borrow(1L, opener(one));
+        pool.invalidate(1L);
+        verify(one, never()).close();
+        borrowed.close();
+        verify(one).close();
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        PixelBufferPool pool = new PixelBufferPool(0, 60);
+        PixelBuffer pixelBuffer = pixelBuffer();
+        PixelBuffer borrowed = pool.borrow(1L, opener(pixelBuffer));
+        Assert.assertSame(pixelBuffer, borrowed);
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import io.vertx.core.json.JsonObject;
+
+public class PrefetchPlannerTest {
+
+    private JsonObject request(String sessionKey, int z, int t) {
+        return new JsonObject()
+                .put("imageId", 1L)
+                .put("z", z)
+                .put("t", t)
+                .put("tile", new JsonObject().put("x", 0).put("y", 0))
+                .put("omeroSessionKey", sessionKey);
+    }
+
+    /**
+     * Observes a request for an image of 100 planes in Z and T.
+     */
+    private PrefetchPlanner.Plan observe(
+            PrefetchPlanner planner, JsonObject request) {
+        return planner.observe(request, 100, 100);
+    }
+
+    private List<Integer> planes(PrefetchPlanner.Plan plan, String key) {
+        return plan.prefetch.stream()
+                .map(ctx -> ctx.getInteger(key))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testSequentialZ() {
+        PrefetchPlanner planner = new PrefetchPlanner(2, 8, 60);
+        Assert.assertTrue(
+                observe(planner, request("a", 5, 0)).prefetch.isEmpty());
+        PrefetchPlanner.Plan plan = observe(planner, request("a", 6, 0));
+        Assert.assertEquals(List.of(7, 8), planes(plan, "z"));
+        Assert.assertEquals(List.of(0, 0), planes(plan, "t"));
+        for (JsonObject ctx : plan.prefetch) {
+            Assert.assertTrue(ctx.getBoolean("prefetch"));
+            Assert.assertNotNull(ctx.getString("requestId"));
+            Assert.assertEquals("a", ctx.getString("omeroSessionKey"));
+        }
+        // Only planes not already prefetched
+        plan = observe(planner, request("a", 7, 0));
+        Assert.assertEquals(List.of(9), planes(plan, "z"));
+        Assert.assertEquals(3, planner.inFlight("a"));
+    }
+
+    @Test
+    public void testBackwardsT() {
+        PrefetchPlanner planner = new PrefetchPlanner(3, 8, 60);
+        observe(planner, request("a", 0, 2));
+        PrefetchPlanner.Plan plan = observe(planner, request("a", 0, 1));
+        // Nothing before the first timepoint
+        Assert.assertEquals(List.of(0), planes(plan, "t"));
+    }
+
+    @Test
+    public void testClampedToSize() {
+        PrefetchPlanner planner = new PrefetchPlanner(3, 8, 60);
+        planner.observe(request("a", 7, 0), 10, 1);
+        PrefetchPlanner.Plan plan =
+                planner.observe(request("a", 8, 0), 10, 1);
+        // Nothing past the last Z section
+        Assert.assertEquals(List.of(9), planes(plan, "z"));
+        Assert.assertEquals(1, planner.inFlight("a"));
+    }
+
+    @Test
+    public void testPatternBreakCancels() {
+        PrefetchPlanner planner = new PrefetchPlanner(2, 8, 60);
+        observe(planner, request("a", 5, 0));
+        PrefetchPlanner.Plan plan = observe(planner, request("a", 6, 0));
+        List<String> requestIds = plan.prefetch.stream()
+                .map(ctx -> ctx.getString("requestId"))
+                .collect(Collectors.toList());
+        // Jump elsewhere in the stack
+        plan = observe(planner, request("a", 20, 0));
+        Assert.assertTrue(plan.prefetch.isEmpty());
+        Assert.assertEquals(requestIds, plan.cancel);
+        Assert.assertEquals(0, planner.inFlight("a"));
+        // Repeated requests neither continue nor break the run
+        observe(planner, request("a", 21, 0));
+        plan = observe(planner, request("a", 21, 0));
+        Assert.assertTrue(plan.prefetch.isEmpty());
+        Assert.assertTrue(plan.cancel.isEmpty());
+    }
+
+    @Test
+    public void testBudget() {
+        PrefetchPlanner planner = new PrefetchPlanner(4, 3, 60);
+        observe(planner, request("a", 0, 0));
+        PrefetchPlanner.Plan plan = observe(planner, request("a", 1, 0));
+        Assert.assertEquals(List.of(2, 3, 4), planes(plan, "z"));
+        // Budget is per session
+        observe(planner, request("b", 0, 0));
+        Assert.assertEquals(3, observe(planner, 
+                request("b", 1, 0)).prefetch.size());
+        planner.completed(plan.prefetch.get(0));
+        Assert.assertEquals(2, planner.inFlight("a"));
+        plan = observe(planner, request("a", 2, 0));
+        Assert.assertEquals(List.of(5), planes(plan, "z"));
+    }
+
+    @Test
+    public void testTilesTrackedSeparately() {
+        PrefetchPlanner planner = new PrefetchPlanner(1, 8, 60);
+        observe(planner, request("a", 0, 0));
+        JsonObject otherTile = request("a", 1, 0)
+                .put("tile", new JsonObject().put("x", 1).put("y", 0));
+        Assert.assertTrue(observe(planner, otherTile).prefetch.isEmpty());
+    }
+
+    @Test
+    public void testIgnored() {
+        PrefetchPlanner planner = new PrefetchPlanner(2, 8, 60);
+        observe(planner, request("a", 0, 0));
+        Assert.assertTrue(observe(planner, 
+                request("a", 1, 0).put("prefetch", true)).prefetch.isEmpty());
+        observe(planner, request("a", 0, 0).putNull("z"));
+        planner = new PrefetchPlanner(0, 8, 60);
+        Assert.assertFalse(planner.isEnabled());
+        observe(planner, request("a", 0, 0));
+        Assert.assertTrue(observe(planner, 
+                request("a", 1, 0)).prefetch.isEmpty());
+    }
+}
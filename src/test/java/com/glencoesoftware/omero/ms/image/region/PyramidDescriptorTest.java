@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.awt.Dimension;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import ome.io.nio.PixelBuffer;
+
+public class PyramidDescriptorTest {
+
+    private PyramidDescriptor pyramidDescriptor;
+
+    /**
+     * Three resolution levels of 1000x800, 500x400 and 250x200.
+     */
+    @Before
+    public void setUp() {
+        PixelBuffer pixelBuffer = mock(PixelBuffer.class);
+        when(pixelBuffer.getResolutionLevels()).thenReturn(3);
+        when(pixelBuffer.getTileSize()).thenReturn(new Dimension(256, 256));
+        List<List<Integer>> descriptions = Arrays.asList(
+                Arrays.asList(1000, 800),
+                Arrays.asList(500, 400),
+                Arrays.asList(250, 200));
+        when(pixelBuffer.getResolutionDescriptions())
+                .thenReturn(descriptions);
+        pyramidDescriptor = new PyramidDescriptor(pixelBuffer);
+    }
+
+    @Test
+    public void testGetSize() {
+        Assert.assertEquals(Arrays.asList(250, 200),
+                pyramidDescriptor.getSize(0));
+        Assert.assertEquals(Arrays.asList(1000, 800),
+                pyramidDescriptor.getSize(2));
+    }
+
+    @Test
+    public void testGetResolutionLevel() {
+        Assert.assertEquals(2, pyramidDescriptor.getResolutionLevel(1));
+        Assert.assertEquals(2, pyramidDescriptor.getResolutionLevel(0.6));
+        Assert.assertEquals(1, pyramidDescriptor.getResolutionLevel(0.5));
+        Assert.assertEquals(1, pyramidDescriptor.getResolutionLevel(0.3));
+        Assert.assertEquals(0, pyramidDescriptor.getResolutionLevel(0.25));
+        Assert.assertEquals(0, pyramidDescriptor.getResolutionLevel(0.01));
+    }
+
+    @Test
+    public void testGetResolutionLevelNoPyramid() {
+        PixelBuffer pixelBuffer = mock(PixelBuffer.class);
+        when(pixelBuffer.getResolutionLevels()).thenReturn(1);
+        when(pixelBuffer.getSizeX()).thenReturn(1000);
+        when(pixelBuffer.getSizeY()).thenReturn(800);
+        Assert.assertEquals(0,
+                new PyramidDescriptor(pixelBuffer).getResolutionLevel(0.1));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import brave.Span;
+import brave.Tracer;
+import brave.Tracing;
+import brave.propagation.ThreadLocalCurrentTraceContext;
+import brave.propagation.TraceContext;
+
+public class RenderExecutorTest {
+
+    private RenderExecutor renderExecutor;
+
+    @Before
+    public void setUp() {
+        renderExecutor = new RenderExecutor(2);
+    }
+
+    @After
+    public void tearDown() {
+        renderExecutor.shutdown();
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        String caller = Thread.currentThread().getName();
+        String name = renderExecutor.execute(
+                () -> Thread.currentThread().getName());
+        Assert.assertNotEquals(caller, name);
+        Assert.assertTrue(name.startsWith("render-pool-"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testExecuteCheckedException() throws Exception {
+        renderExecutor.execute(() -> {
+            throw new IOException();
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testExecuteRuntimeException() throws Exception {
+        renderExecutor.execute(() -> {
+            throw new IllegalArgumentException();
+        });
+    }
+
+    @Test(expected = OutOfMemoryError.class)
+    public void testExecuteError() throws Exception {
+        renderExecutor.execute(() -> {
+            throw new OutOfMemoryError();
+        });
+    }
+
+    @Test
+    public void testExecuteAll() throws Exception {
+        List<Callable<Integer>> tasks = Arrays.asList(
+                () -> 1, () -> 2, () -> 3);
+        Assert.assertEquals(
+                Arrays.asList(1, 2, 3), renderExecutor.executeAll(tasks));
+    }
+
+    @Test(expected = IOException.class)
+    public void testExecuteAllCheckedException() throws Exception {
+        List<Callable<Integer>> tasks = Arrays.asList(
+                () -> 1, () -> {
+                    throw new IOException();
+                });
+        renderExecutor.executeAll(tasks);
+    }
+
+    @Test
+    public void testTraceContextPropagated() throws Exception {
+        Tracing tracing = Tracing.newBuilder()
+                .currentTraceContext(ThreadLocalCurrentTraceContext.create())
+                .build();
+        try {
+            Tracer tracer = tracing.tracer();
+            Span span = tracer.newTrace().name("test").start();
+            try (Tracer.SpanInScope scope = tracer.withSpanInScope(span)) {
+                TraceContext context = renderExecutor.execute(
+                        () -> tracing.currentTraceContext().get());
+                Assert.assertEquals(span.context(), context);
+                List<Callable<TraceContext>> tasks = Arrays.asList(
+                        () -> tracing.currentTraceContext().get());
+                Assert.assertEquals(span.context(),
+                        renderExecutor.executeAll(tasks).get(0));
+            } finally {
+                span.finish();
+            }
+            // Nothing leaks onto the pool once the task completes
+            Assert.assertNull(renderExecutor.execute(
+                    () -> tracing.currentTraceContext().get()));
+        } finally {
+            tracing.close();
+        }
+    }
+}
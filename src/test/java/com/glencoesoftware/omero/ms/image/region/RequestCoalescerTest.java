@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RequestCoalescerTest {
+
+    private RequestCoalescer<String, String> coalescer;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        coalescer = new RequestCoalescer<String, String>("test");
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts a leader for <code>key</code> which blocks until
+     * <code>release</code> is counted down, then waits for a follower to
+     * join it.
+     */
+    private Future<String> lead(String key, CountDownLatch started,
+            CountDownLatch release, AtomicInteger calls,
+            Exception failure) {
+        return executor.submit(() -> coalescer.execute(key, () -> {
+            calls.incrementAndGet();
+            started.countDown();
+            release.await();
+            if (failure != null) {
+                throw failure;
+            }
+            return "result";
+        }));
+    }
+
+    private void awaitFollower() throws InterruptedException {
+        // The follower has no observable state while waiting
+        Thread.sleep(100);
+    }
+
+    @Test
+    public void testIdenticalRequestsShareResult() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Future<String> leader = lead("a", started, release, calls, null);
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Future<String> follower = executor.submit(
+                () -> coalescer.execute("a", () -> {
+                    calls.incrementAndGet();
+                    return "other";
+                }));
+        awaitFollower();
+        release.countDown();
+        Assert.assertEquals("result", leader.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals("result", follower.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, calls.get());
+        Assert.assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void testDistinctRequestsNotShared() throws Exception {
+        Assert.assertEquals("a", coalescer.execute("a", () -> "a"));
+        Assert.assertEquals("b", coalescer.execute("b", () -> "b"));
+        // Nothing is retained
+        Assert.assertEquals("c", coalescer.execute("a", () -> "c"));
+        Assert.assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void testFailureShared() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Future<String> leader = lead("a", started, release, calls,
+                new IllegalStateException("boom"));
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Future<String> follower = executor.submit(
+                () -> coalescer.execute("a", () -> "other"));
+        awaitFollower();
+        release.countDown();
+        for (Future<String> future : Arrays.asList(leader, follower)) {
+            try {
+                future.get(10, TimeUnit.SECONDS);
+                Assert.fail("Expected failure");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(
+                        e.getCause() instanceof IllegalStateException);
+            }
+        }
+        Assert.assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testCancellationNotShared() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Future<String> leader = lead("a", started, release, calls,
+                new CancellationException());
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Future<String> follower = executor.submit(
+                () -> coalescer.execute("a", () -> {
+                    calls.incrementAndGet();
+                    return "other";
+                }));
+        awaitFollower();
+        release.countDown();
+        try {
+            leader.get(10, TimeUnit.SECONDS);
+            Assert.fail("Expected cancellation");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(
+                    e.getCause() instanceof CancellationException);
+        }
+        // The follower performs the render itself
+        Assert.assertEquals("other", follower.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testWaitTimeout() throws Exception {
+        coalescer = new RequestCoalescer<String, String>("test", 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        Future<String> leader = lead("a", started, release, calls, null);
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        // The leader is stuck; the follower gives up and renders itself
+        Assert.assertEquals("other", coalescer.execute("a", () -> {
+            calls.incrementAndGet();
+            return "other";
+        }));
+        Assert.assertEquals(2, calls.get());
+        Assert.assertEquals(1, coalescer.size());
+        release.countDown();
+        Assert.assertEquals("result", leader.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, coalescer.size());
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package com.glencoesoftware.omero.ms.image.region;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.MultiMap;
+
+public class ShapeMaskCtxTest {
+
+    private MultiMap params;
+
+    @Before
+    public void setUp() {
+        params = MultiMap.caseInsensitiveMultiMap();
+        params.add("shapeId", "1");
+        params.add("color", "FF0000");
+    }
+
+    @Test
+    public void testBytesKeyDistinctFromPngKey() {
+        ShapeMaskCtx ctx = new ShapeMaskCtx(params, "");
+        Assert.assertNotEquals(ctx.cacheKey(), ctx.bytesCacheKey());
+    }
+
+    @Test
+    public void testBytesKeyIncludesRequest() {
+        String key = new ShapeMaskCtx(params, "").bytesCacheKey();
+        params.add("compression", "gzip");
+        String compressed = new ShapeMaskCtx(params, "").bytesCacheKey();
+        Assert.assertNotEquals(key, compressed);
+        params.add("domain", "[0:1,0:1,0:2,0:10,0:10]");
+        String domain = new ShapeMaskCtx(params, "").bytesCacheKey();
+        Assert.assertNotEquals(compressed, domain);
+        params.add("resolution", "1");
+        Assert.assertNotEquals(
+                domain, new ShapeMaskCtx(params, "").bytesCacheKey());
+    }
+}
@@ -18,9 +18,14 @@
 
 package com.glencoesoftware.omero.ms.image.region;
 
+import static org.mockito.Mockito.*;
+
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
 
 import io.vertx.core.MultiMap;
 
@@ -30,6 +35,12 @@ import org.junit.Test;
 import org.junit.Assert;
 import org.junit.Before;
 
+import com.glencoesoftware.omero.zarr.ZarrPixelBuffer;
+import com.glencoesoftware.omero.zarr.ZarrPixelsService;
+
+import loci.formats.FormatTools;
+import ome.io.nio.PixelBuffer;
+import ome.util.PixelData;
 import ome.xml.model.primitives.Color;
 import omero.model.Mask;
 import omero.model.MaskI;
@@ -55,7 +66,7 @@ public class ShapeMaskRequestHandlerTest {
         params.add("flip", "");
 
         handler = new ShapeMaskRequestHandler(
-                new ShapeMaskCtx(params, ""), null);
+                new ShapeMaskCtx(params, ""), null, null, null);
     }
 
     @Test
@@ -94,9 +105,13 @@ public class ShapeMaskRequestHandlerTest {
     private void testFlip(
             byte[] src, int sizeX, int sizeY,
             boolean flipHorizontal, boolean flipVertical) {
-        byte[] flipped = ShapeMaskRequestHandler.flip(
-                src, sizeX, sizeY, flipHorizontal, flipVertical);
+        int stride = (sizeX + 7) / 8;
         for (int n = 0; n < sizeX * sizeY; n++){
+            // Only pixel n set
+            byte[] mask = new byte[src.length];
+            mask[n] = 1;
+            byte[] flipped = ShapeMaskRequestHandler.packBits(
+                    mask, 1, sizeX, sizeY, flipHorizontal, flipVertical);
             int new_col;
             if (flipHorizontal) {
                 int old_col = n % sizeX;
@@ -111,7 +126,10 @@ public class ShapeMaskRequestHandlerTest {
             } else {
                 new_row = n / sizeX;
             }
-            Assert.assertEquals(flipped[new_row * sizeX + new_col], n);
+            byte[] expected = new byte[stride * sizeY];
+            expected[new_row * stride + new_col / 8] =
+                    (byte) (0x80 >>> (new_col % 8));
+            Assert.assertArrayEquals(expected, flipped);
         }
     }
 
@@ -209,19 +227,317 @@ public class ShapeMaskRequestHandlerTest {
     @Test(expected = IllegalArgumentException.class)
     public void testFlipNullImage() {
         byte[] nullArray = null;
-        ShapeMaskRequestHandler.flip(nullArray, 4, 4, true, true);
+        ShapeMaskRequestHandler.packBits(nullArray, 1, 4, 4, true, true);
     }
 
     @Test(expected = IllegalArgumentException.class)
     public void testFlipZeroXImage() {
         byte[] src = {1};
-        ShapeMaskRequestHandler.flip(src, 0, 4, true, true);
+        ShapeMaskRequestHandler.packBits(src, 1, 0, 4, true, true);
     }
 
     @Test(expected = IllegalArgumentException.class)
     public void testFlipZeroYImage() {
         byte[] src = {1};
-        ShapeMaskRequestHandler.flip(src, 4, 0, true, true);
+        ShapeMaskRequestHandler.packBits(src, 1, 4, 0, true, true);
+    }
+
+    @Test
+    public void testPackBitsUnalignedBitStream() {
+        // 4 by 4 grid alternating bits; rows are not byte aligned
+        byte[] src = new byte[] { 0x55, 0x55 };
+        byte[] packed = ShapeMaskRequestHandler.packBits(
+                src, 0, 4, 4, false, false);
+        Assert.assertArrayEquals(
+                new byte[] { 0x50, 0x50, 0x50, 0x50 }, packed);
+    }
+
+    @Test
+    public void testPackBitsUint8() {
+        byte[] src = new byte[] {
+            0, 1, 0,
+            (byte) 0xFF, 0, 0
+        };
+        byte[] packed = ShapeMaskRequestHandler.packBits(
+                src, 1, 3, 2, false, false);
+        Assert.assertArrayEquals(
+                new byte[] { 0x40, (byte) 0x80 }, packed);
+    }
+
+    @Test
+    public void testPackBitsUint16() {
+        // Values 0x0100 and 0x0001 are both non-zero regardless of endian
+        byte[] src = new byte[] {
+            1, 0, 0, 0,
+            0, 0, 0, 1
+        };
+        byte[] packed = ShapeMaskRequestHandler.packBits(
+                src, 2, 2, 2, false, false);
+        Assert.assertArrayEquals(
+                new byte[] { (byte) 0x80, 0x40 }, packed);
+    }
+
+    @Test
+    public void testPackBitsUint32() {
+        byte[] src = new byte[] {
+            0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0xFF, 0
+        };
+        // 10 by 4; second pixel and last pixel are set
+        byte[] packed = ShapeMaskRequestHandler.packBits(
+                src, 4, 10, 4, false, false);
+        Assert.assertEquals(8, packed.length);
+        Assert.assertArrayEquals(
+                new byte[] { 0x40, 0, 0, 0, 0, 0, 0, 0x40 }, packed);
+    }
+
+    @Test
+    public void testPackBitsFlip() {
+        byte[] src = new byte[] {
+            1, 0, 0,
+            0, 0, 0
+        };
+        Assert.assertArrayEquals(
+                new byte[] { 0x20, 0 },
+                ShapeMaskRequestHandler.packBits(src, 1, 3, 2, true, false));
+        Assert.assertArrayEquals(
+                new byte[] { 0, (byte) 0x80 },
+                ShapeMaskRequestHandler.packBits(src, 1, 3, 2, false, true));
+        Assert.assertArrayEquals(
+                new byte[] { 0, 0x20 },
+                ShapeMaskRequestHandler.packBits(src, 1, 3, 2, true, true));
+    }
+
+    @Test
+    public void testPackBitsByteAlignedFlip() {
+        // 8 by 2 packed bits, first pixel set
+        byte[] src = new byte[] { (byte) 0x80, 0 };
+        Assert.assertArrayEquals(
+                new byte[] { 0, 0x01 },
+                ShapeMaskRequestHandler.packBits(src, 0, 8, 2, true, true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPackBitsNullMask() {
+        ShapeMaskRequestHandler.packBits(null, 0, 4, 4, false, false);
+    }
+
+    @Test
+    public void testPackBitsShortBitStream() {
+        // 3 by 2 bits in a single byte
+        byte[] src = new byte[] { (byte) 0xA4 };
+        Assert.assertArrayEquals(
+                new byte[] { (byte) 0xA0, 0x20 },
+                ShapeMaskRequestHandler.packBits(src, 0, 3, 2, false, false));
+    }
+
+    @Test
+    public void testPackBitsClampedUint8() {
+        // 4 by 3 mask clamped to 3 by 2 at the edge of the label image
+        byte[] src = new byte[] {
+            1, 0, 2,
+            0, 3, 0
+        };
+        Assert.assertArrayEquals(
+                new byte[] { (byte) 0xA0, 0x40, 0 },
+                ShapeMaskRequestHandler.packBits(
+                        src, 1, 3, 2, 4, 3, false, false));
+        Assert.assertArrayEquals(
+                new byte[] { 0, 0x20, 0x50 },
+                ShapeMaskRequestHandler.packBits(
+                        src, 1, 3, 2, 4, 3, true, true));
+    }
+
+    @Test
+    public void testPackBitsClampedUint16() {
+        byte[] src = new byte[] {
+            0, 1, 0, 0, 1, 0,
+            0, 0, 1, 1, 0, 0
+        };
+        Assert.assertArrayEquals(
+                new byte[] { (byte) 0xA0, 0x40, 0 },
+                ShapeMaskRequestHandler.packBits(
+                        src, 2, 3, 2, 4, 3, false, false));
+    }
+
+    @Test
+    public void testPackBitsClampedUint32() {
+        byte[] src = new byte[] {
+            0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0,
+            0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0
+        };
+        Assert.assertArrayEquals(
+                new byte[] { (byte) 0xA0, 0x40, 0 },
+                ShapeMaskRequestHandler.packBits(
+                        src, 4, 3, 2, 4, 3, false, false));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPackBitsMaskNotCovered() {
+        // 3 uint16 values require 6 bytes
+        ShapeMaskRequestHandler.packBits(new byte[5], 2, 3, 1, false, false);
+    }
+
+    @Test
+    public void testRenderShapeMaskClamped() throws IOException {
+        Color fillColor = new Color(255, 0, 0, 255);
+        byte[] src = new byte[] {
+            0, 1, 0, 0, 1, 0,
+            0, 0, 1, 1, 0, 0
+        };
+        Mask mask = new MaskI();
+        mask.setWidth(rdouble(4));
+        mask.setHeight(rdouble(3));
+        byte[] png = handler.renderShapeMask(mask, fillColor,
+                new ShapeMaskRequestHandler.MaskBytes(src, 2, 3, 2));
+        Assert.assertNotNull(png);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertImage(image, 4, 3);
+        Assert.assertEquals(0, image.getRGB(1, 0) >>> 24);
+        Assert.assertEquals(255, image.getRGB(2, 0) >>> 24);
+        Assert.assertEquals(0, image.getRGB(3, 0) >>> 24);
+    }
+
+    /**
+     * Mocks a label image pixel buffer whose planes are filled with a value
+     * derived from their Z, C and T index.
+     */
+    private PixelBuffer mockLabelImage() throws IOException {
+        PixelBuffer pixelBuffer = mock(PixelBuffer.class);
+        when(pixelBuffer.getByteWidth()).thenReturn(1);
+        when(pixelBuffer.getTile(
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt())).thenAnswer(invocation -> {
+            int z = invocation.getArgument(0);
+            int c = invocation.getArgument(1);
+            int t = invocation.getArgument(2);
+            int w = invocation.getArgument(5);
+            int h = invocation.getArgument(6);
+            byte[] plane = new byte[w * h];
+            Arrays.fill(plane, (byte) (t * 100 + c * 10 + z));
+            return new PixelData("uint8", ByteBuffer.wrap(plane));
+        });
+        return pixelBuffer;
+    }
+
+    @Test
+    public void testReadSubarraySinglePlane() throws IOException {
+        PixelBuffer pixelBuffer = mockLabelImage();
+        int[][] shapesAndOffsets = new int[][] {
+            {1, 1, 1, 2, 3}, {0, 0, 4, 0, 0}
+        };
+        byte[] subarray = handler.readSubarray(pixelBuffer, shapesAndOffsets);
+        Assert.assertEquals(6, subarray.length);
+        for (byte b : subarray) {
+            Assert.assertEquals(4, b);
+        }
+        verify(pixelBuffer, times(1)).getTile(4, 0, 0, 0, 0, 3, 2);
+    }
+
+    @Test
+    public void testReadSubarrayMultiPlane() throws IOException {
+        PixelBuffer pixelBuffer = mockLabelImage();
+        int[][] shapesAndOffsets = new int[][] {
+            {2, 1, 3, 2, 2}, {1, 2, 0, 5, 6}
+        };
+        byte[] subarray = handler.readSubarray(pixelBuffer, shapesAndOffsets);
+        Assert.assertEquals(2 * 1 * 3 * 2 * 2, subarray.length);
+        int planeSize = 2 * 2;
+        int plane = 0;
+        for (int t = 1; t < 3; t++) {
+            for (int z = 0; z < 3; z++) {
+                for (int i = 0; i < planeSize; i++) {
+                    Assert.assertEquals(
+                            t * 100 + 2 * 10 + z,
+                            subarray[plane * planeSize + i]);
+                }
+                verify(pixelBuffer).getTile(z, 2, t, 6, 5, 2, 2);
+                plane++;
+            }
+        }
+    }
+
+    @Test(expected = ShapeMaskRequestHandler.SubarrayTooLargeException.class)
+    public void testReadSubarrayTooLarge() throws IOException {
+        PixelBuffer pixelBuffer = mockLabelImage();
+        int[][] shapesAndOffsets = new int[][] {
+            {10, 10, 10, 4096, 4096}, {0, 0, 0, 0, 0}
+        };
+        handler.readSubarray(pixelBuffer, shapesAndOffsets);
+    }
+
+    @Test
+    public void testReadSubarrayConfiguredLimit() throws IOException {
+        PixelBuffer pixelBuffer = mockLabelImage();
+        int[][] shapesAndOffsets = new int[][] {
+            {1, 1, 3, 2, 2}, {0, 0, 0, 0, 0}
+        };
+        handler.setMaxSubarrayBytes(12);
+        Assert.assertEquals(
+                12, handler.readSubarray(pixelBuffer, shapesAndOffsets).length);
+        handler.setMaxSubarrayBytes(11);
+        try {
+            handler.readSubarray(pixelBuffer, shapesAndOffsets);
+            Assert.fail("Expected SubarrayTooLargeException");
+        } catch (ShapeMaskRequestHandler.SubarrayTooLargeException e) {
+            // Expected
+        }
+        verify(pixelBuffer, times(3)).getTile(
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                anyInt(), anyInt());
+    }
+
+    @Test
+    public void testRenderShapeMaskLargerThanBytesLimit() throws IOException {
+        int width = 8;
+        int height = 4;
+        ZarrPixelBuffer pixelBuffer = mock(ZarrPixelBuffer.class);
+        when(pixelBuffer.getDatasets()).thenReturn(Collections.singletonList(
+                Collections.singletonMap("path", "0")));
+        when(pixelBuffer.getChunks()).thenReturn(
+                new int[][] { {1, 1, 1, height, width} });
+        when(pixelBuffer.getRootGroupAttributes())
+                .thenReturn(Collections.<String, Object>emptyMap());
+        when(pixelBuffer.getSizeT()).thenReturn(1);
+        when(pixelBuffer.getSizeC()).thenReturn(1);
+        when(pixelBuffer.getSizeZ()).thenReturn(1);
+        when(pixelBuffer.getSizeY()).thenReturn(height);
+        when(pixelBuffer.getSizeX()).thenReturn(width);
+        when(pixelBuffer.getPixelsType()).thenReturn(FormatTools.UINT8);
+        when(pixelBuffer.getByteWidth()).thenReturn(1);
+        byte[] plane = new byte[width * height];
+        plane[0] = 1;
+        when(pixelBuffer.getTile(0, 0, 0, 0, 0, width, height)).thenReturn(
+                new PixelData("uint8", ByteBuffer.wrap(plane)));
+        ZarrPixelsService pixelsService = mock(ZarrPixelsService.class);
+        when(pixelsService.getUri(any(ome.model.roi.Mask.class)))
+                .thenReturn("file:///labels/0");
+        when(pixelsService.getLabelImagePixelBuffer(
+                any(ome.model.roi.Mask.class))).thenReturn(pixelBuffer);
+
+        MultiMap params = MultiMap.caseInsensitiveMultiMap();
+        params.add("shapeId", "1");
+        params.add("color", "FF0000");
+        ShapeMaskRequestHandler handler = new ShapeMaskRequestHandler(
+                new ShapeMaskCtx(params, ""), pixelsService, null, null);
+        // Smaller than the mask; only applies to shape mask bytes
+        handler.setMaxSubarrayBytes(width * height - 1);
+        Mask mask = new MaskI();
+        mask.setX(rdouble(0));
+        mask.setY(rdouble(0));
+        mask.setWidth(rdouble(width));
+        mask.setHeight(rdouble(height));
+        byte[] png = handler.renderShapeMask(mask);
+        Assert.assertNotNull(png);
+        assertImage(ImageIO.read(new ByteArrayInputStream(png)), width, height);
     }
 
 }
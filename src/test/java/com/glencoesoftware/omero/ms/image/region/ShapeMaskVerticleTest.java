@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.glencoesoftware.omero.zarr.ZarrPixelBuffer;
+import com.glencoesoftware.omero.zarr.ZarrPixelsService;
+
+import io.vertx.core.MultiMap;
+import loci.formats.FormatTools;
+import ome.io.nio.PixelBuffer;
+import ome.model.roi.Mask;
+import ome.util.PixelData;
+
+public class ShapeMaskVerticleTest {
+
+    @Test
+    public void testLabelImageReadThroughChunkCache() throws IOException {
+        ZarrPixelBuffer labelImage = mock(ZarrPixelBuffer.class);
+        when(labelImage.getSizeX()).thenReturn(8);
+        when(labelImage.getSizeY()).thenReturn(8);
+        when(labelImage.getSizeZ()).thenReturn(1);
+        when(labelImage.getByteWidth()).thenReturn(1);
+        when(labelImage.getPixelsType()).thenReturn(FormatTools.UINT8);
+        when(labelImage.getResolutionLevel()).thenReturn(0);
+        when(labelImage.getTileSize()).thenReturn(new Dimension(4, 4));
+        when(labelImage.getTile(
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                anyInt())).thenAnswer(invocation -> new PixelData("uint8",
+                        ByteBuffer.wrap(new byte[(int) invocation.getArgument(5)
+                                * (int) invocation.getArgument(6)])));
+        ZarrPixelsService pixelsService = mock(ZarrPixelsService.class);
+        when(pixelsService.getLabelImagePixelBuffer(any(Mask.class)))
+                .thenReturn(labelImage);
+        ChunkCache chunkCache = new ChunkCache(1024 * 1024, 60);
+        ShapeMaskVerticle verticle = new ShapeMaskVerticle(
+                pixelsService, null, null, null, 1024, chunkCache, null, null);
+
+        MultiMap params = MultiMap.caseInsensitiveMultiMap();
+        params.add("shapeId", "1");
+        // As used for shape mask bytes, rendering and label image statistics
+        ShapeMaskRequestHandler requestHandler =
+                verticle.createRequestHandler(new ShapeMaskCtx(params, ""));
+        PixelBuffer pixelBuffer =
+                requestHandler.openLabelImage(new Mask(), "file:///labels/0");
+        pixelBuffer.getTile(0, 0, 0, 0, 0, 4, 4);
+        pixelBuffer.getTile(0, 0, 0, 0, 0, 4, 4);
+        verify(labelImage, times(1)).getTile(
+                anyInt(), anyInt(), anyInt(), anyInt(), anyInt(), anyInt(),
+                anyInt());
+        Assert.assertEquals(16, chunkCache.residentBytes());
+    }
+
+}
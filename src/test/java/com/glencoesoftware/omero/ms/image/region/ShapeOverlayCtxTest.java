@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.vertx.core.MultiMap;
+
+public class ShapeOverlayCtxTest {
+
+    private MultiMap params;
+
+    @Before
+    public void setUp() {
+        params = MultiMap.caseInsensitiveMultiMap();
+        params.add("imageId", "1");
+        params.add("theZ", "0");
+        params.add("theT", "0");
+        params.add("roi", "3,2");
+        params.add("tile", "0,1,2,256,256");
+    }
+
+    @Test
+    public void testKeysIncludeScope() {
+        ShapeOverlayCtx ctx = new ShapeOverlayCtx(params, "");
+        String scope = "2:[3, 4]:[]:false";
+        String other = "5:[3, 4]:[]:false";
+        Assert.assertEquals(ctx.indexKey(scope), ctx.indexKey(scope));
+        Assert.assertNotEquals(ctx.indexKey(scope), ctx.indexKey(other));
+        Assert.assertNotEquals(ctx.cacheKey(scope), ctx.cacheKey(other));
+        Assert.assertTrue(ctx.cacheKey(scope).startsWith(
+                ctx.indexKey(scope)));
+    }
+
+    @Test
+    public void testRoiIdsSorted() {
+        ShapeOverlayCtx ctx = new ShapeOverlayCtx(params, "");
+        params.set("roi", "2,3");
+        Assert.assertEquals(ctx.cacheKey("s"),
+                new ShapeOverlayCtx(params, "").cacheKey("s"));
+    }
+}
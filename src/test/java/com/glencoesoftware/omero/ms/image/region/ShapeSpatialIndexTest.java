@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2026 Glencoe Software, Inc. All rights reserved.
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+
+package com.glencoesoftware.omero.ms.image.region;
+
+import static omero.rtypes.rdouble;
+import static omero.rtypes.rstring;
+
+import java.awt.Color;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import omero.model.AffineTransformI;
+import omero.model.MaskI;
+import omero.model.PolygonI;
+import omero.model.RectangleI;
+
+public class ShapeSpatialIndexTest {
+
+    private ShapeSpatialIndex.Entry rectangle(
+            double x, double y, double width, double height) {
+        return new ShapeSpatialIndex.Entry(
+                new Rectangle2D.Double(x, y, width, height),
+                Color.RED, null, 1);
+    }
+
+    @Test
+    public void testQueryEmpty() {
+        ShapeSpatialIndex index = new ShapeSpatialIndex(
+                new ArrayList<ShapeSpatialIndex.Entry>(), 2048, 2048);
+        Assert.assertEquals(0, index.size());
+        Assert.assertTrue(index.query(
+                new Rectangle2D.Double(0, 0, 2048, 2048)).isEmpty());
+    }
+
+    @Test
+    public void testQueryOnlyIntersecting() {
+        ShapeSpatialIndex.Entry a = rectangle(10, 10, 10, 10);
+        ShapeSpatialIndex.Entry b = rectangle(1500, 1500, 10, 10);
+        ShapeSpatialIndex.Entry c = rectangle(3000, 10, 10, 10);
+        ShapeSpatialIndex index = new ShapeSpatialIndex(
+                Arrays.asList(a, b, c), 4096, 4096);
+        Assert.assertEquals(3, index.size());
+        Assert.assertEquals(Arrays.asList(a), index.query(
+                new Rectangle2D.Double(0, 0, 512, 512)));
+        Assert.assertEquals(Arrays.asList(b), index.query(
+                new Rectangle2D.Double(1024, 1024, 1024, 1024)));
+        Assert.assertEquals(Arrays.asList(a, c), index.query(
+                new Rectangle2D.Double(0, 0, 4096, 100)));
+    }
+
+    @Test
+    public void testQuerySpanningCellsNoDuplicates() {
+        // Spans many grid cells
+        ShapeSpatialIndex.Entry a = rectangle(100, 100, 3000, 3000);
+        ShapeSpatialIndex.Entry b = rectangle(200, 200, 10, 10);
+        ShapeSpatialIndex index = new ShapeSpatialIndex(
+                Arrays.asList(a, b), 4096, 4096);
+        Assert.assertEquals(Arrays.asList(a, b), index.query(
+                new Rectangle2D.Double(0, 0, 4096, 4096)));
+        Assert.assertEquals(Arrays.asList(a), index.query(
+                new Rectangle2D.Double(2048, 2048, 512, 512)));
+    }
+
+    @Test
+    public void testQueryOutsideImage() {
+        ShapeSpatialIndex.Entry a = rectangle(-100, -100, 10, 10);
+        ShapeSpatialIndex.Entry b = rectangle(10, 10, 10, 10);
+        ShapeSpatialIndex index = new ShapeSpatialIndex(
+                Arrays.asList(a, b), 1024, 1024);
+        Assert.assertEquals(Arrays.asList(b), index.query(
+                new Rectangle2D.Double(0, 0, 1024, 1024)));
+        Assert.assertTrue(index.query(
+                new Rectangle2D.Double(2048, 2048, 10, 10)).isEmpty());
+    }
+
+    @Test
+    public void testToEntryRectangleWithTransform() {
+        RectangleI rectangle = new RectangleI();
+        rectangle.setX(rdouble(0));
+        rectangle.setY(rdouble(0));
+        rectangle.setWidth(rdouble(10));
+        rectangle.setHeight(rdouble(10));
+        AffineTransformI transform = new AffineTransformI();
+        transform.setA00(rdouble(1));
+        transform.setA10(rdouble(0));
+        transform.setA01(rdouble(0));
+        transform.setA11(rdouble(1));
+        transform.setA02(rdouble(100));
+        transform.setA12(rdouble(200));
+        rectangle.setTransform(transform);
+        ShapeSpatialIndex.Entry entry =
+                ShapeOverlayRequestHandler.toEntry(rectangle);
+        Assert.assertEquals(
+                new Rectangle2D.Double(100, 200, 10, 10),
+                entry.shape.getBounds2D());
+        Assert.assertEquals(
+                ShapeOverlayRequestHandler.DEFAULT_STROKE_COLOR,
+                entry.strokeColor);
+        Assert.assertNull(entry.fillColor);
+    }
+
+    @Test
+    public void testToEntryPolygon() {
+        PolygonI polygon = new PolygonI();
+        polygon.setPoints(rstring("10,10 20,10 20,30"));
+        ShapeSpatialIndex.Entry entry =
+                ShapeOverlayRequestHandler.toEntry(polygon);
+        Assert.assertEquals(
+                new Rectangle2D.Double(10, 10, 10, 20),
+                entry.shape.getBounds2D());
+    }
+
+    @Test
+    public void testToEntryUnsupported() {
+        Assert.assertNull(ShapeOverlayRequestHandler.toEntry(new MaskI()));
+        PolygonI polygon = new PolygonI();
+        polygon.setPoints(rstring("10,10 garbage"));
+        Assert.assertNull(ShapeOverlayRequestHandler.toEntry(polygon));
+    }
+
+    @Test
+    public void testRasterize() {
+        List<ShapeSpatialIndex.Entry> shapes = Arrays.asList(
+                rectangle(512, 512, 512, 512));
+        // Resolution level at half size; tile covering the lower right
+        BufferedImage image = ShapeOverlayRequestHandler.rasterize(
+                shapes, 256, 256, 256, 256, 2, 2);
+        Assert.assertEquals(256, image.getWidth());
+        Assert.assertEquals(256, image.getHeight());
+        Assert.assertEquals(Color.RED.getRGB(), image.getRGB(128, 128));
+        BufferedImage outside = ShapeOverlayRequestHandler.rasterize(
+                shapes, 0, 0, 256, 256, 2, 2);
+        Assert.assertEquals(0, outside.getRGB(128, 128));
+    }
+}